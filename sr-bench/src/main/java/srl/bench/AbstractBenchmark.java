@@ -0,0 +1,66 @@
+package srl.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import srl.segmentation.SegmentationCache;
+
+/**
+ * Settings shared by every benchmark. Each benchmark runs the same input on
+ * every invocation, so the shared {@link SegmentationCache} is turned off
+ * while it runs; otherwise every invocation after the first would measure a
+ * cache hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractBenchmark {
+
+	/**
+	 * Shared segmentation cache in place before the benchmark started
+	 */
+	private SegmentationCache m_sharedCache;
+
+	/**
+	 * Turn the shared caches off and build the input
+	 *
+	 * @throws Exception
+	 *             if the input cannot be built
+	 */
+	@Setup(Level.Trial)
+	public void setUpTrial() throws Exception {
+		m_sharedCache = SegmentationCache.getShared();
+		SegmentationCache.setShared(null);
+		setUp();
+	}
+
+	/**
+	 * Put the shared caches back
+	 */
+	@TearDown(Level.Trial)
+	public void tearDownTrial() {
+		SegmentationCache.setShared(m_sharedCache);
+	}
+
+	/**
+	 * Build the input of the benchmark, once per combination of parameters
+	 *
+	 * @throws Exception
+	 *             if the input cannot be built
+	 */
+	protected abstract void setUp() throws Exception;
+}
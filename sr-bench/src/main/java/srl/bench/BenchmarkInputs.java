@@ -0,0 +1,226 @@
+package srl.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator;
+
+/**
+ * Builds the strokes and sketches the benchmarks run on. Every input is a
+ * pure function of its parameters and a fixed seed, so results from
+ * different builds are measured on exactly the same input.
+ */
+public final class BenchmarkInputs {
+
+	/**
+	 * Seed used for every input
+	 */
+	public static final long SEED = 0x5eed5eedL;
+
+	/**
+	 * Milliseconds between consecutive points
+	 */
+	public static final long SAMPLE_INTERVAL = 10L;
+
+	/**
+	 * Standard deviation of the noise added to each point, in pixels
+	 */
+	public static final double JITTER = 0.5;
+
+	/**
+	 * Static methods only
+	 */
+	private BenchmarkInputs() {
+	}
+
+	/**
+	 * Get a generator of hand-drawn looking strokes and sketches, seeded with
+	 * {@link #SEED}
+	 *
+	 * @return new generator
+	 */
+	public static SyntheticSketchGenerator generator() {
+		return new SyntheticSketchGenerator(SEED);
+	}
+
+	/**
+	 * Build a stroke made of a number of primitive pieces (lines and arcs)
+	 * drawn end to end, each turning away from the one before it
+	 *
+	 * @param numPoints
+	 *            number of points in the stroke
+	 * @param complexity
+	 *            number of pieces; 1 is a single line
+	 * @return stroke
+	 */
+	public static Stroke stroke(int numPoints, int complexity) {
+		return stroke(numPoints, complexity, 0);
+	}
+
+	/**
+	 * Build one of several different strokes with the same number of points
+	 * and pieces, e.g. to train a classifier with
+	 *
+	 * @param numPoints
+	 *            number of points in the stroke
+	 * @param complexity
+	 *            number of pieces; 1 is a single line
+	 * @param variant
+	 *            which of the strokes to build
+	 * @return stroke
+	 */
+	public static Stroke stroke(int numPoints, int complexity, int variant) {
+		return stroke(numPoints, complexity, new Random(SEED + 31L
+				* (31L * numPoints + complexity) + variant), 0.0, 0.0, 0L);
+	}
+
+	/**
+	 * Build a sketch whose strokes are the sides of axis aligned rectangles,
+	 * one stroke per side, so connected strokes form closed cycles
+	 *
+	 * @param numStrokes
+	 *            number of strokes; rounded down to a multiple of 4
+	 * @param pointsPerStroke
+	 *            number of points in each stroke
+	 * @return strokes in drawing order
+	 */
+	public static List<Stroke> rectangles(int numStrokes, int pointsPerStroke) {
+		Random random = new Random(SEED + 17L * numStrokes + pointsPerStroke);
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		long time = 0L;
+		for (int r = 0; r < numStrokes / 4; r++) {
+			double x = 300.0 * (r % 4);
+			double y = 300.0 * (r / 4);
+			double w = 100.0 + 100.0 * random.nextDouble();
+			double h = 100.0 + 100.0 * random.nextDouble();
+			double[][] corners = { { x, y }, { x + w, y }, { x + w, y + h },
+					{ x, y + h }, { x, y } };
+			for (int side = 0; side < 4; side++) {
+				Stroke s = new Stroke();
+				for (int i = 0; i < pointsPerStroke; i++) {
+					double t = (double) i / (pointsPerStroke - 1);
+					s.addPoint(new Point(corners[side][0] + t
+							* (corners[side + 1][0] - corners[side][0])
+							+ JITTER * random.nextGaussian(), corners[side][1]
+							+ t * (corners[side + 1][1] - corners[side][1])
+							+ JITTER * random.nextGaussian(), time));
+					time += SAMPLE_INTERVAL;
+				}
+				time += 300L;
+				strokes.add(s);
+			}
+		}
+		return strokes;
+	}
+
+	/**
+	 * Build a sketch of unrelated strokes laid out on a grid
+	 *
+	 * @param numStrokes
+	 *            number of strokes
+	 * @param pointsPerStroke
+	 *            number of points in each stroke
+	 * @param complexity
+	 *            number of pieces in each stroke
+	 * @return sketch
+	 */
+	public static Sketch sketch(int numStrokes, int pointsPerStroke,
+			int complexity) {
+		Random random = new Random(SEED + 13L * numStrokes + 7L
+				* pointsPerStroke + complexity);
+		Sketch sketch = new Sketch();
+		long time = 0L;
+		for (int i = 0; i < numStrokes; i++) {
+			Stroke s = stroke(pointsPerStroke, complexity, random,
+					400.0 * (i % 8), 400.0 * (i / 8), time);
+			time = s.getLastPoint().getTime() + 300L;
+			sketch.add(s);
+		}
+		return sketch;
+	}
+
+	/**
+	 * Build a stroke of lines and arcs, resampled to the given number of
+	 * points
+	 *
+	 * @param numPoints
+	 *            number of points in the stroke
+	 * @param complexity
+	 *            number of pieces
+	 * @param random
+	 *            source of randomness
+	 * @param x
+	 *            x coordinate of the first point
+	 * @param y
+	 *            y coordinate of the first point
+	 * @param time
+	 *            time of the first point
+	 * @return stroke
+	 */
+	private static Stroke stroke(int numPoints, int complexity, Random random,
+			double x, double y, long time) {
+		// trace the pieces densely, then pick points evenly by arc length
+		List<double[]> path = new ArrayList<double[]>();
+		double heading = random.nextDouble() * 2.0 * Math.PI;
+		path.add(new double[] { x, y });
+		for (int piece = 0; piece < Math.max(1, complexity); piece++) {
+			if (piece > 0)
+				heading += (random.nextBoolean() ? 1 : -1)
+						* (Math.PI / 3.0 + random.nextDouble() * Math.PI / 2.0);
+			if (piece % 2 == 0) {
+				double length = 80.0 + 80.0 * random.nextDouble();
+				for (int i = 1; i <= 64; i++) {
+					path.add(new double[] {
+							x + Math.cos(heading) * length * i / 64.0,
+							y + Math.sin(heading) * length * i / 64.0 });
+				}
+				x += Math.cos(heading) * length;
+				y += Math.sin(heading) * length;
+			} else {
+				double radius = 30.0 + 50.0 * random.nextDouble();
+				double sweep = (random.nextBoolean() ? 1 : -1)
+						* (Math.PI / 2.0 + random.nextDouble() * Math.PI);
+				double cx = x - Math.sin(heading) * radius * Math.signum(sweep);
+				double cy = y + Math.cos(heading) * radius * Math.signum(sweep);
+				double start = Math.atan2(y - cy, x - cx);
+				for (int i = 1; i <= 64; i++) {
+					double a = start + sweep * i / 64.0;
+					path.add(new double[] { cx + radius * Math.cos(a),
+							cy + radius * Math.sin(a) });
+				}
+				x = cx + radius * Math.cos(start + sweep);
+				y = cy + radius * Math.sin(start + sweep);
+				heading += sweep;
+			}
+		}
+
+		double[] cumulative = new double[path.size()];
+		for (int i = 1; i < path.size(); i++)
+			cumulative[i] = cumulative[i - 1]
+					+ Math.hypot(path.get(i)[0] - path.get(i - 1)[0],
+							path.get(i)[1] - path.get(i - 1)[1]);
+		double total = cumulative[cumulative.length - 1];
+
+		Stroke stroke = new Stroke();
+		int j = 1;
+		for (int i = 0; i < numPoints; i++) {
+			double d = total * i / Math.max(1, numPoints - 1);
+			while (j < cumulative.length - 1 && cumulative[j] < d)
+				j++;
+			double span = cumulative[j] - cumulative[j - 1];
+			double t = span == 0.0 ? 0.0 : (d - cumulative[j - 1]) / span;
+			double px = path.get(j - 1)[0] + t
+					* (path.get(j)[0] - path.get(j - 1)[0]);
+			double py = path.get(j - 1)[1] + t
+					* (path.get(j)[1] - path.get(j - 1)[1]);
+			stroke.addPoint(new Point(px + JITTER * random.nextGaussian(), py
+					+ JITTER * random.nextGaussian(), time + i
+					* SAMPLE_INTERVAL));
+		}
+		return stroke;
+	}
+}
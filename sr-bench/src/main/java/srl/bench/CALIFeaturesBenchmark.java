@@ -0,0 +1,112 @@
+package srl.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import srl.core.sketch.Stroke;
+import srl.recognition.paleo.cali.CALIFeatures;
+
+/**
+ * Time to compute the CALI convex hull features, with the linear searches
+ * used for convex hulls and with the exhaustive searches they replaced. Before
+ * each trial the two are checked to give the same features on a set of
+ * strokes with the trial's parameters.
+ */
+public class CALIFeaturesBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Number of strokes the two searches are checked on
+	 */
+	private static final int NUM_CHECKED = 50;
+
+	/**
+	 * Largest difference allowed between the features of the two searches,
+	 * relative to the larger of the two values or to one, whichever is larger
+	 */
+	private static final double TOLERANCE = 1E-12;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		strokes.add(m_stroke);
+		for (int i = 1; i < NUM_CHECKED; i++)
+			strokes.add(BenchmarkInputs.stroke(points, complexity, i));
+		strokes.addAll(BenchmarkInputs.rectangles(NUM_CHECKED, points));
+		for (int i = 0; i < strokes.size(); i++)
+			checkAgree(strokes.get(i), i);
+	}
+
+	/**
+	 * Compute the features
+	 *
+	 * @return features
+	 */
+	@Benchmark
+	public CALIFeatures features() {
+		return new CALIFeatures(m_stroke);
+	}
+
+	/**
+	 * Compute the features with the exhaustive searches
+	 *
+	 * @return features
+	 */
+	@Benchmark
+	public CALIFeatures featuresExhaustive() {
+		return new CALIFeatures(m_stroke, true);
+	}
+
+	/**
+	 * Check that both searches give the same features for a stroke
+	 *
+	 * @param stroke
+	 *            stroke to check
+	 * @param index
+	 *            index of the stroke, for the error message
+	 * @throws IllegalStateException
+	 *             if any feature differs
+	 */
+	private void checkAgree(Stroke stroke, int index) {
+		double[] linear;
+		try {
+			linear = values(new CALIFeatures(stroke));
+		} catch (IndexOutOfBoundsException e) {
+			// the hull of a few nearly straight strokes cannot be built;
+			// that happens before either search runs, so there is nothing
+			// to compare
+			return;
+		}
+		double[] exhaustive = values(new CALIFeatures(stroke, true));
+		for (int i = 0; i < linear.length; i++) {
+			double a = linear[i], b = exhaustive[i];
+			if (Double.compare(a, b) == 0)
+				continue;
+			if (Math.abs(a - b) > TOLERANCE
+					* Math.max(1, Math.max(Math.abs(a), Math.abs(b))))
+				throw new IllegalStateException("CALI feature " + i
+						+ " of stroke " + index + " differs: " + a
+						+ " (linear) vs " + b + " (exhaustive)");
+		}
+	}
+
+	/**
+	 * Get every feature, in the order CALIFeatures declares them
+	 *
+	 * @param cali
+	 *            computed features
+	 * @return feature values
+	 */
+	private static double[] values(CALIFeatures cali) {
+		return new double[] { cali.Tl_Pch(), cali.Pch2_Ach(),
+				cali.Pch_Ns_Tl(), cali.Hollowness(), cali.Hm_Wbb(),
+				cali.Vm_Hbb(), cali.Hbb_Wbb(), cali.Her_Wer(), cali.Alt_Ach(),
+				cali.Ach_Aer(), cali.Alt_Aer(), cali.Ach_Abb(),
+				cali.Alt_Abb(), cali.Alq_Ach(), cali.Alq_Aer(),
+				cali.Alt_Alq(), cali.Plt_Pch(), cali.Pch_Per(),
+				cali.Plt_Per(), cali.Pch_Pbb(), cali.Plt_Pbb(),
+				cali.Plq_Pch(), cali.Plq_Per(), cali.Plt_Plq() };
+	}
+}
@@ -0,0 +1,100 @@
+package srl.bench;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, e.g. a run of
+ * the current tree against a baseline run, and prints the ratio of the
+ * scores of every benchmark and parameter combination found in both.
+ * <p>
+ * Usage: {@code CompareResults baseline.json current.json [threshold]}
+ * <p>
+ * Exits with status 1 if any benchmark got slower by more than the
+ * threshold (a fraction, default 0.10).
+ */
+public final class CompareResults {
+
+	/**
+	 * Default fraction a score may grow by before it counts as a regression
+	 */
+	public static final double DEFAULT_THRESHOLD = 0.10;
+
+	/**
+	 * Static methods only
+	 */
+	private CompareResults() {
+	}
+
+	/**
+	 * Compare two result files
+	 *
+	 * @param args
+	 *            baseline file, current file and optional threshold
+	 * @throws Exception
+	 *             if a file cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err
+					.println("usage: CompareResults baseline.json current.json [threshold]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2])
+				: DEFAULT_THRESHOLD;
+		Map<String, Double> baseline = read(new File(args[0]));
+		Map<String, Double> current = read(new File(args[1]));
+
+		int regressions = 0;
+		for (Map.Entry<String, Double> e : current.entrySet()) {
+			Double before = baseline.get(e.getKey());
+			if (before == null || before == 0.0)
+				continue;
+			double ratio = e.getValue() / before;
+			boolean regressed = ratio > 1.0 + threshold;
+			if (regressed)
+				regressions++;
+			System.out.println(String.format("%-8.3f %12.3f %12.3f  %s%s",
+					ratio, before, e.getValue(), e.getKey(),
+					regressed ? "  REGRESSION" : ""));
+		}
+		System.out.println(regressions + " regression(s) over "
+				+ Math.round(threshold * 100) + "%");
+		System.exit(regressions == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Read the scores out of a JMH result file. Scores are times per
+	 * operation, so a higher score is slower.
+	 *
+	 * @param file
+	 *            JSON result file
+	 * @return score of each benchmark, keyed by its name and parameters
+	 * @throws Exception
+	 *             if the file cannot be read
+	 */
+	private static Map<String, Double> read(File file) throws Exception {
+		Map<String, Double> scores = new TreeMap<String, Double>();
+		for (JsonNode result : new ObjectMapper().readTree(file)) {
+			StringBuilder key = new StringBuilder(result.get("benchmark")
+					.asText());
+			JsonNode params = result.get("params");
+			if (params != null) {
+				Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+				while (it.hasNext()) {
+					Map.Entry<String, JsonNode> p = it.next();
+					key.append(' ').append(p.getKey()).append('=')
+							.append(p.getValue().asText());
+				}
+			}
+			scores.put(key.toString(), result.get("primaryMetric").get("score")
+					.asDouble());
+		}
+		return scores;
+	}
+}
@@ -0,0 +1,136 @@
+package srl.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.OrigPaleoSketchRecognizer;
+import srl.recognition.paleo.PaleoConfig;
+
+/**
+ * Time to compute each Paleo fit on its own. Every fit and segmentation is
+ * computed once during setup, so a fit that builds on another (e.g. circle
+ * on ellipse, or polyline on the corner finding segmentation) is only
+ * charged for its own work.
+ */
+public class FitBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Name of the fit to compute
+	 */
+	@Param({ Fit.LINE, Fit.ARC, Fit.CURVE, Fit.ELLIPSE, Fit.CIRCLE,
+			Fit.SPIRAL, Fit.HELIX, Fit.POLYLINE, Fit.POLYGON, Fit.ARROW,
+			Fit.RECTANGLE, Fit.SQUARE, Fit.DIAMOND, Fit.DOT, Fit.WAVE,
+			Fit.GULL, Fit.BLOB, Fit.INFINITY, Fit.NBC, Fit.COMPLEX })
+	public String fit;
+
+	/**
+	 * Recognizer holding the features, segmentations and fits of the stroke
+	 */
+	private FitHarness m_harness;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_harness = new FitHarness();
+		m_harness.setStroke(m_stroke);
+		m_harness.recognize();
+	}
+
+	/**
+	 * Compute the fit
+	 *
+	 * @return fit
+	 */
+	@Benchmark
+	public Fit fit() {
+		return m_harness.fit(fit);
+	}
+
+	/**
+	 * Gives access to the calculation of single fits
+	 */
+	private static class FitHarness extends OrigPaleoSketchRecognizer {
+
+		/**
+		 * Constructor
+		 */
+		FitHarness() {
+			super(PaleoConfig.allOn());
+		}
+
+		/**
+		 * Compute a fit of the loaded stroke
+		 *
+		 * @param name
+		 *            name of the fit
+		 * @return fit
+		 */
+		Fit fit(String name) {
+			switch (name) {
+			case Fit.LINE:
+				calcLineFit();
+				return m_lineFit;
+			case Fit.ARC:
+				calcArcFit();
+				return m_arcFit;
+			case Fit.CURVE:
+				calcCurveFit();
+				return m_curveFit;
+			case Fit.ELLIPSE:
+				calcEllipseFit();
+				return m_ellipseFit;
+			case Fit.CIRCLE:
+				calcCircleFit();
+				return m_circleFit;
+			case Fit.SPIRAL:
+				calcSpiralFit();
+				return m_spiralFit;
+			case Fit.HELIX:
+				calcHelixFit();
+				return m_helixFit;
+			case Fit.POLYLINE:
+				calcPolylineFit();
+				return m_polylineFit;
+			case Fit.POLYGON:
+				calcPolygonFit();
+				return m_polygonFit;
+			case Fit.ARROW:
+				calcArrowFit();
+				return m_arrowFit;
+			case Fit.RECTANGLE:
+				calcRectangleFit();
+				return m_rectangleFit;
+			case Fit.SQUARE:
+				calcSquareFit();
+				return m_squareFit;
+			case Fit.DIAMOND:
+				calcDiamondFit();
+				return m_diamondFit;
+			case Fit.DOT:
+				calcDotFit();
+				return m_dotFit;
+			case Fit.WAVE:
+				calcWaveFit();
+				return m_waveFit;
+			case Fit.GULL:
+				calcGullFit();
+				return m_gullFit;
+			case Fit.BLOB:
+				calcBlobFit();
+				return m_blobFit;
+			case Fit.INFINITY:
+				calcInfinityFit();
+				return m_infinityFit;
+			case Fit.NBC:
+				calcNBCFit();
+				return m_nbcFit;
+			case Fit.COMPLEX:
+				calcComplexFit();
+				return m_complexFit;
+			default:
+				throw new IllegalArgumentException("Unknown fit: " + name);
+			}
+		}
+	}
+}
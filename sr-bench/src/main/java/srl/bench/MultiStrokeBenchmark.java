@@ -0,0 +1,80 @@
+package srl.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import srl.core.sketch.Stroke;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.paleo.PaleoConfig;
+import srl.recognition.paleo.PaleoSketchRecognizer;
+import srl.recognition.paleo.multistroke.MultiStrokePaleoRecognizer;
+
+/**
+ * Time to recognize a sketch of rectangles drawn one side per stroke with
+ * the multi-stroke version of PaleoSketch, which has to find the closed
+ * cycles and recognize the combined strokes
+ */
+public class MultiStrokeBenchmark extends AbstractBenchmark {
+
+	/**
+	 * Number of strokes in the sketch (4 per rectangle)
+	 */
+	@Param({ "4", "16", "32" })
+	public int strokes;
+
+	/**
+	 * Number of points in each stroke
+	 */
+	@Param({ "32", "128" })
+	public int points;
+
+	/**
+	 * Strokes of the sketch, as generated
+	 */
+	private List<Stroke> m_strokes;
+
+	/**
+	 * Copies of the strokes for the next invocation; the recognizer labels
+	 * the strokes it is given
+	 */
+	private List<Stroke> m_submission;
+
+	/**
+	 * Recognizer
+	 */
+	private MultiStrokePaleoRecognizer m_recognizer;
+
+	@Override
+	protected void setUp() throws Exception {
+		m_strokes = BenchmarkInputs.rectangles(strokes, points);
+		m_recognizer = new MultiStrokePaleoRecognizer(
+				new PaleoSketchRecognizer(PaleoConfig.allOn()));
+	}
+
+	/**
+	 * Copy the strokes and clear the recognizer
+	 */
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		m_submission = new ArrayList<Stroke>(m_strokes.size());
+		for (Stroke s : m_strokes)
+			m_submission.add(s.clone());
+		m_recognizer.clear();
+	}
+
+	/**
+	 * Recognize the sketch
+	 *
+	 * @return recognition results
+	 */
+	@Benchmark
+	public List<IRecognitionResult> recognize() {
+		m_recognizer.submitForRecognition(m_submission);
+		return m_recognizer.recognize();
+	}
+}
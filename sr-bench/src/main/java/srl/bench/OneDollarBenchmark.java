@@ -0,0 +1,46 @@
+package srl.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import srl.recognition.IRecognitionResult;
+import srl.recognition.dollar.OneDollarStroke;
+
+/**
+ * Time to normalize a stroke and match it against a set of $1 templates
+ */
+public class OneDollarBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Number of templates, one per complexity
+	 */
+	public static final int NUM_TEMPLATES = 16;
+
+	/**
+	 * Templates to match against
+	 */
+	private List<OneDollarStroke> m_templates;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_templates = new ArrayList<OneDollarStroke>(NUM_TEMPLATES);
+		for (int c = 1; c <= NUM_TEMPLATES; c++)
+			m_templates.add(new OneDollarStroke(BenchmarkInputs.stroke(64, c,
+					1), "template" + c));
+	}
+
+	/**
+	 * Recognize the stroke
+	 *
+	 * @return recognition result
+	 */
+	@Benchmark
+	public IRecognitionResult recognize() {
+		OneDollarStroke stroke = new OneDollarStroke(m_stroke);
+		stroke.recognize(m_templates);
+		return stroke.getRecognitionResults();
+	}
+}
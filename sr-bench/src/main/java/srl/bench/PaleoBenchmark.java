@@ -0,0 +1,55 @@
+package srl.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import srl.recognition.IRecognitionResult;
+import srl.recognition.StrokeResampler;
+import srl.recognition.paleo.PaleoConfig;
+import srl.recognition.paleo.PaleoSketchRecognizer;
+
+/**
+ * Time to recognize a stroke with PaleoSketch, from features to the ranked
+ * n-best list
+ */
+public class PaleoBenchmark extends StrokeBenchmark {
+
+	/**
+	 * True to combine original Paleo with the neural network
+	 */
+	@Param({ "false", "true" })
+	public boolean nn;
+
+	/**
+	 * True to resample strokes to the default point budget first
+	 */
+	@Param({ "false", "true" })
+	public boolean resample;
+
+	/**
+	 * Recognizer
+	 */
+	private PaleoSketchRecognizer m_paleo;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		PaleoConfig config = PaleoConfig.allOn();
+		config.setNNEnabled(nn);
+		m_paleo = new PaleoSketchRecognizer(config);
+		if (resample)
+			m_paleo.setResampler(new StrokeResampler());
+	}
+
+	/**
+	 * Recognize the stroke. The recognizer is cleared first, so the features
+	 * of the stroke are computed again on every invocation.
+	 *
+	 * @return recognition result
+	 */
+	@Benchmark
+	public IRecognitionResult recognize() {
+		m_paleo.clear();
+		return m_paleo.recognize(m_stroke);
+	}
+}
@@ -0,0 +1,61 @@
+package srl.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import srl.core.sketch.Stroke;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.paleo.PaleoConfig;
+import srl.recognition.paleo.PaleoSketchRecognizer;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator.Primitive;
+
+/**
+ * Time to recognize a hand-drawn looking stroke of each Paleo primitive with
+ * PaleoSketch. Unlike {@link PaleoBenchmark}, the strokes are traced at a
+ * realistic pen speed, so their number of points depends on the primitive
+ * and its size.
+ */
+public class PrimitiveBenchmark extends AbstractBenchmark {
+
+	/**
+	 * Primitive drawn
+	 */
+	@Param({ "LINE", "ARC", "CIRCLE", "ELLIPSE", "SPIRAL", "HELIX", "WAVE",
+			"POLYLINE", "RECTANGLE", "ARROW" })
+	public Primitive primitive;
+
+	/**
+	 * Approximate extent of the primitive, in pixels
+	 */
+	@Param({ "100", "400" })
+	public double size;
+
+	/**
+	 * Stroke to recognize
+	 */
+	private Stroke m_stroke;
+
+	/**
+	 * Recognizer
+	 */
+	private PaleoSketchRecognizer m_paleo;
+
+	@Override
+	protected void setUp() throws Exception {
+		m_stroke = BenchmarkInputs.generator().stroke(primitive, size, size,
+				size);
+		m_paleo = new PaleoSketchRecognizer(PaleoConfig.allOn());
+	}
+
+	/**
+	 * Recognize the stroke
+	 *
+	 * @return recognition result
+	 */
+	@Benchmark
+	public IRecognitionResult recognize() {
+		m_paleo.clear();
+		return m_paleo.recognize(m_stroke);
+	}
+}
@@ -0,0 +1,75 @@
+package srl.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import srl.recognition.rubine.RubineClassifier;
+import srl.recognition.rubine.RubineStroke;
+
+/**
+ * Time to compute Rubine features for a stroke and classify it
+ */
+public class RubineBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Number of classes the classifier is trained on, one per complexity
+	 */
+	public static final int NUM_CLASSES = 8;
+
+	/**
+	 * Number of training examples per class
+	 */
+	public static final int NUM_EXAMPLES = 20;
+
+	/**
+	 * Trained classifier
+	 */
+	private TrainedRubineClassifier m_classifier;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Map<String, List<RubineStroke>> data = new HashMap<String, List<RubineStroke>>();
+		for (int c = 1; c <= NUM_CLASSES; c++) {
+			List<RubineStroke> examples = new ArrayList<RubineStroke>();
+			// vary the length too, or the duration features never vary and
+			// the covariance matrix is singular
+			for (int v = 1; v <= NUM_EXAMPLES; v++)
+				examples.add(new RubineStroke(BenchmarkInputs.stroke(
+						40 + 3 * v, c, v), RubineStroke.FeatureSet.Rubine));
+			data.put("class" + c, examples);
+		}
+		m_classifier = new TrainedRubineClassifier(data);
+	}
+
+	/**
+	 * Classify the stroke
+	 *
+	 * @return class labels by score
+	 */
+	@Benchmark
+	public NavigableMap<Double, String> classify() {
+		return m_classifier.classify(m_stroke);
+	}
+
+	/**
+	 * Rubine classifier trained in memory
+	 */
+	private static class TrainedRubineClassifier extends RubineClassifier {
+
+		/**
+		 * Constructor
+		 *
+		 * @param data
+		 *            training examples by class label
+		 */
+		TrainedRubineClassifier(Map<String, List<RubineStroke>> data) {
+			trainOnData(data);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package srl.bench;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import srl.core.sketch.ISegmenter;
+import srl.core.sketch.Segmentation;
+import srl.recognition.paleo.PaleoConfig;
+import srl.recognition.paleo.StrokeFeatures;
+import srl.recognition.paleo.paleoNN.PaleoNNRecognizer;
+import srl.segmentation.combination.FSSCombinationSegmenter;
+import srl.segmentation.combination.FSSCombinationSegmenter2;
+import srl.segmentation.combination.KDECombinationSegmenter;
+import srl.segmentation.combination.KDEMergeSegmenter;
+import srl.segmentation.combination.PolylineCombinationSegmenter;
+import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
+import srl.segmentation.fssSegmenter.FSSSegmenter;
+import srl.segmentation.kimSquared.KimSquaredSegmenter;
+import srl.segmentation.mergecf.MergeCFSegmenter;
+import srl.segmentation.mergecf.MergeCF_WithCurvesSegmenter;
+import srl.segmentation.paleo.ComplexShapeSegmenter;
+import srl.segmentation.paleo.ComplexShapeSegmenterNN;
+import srl.segmentation.paleo.GullSegmenter;
+import srl.segmentation.paleo.PaleoSegmenter;
+import srl.segmentation.paleo.RevolutionSegmenter;
+import srl.segmentation.paleo.VSegmenter;
+import srl.segmentation.paleo.WaveSegmenter;
+import srl.segmentation.raySquared.RaySquaredSegmenter;
+import srl.segmentation.sezgin.SezginSegmenter;
+import srl.segmentation.shortstraw.ShortStrawSegmenter;
+import srl.segmentation.stahovich.StahovichSegmenter;
+
+/**
+ * Time for each segmenter to segment a stroke. The time includes
+ * {@link ISegmenter#setStroke(srl.core.sketch.Stroke)}, which for the Paleo
+ * segmenters computes the stroke's features.
+ */
+public class SegmenterBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Simple class name of the segmenter
+	 */
+	@Param({ "DouglasPeuckerSegmenter", "KimSquaredSegmenter",
+			"RaySquaredSegmenter", "SezginSegmenter", "ShortStrawSegmenter",
+			"StahovichSegmenter", "MergeCFSegmenter",
+			"MergeCF_WithCurvesSegmenter", "FSSSegmenter", "PaleoSegmenter",
+			"VSegmenter", "WaveSegmenter", "GullSegmenter",
+			"RevolutionSegmenter", "ComplexShapeSegmenter",
+			"ComplexShapeSegmenterNN", "PolylineCombinationSegmenter",
+			"KDECombinationSegmenter", "KDEMergeSegmenter",
+			"FSSCombinationSegmenter", "FSSCombinationSegmenter2" })
+	public String segmenter;
+
+	/**
+	 * Segmenter to run
+	 */
+	private ISegmenter m_segmenter;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_segmenter = create(segmenter);
+	}
+
+	/**
+	 * Segment the stroke
+	 *
+	 * @return segmentations
+	 * @throws Exception
+	 *             if the segmenter fails
+	 */
+	@Benchmark
+	public List<Segmentation> segment() throws Exception {
+		m_segmenter.setStroke(m_stroke);
+		return m_segmenter.getSegmentations();
+	}
+
+	/**
+	 * Create a segmenter
+	 *
+	 * @param name
+	 *            simple class name of the segmenter
+	 * @return segmenter
+	 */
+	@SuppressWarnings("deprecation")
+	private ISegmenter create(String name) {
+		switch (name) {
+		case "DouglasPeuckerSegmenter":
+			return new DouglasPeuckerSegmenter();
+		case "KimSquaredSegmenter":
+			return new KimSquaredSegmenter();
+		case "RaySquaredSegmenter":
+			return new RaySquaredSegmenter();
+		case "SezginSegmenter":
+			return new SezginSegmenter();
+		case "ShortStrawSegmenter":
+			return new ShortStrawSegmenter();
+		case "StahovichSegmenter":
+			return new StahovichSegmenter();
+		case "MergeCFSegmenter":
+			return new MergeCFSegmenter();
+		case "MergeCF_WithCurvesSegmenter":
+			return new MergeCF_WithCurvesSegmenter();
+		case "FSSSegmenter":
+			return new FSSSegmenter();
+		case "PaleoSegmenter":
+			return new PaleoSegmenter();
+		case "VSegmenter":
+			return new VSegmenter();
+		case "WaveSegmenter":
+			return new WaveSegmenter();
+		case "GullSegmenter":
+			return new GullSegmenter();
+		case "RevolutionSegmenter":
+			return new RevolutionSegmenter(new StrokeFeatures(m_stroke, false));
+		case "ComplexShapeSegmenter":
+			return new ComplexShapeSegmenter();
+		case "ComplexShapeSegmenterNN":
+			return new ComplexShapeSegmenterNN(new StrokeFeatures(m_stroke,
+					false), new PaleoNNRecognizer(PaleoConfig.allOn()));
+		case "PolylineCombinationSegmenter":
+			return new PolylineCombinationSegmenter();
+		case "KDECombinationSegmenter":
+			return new KDECombinationSegmenter();
+		case "KDEMergeSegmenter":
+			return new KDEMergeSegmenter();
+		case "FSSCombinationSegmenter":
+			return new FSSCombinationSegmenter();
+		case "FSSCombinationSegmenter2":
+			return new FSSCombinationSegmenter2();
+		default:
+			throw new IllegalArgumentException("Unknown segmenter: " + name);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package srl.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import srl.core.sketch.Sketch;
+
+/**
+ * Time to write a sketch to and read it back from each of the serialized
+ * formats
+ */
+public class SerializationBenchmark extends AbstractBenchmark {
+
+	/**
+	 * Serialized format
+	 */
+	public enum Format {
+		JSON, XML, FLAT_XML
+	}
+
+	/**
+	 * Format to write and read
+	 */
+	@Param({ "JSON", "XML", "FLAT_XML" })
+	public Format format;
+
+	/**
+	 * Number of strokes in the sketch
+	 */
+	@Param({ "1", "16", "128" })
+	public int strokes;
+
+	/**
+	 * Number of points in each stroke
+	 */
+	@Param({ "64", "256" })
+	public int points;
+
+	/**
+	 * Sketch to write
+	 */
+	private Sketch m_sketch;
+
+	/**
+	 * Serialized sketch to read
+	 */
+	private byte[] m_serialized;
+
+	@Override
+	protected void setUp() throws Exception {
+		m_sketch = BenchmarkInputs.sketch(strokes, points, 4);
+		m_serialized = write().toByteArray();
+	}
+
+	/**
+	 * Write the sketch
+	 *
+	 * @return serialized sketch
+	 * @throws Exception
+	 *             if serialization fails
+	 */
+	@Benchmark
+	public ByteArrayOutputStream write() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		switch (format) {
+		case JSON:
+			m_sketch.serializeJSON(out);
+			break;
+		case XML:
+			m_sketch.serializeXML(out);
+			break;
+		case FLAT_XML:
+			m_sketch.serializeFlatXML(out);
+			break;
+		}
+		return out;
+	}
+
+	/**
+	 * Read the sketch
+	 *
+	 * @return sketch
+	 * @throws Exception
+	 *             if deserialization fails
+	 */
+	@Benchmark
+	public Sketch read() throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(m_serialized);
+		if (format == Format.JSON)
+			return Sketch.deserializeJSON(in);
+		return Sketch.deserializeXML(in);
+	}
+}
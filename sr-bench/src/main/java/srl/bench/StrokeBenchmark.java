@@ -0,0 +1,35 @@
+package srl.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+import srl.core.sketch.Stroke;
+
+/**
+ * Base of the benchmarks that work on a single stroke, parameterized by the
+ * stroke's length in points and by its complexity: the number of line and
+ * arc pieces it is drawn with (see {@link BenchmarkInputs#stroke(int, int)}).
+ */
+public abstract class StrokeBenchmark extends AbstractBenchmark {
+
+	/**
+	 * Number of points in the stroke
+	 */
+	@Param({ "64", "256", "1024" })
+	public int points;
+
+	/**
+	 * Number of pieces the stroke is drawn with
+	 */
+	@Param({ "1", "4", "12" })
+	public int complexity;
+
+	/**
+	 * Stroke to run on
+	 */
+	protected Stroke m_stroke;
+
+	@Override
+	protected void setUp() throws Exception {
+		m_stroke = BenchmarkInputs.stroke(points, complexity);
+	}
+}
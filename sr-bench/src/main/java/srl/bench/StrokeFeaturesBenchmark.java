@@ -0,0 +1,31 @@
+package srl.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import srl.recognition.paleo.StrokeFeatures;
+
+/**
+ * Time to compute the features Paleo works from
+ */
+public class StrokeFeaturesBenchmark extends StrokeBenchmark {
+
+	/**
+	 * Compute features without smoothing the direction graph
+	 *
+	 * @return features
+	 */
+	@Benchmark
+	public StrokeFeatures features() {
+		return new StrokeFeatures(m_stroke, false);
+	}
+
+	/**
+	 * Compute features with a smoothed direction graph
+	 *
+	 * @return features
+	 */
+	@Benchmark
+	public StrokeFeatures featuresSmoothed() {
+		return new StrokeFeatures(m_stroke, true);
+	}
+}
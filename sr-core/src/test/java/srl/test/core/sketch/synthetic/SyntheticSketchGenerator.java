@@ -0,0 +1,782 @@
+package srl.test.core.sketch.synthetic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+
+/**
+ * Generates synthetic strokes and sketches for tests, benchmarks and load
+ * tests. Everything is drawn from a seeded {@link Random}, so the same seed
+ * and the same sequence of calls always produce the same output.
+ * <p>
+ * Strokes are traced the way a pen moves: the pen speeds up from rest, slows
+ * down in tight curves and at corners (following the two-thirds power law),
+ * and comes to rest at the end. Points are sampled at a fixed interval, like
+ * a digitizer, so they are dense where the pen is slow and sparse where it is
+ * fast. Gaussian jitter is added to every point, and closed shapes can be
+ * overtraced past their start.
+ * <p>
+ * The generator keeps a clock that every stroke advances, with a pen-up gap
+ * between consecutive strokes, so strokes generated one after another have
+ * increasing, non-overlapping timestamps.
+ */
+public class SyntheticSketchGenerator {
+
+	/**
+	 * Primitives the generator can draw, matching the Paleo fits
+	 */
+	public enum Primitive {
+		LINE, ARC, CIRCLE, ELLIPSE, SPIRAL, HELIX, WAVE, POLYLINE, RECTANGLE, ARROW
+	}
+
+	/**
+	 * Default pen speed, in pixels per millisecond
+	 */
+	public static final double DEFAULT_SPEED = 0.5;
+
+	/**
+	 * Default time between sampled points, in milliseconds
+	 */
+	public static final long DEFAULT_SAMPLE_INTERVAL = 10L;
+
+	/**
+	 * Default standard deviation of the noise added to each point, in pixels
+	 */
+	public static final double DEFAULT_JITTER = 0.5;
+
+	/**
+	 * Default fraction of a closed shape drawn again past its start
+	 */
+	public static final double DEFAULT_OVERTRACE = 0.1;
+
+	/**
+	 * Default time the pen is lifted between strokes, in milliseconds
+	 */
+	public static final long DEFAULT_PEN_UP_TIME = 250L;
+
+	/**
+	 * Spacing of the vertices paths are traced through, in pixels
+	 */
+	private static final double STEP = 1.0;
+
+	/**
+	 * Radius of curvature, in pixels, below which the pen slows down
+	 */
+	private static final double FULL_SPEED_RADIUS = 50.0;
+
+	/**
+	 * Distance, in pixels, over which the pen speeds up and slows down at the
+	 * ends of a stroke
+	 */
+	private static final double RAMP = 15.0;
+
+	/**
+	 * Slowest the pen moves, as a fraction of its speed
+	 */
+	private static final double MIN_SPEED = 0.15;
+
+	/**
+	 * Letters {@link #letter(char, double, double, double)} can write
+	 */
+	public static final String GLYPH_LETTERS = "ceilnotvxzAEFHLT147";
+
+	/**
+	 * Strokes of each letter, as vertices in a unit box with y pointing down
+	 * and the baseline at 1
+	 */
+	private static final Map<Character, double[][][]> GLYPHS = new HashMap<Character, double[][][]>();
+
+	static {
+		GLYPHS.put('c', new double[][][] { glyphArc(0.55, 0.65, 0.4, 0.33,
+				-40, -280) });
+		GLYPHS.put('e', new double[][][] { concat(new double[][] {
+				{ 0.1, 0.65 }, { 0.9, 0.65 } }, glyphArc(0.5, 0.65, 0.4, 0.33,
+				0, -300)) });
+		GLYPHS.put('i', new double[][][] { { { 0.5, 0.35 }, { 0.5, 1.0 } },
+				{ { 0.5, 0.12 }, { 0.53, 0.15 } } });
+		GLYPHS.put('l', new double[][][] { { { 0.5, 0.0 }, { 0.5, 1.0 } } });
+		GLYPHS.put('n', new double[][][] {
+				{ { 0.15, 0.3 }, { 0.15, 1.0 } },
+				concat(new double[][] { { 0.15, 0.55 } }, glyphArc(0.5, 0.6,
+						0.35, 0.28, 200, 160), new double[][] { { 0.85, 1.0 } }) });
+		GLYPHS.put('o', new double[][][] { glyphArc(0.5, 0.65, 0.4, 0.33, -90,
+				-360) });
+		GLYPHS.put('t', new double[][][] { { { 0.5, 0.0 }, { 0.5, 1.0 } },
+				{ { 0.2, 0.35 }, { 0.8, 0.35 } } });
+		GLYPHS.put('v', new double[][][] { { { 0.1, 0.3 }, { 0.5, 1.0 },
+				{ 0.9, 0.3 } } });
+		GLYPHS.put('x', new double[][][] { { { 0.1, 0.3 }, { 0.9, 1.0 } },
+				{ { 0.9, 0.3 }, { 0.1, 1.0 } } });
+		GLYPHS.put('z', new double[][][] { { { 0.1, 0.3 }, { 0.9, 0.3 },
+				{ 0.1, 1.0 }, { 0.9, 1.0 } } });
+		GLYPHS.put('A', new double[][][] {
+				{ { 0.05, 1.0 }, { 0.5, 0.0 }, { 0.95, 1.0 } },
+				{ { 0.25, 0.6 }, { 0.75, 0.6 } } });
+		GLYPHS.put('E', new double[][][] {
+				{ { 0.9, 0.0 }, { 0.1, 0.0 }, { 0.1, 1.0 }, { 0.9, 1.0 } },
+				{ { 0.1, 0.5 }, { 0.7, 0.5 } } });
+		GLYPHS.put('F', new double[][][] {
+				{ { 0.9, 0.0 }, { 0.1, 0.0 }, { 0.1, 1.0 } },
+				{ { 0.1, 0.5 }, { 0.7, 0.5 } } });
+		GLYPHS.put('H', new double[][][] { { { 0.1, 0.0 }, { 0.1, 1.0 } },
+				{ { 0.9, 0.0 }, { 0.9, 1.0 } }, { { 0.1, 0.5 }, { 0.9, 0.5 } } });
+		GLYPHS.put('L', new double[][][] { { { 0.1, 0.0 }, { 0.1, 1.0 },
+				{ 0.9, 1.0 } } });
+		GLYPHS.put('T', new double[][][] { { { 0.05, 0.0 }, { 0.95, 0.0 } },
+				{ { 0.5, 0.0 }, { 0.5, 1.0 } } });
+		GLYPHS.put('1', new double[][][] { { { 0.25, 0.2 }, { 0.55, 0.0 },
+				{ 0.55, 1.0 } } });
+		GLYPHS.put('4', new double[][][] {
+				{ { 0.6, 0.0 }, { 0.1, 0.65 }, { 0.9, 0.65 } },
+				{ { 0.65, 0.3 }, { 0.65, 1.0 } } });
+		GLYPHS.put('7', new double[][][] { { { 0.1, 0.0 }, { 0.9, 0.0 },
+				{ 0.35, 1.0 } } });
+	}
+
+	/**
+	 * Source of randomness
+	 */
+	private final Random m_random;
+
+	/**
+	 * Pen speed, in pixels per millisecond
+	 */
+	private double m_speed = DEFAULT_SPEED;
+
+	/**
+	 * Time between sampled points, in milliseconds
+	 */
+	private long m_sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	/**
+	 * Standard deviation of the noise added to each point, in pixels
+	 */
+	private double m_jitter = DEFAULT_JITTER;
+
+	/**
+	 * Fraction of a closed shape drawn again past its start
+	 */
+	private double m_overtrace = DEFAULT_OVERTRACE;
+
+	/**
+	 * Time the pen is lifted between strokes, in milliseconds
+	 */
+	private long m_penUpTime = DEFAULT_PEN_UP_TIME;
+
+	/**
+	 * Probability that a rectangle or arrow in a generated sketch is drawn with
+	 * several strokes
+	 */
+	private double m_multiStrokeProbability = 0.3;
+
+	/**
+	 * Time the next stroke starts at
+	 */
+	private long m_time = 0L;
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed
+	 *            seed of the random numbers
+	 */
+	public SyntheticSketchGenerator(long seed) {
+		m_random = new Random(seed);
+	}
+
+	/**
+	 * Set the pen speed
+	 *
+	 * @param speed
+	 *            speed, in pixels per millisecond
+	 */
+	public void setSpeed(double speed) {
+		m_speed = speed;
+	}
+
+	/**
+	 * Set the time between sampled points
+	 *
+	 * @param sampleInterval
+	 *            interval, in milliseconds
+	 */
+	public void setSampleInterval(long sampleInterval) {
+		m_sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Set the noise added to each point
+	 *
+	 * @param jitter
+	 *            standard deviation, in pixels; 0 for none
+	 */
+	public void setJitter(double jitter) {
+		m_jitter = jitter;
+	}
+
+	/**
+	 * Set how far closed shapes are drawn past their start. The amount
+	 * actually drawn varies between half and one and a half times this.
+	 *
+	 * @param overtrace
+	 *            fraction of the shape; 0 for none
+	 */
+	public void setOvertrace(double overtrace) {
+		m_overtrace = overtrace;
+	}
+
+	/**
+	 * Set the time the pen is lifted between strokes
+	 *
+	 * @param penUpTime
+	 *            time, in milliseconds
+	 */
+	public void setPenUpTime(long penUpTime) {
+		m_penUpTime = penUpTime;
+	}
+
+	/**
+	 * Set the probability that rectangles and arrows in generated sketches
+	 * are drawn with several strokes
+	 *
+	 * @param multiStrokeProbability
+	 *            probability, from 0 to 1
+	 */
+	public void setMultiStrokeProbability(double multiStrokeProbability) {
+		m_multiStrokeProbability = multiStrokeProbability;
+	}
+
+	/**
+	 * Set the time the next stroke starts at
+	 *
+	 * @param time
+	 *            time, in milliseconds
+	 */
+	public void setTime(long time) {
+		m_time = time;
+	}
+
+	/**
+	 * Get the time the next stroke starts at
+	 *
+	 * @return time, in milliseconds
+	 */
+	public long getTime() {
+		return m_time;
+	}
+
+	/**
+	 * Draw a primitive in a single stroke, with a random orientation and
+	 * random proportions
+	 *
+	 * @param primitive
+	 *            primitive to draw
+	 * @param cx
+	 *            x coordinate of the center of the primitive
+	 * @param cy
+	 *            y coordinate of the center of the primitive
+	 * @param size
+	 *            approximate extent of the primitive, in pixels
+	 * @return stroke
+	 */
+	public Stroke stroke(Primitive primitive, double cx, double cy, double size) {
+		return shape(primitive, cx, cy, size, false).getStrokes().get(0);
+	}
+
+	/**
+	 * Draw a primitive, labeled with its name
+	 *
+	 * @param primitive
+	 *            primitive to draw
+	 * @param cx
+	 *            x coordinate of the center of the primitive
+	 * @param cy
+	 *            y coordinate of the center of the primitive
+	 * @param size
+	 *            approximate extent of the primitive, in pixels
+	 * @param multiStroke
+	 *            true to draw rectangles and arrows with several strokes;
+	 *            other primitives are always drawn with one
+	 * @return shape holding the strokes in the order they were drawn
+	 */
+	public Shape shape(Primitive primitive, double cx, double cy, double size,
+			boolean multiStroke) {
+		double rotation;
+		if (primitive == Primitive.RECTANGLE)
+			rotation = (m_random.nextDouble() - 0.5) * 0.3;
+		else
+			rotation = m_random.nextDouble() * 2.0 * Math.PI;
+		double cos = Math.cos(rotation);
+		double sin = Math.sin(rotation);
+
+		Shape shape = new Shape();
+		shape.setLabel(primitive.name());
+		for (List<double[]> path : paths(primitive, size, multiStroke)) {
+			List<double[]> placed = new ArrayList<double[]>(path.size());
+			for (double[] p : path)
+				placed.add(new double[] { cx + cos * p[0] - sin * p[1],
+						cy + sin * p[0] + cos * p[1] });
+			shape.add(trace(placed));
+		}
+		return shape;
+	}
+
+	/**
+	 * Draw shapes of random primitives, laid out on a grid
+	 *
+	 * @param numShapes
+	 *            number of shapes
+	 * @param size
+	 *            approximate extent of each shape, in pixels
+	 * @return shapes in the order they were drawn
+	 */
+	public List<Shape> shapes(int numShapes, double size) {
+		Primitive[] primitives = Primitive.values();
+		int columns = (int) Math.ceil(Math.sqrt(numShapes));
+		double cell = 1.5 * size;
+		List<Shape> shapes = new ArrayList<Shape>(numShapes);
+		for (int i = 0; i < numShapes; i++) {
+			Primitive primitive = primitives[m_random.nextInt(primitives.length)];
+			boolean multiStroke = m_random.nextDouble() < m_multiStrokeProbability;
+			shapes.add(shape(primitive, (i % columns + 0.5) * cell,
+					(i / columns + 0.5) * cell,
+					size * (0.8 + 0.4 * m_random.nextDouble()), multiStroke));
+		}
+		return shapes;
+	}
+
+	/**
+	 * Draw a sketch of random primitives, laid out on a grid
+	 *
+	 * @param numShapes
+	 *            number of shapes
+	 * @param size
+	 *            approximate extent of each shape, in pixels
+	 * @return sketch holding the strokes in the order they were drawn
+	 */
+	public Sketch sketch(int numShapes, double size) {
+		return toSketch(shapes(numShapes, size));
+	}
+
+	/**
+	 * Write words of random letters, left to right in lines that wrap at the
+	 * given width
+	 *
+	 * @param numWords
+	 *            number of words
+	 * @param height
+	 *            height of a letter, in pixels
+	 * @param width
+	 *            width of a line, in pixels
+	 * @return one shape per word, labeled with the word, holding one shape
+	 *         per letter, labeled with the letter
+	 */
+	public List<Shape> handwriting(int numWords, double height, double width) {
+		List<Shape> words = new ArrayList<Shape>(numWords);
+		double x = 0.0;
+		double y = height;
+		for (int w = 0; w < numWords; w++) {
+			int length = 2 + m_random.nextInt(6);
+			double wordWidth = length * 0.9 * height;
+			if (x > 0.0 && x + wordWidth > width) {
+				x = 0.0;
+				y += 1.8 * height;
+			}
+			Shape word = new Shape();
+			StringBuilder label = new StringBuilder();
+			for (int c = 0; c < length; c++) {
+				char letter = GLYPH_LETTERS.charAt(m_random
+						.nextInt(GLYPH_LETTERS.length()));
+				double scale = height * (0.9 + 0.2 * m_random.nextDouble());
+				word.add(letter(letter, x, y + (height - scale), scale));
+				label.append(letter);
+				x += scale * (0.7 + 0.15 * m_random.nextDouble());
+			}
+			word.setLabel(label.toString());
+			words.add(word);
+			x += height * (0.6 + 0.4 * m_random.nextDouble());
+			m_time += 2 * m_penUpTime;
+		}
+		return words;
+	}
+
+	/**
+	 * Write one letter
+	 *
+	 * @param letter
+	 *            one of the letters in {@link #GLYPH_LETTERS}
+	 * @param x
+	 *            x coordinate of the left of the letter
+	 * @param y
+	 *            y coordinate of the top of the letter
+	 * @param height
+	 *            height of the letter, in pixels
+	 * @return shape labeled with the letter, holding one stroke per pen
+	 *         stroke of the letter
+	 */
+	public Shape letter(char letter, double x, double y, double height) {
+		double[][][] glyph = GLYPHS.get(letter);
+		if (glyph == null)
+			throw new IllegalArgumentException("No glyph for " + letter);
+		double slant = 0.1 + 0.15 * m_random.nextDouble();
+		double width = 0.7 * height;
+		Shape shape = new Shape();
+		shape.setLabel(String.valueOf(letter));
+		for (double[][] vertices : glyph) {
+			List<double[]> path = new ArrayList<double[]>();
+			for (double[] v : vertices)
+				lineTo(path, x + (v[0] + slant * (1.0 - v[1])) * width, y
+						+ v[1] * height);
+			shape.add(trace(path));
+		}
+		return shape;
+	}
+
+	/**
+	 * Put the strokes of shapes into a sketch, in the order they were drawn
+	 *
+	 * @param shapes
+	 *            shapes, possibly holding other shapes
+	 * @return sketch holding only the strokes
+	 */
+	public static Sketch toSketch(List<Shape> shapes) {
+		Sketch sketch = new Sketch();
+		for (Shape shape : shapes)
+			for (Stroke stroke : shape.getRecursiveStrokes())
+				sketch.add(stroke);
+		return sketch;
+	}
+
+	/**
+	 * Build the paths of the strokes of a primitive, centered on the origin
+	 *
+	 * @param primitive
+	 *            primitive to draw
+	 * @param size
+	 *            approximate extent of the primitive, in pixels
+	 * @param multiStroke
+	 *            true to split rectangles and arrows into several strokes
+	 * @return one path per stroke
+	 */
+	private List<List<double[]>> paths(Primitive primitive, double size,
+			boolean multiStroke) {
+		List<List<double[]>> paths = new ArrayList<List<double[]>>();
+		List<double[]> path = new ArrayList<double[]>();
+		paths.add(path);
+		double r = size / 2.0;
+		int dir = m_random.nextBoolean() ? 1 : -1;
+		switch (primitive) {
+		case LINE:
+			lineTo(path, -r, 0.0);
+			lineTo(path, r, 0.0);
+			break;
+		case ARC:
+			arc(path, 0.0, 0.0, r, r, m_random.nextDouble() * 2.0 * Math.PI,
+					dir * (Math.PI / 3.0 + m_random.nextDouble() * Math.PI));
+			break;
+		case CIRCLE:
+			r *= 0.9 + 0.2 * m_random.nextDouble();
+			arc(path, 0.0, 0.0, r, r, m_random.nextDouble() * 2.0 * Math.PI,
+					dir * 2.0 * Math.PI * (1.0 + overtrace()));
+			break;
+		case ELLIPSE:
+			arc(path, 0.0, 0.0, r, r * (0.35 + 0.35 * m_random.nextDouble()),
+					m_random.nextDouble() * 2.0 * Math.PI, dir * 2.0 * Math.PI
+							* (1.0 + overtrace()));
+			break;
+		case SPIRAL: {
+			double turns = 2.5 + 1.5 * m_random.nextDouble();
+			double sweep = turns * 2.0 * Math.PI;
+			double start = m_random.nextDouble() * 2.0 * Math.PI;
+			for (double a = 0.0; a <= sweep; a += 0.05) {
+				double radius = r - 0.9 * r * a / sweep;
+				lineTo(path, radius * Math.cos(start + dir * a), radius
+						* Math.sin(start + dir * a));
+			}
+			break;
+		}
+		case HELIX: {
+			double loops = 3.0 + 3.0 * m_random.nextDouble();
+			double sweep = loops * 2.0 * Math.PI;
+			double advance = size / sweep;
+			double radius = 0.4 * size / loops;
+			for (double a = 0.0; a <= sweep; a += 0.05)
+				lineTo(path, -r + advance * a + radius * Math.sin(a), dir
+						* radius * -Math.cos(a));
+			break;
+		}
+		case WAVE: {
+			double periods = 2.0 + 2.0 * m_random.nextDouble();
+			double amplitude = size * (0.08 + 0.08 * m_random.nextDouble());
+			for (double x = 0.0; x <= size; x += 2.0)
+				lineTo(path, x - r, dir * amplitude
+						* Math.sin(2.0 * Math.PI * periods * x / size));
+			break;
+		}
+		case POLYLINE: {
+			int segments = 3 + m_random.nextInt(4);
+			double heading = 0.0;
+			double x = -r;
+			double y = 0.0;
+			lineTo(path, x, y);
+			for (int i = 0; i < segments; i++) {
+				double length = size / segments
+						* (0.7 + 0.6 * m_random.nextDouble());
+				x += Math.cos(heading) * length;
+				y += Math.sin(heading) * length;
+				lineTo(path, x, y);
+				heading += (m_random.nextBoolean() ? 1 : -1)
+						* Math.toRadians(40.0 + 110.0 * m_random.nextDouble());
+			}
+			break;
+		}
+		case RECTANGLE: {
+			double h = r * (0.5 + 0.5 * m_random.nextDouble());
+			double[][] corners = { { -r, -h }, { r, -h }, { r, h }, { -r, h } };
+			if (dir < 0) {
+				double[] swap = corners[1];
+				corners[1] = corners[3];
+				corners[3] = swap;
+			}
+			// sides in each stroke when drawn with several
+			int[] breaks = { 4 };
+			if (multiStroke) {
+				int[][] options = { { 2, 4 }, { 2, 3, 4 }, { 1, 2, 3, 4 } };
+				breaks = options[m_random.nextInt(options.length)];
+			}
+			lineTo(path, corners[0][0], corners[0][1]);
+			int b = 0;
+			for (int side = 1; side <= 4; side++) {
+				lineTo(path, corners[side % 4][0], corners[side % 4][1]);
+				if (side == breaks[b] && side < 4) {
+					b++;
+					path = new ArrayList<double[]>();
+					paths.add(path);
+					lineTo(path, corners[side % 4][0], corners[side % 4][1]);
+				}
+			}
+			// carry on around the corners past the start; people close
+			// rectangles with a much shorter overlap than ellipses
+			double extra = multiStroke ? 0.0 : overtrace() * (r + h);
+			for (int side = 1; extra > 0.0; side++) {
+				double[] from = corners[(side - 1) % 4];
+				double[] to = corners[side % 4];
+				double length = Math.hypot(to[0] - from[0], to[1] - from[1]);
+				double t = Math.min(1.0, extra / length);
+				lineTo(path, from[0] + t * (to[0] - from[0]), from[1] + t
+						* (to[1] - from[1]));
+				extra -= length;
+			}
+			break;
+		}
+		case ARROW: {
+			double head = size * (0.15 + 0.1 * m_random.nextDouble());
+			double angle = Math.toRadians(25.0 + 10.0 * m_random.nextDouble());
+			double bx = r - head * Math.cos(angle);
+			double by = head * Math.sin(angle);
+			lineTo(path, -r, 0.0);
+			lineTo(path, r, 0.0);
+			// one stroke goes down one barb and back before the other
+			if (multiStroke) {
+				path = new ArrayList<double[]>();
+				paths.add(path);
+			}
+			lineTo(path, bx, -by);
+			lineTo(path, r, 0.0);
+			lineTo(path, bx, by);
+			break;
+		}
+		}
+		return paths;
+	}
+
+	/**
+	 * Get a random amount to overtrace a closed shape by
+	 *
+	 * @return fraction of the shape to draw again
+	 */
+	private double overtrace() {
+		return m_overtrace * (0.5 + m_random.nextDouble());
+	}
+
+	/**
+	 * Add an elliptical arc to a path
+	 *
+	 * @param path
+	 *            path to add to
+	 * @param cx
+	 *            x coordinate of the center
+	 * @param cy
+	 *            y coordinate of the center
+	 * @param rx
+	 *            radius along the x axis
+	 * @param ry
+	 *            radius along the y axis
+	 * @param start
+	 *            angle the arc starts at
+	 * @param sweep
+	 *            angle the arc sweeps through; negative to go clockwise
+	 */
+	private static void arc(List<double[]> path, double cx, double cy,
+			double rx, double ry, double start, double sweep) {
+		int steps = (int) Math.ceil(Math.abs(sweep) * Math.max(rx, ry) / 4.0) + 1;
+		for (int i = 0; i <= steps; i++) {
+			double a = start + sweep * i / steps;
+			lineTo(path, cx + rx * Math.cos(a), cy + ry * Math.sin(a));
+		}
+	}
+
+	/**
+	 * Extend a path with a straight line, adding vertices at most
+	 * {@link #STEP} apart
+	 *
+	 * @param path
+	 *            path to extend
+	 * @param x
+	 *            x coordinate of the end of the line
+	 * @param y
+	 *            y coordinate of the end of the line
+	 */
+	private static void lineTo(List<double[]> path, double x, double y) {
+		if (!path.isEmpty()) {
+			double[] last = path.get(path.size() - 1);
+			int steps = (int) Math.ceil(Math.hypot(x - last[0], y - last[1])
+					/ STEP);
+			for (int i = 1; i < steps; i++)
+				path.add(new double[] { last[0] + (x - last[0]) * i / steps,
+						last[1] + (y - last[1]) * i / steps });
+		}
+		path.add(new double[] { x, y });
+	}
+
+	/**
+	 * Trace a path with the pen, sampling points at a fixed interval, and
+	 * advance the clock past the end of the stroke
+	 *
+	 * @param path
+	 *            vertices to trace through, at most {@link #STEP} apart
+	 * @return stroke
+	 */
+	private Stroke trace(List<double[]> path) {
+		int n = path.size();
+		double[] s = new double[n];
+		for (int i = 1; i < n; i++)
+			s[i] = s[i - 1]
+					+ Math.hypot(path.get(i)[0] - path.get(i - 1)[0],
+							path.get(i)[1] - path.get(i - 1)[1]);
+		double total = s[n - 1];
+
+		// pen speed at each vertex, from the curvature over a few vertices
+		// and the distance from either end
+		int w = 3;
+		double[] speed = new double[n];
+		for (int i = 0; i < n; i++) {
+			double[] a = path.get(Math.max(0, i - w));
+			double[] p = path.get(i);
+			double[] b = path.get(Math.min(n - 1, i + w));
+			double v = 1.0;
+			double la = Math.hypot(p[0] - a[0], p[1] - a[1]);
+			double lb = Math.hypot(b[0] - p[0], b[1] - p[1]);
+			if (la > 0.0 && lb > 0.0) {
+				double turn = Math.abs(Math.atan2((p[0] - a[0]) * (b[1] - p[1])
+						- (p[1] - a[1]) * (b[0] - p[0]), (p[0] - a[0])
+						* (b[0] - p[0]) + (p[1] - a[1]) * (b[1] - p[1])));
+				double curvature = 2.0 * turn / (la + lb);
+				if (curvature > 0.0)
+					v = Math.min(1.0, Math.cbrt(1.0 / (FULL_SPEED_RADIUS * curvature)));
+			}
+			v *= Math.min(1.0, Math.sqrt(Math.min(s[i], total - s[i]) / RAMP));
+			speed[i] = m_speed * Math.max(MIN_SPEED, v);
+		}
+
+		double[] t = new double[n];
+		for (int i = 1; i < n; i++)
+			t[i] = t[i - 1] + (s[i] - s[i - 1]) * 2.0
+					/ (speed[i - 1] + speed[i]);
+		double duration = t[n - 1];
+
+		Stroke stroke = new Stroke();
+		int j = 1;
+		for (long time = 0L;; time += m_sampleInterval) {
+			boolean last = time >= duration;
+			double[] p;
+			if (last || n == 1)
+				p = path.get(n - 1);
+			else {
+				while (t[j] < time)
+					j++;
+				double span = t[j] - t[j - 1];
+				double f = span == 0.0 ? 0.0 : (time - t[j - 1]) / span;
+				double[] a = path.get(j - 1);
+				double[] b = path.get(j);
+				p = new double[] { a[0] + f * (b[0] - a[0]),
+						a[1] + f * (b[1] - a[1]) };
+			}
+			stroke.addPoint(new Point(p[0] + m_jitter * m_random.nextGaussian(),
+					p[1] + m_jitter * m_random.nextGaussian(), m_time + time));
+			if (last) {
+				m_time += time;
+				break;
+			}
+		}
+		if (stroke.getNumPoints() == 1) {
+			double[] p = path.get(n - 1);
+			m_time += m_sampleInterval;
+			stroke.addPoint(new Point(p[0] + m_jitter * m_random.nextGaussian(),
+					p[1] + m_jitter * m_random.nextGaussian(), m_time));
+		}
+		m_time += m_penUpTime;
+		return stroke;
+	}
+
+	/**
+	 * Builds the vertices of an elliptical arc for a glyph
+	 *
+	 * @param cx
+	 *            x coordinate of the center
+	 * @param cy
+	 *            y coordinate of the center
+	 * @param rx
+	 *            radius along the x axis
+	 * @param ry
+	 *            radius along the y axis
+	 * @param start
+	 *            angle the arc starts at, in degrees
+	 * @param sweep
+	 *            angle the arc sweeps through, in degrees
+	 * @return vertices
+	 */
+	private static double[][] glyphArc(double cx, double cy, double rx,
+			double ry, double start, double sweep) {
+		int steps = 16;
+		double[][] vertices = new double[steps + 1][];
+		for (int i = 0; i <= steps; i++) {
+			double a = Math.toRadians(start + sweep * i / steps);
+			vertices[i] = new double[] { cx + rx * Math.cos(a),
+					cy + ry * Math.sin(a) };
+		}
+		return vertices;
+	}
+
+	/**
+	 * Join vertex lists end to end
+	 *
+	 * @param parts
+	 *            vertex lists
+	 * @return all the vertices, in order
+	 */
+	private static double[][] concat(double[][]... parts) {
+		List<double[]> all = new ArrayList<double[]>();
+		for (double[][] part : parts)
+			for (double[] v : part)
+				all.add(v);
+		return all.toArray(new double[all.size()][]);
+	}
+}
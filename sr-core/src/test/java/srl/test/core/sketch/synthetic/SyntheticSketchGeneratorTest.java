@@ -0,0 +1,67 @@
+package srl.test.core.sketch.synthetic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator.Primitive;
+
+public class SyntheticSketchGeneratorTest {
+
+	@Test
+	public void testSameSeedSameSketch() {
+		Sketch a = new SyntheticSketchGenerator(42L).sketch(20, 150.0);
+		Sketch b = new SyntheticSketchGenerator(42L).sketch(20, 150.0);
+		assertEquals(a.getStrokes().size(), b.getStrokes().size());
+		for (int i = 0; i < a.getStrokes().size(); i++) {
+			List<Point> pa = a.getStrokes().get(i).getPoints();
+			List<Point> pb = b.getStrokes().get(i).getPoints();
+			assertEquals(pa.size(), pb.size());
+			for (int j = 0; j < pa.size(); j++) {
+				assertEquals(pa.get(j).getX(), pb.get(j).getX(), 0.0);
+				assertEquals(pa.get(j).getY(), pb.get(j).getY(), 0.0);
+				assertEquals(pa.get(j).getTime(), pb.get(j).getTime());
+			}
+		}
+	}
+
+	@Test
+	public void testEveryPrimitive() {
+		SyntheticSketchGenerator generator = new SyntheticSketchGenerator(7L);
+		long time = -1L;
+		for (Primitive primitive : Primitive.values()) {
+			Stroke stroke = generator.stroke(primitive, 200.0, 200.0, 150.0);
+			assertTrue(primitive + " has too few points",
+					stroke.getNumPoints() > 10);
+			for (Point p : stroke.getPoints()) {
+				assertTrue(primitive + " timestamps do not increase",
+						p.getTime() > time);
+				time = p.getTime();
+				assertTrue(primitive + " is not near its center",
+						Math.abs(p.getX() - 200.0) < 150.0
+								&& Math.abs(p.getY() - 200.0) < 150.0);
+			}
+		}
+	}
+
+	@Test
+	public void testHandwriting() {
+		SyntheticSketchGenerator generator = new SyntheticSketchGenerator(3L);
+		List<Shape> words = generator.handwriting(30, 24.0, 600.0);
+		assertEquals(30, words.size());
+		for (Shape word : words) {
+			assertEquals(word.getInterpretation().label.length(), word.getShapes().size());
+			for (Shape letter : word.getShapes())
+				for (Stroke stroke : letter.getStrokes())
+					for (Point p : stroke.getPoints())
+						assertTrue(p.getX() < 700.0);
+		}
+	}
+}
@@ -0,0 +1,527 @@
+/**
+ * CompiledMLP.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.patternrec.classifiers.core;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.functions.neural.LinearUnit;
+import weka.classifiers.functions.neural.NeuralConnection;
+import weka.classifiers.functions.neural.NeuralMethod;
+import weka.classifiers.functions.neural.NeuralNode;
+import weka.classifiers.functions.neural.SigmoidUnit;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+/**
+ * A trained WEKA {@link MultilayerPerceptron} flattened into plain arrays.
+ * WEKA evaluates a network by copying and filtering the instance, then
+ * walking a graph of node objects that cache their values; this class keeps
+ * only the weights, the attribute normalization and the topology, and runs
+ * the same arithmetic, in the same order, over a {@code double[]} of feature
+ * values. The distributions it produces are identical to those of
+ * {@link MultilayerPerceptron#distributionForInstance(Instance)}.
+ * <p>
+ * Instances are immutable and can be shared between threads. The forward
+ * pass writes intermediate values into a caller supplied scratch buffer (see
+ * {@link #newScratch()}), so a recognizer that keeps its own buffers does
+ * not allocate per call.
+ * <p>
+ * Feature values are given in the order of the attributes of the data set
+ * the network was trained on; the value at the class index is ignored and
+ * {@link Double#NaN} is treated as a missing value. Networks trained on data
+ * with nominal (non-class) attributes are not supported.
+ */
+public class CompiledMLP {
+
+	/**
+	 * Number of attributes in the training data, including the class
+	 */
+	private final int m_numAttributes;
+
+	/**
+	 * Index of the class attribute
+	 */
+	private final int m_classIndex;
+
+	/**
+	 * Number of values in the output distribution
+	 */
+	private final int m_numOutputs;
+
+	/**
+	 * True if the class is numeric (regression)
+	 */
+	private final boolean m_numericClass;
+
+	/**
+	 * Attribute read by each input of the network
+	 */
+	private final int[] m_inputAttributes;
+
+	/**
+	 * Value subtracted from each input
+	 */
+	private final double[] m_inputBases;
+
+	/**
+	 * Value each input is divided by after subtracting the base (0 for none)
+	 */
+	private final double[] m_inputRanges;
+
+	/**
+	 * True for sigmoid nodes, false for linear nodes, in evaluation order
+	 */
+	private final boolean[] m_sigmoid;
+
+	/**
+	 * Bias weight of each node
+	 */
+	private final double[] m_bias;
+
+	/**
+	 * Offset of each node's first connection in {@link #m_from} and
+	 * {@link #m_weights}; has one extra entry marking the end of the last node
+	 */
+	private final int[] m_firstConnection;
+
+	/**
+	 * Scratch slot that each connection reads from. Slots [0, numInputs) hold
+	 * the inputs and slot numInputs + i holds the output of node i.
+	 */
+	private final int[] m_from;
+
+	/**
+	 * Weight of each connection
+	 */
+	private final double[] m_weights;
+
+	/**
+	 * Offset of each output's first connection in {@link #m_outputFrom}; has
+	 * one extra entry marking the end of the last output
+	 */
+	private final int[] m_firstOutputConnection;
+
+	/**
+	 * Scratch slot summed into each output
+	 */
+	private final int[] m_outputFrom;
+
+	/**
+	 * Scale and shift applied to a numeric class, or null if the class is not
+	 * normalized
+	 */
+	private final double[] m_classDenormalization;
+
+	/**
+	 * Distribution returned when the network cannot produce one (the output
+	 * of WEKA's fallback ZeroR model), or null if there is none
+	 */
+	private final double[] m_defaultDistribution;
+
+	/**
+	 * True if WEKA trained no network and always uses the default model
+	 */
+	private final boolean m_defaultOnly;
+
+	/**
+	 * Constructor; use {@link #compile(MultilayerPerceptron)}
+	 */
+	private CompiledMLP(int numAttributes, int classIndex, int numOutputs,
+			boolean numericClass, int[] inputAttributes, double[] inputBases,
+			double[] inputRanges, boolean[] sigmoid, double[] bias,
+			int[] firstConnection, int[] from, double[] weights,
+			int[] firstOutputConnection, int[] outputFrom,
+			double[] classDenormalization, double[] defaultDistribution,
+			boolean defaultOnly) {
+		m_numAttributes = numAttributes;
+		m_classIndex = classIndex;
+		m_numOutputs = numOutputs;
+		m_numericClass = numericClass;
+		m_inputAttributes = inputAttributes;
+		m_inputBases = inputBases;
+		m_inputRanges = inputRanges;
+		m_sigmoid = sigmoid;
+		m_bias = bias;
+		m_firstConnection = firstConnection;
+		m_from = from;
+		m_weights = weights;
+		m_firstOutputConnection = firstOutputConnection;
+		m_outputFrom = outputFrom;
+		m_classDenormalization = classDenormalization;
+		m_defaultDistribution = defaultDistribution;
+		m_defaultOnly = defaultOnly;
+	}
+
+	/**
+	 * Extract the weights, normalization and topology of a trained network.
+	 * The network itself is not modified and is not referenced afterwards.
+	 * 
+	 * @param mlp
+	 *            trained network
+	 * @return compiled network
+	 * @throws IllegalArgumentException
+	 *             if the network uses features that are not supported
+	 *             (nominal input attributes or custom node functions)
+	 */
+	public static CompiledMLP compile(MultilayerPerceptron mlp) {
+		if (mlp == null)
+			throw new IllegalArgumentException("network cannot be null");
+
+		Instances header = (Instances) get(mlp, "m_instances");
+		int numAttributes = header.numAttributes();
+		int classIndex = header.classIndex();
+		boolean numericClass = header.classAttribute().isNumeric();
+
+		double[] defaultDistribution = null;
+		Classifier zeroR = (Classifier) get(mlp, "m_ZeroR");
+		if (zeroR != null) {
+			try {
+				defaultDistribution = zeroR
+						.distributionForInstance(new Instance(numAttributes));
+			} catch (Exception e) {
+				throw new IllegalArgumentException(
+						"could not evaluate the default model", e);
+			}
+		}
+		if (((Boolean) get(mlp, "m_useDefaultModel")).booleanValue()) {
+			return new CompiledMLP(numAttributes, classIndex,
+					defaultDistribution.length, numericClass, new int[0],
+					new double[0], new double[0], new boolean[0],
+					new double[0], new int[] { 0 }, new int[0], new double[0],
+					new int[] { 0 }, new int[0], null, defaultDistribution, true);
+		}
+
+		if (((Boolean) get(mlp, "m_useNomToBin")).booleanValue()) {
+			Instances original = (Instances) get(Filter.class,
+					get(mlp, "m_nominalToBinaryFilter"), "m_InputFormat");
+			if (original == null || original.numAttributes() != numAttributes)
+				throw new IllegalArgumentException(
+						"networks with nominal input attributes are not supported");
+			for (int i = 0; i < numAttributes; i++)
+				if (i != classIndex && !original.attribute(i).isNumeric())
+					throw new IllegalArgumentException(
+							"networks with nominal input attributes are not supported");
+		}
+
+		boolean normalize = ((Boolean) get(mlp, "m_normalizeAttributes"))
+				.booleanValue();
+		double[] ranges = (double[]) get(mlp, "m_attributeRanges");
+		double[] bases = (double[]) get(mlp, "m_attributeBases");
+
+		// inputs
+		NeuralConnection[] inputEnds = (NeuralConnection[]) get(mlp,
+				"m_inputs");
+		Map<NeuralConnection, Integer> slots = new IdentityHashMap<NeuralConnection, Integer>();
+		int[] inputAttributes = new int[inputEnds.length];
+		double[] inputBases = new double[inputEnds.length];
+		double[] inputRanges = new double[inputEnds.length];
+		for (int i = 0; i < inputEnds.length; i++) {
+			int attribute = ((Integer) get(inputEnds[i], "m_link")).intValue();
+			inputAttributes[i] = attribute;
+			if (normalize) {
+				inputBases[i] = bases[attribute];
+				inputRanges[i] = ranges[attribute];
+			}
+			slots.put(inputEnds[i], i);
+		}
+
+		// hidden and output nodes, ordered so each node follows its inputs
+		NeuralConnection[] outputEnds = (NeuralConnection[]) get(mlp,
+				"m_outputs");
+		List<NeuralNode> nodes = new ArrayList<NeuralNode>();
+		for (NeuralConnection end : outputEnds)
+			for (int i = 0; i < end.getNumInputs(); i++)
+				order(end.getInputs()[i], slots, nodes, inputEnds.length);
+
+		boolean[] sigmoid = new boolean[nodes.size()];
+		double[] bias = new double[nodes.size()];
+		int[] firstConnection = new int[nodes.size() + 1];
+		int numConnections = 0;
+		for (NeuralNode node : nodes)
+			numConnections += node.getNumInputs();
+		int[] from = new int[numConnections];
+		double[] weights = new double[numConnections];
+		int c = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			NeuralNode node = nodes.get(n);
+			NeuralMethod method = node.getMethod();
+			if (method instanceof SigmoidUnit)
+				sigmoid[n] = true;
+			else if (!(method instanceof LinearUnit))
+				throw new IllegalArgumentException("unsupported node function: "
+						+ method.getClass().getName());
+			double[] nodeWeights = node.getWeights();
+			bias[n] = nodeWeights[0];
+			firstConnection[n] = c;
+			for (int i = 0; i < node.getNumInputs(); i++) {
+				from[c] = slots.get(node.getInputs()[i]).intValue();
+				weights[c] = nodeWeights[i + 1];
+				c++;
+			}
+		}
+		firstConnection[nodes.size()] = c;
+
+		// outputs
+		int[] firstOutputConnection = new int[outputEnds.length + 1];
+		int numOutputConnections = 0;
+		for (NeuralConnection end : outputEnds)
+			numOutputConnections += end.getNumInputs();
+		int[] outputFrom = new int[numOutputConnections];
+		c = 0;
+		for (int o = 0; o < outputEnds.length; o++) {
+			firstOutputConnection[o] = c;
+			for (int i = 0; i < outputEnds[o].getNumInputs(); i++)
+				outputFrom[c++] = slots.get(outputEnds[o].getInputs()[i])
+						.intValue();
+		}
+		firstOutputConnection[outputEnds.length] = c;
+
+		double[] classDenormalization = null;
+		if (((Boolean) get(mlp, "m_numeric")).booleanValue()
+				&& ((Boolean) get(mlp, "m_normalizeClass")).booleanValue())
+			classDenormalization = new double[] { ranges[classIndex],
+					bases[classIndex] };
+
+		return new CompiledMLP(numAttributes, classIndex, outputEnds.length,
+				numericClass, inputAttributes, inputBases, inputRanges,
+				sigmoid, bias, firstConnection, from, weights,
+				firstOutputConnection, outputFrom, classDenormalization,
+				defaultDistribution, false);
+	}
+
+	/**
+	 * Add a node, and every node it depends on, to the evaluation order
+	 * 
+	 * @param connection
+	 *            node to add
+	 * @param slots
+	 *            scratch slot of each input and node added so far
+	 * @param nodes
+	 *            evaluation order
+	 * @param numInputs
+	 *            number of inputs
+	 */
+	private static void order(NeuralConnection connection,
+			Map<NeuralConnection, Integer> slots, List<NeuralNode> nodes,
+			int numInputs) {
+		if (slots.containsKey(connection))
+			return;
+		if (!(connection instanceof NeuralNode))
+			throw new IllegalArgumentException("unsupported connection: "
+					+ connection.getClass().getName());
+		NeuralNode node = (NeuralNode) connection;
+		for (int i = 0; i < node.getNumInputs(); i++)
+			order(node.getInputs()[i], slots, nodes, numInputs);
+		slots.put(node, numInputs + nodes.size());
+		nodes.add(node);
+	}
+
+	/**
+	 * Read a private field of a WEKA object
+	 */
+	private static Object get(Object o, String field) {
+		Class<?> c = o.getClass();
+		while (c != null) {
+			try {
+				return get(c, o, field);
+			} catch (IllegalArgumentException e) {
+				c = c.getSuperclass();
+			}
+		}
+		throw new IllegalArgumentException("no field " + field + " in "
+				+ o.getClass().getName());
+	}
+
+	/**
+	 * Read a private field declared by the given class
+	 */
+	private static Object get(Class<?> c, Object o, String field) {
+		try {
+			Field f = c.getDeclaredField(field);
+			f.setAccessible(true);
+			return f.get(o);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException("no field " + field + " in "
+					+ c.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("cannot read field " + field
+					+ " of " + c.getName(), e);
+		}
+	}
+
+	/**
+	 * Create a scratch buffer for {@link #distribution(double[], double[],
+	 * double[])}. Buffers must not be shared between threads.
+	 * 
+	 * @return scratch buffer
+	 */
+	public double[] newScratch() {
+		return new double[m_inputAttributes.length + m_sigmoid.length];
+	}
+
+	/**
+	 * Get the number of values in the output distribution
+	 * 
+	 * @return number of outputs (number of classes for a nominal class)
+	 */
+	public int getNumOutputs() {
+		return m_numOutputs;
+	}
+
+	/**
+	 * Get the number of attributes the feature values are expected to have,
+	 * including the class
+	 * 
+	 * @return number of attributes
+	 */
+	public int getNumAttributes() {
+		return m_numAttributes;
+	}
+
+	/**
+	 * Get the index of the class attribute, whose feature value is ignored
+	 * 
+	 * @return class index
+	 */
+	public int getClassIndex() {
+		return m_classIndex;
+	}
+
+	/**
+	 * Compute the class distribution for a WEKA instance
+	 * 
+	 * @param instance
+	 *            instance with the attributes of the training data
+	 * @return class distribution
+	 */
+	public double[] distributionForInstance(Instance instance) {
+		return distribution(instance.toDoubleArray());
+	}
+
+	/**
+	 * Compute the class distribution for a set of feature values
+	 * 
+	 * @param values
+	 *            feature values, indexed by attribute
+	 * @return class distribution
+	 */
+	public double[] distribution(double[] values) {
+		return distribution(values, newScratch(), new double[m_numOutputs]);
+	}
+
+	/**
+	 * Compute the class distribution for a set of feature values without
+	 * allocating
+	 * 
+	 * @param values
+	 *            feature values, indexed by attribute
+	 * @param scratch
+	 *            buffer from {@link #newScratch()}
+	 * @param dist
+	 *            array of {@link #getNumOutputs()} values to write the
+	 *            distribution into
+	 * @return dist
+	 */
+	public double[] distribution(double[] values, double[] scratch,
+			double[] dist) {
+		if (m_defaultOnly) {
+			System.arraycopy(m_defaultDistribution, 0, dist, 0, m_numOutputs);
+			return dist;
+		}
+
+		// inputs (a missing value stays missing when normalized, and missing
+		// inputs read as 0)
+		int numInputs = m_inputAttributes.length;
+		for (int i = 0; i < numInputs; i++) {
+			double v = values[m_inputAttributes[i]];
+			if (Double.isNaN(v))
+				scratch[i] = 0;
+			else if (m_inputRanges[i] != 0)
+				scratch[i] = (v - m_inputBases[i]) / m_inputRanges[i];
+			else
+				scratch[i] = v - m_inputBases[i];
+		}
+
+		// nodes
+		for (int n = 0; n < m_sigmoid.length; n++) {
+			double value = m_bias[n];
+			for (int c = m_firstConnection[n]; c < m_firstConnection[n + 1]; c++)
+				value += scratch[m_from[c]] * m_weights[c];
+			if (m_sigmoid[n]) {
+				if (value < -45)
+					value = 0;
+				else if (value > 45)
+					value = 1;
+				else
+					value = 1 / (1 + Math.exp(-value));
+			}
+			scratch[numInputs + n] = value;
+		}
+
+		// outputs
+		for (int o = 0; o < m_numOutputs; o++) {
+			double value = 0;
+			for (int c = m_firstOutputConnection[o]; c < m_firstOutputConnection[o + 1]; c++)
+				value += scratch[m_outputFrom[c]];
+			if (m_classDenormalization != null)
+				value = value * m_classDenormalization[0]
+						+ m_classDenormalization[1];
+			dist[o] = value;
+		}
+		if (m_numericClass)
+			return dist;
+
+		double sum = 0;
+		for (int o = 0; o < m_numOutputs; o++)
+			sum += dist[o];
+		if (sum <= 0) {
+			System.arraycopy(m_defaultDistribution, 0, dist, 0, m_numOutputs);
+			return dist;
+		}
+		for (int o = 0; o < m_numOutputs; o++)
+			dist[o] /= sum;
+		return dist;
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ * ModelRegistry.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.patternrec.classifiers.core;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.classifiers.functions.MultilayerPerceptron;
+
+/**
+ * Process-wide store of neural network models. Each model is read and
+ * compiled once, the first time it is asked for, and the same
+ * {@link CompiledMLP} is handed to every recognizer after that. Compiled
+ * models are immutable, so sharing them between instances and threads is
+ * safe.
+ * <p>
+ * Models are identified by a location, built with
+ * {@link #classpath(Class, String)}, {@link #classpath(String)} or
+ * {@link #file(String)}. Servers can hide the cost of deserialization by
+ * calling {@link #preload(String...)} at startup, which loads models on a
+ * background thread; a recognizer that asks for a model still being loaded
+ * waits for it rather than loading a second copy.
+ */
+public class ModelRegistry {
+
+	/**
+	 * Prefix of locations that name a class path resource
+	 */
+	public static final String CLASSPATH_PREFIX = "classpath:";
+
+	/**
+	 * Prefix of locations that name a file
+	 */
+	public static final String FILE_PREFIX = "file:";
+
+	/**
+	 * Shared registry
+	 */
+	private static final ModelRegistry s_instance = new ModelRegistry();
+
+	/**
+	 * Loading or loaded models, by location
+	 */
+	private final ConcurrentMap<String, FutureTask<CompiledMLP>> m_models = new ConcurrentHashMap<String, FutureTask<CompiledMLP>>();
+
+	/**
+	 * Time it took to load each model, in milliseconds, by location
+	 */
+	private final Map<String, Long> m_loadTimes = Collections
+			.synchronizedMap(new LinkedHashMap<String, Long>());
+
+	/**
+	 * Thread used by {@link #preload(String...)}; created on first use
+	 */
+	private ExecutorService m_loader;
+
+	private static Logger log = LoggerFactory.getLogger(ModelRegistry.class);
+
+	/**
+	 * Get the process-wide registry
+	 * 
+	 * @return shared registry
+	 */
+	public static ModelRegistry getInstance() {
+		return s_instance;
+	}
+
+	/**
+	 * Build the location of a resource next to a class, as found by
+	 * {@link Class#getResourceAsStream(String)}
+	 * 
+	 * @param base
+	 *            class the resource name is relative to
+	 * @param name
+	 *            resource name
+	 * @return model location
+	 */
+	public static String classpath(Class<?> base, String name) {
+		if (name.startsWith("/"))
+			return classpath(name.substring(1));
+		String pkg = base.getName();
+		int dot = pkg.lastIndexOf('.');
+		if (dot < 0)
+			return classpath(name);
+		return classpath(pkg.substring(0, dot).replace('.', '/') + "/" + name);
+	}
+
+	/**
+	 * Build the location of a resource, as found by
+	 * {@link ClassLoader#getResourceAsStream(String)}
+	 * 
+	 * @param name
+	 *            absolute resource name
+	 * @return model location
+	 */
+	public static String classpath(String name) {
+		return CLASSPATH_PREFIX + name;
+	}
+
+	/**
+	 * Build the location of a model file
+	 * 
+	 * @param path
+	 *            path to the file
+	 * @return model location
+	 */
+	public static String file(String path) {
+		return FILE_PREFIX + path;
+	}
+
+	/**
+	 * Get a model, loading it if this is the first request for it. If another
+	 * thread is loading the model, this waits for it to finish.
+	 * 
+	 * @param location
+	 *            model location
+	 * @return shared compiled model
+	 * @throws IOException
+	 *             if the model cannot be read or compiled; the next request
+	 *             will try again
+	 */
+	public CompiledMLP get(String location) throws IOException {
+		FutureTask<CompiledMLP> task = task(location);
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + location, e);
+		} catch (ExecutionException e) {
+			m_models.remove(location, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException("Could not load " + location, cause);
+		}
+	}
+
+	/**
+	 * Start loading models on a background thread. Returns immediately;
+	 * failures are logged, and reported again by {@link #get(String)}.
+	 * 
+	 * @param locations
+	 *            locations of the models to load
+	 */
+	public void preload(String... locations) {
+		ExecutorService loader = loader();
+		for (String location : locations)
+			loader.execute(task(location));
+	}
+
+	/**
+	 * Determines if a model has finished loading
+	 * 
+	 * @param location
+	 *            model location
+	 * @return true if the model is loaded; else false
+	 */
+	public boolean isLoaded(String location) {
+		FutureTask<CompiledMLP> task = m_models.get(location);
+		return task != null && task.isDone();
+	}
+
+	/**
+	 * Get the time it took to load a model
+	 * 
+	 * @param location
+	 *            model location
+	 * @return load time in milliseconds, or -1 if the model has not been
+	 *         loaded
+	 */
+	public long getLoadTime(String location) {
+		Long time = m_loadTimes.get(location);
+		return time == null ? -1 : time.longValue();
+	}
+
+	/**
+	 * Get the time it took to load each model, in the order they finished
+	 * 
+	 * @return load times in milliseconds, by location
+	 */
+	public Map<String, Long> getLoadTimes() {
+		synchronized (m_loadTimes) {
+			return new LinkedHashMap<String, Long>(m_loadTimes);
+		}
+	}
+
+	/**
+	 * Forget every model, so the next request for each loads it again.
+	 * Recognizers keep the models they already have.
+	 */
+	public void clear() {
+		m_models.clear();
+		m_loadTimes.clear();
+	}
+
+	/**
+	 * Get the task that loads a model, creating it if needed
+	 * 
+	 * @param location
+	 *            model location
+	 * @return load task, which may not have run yet
+	 */
+	private FutureTask<CompiledMLP> task(final String location) {
+		FutureTask<CompiledMLP> task = m_models.get(location);
+		if (task == null) {
+			FutureTask<CompiledMLP> created = new FutureTask<CompiledMLP>(
+					new Callable<CompiledMLP>() {
+						@Override
+						public CompiledMLP call() throws Exception {
+							return load(location);
+						}
+					});
+			task = m_models.putIfAbsent(location, created);
+			if (task == null)
+				task = created;
+		}
+		return task;
+	}
+
+	/**
+	 * Read and compile a model
+	 * 
+	 * @param location
+	 *            model location
+	 * @return compiled model
+	 * @throws Exception
+	 *             if the model cannot be read or is not a supported network
+	 */
+	private CompiledMLP load(String location) throws Exception {
+		long start = System.nanoTime();
+		InputStream is = open(location);
+		CompiledMLP model;
+		try {
+			Object o = weka.core.SerializationHelper.read(is);
+			if (!(o instanceof MultilayerPerceptron))
+				throw new IOException(location + " is not a MultilayerPerceptron");
+			model = CompiledMLP.compile((MultilayerPerceptron) o);
+		} catch (Exception e) {
+			log.error("Error loading model " + location, e);
+			throw e;
+		} finally {
+			is.close();
+		}
+		long time = (System.nanoTime() - start) / 1000000;
+		m_loadTimes.put(location, time);
+		log.info("Loaded model " + location + " in " + time + " ms");
+		return model;
+	}
+
+	/**
+	 * Open the stream a model is read from
+	 * 
+	 * @param location
+	 *            model location
+	 * @return model stream
+	 * @throws IOException
+	 *             if the model cannot be found
+	 */
+	private InputStream open(String location) throws IOException {
+		if (location.startsWith(CLASSPATH_PREFIX)) {
+			String name = location.substring(CLASSPATH_PREFIX.length());
+			InputStream is = ModelRegistry.class.getClassLoader()
+					.getResourceAsStream(name);
+			if (is == null)
+				throw new IOException("Model not found on the class path: "
+						+ name);
+			return is;
+		}
+		if (location.startsWith(FILE_PREFIX))
+			return new FileInputStream(location.substring(FILE_PREFIX.length()));
+		throw new IOException("Unknown model location: " + location);
+	}
+
+	/**
+	 * Get the background loading thread, starting it if needed
+	 * 
+	 * @return loader
+	 */
+	private synchronized ExecutorService loader() {
+		if (m_loader == null) {
+			m_loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ModelRegistry loader");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return m_loader;
+	}
+}
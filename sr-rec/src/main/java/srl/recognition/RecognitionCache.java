@@ -0,0 +1,382 @@
+package srl.recognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.metrics.Metrics;
+
+/**
+ * A bounded, thread-safe cache of single stroke recognition results. Entries
+ * are keyed by the stroke's geometry (points quantized to a grid, plus their
+ * time offsets from the first point) and by a fingerprint of the recognizer
+ * configuration, so a stroke that is re-submitted under a new id, or a copy
+ * of a stroke, is still a hit. When the cache is full the least recently used
+ * entry is evicted.
+ * <p>
+ * Results are copied on the way in and on the way out, since callers are free
+ * to modify the confidences of the results they are handed. Shapes in a
+ * returned result refer to the stroke passed to {@link #get(Stroke, String)}
+ * rather than the stroke that was originally recognized.
+ * <p>
+ * One cache may be shared between several recognizers, as long as each uses
+ * a fingerprint that is unique to it (e.g. prefixed with the recognizer name).
+ */
+public class RecognitionCache {
+
+	/**
+	 * Default maximum number of entries
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1024;
+
+	/**
+	 * Default size of the grid that point coordinates are snapped to
+	 */
+	public static final double DEFAULT_QUANTUM = 0.01;
+
+	/**
+	 * {@link Metrics} counter of lookups that found an entry, over every
+	 * recognition cache
+	 */
+	public static final String HIT_METRIC = "cache.recognition.hit";
+
+	/**
+	 * {@link Metrics} counter of lookups that did not find an entry, over
+	 * every recognition cache
+	 */
+	public static final String MISS_METRIC = "cache.recognition.miss";
+
+	/**
+	 * Maximum number of entries
+	 */
+	private final int m_maxSize;
+
+	/**
+	 * Size of the grid that point coordinates are snapped to
+	 */
+	private final double m_quantum;
+
+	/**
+	 * Entries in access order, least recently used first
+	 */
+	private final LinkedHashMap<Key, Entry> m_entries;
+
+	/**
+	 * Number of lookups that found an entry
+	 */
+	private long m_numHits = 0;
+
+	/**
+	 * Number of lookups that did not find an entry
+	 */
+	private long m_numMisses = 0;
+
+	/**
+	 * Number of entries evicted to stay within the maximum size
+	 */
+	private long m_numEvictions = 0;
+
+	/**
+	 * Create a cache with {@link #DEFAULT_MAX_SIZE} entries and the
+	 * {@link #DEFAULT_QUANTUM} grid size
+	 */
+	public RecognitionCache() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Create a cache with the {@link #DEFAULT_QUANTUM} grid size
+	 *
+	 * @param maxSize
+	 *            maximum number of entries
+	 */
+	public RecognitionCache(int maxSize) {
+		this(maxSize, DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Create a cache
+	 *
+	 * @param maxSize
+	 *            maximum number of entries
+	 * @param quantum
+	 *            size of the grid point coordinates are snapped to before
+	 *            strokes are compared
+	 */
+	public RecognitionCache(int maxSize, double quantum) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("cache size must be positive: "
+					+ maxSize);
+		if (!(quantum > 0))
+			throw new IllegalArgumentException("quantum must be positive: "
+					+ quantum);
+		m_maxSize = maxSize;
+		m_quantum = quantum;
+		m_entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > m_maxSize) {
+					m_numEvictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Look up the result for a stroke
+	 *
+	 * @param stroke
+	 *            stroke to look up
+	 * @param fingerprint
+	 *            fingerprint of the recognizer and its configuration
+	 * @return a copy of the cached result, bound to the given stroke, or null
+	 *         if there is none
+	 */
+	public IRecognitionResult get(Stroke stroke, String fingerprint) {
+		if (stroke == null)
+			return null;
+		Key key = new Key(stroke, fingerprint, m_quantum);
+		Entry entry;
+		synchronized (this) {
+			entry = m_entries.get(key);
+			if (entry == null) {
+				m_numMisses++;
+				Metrics.increment(MISS_METRIC);
+				return null;
+			}
+			m_numHits++;
+		}
+		Metrics.increment(HIT_METRIC);
+		return copy(entry.result, entry.stroke, stroke);
+	}
+
+	/**
+	 * Store the result for a stroke
+	 *
+	 * @param stroke
+	 *            stroke that was recognized
+	 * @param fingerprint
+	 *            fingerprint of the recognizer and its configuration
+	 * @param result
+	 *            recognition result; a copy is stored
+	 */
+	public void put(Stroke stroke, String fingerprint, IRecognitionResult result) {
+		if (stroke == null || result == null)
+			return;
+		Key key = new Key(stroke, fingerprint, m_quantum);
+		Entry entry = new Entry(stroke, copy(result, stroke, stroke));
+		synchronized (this) {
+			m_entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Remove all entries. Statistics are kept.
+	 */
+	public synchronized void clear() {
+		m_entries.clear();
+	}
+
+	/**
+	 * Get the number of entries
+	 *
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return m_entries.size();
+	}
+
+	/**
+	 * Get the maximum number of entries
+	 *
+	 * @return maximum number of entries
+	 */
+	public int getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * Get the number of lookups that found an entry
+	 *
+	 * @return number of hits
+	 */
+	public synchronized long getNumHits() {
+		return m_numHits;
+	}
+
+	/**
+	 * Get the number of lookups that did not find an entry
+	 *
+	 * @return number of misses
+	 */
+	public synchronized long getNumMisses() {
+		return m_numMisses;
+	}
+
+	/**
+	 * Get the number of entries evicted to stay within the maximum size
+	 *
+	 * @return number of evictions
+	 */
+	public synchronized long getNumEvictions() {
+		return m_numEvictions;
+	}
+
+	/**
+	 * Get the fraction of lookups that found an entry
+	 *
+	 * @return hit rate in [0, 1]; 0 if there have been no lookups
+	 */
+	public synchronized double getHitRate() {
+		long lookups = m_numHits + m_numMisses;
+		return lookups == 0 ? 0.0 : (double) m_numHits / lookups;
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counts
+	 */
+	public synchronized void resetStatistics() {
+		m_numHits = 0;
+		m_numMisses = 0;
+		m_numEvictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RecognitionCache[size=" + m_entries.size() + "/" + m_maxSize
+				+ ", hits=" + m_numHits + ", misses=" + m_numMisses
+				+ ", evictions=" + m_numEvictions + "]";
+	}
+
+	/**
+	 * Deep copy a result, replacing references to one stroke with another
+	 *
+	 * @param result
+	 *            result to copy
+	 * @param from
+	 *            stroke the result was computed for
+	 * @param to
+	 *            stroke the copy should refer to
+	 * @return copied result
+	 */
+	private static IRecognitionResult copy(IRecognitionResult result,
+			Stroke from, Stroke to) {
+		RecognitionResult copy = new RecognitionResult();
+		List<Shape> nBest = new ArrayList<Shape>(result.getNumInterpretations());
+		for (Shape s : result.getNBestList())
+			nBest.add(copy(s, from, to));
+		copy.setNBestList(nBest);
+		return copy;
+	}
+
+	/**
+	 * Deep copy a shape, keeping its beautification and replacing references
+	 * to one stroke with another
+	 *
+	 * @param shape
+	 *            shape to copy
+	 * @param from
+	 *            stroke to replace
+	 * @param to
+	 *            replacement stroke
+	 * @return copied shape
+	 */
+	private static Shape copy(Shape shape, Stroke from, Stroke to) {
+		Shape copy = shape.clone();
+		copyBeautification(shape, copy, from, to);
+		return copy;
+	}
+
+	/**
+	 * Shape.clone() drops the transient beautification and copies strokes by
+	 * value; walk the original and the clone side by side to restore the
+	 * former and rebind the latter
+	 */
+	private static void copyBeautification(Shape orig, Shape copy, Stroke from,
+			Stroke to) {
+		copy.setBeautificationType(orig.getBeautificationType());
+		copy.setBeautifiedShape(orig.getBeautifiedShape());
+		copy.setBeautifiedImage(orig.getBeautifiedImage(),
+				orig.getBeautifiedImageBoundingBox());
+		for (int i = 0; i < copy.size(); i++) {
+			SComponent c = copy.get(i);
+			if (c instanceof Shape) {
+				copyBeautification((Shape) orig.get(i), (Shape) c, from, to);
+			} else if (c instanceof Stroke && c.equals(from)) {
+				copy.remove(i);
+				copy.add(i, to);
+			}
+		}
+	}
+
+	/**
+	 * Cached result along with the stroke it was computed for
+	 */
+	private static class Entry {
+
+		private final Stroke stroke;
+
+		private final IRecognitionResult result;
+
+		private Entry(Stroke stroke, IRecognitionResult result) {
+			this.stroke = stroke;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Quantized stroke geometry and recognizer fingerprint
+	 */
+	private static final class Key {
+
+		/**
+		 * Quantized x, y and time offset of each point, interleaved
+		 */
+		private final long[] m_geometry;
+
+		private final String m_fingerprint;
+
+		private final int m_hash;
+
+		private Key(Stroke stroke, String fingerprint, double quantum) {
+			List<Point> points = stroke.getPoints();
+			m_geometry = new long[points.size() * 3];
+			long t0 = points.isEmpty() ? 0 : points.get(0).getTime();
+			int j = 0;
+			for (Point p : points) {
+				m_geometry[j++] = Math.round(p.getX() / quantum);
+				m_geometry[j++] = Math.round(p.getY() / quantum);
+				m_geometry[j++] = p.getTime() - t0;
+			}
+			m_fingerprint = fingerprint == null ? "" : fingerprint;
+			m_hash = 31 * Arrays.hashCode(m_geometry) + m_fingerprint.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return m_hash == other.m_hash
+					&& m_fingerprint.equals(other.m_fingerprint)
+					&& Arrays.equals(m_geometry, other.m_geometry);
+		}
+	}
+}
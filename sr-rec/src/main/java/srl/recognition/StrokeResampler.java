@@ -0,0 +1,636 @@
+package srl.recognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import srl.core.sketch.Interpretation;
+import srl.core.sketch.Point;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.recognizer.IRecognizer;
+
+/**
+ * Reduces a stroke to a point budget before recognition. The cost of Paleo,
+ * the segmenters and the CALI features grows with the number of points, often
+ * faster than linearly, and high rate digitizers (e.g. 240 Hz pens) produce
+ * thousands of nearly coincident points. Strokes that are within the budget
+ * are returned unchanged.
+ * <p>
+ * Longer strokes are decimated rather than interpolated: the resampled stroke
+ * is made of a subset of the original points, so point times and identities
+ * are kept. Duplicate points are dropped first. The endpoints and corners
+ * (points whose turning angle, measured over a window of about two output
+ * spacings, is a local maximum above {@link #getCornerAngle()}) are always
+ * kept. The rest of the budget is spread along each stretch between pinned
+ * points in proportion to its arc length. Since the thresholds in
+ * {@link srl.recognition.paleo.Thresholds} are expressed in screen units
+ * rather than point counts, they do not need to be retrained.
+ * <p>
+ * The resampler keeps statistics on the strokes it has seen, including how
+ * far the original points lie from the resampled polyline, and
+ * {@link #compare(IRecognizer, Collection)} reports how resampling affects
+ * the results of a recognizer on a set of strokes.
+ */
+public class StrokeResampler {
+
+	/**
+	 * Default maximum number of points
+	 */
+	public static final int DEFAULT_POINT_BUDGET = 256;
+
+	/**
+	 * Default turning angle above which a point is kept as a corner
+	 */
+	public static final double DEFAULT_CORNER_ANGLE = Math.PI / 6.0;
+
+	/**
+	 * Maximum number of points in a resampled stroke
+	 */
+	private final int m_pointBudget;
+
+	/**
+	 * Turning angle above which a point is kept as a corner
+	 */
+	private final double m_cornerAngle;
+
+	/**
+	 * Number of strokes passed to {@link #resample(Stroke)}
+	 */
+	private long m_numStrokes = 0;
+
+	/**
+	 * Number of strokes that were over budget
+	 */
+	private long m_numResampled = 0;
+
+	/**
+	 * Number of points in the strokes that were over budget
+	 */
+	private long m_numPointsIn = 0;
+
+	/**
+	 * Number of points those strokes were reduced to
+	 */
+	private long m_numPointsOut = 0;
+
+	/**
+	 * Sum of the deviations of the resampled strokes
+	 */
+	private double m_totalDeviation = 0;
+
+	/**
+	 * Largest deviation of a resampled stroke
+	 */
+	private double m_maxDeviation = 0;
+
+	/**
+	 * Create a resampler with the {@link #DEFAULT_POINT_BUDGET} and
+	 * {@link #DEFAULT_CORNER_ANGLE}
+	 */
+	public StrokeResampler() {
+		this(DEFAULT_POINT_BUDGET, DEFAULT_CORNER_ANGLE);
+	}
+
+	/**
+	 * Create a resampler with the {@link #DEFAULT_CORNER_ANGLE}
+	 *
+	 * @param pointBudget
+	 *            maximum number of points in a resampled stroke
+	 */
+	public StrokeResampler(int pointBudget) {
+		this(pointBudget, DEFAULT_CORNER_ANGLE);
+	}
+
+	/**
+	 * Create a resampler
+	 *
+	 * @param pointBudget
+	 *            maximum number of points in a resampled stroke
+	 * @param cornerAngle
+	 *            turning angle (in radians) above which a point is kept as a
+	 *            corner
+	 */
+	public StrokeResampler(int pointBudget, double cornerAngle) {
+		if (pointBudget < 4)
+			throw new IllegalArgumentException(
+					"point budget must be at least 4: " + pointBudget);
+		if (!(cornerAngle > 0 && cornerAngle < Math.PI))
+			throw new IllegalArgumentException(
+					"corner angle must be in (0, pi): " + cornerAngle);
+		m_pointBudget = pointBudget;
+		m_cornerAngle = cornerAngle;
+	}
+
+	/**
+	 * Get the maximum number of points in a resampled stroke
+	 *
+	 * @return point budget
+	 */
+	public int getPointBudget() {
+		return m_pointBudget;
+	}
+
+	/**
+	 * Get the turning angle above which a point is kept as a corner
+	 *
+	 * @return corner angle, in radians
+	 */
+	public double getCornerAngle() {
+		return m_cornerAngle;
+	}
+
+	/**
+	 * Get a key that tells results computed with this resampler apart from
+	 * others, e.g. in a {@link RecognitionCache} fingerprint
+	 *
+	 * @return resampler fingerprint
+	 */
+	public String getFingerprint() {
+		return "resample:" + m_pointBudget + ":" + m_cornerAngle;
+	}
+
+	/**
+	 * Reduce a stroke to the point budget
+	 *
+	 * @param stroke
+	 *            stroke to resample
+	 * @return the stroke itself if it is within the budget; else a new stroke
+	 *         with the same id, made of a subset of its points
+	 */
+	public Stroke resample(Stroke stroke) {
+		List<Point> points = stroke.getPoints();
+		if (points.size() <= m_pointBudget) {
+			synchronized (this) {
+				m_numStrokes++;
+			}
+			return stroke;
+		}
+		int[] keep = selectPoints(points);
+		List<Point> kept = new ArrayList<Point>(keep.length);
+		for (int i : keep)
+			kept.add(points.get(i));
+		Stroke resampled = new Stroke(kept);
+		resampled.setId(stroke.getId());
+		resampled.setParent(stroke.getParent());
+		double deviation = deviation(points, kept);
+		synchronized (this) {
+			m_numStrokes++;
+			m_numResampled++;
+			m_numPointsIn += points.size();
+			m_numPointsOut += kept.size();
+			m_totalDeviation += deviation;
+			m_maxDeviation = Math.max(m_maxDeviation, deviation);
+		}
+		return resampled;
+	}
+
+	/**
+	 * Choose the points to keep
+	 *
+	 * @param points
+	 *            points of a stroke that is over the budget
+	 * @return increasing indices of the points to keep, at most the budget
+	 */
+	private int[] selectPoints(List<Point> points) {
+
+		// drop consecutive duplicates, always keeping the last point
+		int[] idx = new int[points.size()];
+		int m = 0;
+		for (int i = 0; i < points.size(); i++) {
+			Point p = points.get(i);
+			if (m > 0) {
+				Point q = points.get(idx[m - 1]);
+				if (p.getX() == q.getX() && p.getY() == q.getY()) {
+					if (i == points.size() - 1 && m > 1)
+						idx[m - 1] = i;
+					continue;
+				}
+			}
+			idx[m++] = i;
+		}
+		if (m <= m_pointBudget)
+			return Arrays.copyOf(idx, m);
+
+		double[] x = new double[m];
+		double[] y = new double[m];
+		double[] s = new double[m];
+		for (int k = 0; k < m; k++) {
+			Point p = points.get(idx[k]);
+			x[k] = p.getX();
+			y[k] = p.getY();
+			if (k > 0)
+				s[k] = s[k - 1] + Math.hypot(x[k] - x[k - 1], y[k] - y[k - 1]);
+		}
+		double length = s[m - 1];
+
+		// turning angle of each point over a window of about two output
+		// spacings on either side
+		double window = 2.0 * length / m_pointBudget;
+		double[] angle = new double[m];
+		int back = 0, fwd = 0;
+		for (int k = 1; k < m - 1; k++) {
+			while (back + 1 < k && s[k] - s[back + 1] >= window)
+				back++;
+			if (fwd <= k)
+				fwd = k + 1;
+			while (fwd < m - 1 && s[fwd] - s[k] < window)
+				fwd++;
+			double ax = x[k] - x[back], ay = y[k] - y[back];
+			double bx = x[fwd] - x[k], by = y[fwd] - y[k];
+			angle[k] = Math.abs(Math.atan2(ax * by - ay * bx, ax * bx + ay
+					* by));
+		}
+
+		// corners: strongest turning points first, no two within a window
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int k = 1; k < m - 1; k++)
+			if (angle[k] >= m_cornerAngle && angle[k] >= angle[k - 1]
+					&& angle[k] >= angle[k + 1])
+				candidates.add(k);
+		Integer[] byAngle = candidates.toArray(new Integer[candidates.size()]);
+		final double[] a = angle;
+		Arrays.sort(byAngle, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return Double.compare(a[j], a[i]);
+			}
+		});
+		TreeMap<Double, Integer> pins = new TreeMap<Double, Integer>();
+		pins.put(s[0], 0);
+		pins.put(length, m - 1);
+		int maxCorners = m_pointBudget / 4;
+		for (int k : byAngle) {
+			if (pins.size() - 2 >= maxCorners)
+				break;
+			// endpoints do not suppress corners, so hooks are kept
+			Map.Entry<Double, Integer> lo = pins.lowerEntry(s[k]);
+			Map.Entry<Double, Integer> hi = pins.higherEntry(s[k]);
+			if (lo.getValue() != 0 && s[k] - lo.getKey() < window)
+				continue;
+			if (hi.getValue() != m - 1 && hi.getKey() - s[k] < window)
+				continue;
+			pins.put(s[k], k);
+		}
+
+		// spread the rest of the budget along the stretches between pins,
+		// taking the point closest to each evenly spaced arc length
+		int spare = m_pointBudget - pins.size();
+		int[] out = new int[m_pointBudget];
+		int n = 0;
+		int prev = -1;
+		for (Map.Entry<Double, Integer> e : pins.entrySet()) {
+			int pin = e.getValue();
+			if (prev >= 0) {
+				double gap = s[pin] - s[prev];
+				int count = length > 0 ? (int) (spare * gap / length) : 0;
+				int last = prev;
+				int k = prev + 1;
+				for (int j = 1; j <= count; j++) {
+					double target = s[prev] + gap * j / (count + 1);
+					while (k + 1 < pin && s[k + 1] <= target)
+						k++;
+					int best = k;
+					if (k + 1 < pin && s[k + 1] - target < target - s[k])
+						best = k + 1;
+					if (best > last && best < pin) {
+						out[n++] = idx[best];
+						last = best;
+					}
+				}
+			}
+			out[n++] = idx[pin];
+			prev = pin;
+		}
+		return Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Get the largest distance from a point of the original stroke to the
+	 * polyline through the points of the resampled stroke
+	 *
+	 * @param original
+	 *            original stroke
+	 * @param resampled
+	 *            stroke returned by {@link #resample(Stroke)}
+	 * @return deviation, in the units of the point coordinates
+	 */
+	public static double deviation(Stroke original, Stroke resampled) {
+		return deviation(original.getPoints(), resampled.getPoints());
+	}
+
+	/**
+	 * Get the largest distance from an original point to the polyline
+	 * through a subsequence of the points
+	 */
+	private static double deviation(List<Point> original, List<Point> kept) {
+		if (kept.isEmpty())
+			return 0;
+		double max = 0;
+		int j = 0;
+		for (Point p : original) {
+			if (j + 1 < kept.size() && p == kept.get(j + 1)) {
+				j++;
+				continue;
+			}
+			Point a = kept.get(j);
+			Point b = kept.get(Math.min(j + 1, kept.size() - 1));
+			max = Math.max(max, segmentDistance(p, a, b));
+		}
+		return max;
+	}
+
+	/**
+	 * Distance from p to the segment ab
+	 */
+	private static double segmentDistance(Point p, Point a, Point b) {
+		double dx = b.getX() - a.getX(), dy = b.getY() - a.getY();
+		double len2 = dx * dx + dy * dy;
+		double t = 0;
+		if (len2 > 0)
+			t = Math.max(0, Math.min(1, ((p.getX() - a.getX()) * dx + (p
+					.getY() - a.getY())
+					* dy)
+					/ len2));
+		return Math.hypot(p.getX() - a.getX() - t * dx, p.getY() - a.getY()
+				- t * dy);
+	}
+
+	/**
+	 * Replace references to a resampled stroke in a result with the original
+	 * stroke, so that callers get back shapes made of the strokes they
+	 * submitted
+	 *
+	 * @param result
+	 *            result computed for the resampled stroke
+	 * @param resampled
+	 *            stroke returned by {@link #resample(Stroke)}
+	 * @param original
+	 *            stroke that was resampled
+	 * @return the result, modified in place
+	 */
+	public static IRecognitionResult restore(IRecognitionResult result,
+			Stroke resampled, Stroke original) {
+		if (result == null || resampled == original)
+			return result;
+		for (Shape s : result.getNBestList())
+			restore(s, resampled, original);
+		return result;
+	}
+
+	/**
+	 * Replace references to a resampled stroke in a shape and its subshapes
+	 */
+	private static void restore(Shape shape, Stroke resampled, Stroke original) {
+		for (int i = 0; i < shape.size(); i++) {
+			SComponent c = shape.get(i);
+			if (c == resampled) {
+				shape.remove(i);
+				shape.add(i, original);
+			} else if (c instanceof Shape) {
+				restore((Shape) c, resampled, original);
+			}
+		}
+	}
+
+	/**
+	 * Recognize each stroke as is and after resampling, and report how often
+	 * the results agree (and, for strokes that carry an interpretation, how
+	 * often each is correct). Strokes within the budget count as agreeing
+	 * without being recognized twice. Statistics are updated as for
+	 * {@link #resample(Stroke)}.
+	 *
+	 * @param recognizer
+	 *            recognizer to evaluate
+	 * @param strokes
+	 *            strokes to recognize
+	 * @return comparison of the results
+	 */
+	public Comparison compare(
+			IRecognizer<Stroke, ? extends IRecognitionResult> recognizer,
+			Collection<Stroke> strokes) {
+		Comparison c = new Comparison();
+		for (Stroke stroke : strokes) {
+			c.m_numStrokes++;
+			Interpretation truth = stroke.getInterpretation();
+			String label = truth == null ? null : truth.label;
+
+			long start = System.nanoTime();
+			recognizer.submitForRecognition(stroke);
+			String original = bestLabel(recognizer.recognize());
+			long originalNanos = System.nanoTime() - start;
+			c.m_originalNanos += originalNanos;
+
+			start = System.nanoTime();
+			Stroke resampled = resample(stroke);
+			String after = original;
+			if (resampled != stroke) {
+				c.m_numResampled++;
+				recognizer.submitForRecognition(resampled);
+				after = bestLabel(recognizer.recognize());
+				c.m_resampledNanos += System.nanoTime() - start;
+			} else {
+				c.m_resampledNanos += originalNanos;
+			}
+
+			if (original == null ? after == null : original.equals(after))
+				c.m_numAgreed++;
+			if (label != null) {
+				c.m_numLabeled++;
+				if (label.equals(original))
+					c.m_numOriginalCorrect++;
+				if (label.equals(after))
+					c.m_numResampledCorrect++;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Get the label of the best shape in a result
+	 */
+	private static String bestLabel(IRecognitionResult result) {
+		if (result == null || result.getBestShape() == null
+				|| result.getBestShape().getInterpretation() == null)
+			return null;
+		return result.getBestShape().getInterpretation().label;
+	}
+
+	/**
+	 * Get the number of strokes passed to {@link #resample(Stroke)}
+	 *
+	 * @return number of strokes
+	 */
+	public synchronized long getNumStrokes() {
+		return m_numStrokes;
+	}
+
+	/**
+	 * Get the number of strokes that were over budget and resampled
+	 *
+	 * @return number of resampled strokes
+	 */
+	public synchronized long getNumResampled() {
+		return m_numResampled;
+	}
+
+	/**
+	 * Get the fraction of points kept in the strokes that were resampled
+	 *
+	 * @return points out / points in; 1 if no stroke was resampled
+	 */
+	public synchronized double getReduction() {
+		return m_numPointsIn == 0 ? 1.0 : (double) m_numPointsOut
+				/ m_numPointsIn;
+	}
+
+	/**
+	 * Get the mean {@link #deviation(Stroke, Stroke) deviation} of the
+	 * resampled strokes
+	 *
+	 * @return mean deviation; 0 if no stroke was resampled
+	 */
+	public synchronized double getMeanDeviation() {
+		return m_numResampled == 0 ? 0.0 : m_totalDeviation / m_numResampled;
+	}
+
+	/**
+	 * Get the largest {@link #deviation(Stroke, Stroke) deviation} of a
+	 * resampled stroke
+	 *
+	 * @return largest deviation
+	 */
+	public synchronized double getMaxDeviation() {
+		return m_maxDeviation;
+	}
+
+	/**
+	 * Reset the statistics
+	 */
+	public synchronized void resetStatistics() {
+		m_numStrokes = 0;
+		m_numResampled = 0;
+		m_numPointsIn = 0;
+		m_numPointsOut = 0;
+		m_totalDeviation = 0;
+		m_maxDeviation = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "StrokeResampler[budget=" + m_pointBudget + ", strokes="
+				+ m_numStrokes + ", resampled=" + m_numResampled
+				+ ", reduction=" + String.format("%.3f", getReduction())
+				+ ", meanDeviation="
+				+ String.format("%.3f", getMeanDeviation())
+				+ ", maxDeviation=" + String.format("%.3f", m_maxDeviation)
+				+ "]";
+	}
+
+	/**
+	 * Results of {@link StrokeResampler#compare(IRecognizer, Collection)}
+	 */
+	public static class Comparison {
+
+		private int m_numStrokes = 0;
+
+		private int m_numResampled = 0;
+
+		private int m_numAgreed = 0;
+
+		private int m_numLabeled = 0;
+
+		private int m_numOriginalCorrect = 0;
+
+		private int m_numResampledCorrect = 0;
+
+		private long m_originalNanos = 0;
+
+		private long m_resampledNanos = 0;
+
+		/**
+		 * Get the number of strokes compared
+		 *
+		 * @return number of strokes
+		 */
+		public int getNumStrokes() {
+			return m_numStrokes;
+		}
+
+		/**
+		 * Get the number of strokes that were over budget
+		 *
+		 * @return number of resampled strokes
+		 */
+		public int getNumResampled() {
+			return m_numResampled;
+		}
+
+		/**
+		 * Get the fraction of strokes whose best label did not change
+		 *
+		 * @return agreement in [0, 1]; 1 if there were no strokes
+		 */
+		public double getAgreement() {
+			return m_numStrokes == 0 ? 1.0 : (double) m_numAgreed
+					/ m_numStrokes;
+		}
+
+		/**
+		 * Get the accuracy on the labeled strokes without resampling
+		 *
+		 * @return accuracy in [0, 1]; 0 if no stroke was labeled
+		 */
+		public double getOriginalAccuracy() {
+			return m_numLabeled == 0 ? 0.0 : (double) m_numOriginalCorrect
+					/ m_numLabeled;
+		}
+
+		/**
+		 * Get the accuracy on the labeled strokes with resampling
+		 *
+		 * @return accuracy in [0, 1]; 0 if no stroke was labeled
+		 */
+		public double getResampledAccuracy() {
+			return m_numLabeled == 0 ? 0.0 : (double) m_numResampledCorrect
+					/ m_numLabeled;
+		}
+
+		/**
+		 * Get the total recognition time without resampling
+		 *
+		 * @return time in milliseconds
+		 */
+		public double getOriginalMillis() {
+			return m_originalNanos / 1e6;
+		}
+
+		/**
+		 * Get the total time to resample and recognize
+		 *
+		 * @return time in milliseconds
+		 */
+		public double getResampledMillis() {
+			return m_resampledNanos / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return "Comparison[strokes=" + m_numStrokes + ", resampled="
+					+ m_numResampled + ", agreement="
+					+ String.format("%.3f", getAgreement())
+					+ (m_numLabeled == 0 ? "" : ", accuracy="
+							+ String.format("%.3f", getOriginalAccuracy())
+							+ " -> "
+							+ String.format("%.3f", getResampledAccuracy()))
+					+ ", ms=" + String.format("%.1f", getOriginalMillis())
+					+ " -> " + String.format("%.1f", getResampledMillis())
+					+ "]";
+		}
+	}
+}
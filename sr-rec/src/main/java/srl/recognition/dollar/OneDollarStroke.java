@@ -43,6 +43,7 @@ import srl.core.sketch.Point;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionCache;
 import srl.recognition.RecognitionResult;
 
 
@@ -352,6 +353,30 @@ public class OneDollarStroke extends Stroke {
 	 *            The templates to match this stroke against
 	 */
 	public void recognize(List<OneDollarStroke> templates) {
+		recognize(templates, null);
+	}
+
+	/**
+	 * Recognize THIS one dollar stroke using the given list of templates,
+	 * looking the result up in (and adding it to) the given cache. Results are
+	 * keyed by the normalized points of this stroke and the ids of the
+	 * templates.
+	 * 
+	 * @param templates
+	 *            The templates to match this stroke against
+	 * @param cache
+	 *            Cache of previous results, or null to always recognize
+	 */
+	public void recognize(List<OneDollarStroke> templates,
+			RecognitionCache cache) {
+		String fingerprint = null;
+		if (cache != null) {
+			fingerprint = getFingerprint(templates);
+			m_recognitionResults = cache.get(this, fingerprint);
+			if (m_recognitionResults != null)
+				return;
+		}
+
 		m_recognitionResults = new RecognitionResult();
 		
 		for (OneDollarStroke T : templates) {
@@ -370,6 +395,24 @@ public class OneDollarStroke extends Stroke {
 		}
 		
 		m_recognitionResults.trimToNInterpretations(S_NUM_NBEST_RESULTS);
+
+		if (cache != null)
+			cache.put(this, fingerprint, m_recognitionResults);
+	}
+
+	/**
+	 * Get the key used to tell results against one set of templates apart
+	 * from others in a shared {@link RecognitionCache}
+	 * 
+	 * @param templates
+	 *            The templates strokes are matched against
+	 * @return fingerprint of the template set
+	 */
+	public static String getFingerprint(List<OneDollarStroke> templates) {
+		int hash = 1;
+		for (OneDollarStroke t : templates)
+			hash = 31 * hash + t.getId().hashCode();
+		return "$1:" + templates.size() + ":" + hash;
 	}
 	public static final double SQUARE_SIZE_FACTOR = Math.sqrt(2 * SQUARE_SIZE * SQUARE_SIZE);
 	
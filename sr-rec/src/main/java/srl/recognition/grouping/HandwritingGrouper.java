@@ -2,6 +2,7 @@ package srl.recognition.grouping;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +10,7 @@ import org.slf4j.LoggerFactory;
 import srl.core.sketch.BoundingBox;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
+import srl.core.util.lists.DisjointSet;
 import srl.recognition.handwriting.HandwritingRecognizer;
 
 
@@ -57,96 +59,149 @@ public class HandwritingGrouper {
 
 	}
 
+	/**
+	 * Group strokes into words. Two groups are merged when the grown box of
+	 * a stroke in one intersects the grown box of a stroke in the other, and
+	 * merging repeats until no two groups touch. How much a stroke's box
+	 * grows depends on the width of its group, which is taken to be the
+	 * width of the group's first stroke (see {@link #groupingBox(Stroke,
+	 * double)}).
+	 * <p>
+	 * Groups are kept in a {@link DisjointSet} along with the set of groups
+	 * each one touches, and the stroke boxes are kept in a grid, so a merge
+	 * only retests the strokes whose boxes it changed against the strokes
+	 * near them. Merges happen in the same order as when every pair of
+	 * groups is rescanned after each merge: the earliest group that touches
+	 * another absorbs the earliest group it touches.
+	 * 
+	 * @param strokes
+	 *            strokes to group
+	 * @return groups, ordered by their first stroke
+	 */
 	public List<Shape> group(List<Stroke> strokes) {
 
+		int n = strokes.size();
+		DisjointSet groups = new DisjointSet(n);
+		StrokeBoxIndex index = new StrokeBoxIndex(n);
+
+		// indexed by the first stroke of each group
+		List<List<Integer>> members = new ArrayList<List<Integer>>(n);
+		List<TreeSet<Integer>> touches = new ArrayList<TreeSet<Integer>>(n);
+		double[] widths = new double[n];
+
+		// groups that touch at least one other group
+		TreeSet<Integer> touching = new TreeSet<Integer>();
+
+		for (int i = 0; i < n; i++) {
+			List<Integer> group = new ArrayList<Integer>();
+			group.add(i);
+			members.add(group);
+			touches.add(new TreeSet<Integer>());
+			widths[i] = strokes.get(i).getBoundingBox().getWidth();
+			index.put(i, groupingBox(strokes.get(i), widths[i]));
+		}
+		for (int i = 0; i < n; i++) {
+			addTouches(i, i, index, groups, touches, touching);
+		}
+
+		while (!touching.isEmpty()) {
+			int g = touching.first();
+			int k = touches.get(g).first();
+			log.debug("Bouding Boxes Intersect");
+
+			// k is absorbed into g
+			groups.union(g, k);
+			for (Integer h : touches.get(k)) {
+				touches.get(h).remove(k);
+				if (touches.get(h).isEmpty())
+					touching.remove(h);
+			}
+			touches.set(k, null);
+			touching.remove(k);
+
+			// k's strokes now grow by g's width; retest them
+			List<Integer> moved = members.get(k);
+			members.get(g).addAll(moved);
+			members.set(k, null);
+			for (int s : moved) {
+				index.put(s, groupingBox(strokes.get(s), widths[g]));
+			}
+			for (int s : moved) {
+				addTouches(s, g, index, groups, touches, touching);
+			}
+			if (touches.get(g).isEmpty())
+				touching.remove(g);
+		}
+
 		ArrayList<Shape> shapegroups = new ArrayList<Shape>();
-		for (int i = 0; i < strokes.size(); i++) {
+		for (int i = 0; i < n; i++) {
+			if (members.get(i) == null)
+				continue;
 			Shape textShape = new Shape();
-			textShape.add(strokes.get(i));
+			for (int s : members.get(i)) {
+				textShape.add(strokes.get(s));
+			}
 			shapegroups.add(textShape);
 		}
 
-		boolean merged = true;
-		while (merged) {
-			merged = false;
-			ArrayList<Shape> newshapes = new ArrayList<Shape>();
-			newshapes.addAll(shapegroups);
-
-			for (int i = 0; i < newshapes.size(); i++) {
-				Shape shape1 = newshapes.get(i);
-
-				for (int k = 0; k < newshapes.size(); k++) {
-					Shape shape2 = newshapes.get(k);
-
-					if (shape1 == shape2) {
-						continue;
-					}
-					// This right here, is the whole grouping function
-					// if (shape1.getBoundingBox().growWidth(.5).growHeight(.1)
-					// .intersects(
-					// shape2.getBoundingBox().growWidth(.5)
-					// .growHeight(.1))) {
-
-					for (int j = 0; j < shape1.getStrokes().size(); j++) {
-						Stroke stroke1 = shape1.getStrokes().get(j);
-
-						if (merged)
-							break;
-
-						double ratioHW1 = (stroke1.getBoundingBox().getHeight() + 1)
-								/ (shape1.getBoundingBox().getWidth() + 1);
-						double growW1 = 1.00;
-						growW1 = Math.max(growW1, growW1 * ratioHW1);
-						double growH1 = .05;
-						growH1 = Math.max(growH1, growH1 / ratioHW1);
-						BoundingBox bb1 = stroke1.getBoundingBox().increment();
-						if (bb1.getWidth() > 3 * bb1.getHeight())
-							bb1 = bb1.growHeight(growH1 * 2);
-						else
-							bb1 = bb1.growHeight(growH1);
-						bb1 = bb1.growWidth(growW1);
-
-						for (int l = 0; l < shape2.getStrokes().size(); l++) {
-							Stroke stroke2 = shape2.getStrokes().get(l);
-
-							double ratioHW2 = (stroke2.getBoundingBox()
-									.getHeight() + 1)
-									/ (shape2.getBoundingBox().getWidth() + 1);
-							double growW2 = 1.00;
-							growW2 = Math.max(growW2, growW2 * ratioHW2);
-							double growH2 = .05;
-							growH2 = Math.max(growH2, growH2 / ratioHW2);
-							BoundingBox bb2 = stroke2.getBoundingBox()
-									.increment();
-							if (bb2.getWidth() > 3 * bb2.getHeight())
-								bb2 = bb2.growHeight(growH2 * 2);
-							else
-								bb2 = bb2.growHeight(growH2);
-							bb2 = bb2.growWidth(growW2);
-							if (bb1.intersects(bb2)) {
-								log.debug("Bouding Boxes Intersect");
-								merged = true;
-							}
-						}
-					}
-					if (merged) {
-						for (int l = 0; l < shape2.getStrokes().size(); l++) {
-							Stroke stroke = shape2.getStrokes().get(l);
-							shape1.add(stroke);
-						}
-						shapegroups.remove(shape2);
-						merged = true;
-						break;
-					}
+		return shapegroups;
+	}
 
-				}
-				if (merged) {
-					break;
-				}
-			}
+	/**
+	 * Record the groups that a stroke's box touches
+	 * 
+	 * @param stroke
+	 *            number of the stroke
+	 * @param group
+	 *            group the stroke is in
+	 * @param index
+	 *            boxes of the strokes
+	 * @param groups
+	 *            group of each stroke
+	 * @param touches
+	 *            groups each group touches
+	 * @param touching
+	 *            groups that touch another group
+	 */
+	private static void addTouches(int stroke, int group, StrokeBoxIndex index,
+			DisjointSet groups, List<TreeSet<Integer>> touches,
+			TreeSet<Integer> touching) {
+		BoundingBox box = index.getBox(stroke);
+		for (int other : index.near(box)) {
+			int h = groups.find(other);
+			if (h == group || touches.get(group).contains(h)
+					|| !box.intersects(index.getBox(other)))
+				continue;
+			touches.get(group).add(h);
+			touches.get(h).add(group);
+			touching.add(group);
+			touching.add(h);
 		}
+	}
 
-		return shapegroups;
+	/**
+	 * Get the box a stroke must intersect another stroke's box with to be
+	 * grouped with it
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @param groupWidth
+	 *            width of the stroke's group
+	 * @return grown bounding box of the stroke
+	 */
+	private static BoundingBox groupingBox(Stroke stroke, double groupWidth) {
+		double ratioHW = (stroke.getBoundingBox().getHeight() + 1)
+				/ (groupWidth + 1);
+		double growW = 1.00;
+		growW = Math.max(growW, growW * ratioHW);
+		double growH = .05;
+		growH = Math.max(growH, growH / ratioHW);
+		BoundingBox bb = stroke.getBoundingBox().increment();
+		if (bb.getWidth() > 3 * bb.getHeight())
+			bb = bb.growHeight(growH * 2);
+		else
+			bb = bb.growHeight(growH);
+		return bb.growWidth(growW);
 	}
 
 	public List<Shape> groupIntersection(List<Stroke> strokes) {
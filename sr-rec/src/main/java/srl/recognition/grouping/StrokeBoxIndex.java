@@ -0,0 +1,255 @@
+/**
+ * StrokeBoxIndex.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.grouping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.BoundingBox;
+
+/**
+ * Grid of the boxes of numbered strokes, used to find the strokes whose boxes
+ * may intersect a given box without testing every stroke.
+ * <p>
+ * Each box is registered in every cell it covers, so two boxes that intersect
+ * share a cell. Boxes that cover too many cells are kept in a list that every
+ * query checks instead.
+ */
+class StrokeBoxIndex {
+
+	/**
+	 * Width and height of a grid cell; about the size of a handwritten
+	 * character
+	 */
+	private static final double CELL_SIZE = 32.0;
+
+	/**
+	 * Boxes that cover more cells than this are not put in the grid
+	 */
+	private static final int MAX_CELLS = 64;
+
+	/**
+	 * Box of each stroke, or null if the stroke is not in the index
+	 */
+	private final BoundingBox[] m_boxes;
+
+	/**
+	 * Whether each stroke is in {@link #m_large} rather than the grid
+	 */
+	private final boolean[] m_isLarge;
+
+	/**
+	 * Last query that found each stroke, to report it once per query
+	 */
+	private final int[] m_lastQuery;
+
+	/**
+	 * Strokes with a box in each cell
+	 */
+	private final Map<Long, List<Integer>> m_cells = new HashMap<Long, List<Integer>>();
+
+	/**
+	 * Strokes whose box covers too many cells
+	 */
+	private final List<Integer> m_large = new ArrayList<Integer>();
+
+	/**
+	 * Number of queries made
+	 */
+	private int m_queries = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param numStrokes
+	 *            number of strokes; strokes are numbered from 0
+	 */
+	public StrokeBoxIndex(int numStrokes) {
+		m_boxes = new BoundingBox[numStrokes];
+		m_isLarge = new boolean[numStrokes];
+		m_lastQuery = new int[numStrokes];
+	}
+
+	/**
+	 * Get the box of a stroke
+	 * 
+	 * @param stroke
+	 *            number of the stroke
+	 * @return box, or null if the stroke is not in the index
+	 */
+	public BoundingBox getBox(int stroke) {
+		return m_boxes[stroke];
+	}
+
+	/**
+	 * Put a stroke in the index, replacing its previous box if it has one
+	 * 
+	 * @param stroke
+	 *            number of the stroke
+	 * @param box
+	 *            box of the stroke
+	 */
+	public void put(int stroke, BoundingBox box) {
+		remove(stroke);
+		m_boxes[stroke] = box;
+		m_isLarge[stroke] = place(stroke, box, true);
+	}
+
+	/**
+	 * Take a stroke out of the index
+	 * 
+	 * @param stroke
+	 *            number of the stroke
+	 */
+	public void remove(int stroke) {
+		BoundingBox box = m_boxes[stroke];
+		if (box == null)
+			return;
+		if (m_isLarge[stroke])
+			m_large.remove(Integer.valueOf(stroke));
+		else
+			place(stroke, box, false);
+		m_boxes[stroke] = null;
+	}
+
+	/**
+	 * Find the strokes whose boxes may intersect a box
+	 * 
+	 * @param box
+	 *            box
+	 * @return numbers of the candidate strokes, in no particular order
+	 */
+	public List<Integer> near(BoundingBox box) {
+		int id = ++m_queries;
+		List<Integer> found = new ArrayList<Integer>();
+		int x0 = cell(box.getMinX());
+		int x1 = cell(box.getMaxX());
+		int y0 = cell(box.getMinY());
+		int y1 = cell(box.getMaxY());
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+			// cheaper to look at every stroke than every cell
+			for (int s = 0; s < m_boxes.length; s++) {
+				if (m_boxes[s] != null)
+					found.add(s);
+			}
+			return found;
+		}
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				List<Integer> cell = m_cells.get(key(x, y));
+				if (cell == null)
+					continue;
+				for (Integer s : cell) {
+					if (m_lastQuery[s] != id) {
+						m_lastQuery[s] = id;
+						found.add(s);
+					}
+				}
+			}
+		}
+		found.addAll(m_large);
+		return found;
+	}
+
+	/**
+	 * Add a stroke to, or remove it from, every cell its box covers
+	 * 
+	 * @param stroke
+	 *            number of the stroke
+	 * @param box
+	 *            box of the stroke
+	 * @param add
+	 *            true to add; false to remove
+	 * @return true if the box covers too many cells and the stroke was added
+	 *         to the large list instead
+	 */
+	private boolean place(int stroke, BoundingBox box, boolean add) {
+		int x0 = cell(box.getMinX());
+		int x1 = cell(box.getMaxX());
+		int y0 = cell(box.getMinY());
+		int y1 = cell(box.getMaxY());
+		if (add && (long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+			m_large.add(stroke);
+			return true;
+		}
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				Long key = key(x, y);
+				List<Integer> cell = m_cells.get(key);
+				if (add) {
+					if (cell == null) {
+						cell = new ArrayList<Integer>(2);
+						m_cells.put(key, cell);
+					}
+					cell.add(stroke);
+				} else if (cell != null) {
+					cell.remove(Integer.valueOf(stroke));
+					if (cell.isEmpty())
+						m_cells.remove(key);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the cell a coordinate falls in
+	 * 
+	 * @param v
+	 *            coordinate
+	 * @return cell index
+	 */
+	private static int cell(double v) {
+		return (int) Math.floor(v / CELL_SIZE);
+	}
+
+	/**
+	 * Get the key of a cell
+	 * 
+	 * @param x
+	 *            column of the cell
+	 * @param y
+	 *            row of the cell
+	 * @return key
+	 */
+	private static Long key(int x, int y) {
+		return Long.valueOf(((long) x << 32) | (y & 0xffffffffL));
+	}
+}
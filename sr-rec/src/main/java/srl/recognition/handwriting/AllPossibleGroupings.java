@@ -55,9 +55,9 @@ import srl.core.sketch.Stroke;
  */
 public class AllPossibleGroupings {
 
-	private static int MAXNUMBEROFLETTERS = 7;
+	static final int MAXNUMBEROFLETTERS = 7;
 
-	private static int MAXNUMBEROFSTROKESPERLETTER = 5;
+	static final int MAXNUMBEROFSTROKESPERLETTER = 5;
 
 	/**
 	 * @param args
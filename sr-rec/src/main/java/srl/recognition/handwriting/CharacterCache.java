@@ -0,0 +1,259 @@
+/**
+ * CharacterCache.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.handwriting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+
+/**
+ * Cache of the characters recognized from groups of strokes. The handwriting
+ * recognizers are asked about the same groups again and again, both while
+ * searching the segmentations of one piece of text and each time a stroke is
+ * added and the text is recognized again, and each time the group would
+ * otherwise be featurized and run through the classifier from scratch.
+ * <p>
+ * A group is identified by the ids of its strokes, in order, plus a hash of
+ * their points, so a stroke whose points change is not confused with what it
+ * was before. Results are further keyed by the model (compared by identity)
+ * and a tag naming the features the model was given. Entries that contain a
+ * stroke are dropped when the stroke is removed with {@link #remove(Stroke)}.
+ */
+public class CharacterCache {
+
+	/**
+	 * Recognized characters
+	 */
+	private final Map<Key, Character> m_characters = new HashMap<Key, Character>();
+
+	/**
+	 * Keys of the entries that contain each stroke
+	 */
+	private final Map<UUID, Set<Key>> m_keysByStroke = new HashMap<UUID, Set<Key>>();
+
+	/**
+	 * Number of lookups that found an entry
+	 */
+	private long m_numHits = 0;
+
+	/**
+	 * Number of lookups that did not find an entry
+	 */
+	private long m_numMisses = 0;
+
+	/**
+	 * Get the character recognized from a group of strokes
+	 * 
+	 * @param strokes
+	 *            strokes in the group, in order
+	 * @param model
+	 *            model the character was recognized with
+	 * @param features
+	 *            name of the features given to the model
+	 * @return character with the given strokes and a copy of the cached
+	 *         results, or null if there is none
+	 */
+	public Character get(List<Stroke> strokes, Object model, String features) {
+		Character c = m_characters.get(new Key(strokes, model, features));
+		if (c == null) {
+			m_numMisses++;
+			return null;
+		}
+		m_numHits++;
+		return new Character(new ArrayList<ResultConfidencePairing>(c
+				.getResults()), strokes);
+	}
+
+	/**
+	 * Cache the character recognized from a group of strokes
+	 * 
+	 * @param strokes
+	 *            strokes in the group, in order
+	 * @param model
+	 *            model the character was recognized with
+	 * @param features
+	 *            name of the features given to the model
+	 * @param character
+	 *            recognized character
+	 */
+	public void put(List<Stroke> strokes, Object model, String features,
+			Character character) {
+		Key key = new Key(strokes, model, features);
+		m_characters.put(key, new Character(
+				new ArrayList<ResultConfidencePairing>(character.getResults()),
+				new ArrayList<Stroke>(strokes)));
+		for (UUID id : key.m_ids) {
+			Set<Key> keys = m_keysByStroke.get(id);
+			if (keys == null) {
+				keys = new HashSet<Key>();
+				m_keysByStroke.put(id, keys);
+			}
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * Drop every entry whose group contains a stroke
+	 * 
+	 * @param stroke
+	 *            removed stroke
+	 */
+	public void remove(Stroke stroke) {
+		Set<Key> keys = m_keysByStroke.remove(stroke.getId());
+		if (keys == null)
+			return;
+		for (Key key : keys) {
+			m_characters.remove(key);
+			for (UUID id : key.m_ids) {
+				Set<Key> others = m_keysByStroke.get(id);
+				if (others != null) {
+					others.remove(key);
+					if (others.isEmpty())
+						m_keysByStroke.remove(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop every entry
+	 */
+	public void clear() {
+		m_characters.clear();
+		m_keysByStroke.clear();
+	}
+
+	/**
+	 * Get the number of cached characters
+	 * 
+	 * @return number of entries
+	 */
+	public int size() {
+		return m_characters.size();
+	}
+
+	/**
+	 * Get the number of lookups that found an entry
+	 * 
+	 * @return number of hits
+	 */
+	public long getNumHits() {
+		return m_numHits;
+	}
+
+	/**
+	 * Get the number of lookups that did not find an entry
+	 * 
+	 * @return number of misses
+	 */
+	public long getNumMisses() {
+		return m_numMisses;
+	}
+
+	@Override
+	public String toString() {
+		return "CharacterCache[characters=" + m_characters.size() + ", hits="
+				+ m_numHits + ", misses=" + m_numMisses + "]";
+	}
+
+	/**
+	 * Stroke ids and point hash of a group, plus the model and features
+	 */
+	private static final class Key {
+
+		private final UUID[] m_ids;
+
+		private final long m_geometry;
+
+		private final Object m_model;
+
+		private final String m_features;
+
+		private final int m_hash;
+
+		private Key(List<Stroke> strokes, Object model, String features) {
+			m_ids = new UUID[strokes.size()];
+			long geometry = 1;
+			for (int i = 0; i < m_ids.length; i++) {
+				Stroke s = strokes.get(i);
+				m_ids[i] = s.getId();
+				for (Point p : s.getPoints()) {
+					geometry = 31 * geometry
+							+ Double.doubleToLongBits(p.getX());
+					geometry = 31 * geometry
+							+ Double.doubleToLongBits(p.getY());
+					geometry = 31 * geometry + p.getTime();
+				}
+				geometry = 31 * geometry + s.getNumPoints();
+			}
+			m_geometry = geometry;
+			m_model = model;
+			m_features = features == null ? "" : features;
+			int hash = Arrays.hashCode(m_ids);
+			hash = 31 * hash + (int) (m_geometry ^ (m_geometry >>> 32));
+			hash = 31 * hash + System.identityHashCode(m_model);
+			m_hash = 31 * hash + m_features.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return m_hash == other.m_hash && m_geometry == other.m_geometry
+					&& m_model == other.m_model
+					&& m_features.equals(other.m_features)
+					&& Arrays.equals(m_ids, other.m_ids);
+		}
+	}
+}
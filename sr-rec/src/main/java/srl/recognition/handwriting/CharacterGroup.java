@@ -12,6 +12,14 @@ public class CharacterGroup {
 		m_groupings = groupings;
 	}
 
+	public ArrayList<Integer> getGrouping() {
+		return m_groupings;
+	}
+
+	public ArrayList<Character> getCharacters() {
+		return m_characters;
+	}
+
 	public void add(Character c) {
 		m_characters.add(c);
 	}
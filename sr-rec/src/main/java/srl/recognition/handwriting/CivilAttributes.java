@@ -1,6 +1,7 @@
 package srl.recognition.handwriting;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.openawt.geom.Point2D;
@@ -14,7 +15,9 @@ import weka.core.Instance;
 import weka.core.Instances;
 
 /**
- * Generate the WEKA attribute Instance for a given sketch.
+ * Generate the WEKA attribute Instance for a given sketch. An object of this
+ * class instead writes the features straight into an array of attribute
+ * values, reusing its buffers from one sketch to the next.
  * 
  * @author awolin
  * 
@@ -26,6 +29,37 @@ public class CivilAttributes {
 	 */
 	public static final int S_PIXELSIZE = 8;
 
+	/**
+	 * Attributes of the combination of old and new features, other than the
+	 * pixels
+	 */
+	private static final String[] S_HYBRID_ATTRIBUTES = { "Smoothness",
+			"FirstLastDist", "FirstLastCosine", "FirstLastSine", "StrokeCount",
+			"BoundingBoxRatio", "LeftPixels", "RightPixels", "TopPixels",
+			"BottomPixels", "Density" };
+
+	/**
+	 * Pixelator of the sketches
+	 */
+	private final StrokePixelator m_pixelator = new StrokePixelator(
+			S_PIXELSIZE);
+
+	/**
+	 * Features other than the pixels of the last sketch
+	 */
+	private final double[] m_features = new double[S_HYBRID_ATTRIBUTES.length];
+
+	/**
+	 * Dataset whose attribute indices are in {@link #m_attributes}
+	 */
+	private Instances m_dataSet;
+
+	/**
+	 * Index of the attribute of each feature other than the pixels in
+	 * {@link #m_dataSet}
+	 */
+	private int[] m_attributes;
+
 	/**
 	 * Generate the feature vector instance for a sketch for CivilSketch.
 	 * 
@@ -212,8 +246,52 @@ public class CivilAttributes {
 	private static Instance generateCivilFeatures_HYBRID(Sketch sketch,
 			Instances dataSet) {
 
-		Instance inst = StrokePixelator.getInstance(sketch, S_PIXELSIZE,
-				dataSet);
+		double[] values = new double[dataSet.numAttributes()];
+		Arrays.fill(values, Instance.missingValue());
+		new CivilAttributes().writeFeatures(sketch, values, dataSet);
+
+		Instance inst = new Instance(1, values);
+		inst.setDataset(dataSet);
+
+		return inst;
+	}
+
+	/**
+	 * Write the combination of old and new features of a sketch into the
+	 * attribute values of an instance, without creating the instance.
+	 * Attributes that are not features are left as they are.
+	 * 
+	 * @param sketch
+	 *            sketch to featurefy.
+	 * @param values
+	 *            attribute values, one per attribute of the dataset.
+	 * @param dataSet
+	 *            CivilSketch dataset.
+	 */
+	public void writeFeatures(Sketch sketch, double[] values, Instances dataSet) {
+
+		m_pixelator.pixelize(sketch);
+		m_pixelator.writeFeatures(values, dataSet);
+
+		hybridFeatures(sketch, m_features);
+
+		int[] attributes = getAttributes(dataSet);
+		for (int i = 0; i < attributes.length; i++) {
+			values[attributes[i]] = m_features[i];
+		}
+	}
+
+	/**
+	 * Compute the features other than the pixels of the combination of old
+	 * and new features
+	 * 
+	 * @param sketch
+	 *            sketch to featurefy.
+	 * @param features
+	 *            array to write the features into, in the order of
+	 *            {@link #S_HYBRID_ATTRIBUTES}
+	 */
+	private static void hybridFeatures(Sketch sketch, double[] features) {
 
 		// Rubine-esque features
 		double smoothness = 0.0;
@@ -239,36 +317,26 @@ public class CivilAttributes {
 		}
 
 		// Smoothness
-		Attribute smoothnessAttr = dataSet.attribute("Smoothness");
-		inst.setValue(smoothnessAttr, smoothness);
+		features[0] = smoothness;
 
 		// First-last point attrs
 		Point firstPt = sketch.getFirstStroke().getFirstPoint();
 		Point lastPt = sketch.getLastStroke().getLastPoint();
 		double firstLastPtDist = firstLastPtDist(firstPt, lastPt);
 
-		Attribute firstLastDistAttr = dataSet.attribute("FirstLastDist");
-		inst.setValue(firstLastDistAttr, firstLastPtDist);
-
-		Attribute firstLastCosineAttr = dataSet.attribute("FirstLastCosine");
-		inst.setValue(firstLastCosineAttr, firstLastCosine(firstPt, lastPt,
-				firstLastPtDist));
-
-		Attribute firstLastSineAttr = dataSet.attribute("FirstLastSine");
-		inst.setValue(firstLastSineAttr, firstLastSine(firstPt, lastPt,
-				firstLastPtDist));
+		features[1] = firstLastPtDist;
+		features[2] = firstLastCosine(firstPt, lastPt, firstLastPtDist);
+		features[3] = firstLastSine(firstPt, lastPt, firstLastPtDist);
 
 		// Number of strokes
-		Attribute strokeCount = dataSet.attribute("StrokeCount");
-		inst.setValue(strokeCount, sketch.getNumStrokes());
+		features[4] = sketch.getNumStrokes();
 
 		// Bounding box ratio
 		BoundingBox bb = sketch.getBoundingBox();
-		Attribute bbRatio = dataSet.attribute("BoundingBoxRatio");
 		if (bb.getWidth() > 0) {
-			inst.setValue(bbRatio, bb.getHeight() / bb.getWidth());
+			features[5] = bb.getHeight() / bb.getWidth();
 		} else {
-			inst.setValue(bbRatio, bb.getHeight() / 1.0);
+			features[5] = bb.getHeight() / 1.0;
 		}
 
 		// Pixel-based attributes
@@ -293,21 +361,11 @@ public class CivilAttributes {
 
 		int totalPixels = numLeftPixels + numRightPixels;
 
-		// % of pixels in left half
-		Attribute leftPixels = dataSet.attribute("LeftPixels");
-		inst.setValue(leftPixels, (double) numLeftPixels / totalPixels);
-
-		// % of pixels in right half
-		Attribute rightPixels = dataSet.attribute("RightPixels");
-		inst.setValue(rightPixels, (double) numRightPixels / totalPixels);
-
-		// % of pixels in top half
-		Attribute topPixels = dataSet.attribute("TopPixels");
-		inst.setValue(topPixels, (double) numTopPixels / totalPixels);
-
-		// % of pixels in bottom half
-		Attribute bottomPixels = dataSet.attribute("BottomPixels");
-		inst.setValue(bottomPixels, (double) numBottomPixels / totalPixels);
+		// % of pixels in left, right, top and bottom half
+		features[6] = (double) numLeftPixels / totalPixels;
+		features[7] = (double) numRightPixels / totalPixels;
+		features[8] = (double) numTopPixels / totalPixels;
+		features[9] = (double) numBottomPixels / totalPixels;
 
 		// Density
 		double pathLength = 0.0;
@@ -319,10 +377,28 @@ public class CivilAttributes {
 			density = pathLength / bb.getArea();
 		}
 
-		Attribute densityAttr = dataSet.attribute("Density");
-		inst.setValue(densityAttr, density);
+		features[10] = density;
+	}
 
-		return inst;
+	/**
+	 * Get the index of the attribute of each feature other than the pixels,
+	 * looking them up by name only when the dataset changes
+	 * 
+	 * @param dataSet
+	 *            CivilSketch dataset.
+	 * @return attribute indices, in the order of {@link #S_HYBRID_ATTRIBUTES}
+	 */
+	private int[] getAttributes(Instances dataSet) {
+		if (dataSet != m_dataSet) {
+			int[] attributes = new int[S_HYBRID_ATTRIBUTES.length];
+			for (int i = 0; i < attributes.length; i++) {
+				attributes[i] = dataSet.attribute(S_HYBRID_ATTRIBUTES[i])
+						.index();
+			}
+			m_attributes = attributes;
+			m_dataSet = dataSet;
+		}
+		return m_attributes;
 	}
 
 	/**
@@ -36,8 +36,8 @@
 
 package srl.recognition.handwriting;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -46,10 +46,11 @@ import org.slf4j.LoggerFactory;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Sketch;
 import srl.core.sketch.Stroke;
+import srl.patternrec.classifiers.core.CompiledMLP;
+import srl.patternrec.classifiers.core.ModelRegistry;
 import srl.recognition.grouping.CivilGrouper;
 import srl.recognition.recognizer.OverTime;
 import srl.recognition.recognizer.OverTimeException;
-import weka.classifiers.functions.MultilayerPerceptron;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -67,10 +68,17 @@ import weka.core.Instances;
  */
 public class CivilHandwritingRecognizer {
 
+	/**
+	 * Location of the model in the {@link ModelRegistry}
+	 */
+	public static final String MODEL = ModelRegistry.classpath(
+			CivilHandwritingRecognizer.class,
+			"models/civilHWR-MLP_8-2010-04-15.model");
+
 	/**
 	 * WEKA neural network model
 	 */
-	private MultilayerPerceptron m_mlp;
+	private CompiledMLP m_mlp;
 
 	/**
 	 * Target WEKA attribute set.
@@ -82,11 +90,37 @@ public class CivilHandwritingRecognizer {
 	 */
 	private Instances m_dataSet;
 
+	/**
+	 * Features of the characters
+	 */
+	private CivilAttributes m_civilAttributes = new CivilAttributes();
+
+	/**
+	 * Attribute values of the character being recognized. Attributes that are
+	 * not features stay missing.
+	 */
+	private double[] m_values;
+
+	/**
+	 * Scratch buffer of the model
+	 */
+	private double[] m_scratch;
+
+	/**
+	 * Class distribution of the character being recognized
+	 */
+	private double[] m_distribution;
+
 	/**
 	 * Strokes submitted to the recognizer.
 	 */
 	private List<Stroke> m_strokesSubmitted;
 
+	/**
+	 * Characters already recognized from groups of the submitted strokes
+	 */
+	private CharacterCache m_characterCache = new CharacterCache();
+
 	/**
 	 * Logger
 	 */
@@ -99,9 +133,7 @@ public class CivilHandwritingRecognizer {
 	public CivilHandwritingRecognizer() {
 
 		try {
-			InputStream stream = CivilHandwritingRecognizer.class.getResourceAsStream("models/civilHWR-MLP_8-2010-04-15.model");
-			m_mlp = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read(stream);
+			m_mlp = ModelRegistry.getInstance().get(MODEL);
 		} catch (Exception e) {
 			log.error(e.toString(),e);
 		}
@@ -109,6 +141,13 @@ public class CivilHandwritingRecognizer {
 		m_targetAttribute = BuildTargetAttribute.buildCivilAttribute();
 		m_dataSet = BuildTargetAttribute.createCivilInstancesDataSet();
 
+		m_values = new double[m_dataSet.numAttributes()];
+		Arrays.fill(m_values, Instance.missingValue());
+		if (m_mlp != null) {
+			m_scratch = m_mlp.newScratch();
+			m_distribution = new double[m_mlp.getNumOutputs()];
+		}
+
 		m_strokesSubmitted = new ArrayList<Stroke>();
 	}
 
@@ -129,18 +168,22 @@ public class CivilHandwritingRecognizer {
 		// Store the start time
 		long startTime = System.currentTimeMillis();
 
+		Character cached = m_characterCache.get(strokes, m_mlp, "civil");
+		if (cached != null) {
+			return cached;
+		}
+
 		Sketch holderSketch = new Sketch();
 		holderSketch.setStrokes(strokes);
 
-		Instance characterInstance = null;
 		double[] distribution = null;
 
 		// Initialize the feature set outside of the recognizer
-		characterInstance = CivilAttributes.generateCivilFeatures(holderSketch,
-				m_dataSet);
+		m_civilAttributes.writeFeatures(holderSketch, m_values, m_dataSet);
 
 		try {
-			distribution = m_mlp.distributionForInstance(characterInstance);
+			distribution = m_mlp.distribution(m_values, m_scratch,
+					m_distribution);
 			OverTime.overTimeCheck(startTime, maxTime, log);
 		} catch (OverTimeException ote) {
 			// Don't log it
@@ -157,7 +200,9 @@ public class CivilHandwritingRecognizer {
 			OverTime.overTimeCheck(startTime, maxTime, log);
 		}
 
-		return new Character(rcp, strokes);
+		Character c = new Character(rcp, strokes);
+		m_characterCache.put(strokes, m_mlp, "civil", c);
+		return c;
 	}
 
 	/**
@@ -179,6 +224,18 @@ public class CivilHandwritingRecognizer {
 		m_strokesSubmitted.add(submission);
 	}
 
+	/**
+	 * Remove a stroke from the submitted strokes, along with every cached
+	 * character it is part of
+	 * 
+	 * @param stroke
+	 *            stroke to remove
+	 */
+	public void removeFromRecognition(Stroke stroke) {
+		m_strokesSubmitted.remove(stroke);
+		m_characterCache.remove(stroke);
+	}
+
 	/**
 	 * Recognize a series of strokes as a character.
 	 * 
@@ -321,6 +378,7 @@ public class CivilHandwritingRecognizer {
 	 */
 	public void clear() {
 		m_strokesSubmitted = new ArrayList<Stroke>();
+		m_characterCache.clear();
 	}
 
 	/**
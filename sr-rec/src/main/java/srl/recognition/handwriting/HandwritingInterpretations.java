@@ -431,6 +431,26 @@ public class HandwritingInterpretations {
 		}
 	}
 
+	/**
+	 * Submit every valid segmentation in the lattice to the interpretation.
+	 * This gives the same result as submitting each segmentation with
+	 * {@link #submitCharacters(CharacterGroup)}.
+	 * 
+	 * @param lattice
+	 *            lattice of the recognized character spans
+	 */
+	public void submitLattice(SegmentationLattice lattice) {
+		for (String word : m_dictionary) {
+
+			// Simplify the word
+			double newconf = lattice.getConfidence(simplifyWord(word));
+			Double d = characterRecognitionMap.get(word);
+			if (d == null || d < newconf) {
+				characterRecognitionMap.put(word, newconf);
+			}
+		}
+	}
+
 	/**
 	 * This method takes into consideration the fact that 0 and 1 are often
 	 * misrecognized as O and I, respectively. This method thus simplifies the
@@ -37,6 +37,7 @@
 package srl.recognition.handwriting;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -51,11 +52,12 @@ import srl.core.sketch.Sketch;
 import srl.core.sketch.Stroke;
 import srl.core.util.Pair;
 import srl.core.util.lists.DisjointSet;
+import srl.patternrec.classifiers.core.CompiledMLP;
+import srl.patternrec.classifiers.core.ModelRegistry;
 import srl.recognition.grouping.CivilGrouper;
 import srl.recognition.grouping.HandwritingGrouper;
 import srl.recognition.recognizer.OverTime;
 import srl.recognition.recognizer.OverTimeException;
-import weka.classifiers.functions.MultilayerPerceptron;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -78,14 +80,32 @@ import weka.core.Instances;
  */
 public class HandwritingRecognizer {
 
+	/**
+	 * Location of the COA echelon model in the {@link ModelRegistry}
+	 */
+	public static final String ECHELON_MODEL = ModelRegistry
+			.file("models/2009-03-10-11.02-PixelCount11ECHELON500-1.model");
+
+	/**
+	 * Location of the COA inner (letter) model in the {@link ModelRegistry}
+	 */
+	public static final String INNER_MODEL = ModelRegistry
+			.file("models/2009-03-14-11.19-PixelCount11INNER1000-1.model");
+
+	/**
+	 * Location of the CivilSketch model in the {@link ModelRegistry}
+	 */
+	public static final String CIVIL_MODEL = ModelRegistry
+			.classpath("models/civilHWR-MLP_8-2010-04-15.model");
+
 	/**
 	 * WEKA neural network model
 	 */
-	private MultilayerPerceptron m_mlp;
+	private CompiledMLP m_mlp;
 
-	private MultilayerPerceptron m_mlpEchelon;
+	private CompiledMLP m_mlpEchelon;
 
-	private MultilayerPerceptron m_mlpInner;
+	private CompiledMLP m_mlpInner;
 
 	private HWRType m_dictionaryType = HWRType.INNER;
 
@@ -97,6 +117,16 @@ public class HandwritingRecognizer {
 
 	private int PIXELCOUNT = 11;
 
+	/**
+	 * Pixelator of the characters for the non-civil models
+	 */
+	private StrokePixelator m_pixelator = new StrokePixelator(PIXELCOUNT);
+
+	/**
+	 * Features of the characters for the civil model
+	 */
+	private CivilAttributes m_civilAttributes = new CivilAttributes();
+
 	/**
 	 * WEKA model dataset
 	 */
@@ -106,8 +136,49 @@ public class HandwritingRecognizer {
 
 	private Instances m_echelonDataSet;
 
+	/**
+	 * Dataset {@link #m_values} and the attribute indices were made for
+	 */
+	private Instances m_valuesDataSet;
+
+	/**
+	 * Attribute values of the character being recognized. Attributes that are
+	 * not features stay missing.
+	 */
+	private double[] m_values;
+
+	/**
+	 * Index of the StrokeCount attribute in {@link #m_valuesDataSet}
+	 */
+	private int m_strokeCountIndex;
+
+	/**
+	 * Index of the BoundingBoxRatio attribute in {@link #m_valuesDataSet}
+	 */
+	private int m_bbRatioIndex;
+
+	/**
+	 * Model {@link #m_scratch} and {@link #m_distribution} were made for
+	 */
+	private CompiledMLP m_scratchMLP;
+
+	/**
+	 * Scratch buffer of the model
+	 */
+	private double[] m_scratch;
+
+	/**
+	 * Class distribution of the character being recognized
+	 */
+	private double[] m_distribution;
+
 	private List<Stroke> m_strokesSubmitted;
 
+	/**
+	 * Characters already recognized from groups of the submitted strokes
+	 */
+	private CharacterCache m_characterCache = new CharacterCache();
+
 	/**
 	 * Logger
 	 */
@@ -119,15 +190,13 @@ public class HandwritingRecognizer {
 	public HandwritingRecognizer() {
 
 		try {
-			m_mlpEchelon = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read("models/2009-03-10-11.02-PixelCount11ECHELON500-1.model");
+			m_mlpEchelon = ModelRegistry.getInstance().get(ECHELON_MODEL);
 		} catch (Exception e) {
 			log.error(e.toString());
 		}
 
 		try {
-			m_mlpInner = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read("models/2009-03-14-11.19-PixelCount11INNER1000-1.model");
+			m_mlpInner = ModelRegistry.getInstance().get(INNER_MODEL);
 		} catch (Exception e) {
 			log.error(e.toString());
 		}
@@ -161,8 +230,7 @@ public class HandwritingRecognizer {
 		if (hwrType == HWRType.CIVIL) {
 
 			try {
-				m_mlp = (MultilayerPerceptron) weka.core.SerializationHelper
-						.read(getClass().getClassLoader().getResourceAsStream("models/civilHWR-MLP_8-2010-04-15.model"));
+				m_mlp = ModelRegistry.getInstance().get(CIVIL_MODEL);
 
 				m_mlpInner = m_mlpEchelon = m_mlp;
 			} catch (Exception e) {
@@ -198,51 +266,44 @@ public class HandwritingRecognizer {
 		// Store the start time
 		long startTime = System.currentTimeMillis();
 
+		String features = m_dictionaryType != HWRType.CIVIL ? "pixel" : "civil";
+		Character cached = m_characterCache.get(strokes, m_mlp, features);
+		if (cached != null) {
+			return cached;
+		}
+
 		Sketch holderSketch = new Sketch();
 		holderSketch.setStrokes(strokes);
 
-		Instance characterInstance = null;
 		double[] distribution = null;
 
+		prepareBuffers();
+
 		// For NON-CIVIL models. This is probably broken now for COA data.
 		if (m_dictionaryType != HWRType.CIVIL) {
 
-			characterInstance = StrokePixelator.getInstance(holderSketch,
-					PIXELCOUNT, m_dataSet);
+			m_pixelator.pixelize(holderSketch);
+			m_pixelator.writeFeatures(m_values, m_dataSet);
 
-			Attribute strokeCountAtt = m_dataSet.attribute("StrokeCount");
+			m_values[m_strokeCountIndex] = strokes.size();
 
-			Attribute bbRatio = m_dataSet.attribute("BoundingBoxRatio");
-
-			characterInstance.setValue(strokeCountAtt, strokes.size());
-
-			characterInstance.setValue(bbRatio,
-					holderSketch.getBoundingBox().height
-							/ holderSketch.getBoundingBox().width);
-
-			try {
-				distribution = m_mlp.distributionForInstance(characterInstance);
-				OverTime.overTimeCheck(startTime, maxTime, log);
-			} catch (OverTimeException ote) {
-				// Don't log it
-			} catch (Exception e) {
-				log.error(e.getMessage(),e);
-			}
+			m_values[m_bbRatioIndex] = holderSketch.getBoundingBox().height
+					/ holderSketch.getBoundingBox().width;
 
 		} else {
 
 			// Initialize the feature set outside of the recognizer
-			characterInstance = CivilAttributes.generateCivilFeatures(
-					holderSketch, m_dataSet);
+			m_civilAttributes.writeFeatures(holderSketch, m_values, m_dataSet);
+		}
 
-			try {
-				distribution = m_mlp.distributionForInstance(characterInstance);
-				OverTime.overTimeCheck(startTime, maxTime, log);
-			} catch (OverTimeException ote) {
-				// Don't log it
-			} catch (Exception e) {
-				log.error(e.getMessage(),e);
-			}
+		try {
+			distribution = m_mlp.distribution(m_values, m_scratch,
+					m_distribution);
+			OverTime.overTimeCheck(startTime, maxTime, log);
+		} catch (OverTimeException ote) {
+			// Don't log it
+		} catch (Exception e) {
+			log.error(e.getMessage(),e);
 		}
 
 		List<ResultConfidencePairing> rcp = new ArrayList<ResultConfidencePairing>();
@@ -254,7 +315,28 @@ public class HandwritingRecognizer {
 			OverTime.overTimeCheck(startTime, maxTime, log);
 		}
 
-		return new Character(rcp, strokes);
+		Character c = new Character(rcp, strokes);
+		m_characterCache.put(strokes, m_mlp, features, c);
+		return c;
+	}
+
+	/**
+	 * Make the feature and network buffers for the current dataset and
+	 * model, if they were made for others
+	 */
+	private void prepareBuffers() {
+		if (m_valuesDataSet != m_dataSet) {
+			m_values = new double[m_dataSet.numAttributes()];
+			Arrays.fill(m_values, Instance.missingValue());
+			m_strokeCountIndex = m_dataSet.attribute("StrokeCount").index();
+			m_bbRatioIndex = m_dataSet.attribute("BoundingBoxRatio").index();
+			m_valuesDataSet = m_dataSet;
+		}
+		if (m_scratchMLP != m_mlp) {
+			m_scratch = m_mlp.newScratch();
+			m_distribution = new double[m_mlp.getNumOutputs()];
+			m_scratchMLP = m_mlp;
+		}
 	}
 
 	/**
@@ -276,6 +358,18 @@ public class HandwritingRecognizer {
 		m_strokesSubmitted.add(submission);
 	}
 
+	/**
+	 * Remove a stroke from the submitted strokes, along with every cached
+	 * character it is part of
+	 * 
+	 * @param stroke
+	 *            stroke to remove
+	 */
+	public void removeFromRecognition(Stroke stroke) {
+		m_strokesSubmitted.remove(stroke);
+		m_characterCache.remove(stroke);
+	}
+
 	/**
 	 * Recognize a series of strokes as a character.
 	 * 
@@ -383,62 +477,39 @@ public class HandwritingRecognizer {
 		// first pregroup
 		List<List<Stroke>> groupings = this.pregroupStrokes(list);
 
-		ArrayList<ArrayList<Integer>> what = AllPossibleGroupings
-				.computepossibiliites(groupings.size());
-		OverTime.overTimeCheck(startTime, maxTime, log);
-
-		log.debug("Number Of Possible Groupings : " + what.size());
-
-		HandwritingInterpretations hi = new HandwritingInterpretations(
-				m_dictionaryType);
-
-		boolean submitted = false;
-		for (ArrayList<Integer> aLI : what) {
-			CharacterGroup characters = new CharacterGroup();
-			int start = 0;
-			int end = 0;
-			boolean jumpOut = false;
-
-			for (Integer i : aLI) {
-				end += i;
-				List<Stroke> chargroup = new ArrayList<Stroke>();
-				for (int groupCount = start; groupCount < end; groupCount++) {
-					chargroup.addAll(groupings.get(groupCount));
+		// recognize each span of groups that can be a character once, then
+		// search the segmentations over the spans
+		SegmentationLattice lattice = new SegmentationLattice(groupings.size());
+		for (int start = 0; start < groupings.size(); start++) {
+			List<Stroke> chargroup = new ArrayList<Stroke>();
+			for (int length = 1; length <= lattice.getMaxSpan()
+					&& start + length <= groupings.size(); length++) {
+				chargroup.addAll(groupings.get(start + length - 1));
+				if (!lattice.isReachable(start, length)) {
+					continue;
 				}
 
-				Character c = characterRecognizer(chargroup, OverTime
-						.timeRemaining(startTime, maxTime));
-				log.debug("Integer " + i + " Character " + c.getBestResult()
-						+ " Confidence " + c.getHighestConfidence());
-				int size = characters.m_characters.size();
-				Character prevChar = null;
-				if (size > 0) {
-					prevChar = characters.m_characters.get(size - 1);
-				}
-				characters.add(c);
-				if (prevChar != null) {
-					double maxXPrev = prevChar.getBoundingBox().getMaxX();
-					double centerCur = c.getBoundingBox().getCenterX();
-					if (centerCur < maxXPrev) {
-						jumpOut = true;
-						break;
-					}
-				}
-				start += i;
+				Character c = characterRecognizer(new ArrayList<Stroke>(
+						chargroup), OverTime.timeRemaining(startTime, maxTime));
+				log.debug("Span " + start + "+" + length + " Character "
+						+ c.getBestResult() + " Confidence "
+						+ c.getHighestConfidence());
+				lattice.setCharacter(start, length, c);
 			}
+		}
+		OverTime.overTimeCheck(startTime, maxTime, log);
 
-			if (!jumpOut) {
-				hi.submitCharacters(characters);
-				submitted = true;
-			} else {
-				log.debug("Cancelling");
+		if (log.isDebugEnabled()) {
+			List<CharacterGroup> best = lattice.getBestSegmentations(1);
+			if (!best.isEmpty()) {
+				log.debug("Best Segmentation : " + best.get(0).m_groupings);
 			}
-
-		}
-		if (!submitted) {
-			hi.submitCharacters(new CharacterGroup());
 		}
 
+		HandwritingInterpretations hi = new HandwritingInterpretations(
+				m_dictionaryType);
+		hi.submitLattice(lattice);
+
 		Shape builtshape = new Shape();
 		builtshape.setLabel("Text");
 		builtshape.setStrokes(list);
@@ -1017,6 +1088,7 @@ public class HandwritingRecognizer {
 	public void clear() {
 
 		m_strokesSubmitted = new ArrayList<Stroke>();
+		m_characterCache.clear();
 	}
 
 	@SuppressWarnings("unused")
@@ -0,0 +1,444 @@
+/**
+ * SegmentationLattice.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.handwriting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import srl.core.sketch.BoundingBox;
+
+/**
+ * Lattice of the ways a left-to-right sequence of stroke groups can be split
+ * into characters. Each contiguous span of at most
+ * {@link AllPossibleGroupings#MAXNUMBEROFSTROKESPERLETTER} groups is
+ * recognized once, as a single {@link Character}, and the segmentations are
+ * then searched by dynamic programming over the spans instead of being
+ * enumerated one by one.
+ * <p>
+ * A segmentation is valid under the same rules the enumeration uses: it
+ * covers every group, has at most
+ * {@link AllPossibleGroupings#MAXNUMBEROFLETTERS} characters, and the center
+ * of each character is not to the left of the right edge of the character
+ * before it.
+ */
+public class SegmentationLattice {
+
+	/**
+	 * Words whose confidence comes from the first character alone (see
+	 * {@link CharacterGroup#getConfidence(String)})
+	 */
+	private static final String[] SINGLE_CHARACTER_WORDS = { "alpha", "beta",
+			"gamma", "theta", "equals", "period" };
+
+	/**
+	 * Number of stroke groups
+	 */
+	private int m_numGroups;
+
+	/**
+	 * Maximum number of groups in one character
+	 */
+	private int m_maxSpan = AllPossibleGroupings.MAXNUMBEROFSTROKESPERLETTER;
+
+	/**
+	 * Maximum number of characters in a segmentation
+	 */
+	private int m_maxLetters = AllPossibleGroupings.MAXNUMBEROFLETTERS;
+
+	/**
+	 * Recognized character of each span, indexed by first group and by
+	 * number of groups - 1; null if the span was not recognized
+	 */
+	private Character[][] m_characters;
+
+	/**
+	 * Right edge of the bounding box of each span
+	 */
+	private double[][] m_maxX;
+
+	/**
+	 * Horizontal center of the bounding box of each span
+	 */
+	private double[][] m_centerX;
+
+	/**
+	 * Whether a span, as the character at a given index, can be followed by
+	 * characters covering the rest of the groups. Indexed by character index,
+	 * first group and number of groups - 1. Null until computed.
+	 */
+	private boolean[][][] m_completes;
+
+	/**
+	 * Create an empty lattice
+	 * 
+	 * @param numGroups
+	 *            number of stroke groups, sorted left to right
+	 */
+	public SegmentationLattice(int numGroups) {
+		m_numGroups = numGroups;
+		m_characters = new Character[numGroups][m_maxSpan];
+		m_maxX = new double[numGroups][m_maxSpan];
+		m_centerX = new double[numGroups][m_maxSpan];
+	}
+
+	/**
+	 * @return maximum number of groups in one character
+	 */
+	public int getMaxSpan() {
+		return m_maxSpan;
+	}
+
+	/**
+	 * Check whether a span can be part of any segmentation that does not
+	 * exceed the character limit. Spans that cannot do not need to be
+	 * recognized.
+	 * 
+	 * @param start
+	 *            index of the first group in the span
+	 * @param length
+	 *            number of groups in the span
+	 * @return true if the span can be part of a segmentation
+	 */
+	public boolean isReachable(int start, int length) {
+		if (start < 0 || length < 1 || length > m_maxSpan
+				|| start + length > m_numGroups)
+			return false;
+		int before = (start + m_maxSpan - 1) / m_maxSpan;
+		int after = (m_numGroups - start - length + m_maxSpan - 1) / m_maxSpan;
+		return before + 1 + after <= m_maxLetters;
+	}
+
+	/**
+	 * Set the recognized character of a span
+	 * 
+	 * @param start
+	 *            index of the first group in the span
+	 * @param length
+	 *            number of groups in the span
+	 * @param character
+	 *            character recognized from the strokes of the span
+	 */
+	public void setCharacter(int start, int length, Character character) {
+		BoundingBox bb = character.getBoundingBox();
+		m_characters[start][length - 1] = character;
+		m_maxX[start][length - 1] = bb.getMaxX();
+		m_centerX[start][length - 1] = bb.getCenterX();
+		m_completes = null;
+	}
+
+	/**
+	 * Get the confidence of a word, the same as the best
+	 * {@link CharacterGroup#getConfidence(String)} over all valid
+	 * segmentations, or 0 if there are none
+	 * 
+	 * @param word
+	 *            word
+	 * @return confidence
+	 */
+	public double getConfidence(String word) {
+		for (String single : SINGLE_CHARACTER_WORDS) {
+			if (single.equals(word))
+				return getFirstCharacterConfidence(word);
+		}
+
+		int numLetters = word.length();
+		if (numLetters == 0 || numLetters > m_maxLetters)
+			return 0;
+
+		// best sum of confidences of the first j + 1 letters over the
+		// segmentations whose character j is the span
+		double[][] previous = null;
+		double[][] current = null;
+		for (int j = 0; j < numLetters; j++) {
+			current = new double[m_numGroups][m_maxSpan];
+			char ch = word.charAt(j);
+			for (int start = 0; start < m_numGroups; start++) {
+				for (int length = 1; length <= m_maxSpan; length++) {
+					current[start][length - 1] = Double.NEGATIVE_INFINITY;
+					Character c = getCharacter(start, length);
+					if (c == null)
+						continue;
+					double best;
+					if (j == 0) {
+						best = start == 0 ? 0 : Double.NEGATIVE_INFINITY;
+					} else {
+						best = Double.NEGATIVE_INFINITY;
+						for (int prevLength = 1; prevLength <= m_maxSpan
+								&& prevLength <= start; prevLength++) {
+							double sum = previous[start - prevLength][prevLength - 1];
+							if (sum > best
+									&& follows(start - prevLength, prevLength,
+											start, length))
+								best = sum;
+						}
+					}
+					if (best > Double.NEGATIVE_INFINITY)
+						current[start][length - 1] = best + c.getConfidence(ch);
+				}
+			}
+			previous = current;
+		}
+
+		double best = Double.NEGATIVE_INFINITY;
+		for (int length = 1; length <= m_maxSpan && length <= m_numGroups; length++)
+			best = Math.max(best, current[m_numGroups - length][length - 1]);
+		return best > Double.NEGATIVE_INFINITY ? best / numLetters : 0;
+	}
+
+	/**
+	 * Get the best segmentations, ranked by the average of the highest
+	 * confidence of each of their characters
+	 * 
+	 * @param max
+	 *            maximum number of segmentations to return
+	 * @return best segmentations, best first, with their groupings set
+	 */
+	public List<CharacterGroup> getBestSegmentations(int max) {
+		List<Path> complete = new ArrayList<Path>();
+
+		// best partial segmentations ending with each span
+		List<List<Path>> previous = null;
+		for (int j = 0; j < m_maxLetters && max > 0; j++) {
+			List<List<Path>> current = new ArrayList<List<Path>>(m_numGroups
+					* m_maxSpan);
+			for (int start = 0; start < m_numGroups; start++) {
+				for (int length = 1; length <= m_maxSpan; length++) {
+					List<Path> paths = new ArrayList<Path>();
+					current.add(paths);
+					Character c = getCharacter(start, length);
+					if (c == null)
+						continue;
+					double confidence = c.getHighestConfidence();
+					if (j == 0) {
+						if (start == 0)
+							paths.add(new Path(null, start, length, confidence));
+					} else {
+						for (int prevLength = 1; prevLength <= m_maxSpan
+								&& prevLength <= start; prevLength++) {
+							if (!follows(start - prevLength, prevLength, start,
+									length))
+								continue;
+							for (Path p : previous.get((start - prevLength)
+									* m_maxSpan + prevLength - 1))
+								paths.add(new Path(p, start, length, p.m_sum
+										+ confidence));
+						}
+						keepBest(paths, max, PATH_SUM);
+					}
+					if (start + length == m_numGroups)
+						complete.addAll(paths);
+				}
+			}
+			previous = current;
+		}
+		keepBest(complete, max, PATH_AVERAGE);
+
+		List<CharacterGroup> segmentations = new ArrayList<CharacterGroup>();
+		for (Path p : complete) {
+			CharacterGroup characters = new CharacterGroup();
+			ArrayList<Integer> grouping = new ArrayList<Integer>();
+			List<Path> spans = new ArrayList<Path>();
+			for (Path s = p; s != null; s = s.m_previous)
+				spans.add(s);
+			Collections.reverse(spans);
+			for (Path s : spans) {
+				characters.add(getCharacter(s.m_start, s.m_length));
+				grouping.add(s.m_length);
+			}
+			characters.setGrouping(grouping);
+			segmentations.add(characters);
+		}
+		return segmentations;
+	}
+
+	/**
+	 * Get the best confidence of the first character of a valid segmentation
+	 * 
+	 * @param word
+	 *            word the first character is compared to
+	 * @return confidence, or 0 if there are no valid segmentations
+	 */
+	private double getFirstCharacterConfidence(String word) {
+		if (m_completes == null)
+			computeCompletes();
+		double best = 0;
+		for (int length = 1; length <= m_maxSpan && length <= m_numGroups; length++) {
+			if (m_completes[0][0][length - 1])
+				best = Math.max(best, getCharacter(0, length).getConfidence(
+						word));
+		}
+		return best;
+	}
+
+	/**
+	 * Work out, from the last character back, which spans can be completed
+	 * into a valid segmentation
+	 */
+	private void computeCompletes() {
+		m_completes = new boolean[m_maxLetters][m_numGroups][m_maxSpan];
+		for (int j = m_maxLetters - 1; j >= 0; j--) {
+			for (int start = 0; start < m_numGroups; start++) {
+				for (int length = 1; length <= m_maxSpan; length++) {
+					if (getCharacter(start, length) == null)
+						continue;
+					int end = start + length;
+					boolean completes = end == m_numGroups;
+					for (int next = 1; !completes && j + 1 < m_maxLetters
+							&& next <= m_maxSpan && end + next <= m_numGroups; next++) {
+						completes = m_completes[j + 1][end][next - 1]
+								&& follows(start, length, end, next);
+					}
+					m_completes[j][start][length - 1] = completes;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param start
+	 *            index of the first group in the span
+	 * @param length
+	 *            number of groups in the span
+	 * @return recognized character of the span, or null if there is none
+	 */
+	private Character getCharacter(int start, int length) {
+		if (start + length > m_numGroups)
+			return null;
+		return m_characters[start][length - 1];
+	}
+
+	/**
+	 * Check whether one character may directly follow another, i.e. its
+	 * center is not to the left of the right edge of the previous one
+	 * 
+	 * @param prevStart
+	 *            first group of the previous character
+	 * @param prevLength
+	 *            number of groups in the previous character
+	 * @param start
+	 *            first group of the character
+	 * @param length
+	 *            number of groups in the character
+	 * @return true if the character may follow
+	 */
+	private boolean follows(int prevStart, int prevLength, int start,
+			int length) {
+		return !(m_centerX[start][length - 1] < m_maxX[prevStart][prevLength - 1]);
+	}
+
+	/**
+	 * Sort paths best first and drop all but the given number
+	 * 
+	 * @param paths
+	 *            paths
+	 * @param max
+	 *            number of paths to keep
+	 * @param comparator
+	 *            order of the paths
+	 */
+	private static void keepBest(List<Path> paths, int max,
+			Comparator<Path> comparator) {
+		Collections.sort(paths, comparator);
+		if (paths.size() > max)
+			paths.subList(max, paths.size()).clear();
+	}
+
+	/**
+	 * Orders paths by decreasing sum of confidences
+	 */
+	private static final Comparator<Path> PATH_SUM = new Comparator<Path>() {
+
+		@Override
+		public int compare(Path p1, Path p2) {
+			return Double.compare(p2.m_sum, p1.m_sum);
+		}
+	};
+
+	/**
+	 * Orders paths by decreasing average confidence
+	 */
+	private static final Comparator<Path> PATH_AVERAGE = new Comparator<Path>() {
+
+		@Override
+		public int compare(Path p1, Path p2) {
+			return Double.compare(p2.m_sum / p2.m_letters, p1.m_sum
+					/ p1.m_letters);
+		}
+	};
+
+	/**
+	 * A partial segmentation, linked back from its last span
+	 */
+	private static class Path {
+
+		/**
+		 * Path up to the span before this one, or null
+		 */
+		private Path m_previous;
+
+		/**
+		 * First group of the last span
+		 */
+		private int m_start;
+
+		/**
+		 * Number of groups in the last span
+		 */
+		private int m_length;
+
+		/**
+		 * Number of characters
+		 */
+		private int m_letters;
+
+		/**
+		 * Sum of the highest confidences of the characters
+		 */
+		private double m_sum;
+
+		public Path(Path previous, int start, int length, double sum) {
+			m_previous = previous;
+			m_start = start;
+			m_length = length;
+			m_letters = previous == null ? 1 : previous.m_letters + 1;
+			m_sum = sum;
+		}
+	}
+}
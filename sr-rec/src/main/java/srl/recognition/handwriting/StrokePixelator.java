@@ -36,8 +36,7 @@
 
 package srl.recognition.handwriting;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,26 +51,116 @@ import weka.core.Instances;
 /**
  * Take a sketch stored as a series of strokes and pixelize the sketch to a
  * bitmap representation.
+ * <p>
+ * A pixelator draws into a flat, row-major buffer that it reuses from one
+ * sketch to the next, and writes the pixels straight into the attribute
+ * values of a WEKA {@link Instance}. The static methods share one pixelator
+ * per thread, since characters are featurized many times during a single
+ * recognition.
  * 
  * @author beoff, awolin
  */
 public class StrokePixelator {
 
+	/**
+	 * How the points of a sketch are drawn
+	 */
+	public enum Mode {
+		/**
+		 * Stamp a window around each point. This is what the handwriting
+		 * models were trained with.
+		 */
+		POINTS,
+
+		/**
+		 * Stamp a window along the line between consecutive points of each
+		 * stroke, so fast strokes with few points are not broken up
+		 */
+		LINES
+	}
+
 	private static Logger log = LoggerFactory.getLogger(StrokePixelator.class);
 
 	/**
-	 * Creates an int array pixel map of a sketch.
+	 * Pixelator used by the static methods on each thread
+	 */
+	private static final ThreadLocal<StrokePixelator> s_pixelators = new ThreadLocal<StrokePixelator>();
+
+	/**
+	 * Height and width of the bitmap
+	 */
+	private final int m_resolution;
+
+	/**
+	 * How points are drawn
+	 */
+	private final Mode m_mode;
+
+	/**
+	 * Bitmap, row by row; 1 where filled, 0 where empty
+	 */
+	private final int[] m_pixels;
+
+	/**
+	 * Dataset whose pixel attribute indices are in {@link #m_pixelAttributes}
+	 */
+	private Instances m_dataSet;
+
+	/**
+	 * Index of the attribute of each pixel in {@link #m_dataSet}
+	 */
+	private int[] m_pixelAttributes;
+
+	/**
+	 * Create a pixelator that stamps each point, as the handwriting models
+	 * expect
 	 * 
-	 * @param sk
+	 * @param resolution
+	 *            height and width of the bitmap
+	 */
+	public StrokePixelator(int resolution) {
+		this(resolution, Mode.POINTS);
+	}
+
+	/**
+	 * Create a pixelator
+	 * 
+	 * @param resolution
+	 *            height and width of the bitmap
+	 * @param mode
+	 *            how points are drawn
+	 */
+	public StrokePixelator(int resolution, Mode mode) {
+		m_resolution = resolution;
+		m_mode = mode;
+		m_pixels = new int[resolution * resolution];
+	}
+
+	/**
+	 * @return height and width of the bitmap
+	 */
+	public int getResolution() {
+		return m_resolution;
+	}
+
+	/**
+	 * @return how points are drawn
+	 */
+	public Mode getMode() {
+		return m_mode;
+	}
+
+	/**
+	 * Draw a sketch, scaled to fill the bitmap
+	 * 
+	 * @param sketch
 	 *            sketch to pixelize.
-	 * @param heightWidth
-	 *            square height and width to scale to.
-	 * @return the pixelized version of the sketch, where pixels with a value of
-	 *         1 are filled, and -1 are empty.
+	 * @return the bitmap, row by row, where pixels with a value of 1 are
+	 *         filled and 0 are empty. The array is reused by the next call.
 	 */
-	public static int[][] pixelizeSketch(Sketch sketch, int heightWidth) {
+	public int[] pixelize(Sketch sketch) {
 
-		heightWidth--;
+		Arrays.fill(m_pixels, 0);
 
 		// Find the bounding box
 		BoundingBox bb = sketch.getBoundingBox();
@@ -79,46 +168,121 @@ public class StrokePixelator {
 		// Width and height of the original stroke
 		double width = bb.getWidth();
 		double height = bb.getHeight();
+		double minX = bb.getMinX();
+		double minY = bb.getMinY();
+		int scale = m_resolution - 1;
+
+		// Have a window around the pixel if we are expanding
+		int xWindow = (int) ((m_resolution / width) / 2.0);
+		int yWindow = (int) ((m_resolution / height) / 2.0);
 
-		// Transpose and scale the stroke to the top left corner
-		List<Point> scaledPoints = new ArrayList<Point>();
-		List<Point> points = sketch.getPoints();
+		for (Stroke stroke : sketch.getRecursiveStrokes()) {
+			int prevX = 0;
+			int prevY = 0;
+			boolean first = true;
 
-		for (int i = 0; i < points.size(); i++) {
+			for (Point point : stroke.getPoints()) {
 
-			Point point = points.get(i);
+				// Transpose and scale the point to the top left corner
+				int px = (int) (((point.getX() - minX) / width) * scale);
+				int py = (int) (((point.getY() - minY) / height) * scale);
 
-			double transposedX = point.getX() - bb.getMinX();
-			double transposedY = point.getY() - bb.getMinY();
+				if (m_mode == Mode.LINES && !first) {
+					drawLine(prevX, prevY, px, py, xWindow, yWindow);
+				} else {
+					stamp(px, py, xWindow, yWindow);
+				}
+				prevX = px;
+				prevY = py;
+				first = false;
+			}
+		}
 
-			double scaledX = (transposedX / width) * heightWidth;
-			double scaledY = (transposedY / height) * heightWidth;
+		return m_pixels;
+	}
 
-			scaledPoints.add(new Point(scaledX, scaledY, point.getTime()));
+	/**
+	 * Check whether a pixel of the last sketch drawn is filled
+	 * 
+	 * @param x
+	 *            column
+	 * @param y
+	 *            row
+	 * @return true if filled
+	 */
+	public boolean isFilled(int x, int y) {
+		return m_pixels[y * m_resolution + x] == 1;
+	}
+
+	/**
+	 * Write the last sketch drawn into the attribute values of an instance:
+	 * 1 for each filled pixel and -1 for each empty one
+	 * 
+	 * @param values
+	 *            attribute values, one per attribute of the dataset
+	 * @param dataSet
+	 *            dataset with an attribute "Pixel<i>" for each pixel, in row
+	 *            order
+	 */
+	public void writeFeatures(double[] values, Instances dataSet) {
+		int[] attributes = getPixelAttributes(dataSet);
+		for (int i = 0; i < m_pixels.length; i++) {
+			values[attributes[i]] = m_pixels[i] == 1 ? 1 : -1;
 		}
+	}
 
-		heightWidth++;
+	/**
+	 * Draw a sketch and create an instance of it. Attributes other than the
+	 * pixels are missing.
+	 * 
+	 * @param sketch
+	 *            sketch to pixelize
+	 * @param dataSet
+	 *            dataset with an attribute "Pixel<i>" for each pixel
+	 * @return instance belonging to the dataset
+	 */
+	public Instance toInstance(Sketch sketch, Instances dataSet) {
+		pixelize(sketch);
 
-		// Generate pixels
-		int[][] pixels = new int[heightWidth][heightWidth];
+		double[] values = new double[dataSet.numAttributes()];
+		Arrays.fill(values, Instance.missingValue());
+		writeFeatures(values, dataSet);
 
-		// Have a window around the pixel if we are expanding
-		int xWindow = (int) ((heightWidth / width) / 2.0);
-		int yWindow = (int) ((heightWidth / height) / 2.0);
+		Instance inst = new Instance(1, values);
+		inst.setDataset(dataSet);
 
-		for (Point p : scaledPoints) {
+		if (log.isDebugEnabled()) {
+			for (int y = 0; y < m_resolution; y++) {
+				StringBuilder holder = new StringBuilder();
+				for (int x = 0; x < m_resolution; x++) {
+					holder.append(m_pixels[y * m_resolution + x]);
+				}
+				log.debug(holder.toString());
+			}
+		}
 
-			int px = (int) p.getX();
-			int py = (int) p.getY();
+		return inst;
+	}
 
-			for (int x = Math.max(0, px - xWindow); x <= Math.min(
-					heightWidth - 1, px + xWindow); x++) {
+	/**
+	 * Creates an int array pixel map of a sketch.
+	 * 
+	 * @param sk
+	 *            sketch to pixelize.
+	 * @param heightWidth
+	 *            square height and width to scale to.
+	 * @return the pixelized version of the sketch, indexed by x and then y,
+	 *         where pixels with a value of 1 are filled, and 0 are empty.
+	 */
+	public static int[][] pixelizeSketch(Sketch sketch, int heightWidth) {
 
-				for (int y = Math.max(0, py - yWindow); y <= Math.min(
-						heightWidth - 1, py + yWindow); y++) {
+		StrokePixelator pixelator = pixelator(heightWidth);
+		pixelator.pixelize(sketch);
 
-					pixels[x][y] = 1;
-				}
+		int[][] pixels = new int[heightWidth][heightWidth];
+		for (int x = 0; x < heightWidth; x++) {
+			for (int y = 0; y < heightWidth; y++) {
+				pixels[x][y] = pixelator.m_pixels[y * heightWidth + x];
 			}
 		}
 
@@ -176,27 +340,7 @@ public class StrokePixelator {
 	public static Instance getInstance(Sketch sk, int heightWidth,
 			Instances dataSet) {
 
-		int[][] pixels = pixelizeSketch(sk, heightWidth);
-
-		Instance inst = new Instance(dataSet.numAttributes());
-
-		inst.setDataset(dataSet);
-
-		int count = 0;
-
-		for (int i = 0; i < pixels.length; i++) {
-			String holder = "";
-			for (int j = 0; j < pixels.length; j++) {
-				if (pixels[j][i] == 1)
-					inst.setValue(dataSet.attribute("Pixel" + count), 1);
-				else
-					inst.setValue(dataSet.attribute("Pixel" + count), -1);
-				holder += String.valueOf(pixels[j][i]);
-				count++;
-			}
-			log.debug(holder);
-		}
-		return inst;
+		return pixelator(heightWidth).toInstance(sk, dataSet);
 	}
 
 	/**
@@ -214,6 +358,105 @@ public class StrokePixelator {
 		return inst;
 	}
 
+	/**
+	 * Get the pixelator the static methods use on this thread
+	 * 
+	 * @param heightWidth
+	 *            height and width of the bitmap
+	 * @return pixelator that stamps points
+	 */
+	private static StrokePixelator pixelator(int heightWidth) {
+		StrokePixelator pixelator = s_pixelators.get();
+		if (pixelator == null || pixelator.m_resolution != heightWidth) {
+			pixelator = new StrokePixelator(heightWidth);
+			s_pixelators.set(pixelator);
+		}
+		return pixelator;
+	}
+
+	/**
+	 * Get the index of the attribute of each pixel, looking them up by name
+	 * only when the dataset changes
+	 * 
+	 * @param dataSet
+	 *            dataset
+	 * @return attribute indices
+	 */
+	private int[] getPixelAttributes(Instances dataSet) {
+		if (dataSet != m_dataSet) {
+			int[] attributes = new int[m_pixels.length];
+			for (int i = 0; i < attributes.length; i++) {
+				attributes[i] = dataSet.attribute("Pixel" + i).index();
+			}
+			m_pixelAttributes = attributes;
+			m_dataSet = dataSet;
+		}
+		return m_pixelAttributes;
+	}
+
+	/**
+	 * Fill the window around a pixel
+	 * 
+	 * @param px
+	 *            column
+	 * @param py
+	 *            row
+	 * @param xWindow
+	 *            half width of the window
+	 * @param yWindow
+	 *            half height of the window
+	 */
+	private void stamp(int px, int py, int xWindow, int yWindow) {
+		int maxX = Math.min(m_resolution - 1, px + xWindow);
+		int maxY = Math.min(m_resolution - 1, py + yWindow);
+		for (int y = Math.max(0, py - yWindow); y <= maxY; y++) {
+			int row = y * m_resolution;
+			for (int x = Math.max(0, px - xWindow); x <= maxX; x++) {
+				m_pixels[row + x] = 1;
+			}
+		}
+	}
+
+	/**
+	 * Fill the window around each pixel of a Bresenham line, not including
+	 * its first pixel
+	 * 
+	 * @param x0
+	 *            first column
+	 * @param y0
+	 *            first row
+	 * @param x1
+	 *            last column
+	 * @param y1
+	 *            last row
+	 * @param xWindow
+	 *            half width of the window
+	 * @param yWindow
+	 *            half height of the window
+	 */
+	private void drawLine(int x0, int y0, int x1, int y1, int xWindow,
+			int yWindow) {
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int err = dx + dy;
+		int x = x0;
+		int y = y0;
+		while (x != x1 || y != y1) {
+			int e2 = 2 * err;
+			if (e2 >= dy) {
+				err += dy;
+				x += sx;
+			}
+			if (e2 <= dx) {
+				err += dx;
+				y += sy;
+			}
+			stamp(x, y, xWindow, yWindow);
+		}
+	}
+
 	private static Stroke doublePoint(Stroke sk) {
 		Stroke doubledStroke = new Stroke();
 
@@ -0,0 +1,202 @@
+package srl.recognition.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative values with a fixed amount of
+ * memory. Values below {@value #SUB_BUCKETS} are counted exactly; larger
+ * values are counted in buckets that split each power of two into
+ * {@value #SUB_BUCKETS} equal parts, so percentiles are within 12.5% of the
+ * true value. Negative values are counted as 0.
+ * <p>
+ * Recording never blocks. Readers see each field as of some point during
+ * concurrent updates, which is accurate enough for monitoring.
+ */
+public class Histogram {
+
+	/**
+	 * Number of buckets per power of two
+	 */
+	public static final int SUB_BUCKETS = 8;
+
+	/**
+	 * log2 of {@link #SUB_BUCKETS}
+	 */
+	private static final int SUB_BITS = 3;
+
+	/**
+	 * Number of buckets needed to hold any long value
+	 */
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	/**
+	 * Number of values in each bucket
+	 */
+	private final AtomicLongArray m_buckets = new AtomicLongArray(NUM_BUCKETS);
+
+	/**
+	 * Number of values recorded
+	 */
+	private final AtomicLong m_count = new AtomicLong();
+
+	/**
+	 * Sum of the values recorded
+	 */
+	private final AtomicLong m_sum = new AtomicLong();
+
+	/**
+	 * Smallest value recorded
+	 */
+	private final AtomicLong m_min = new AtomicLong(Long.MAX_VALUE);
+
+	/**
+	 * Largest value recorded
+	 */
+	private final AtomicLong m_max = new AtomicLong(0L);
+
+	/**
+	 * Record a value
+	 *
+	 * @param value
+	 *            value to record
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		m_buckets.incrementAndGet(bucket(value));
+		m_count.incrementAndGet();
+		m_sum.addAndGet(value);
+		long min = m_min.get();
+		while (value < min && !m_min.compareAndSet(min, value))
+			min = m_min.get();
+		long max = m_max.get();
+		while (value > max && !m_max.compareAndSet(max, value))
+			max = m_max.get();
+	}
+
+	/**
+	 * Forget every value recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			m_buckets.set(i, 0L);
+		m_count.set(0L);
+		m_sum.set(0L);
+		m_min.set(Long.MAX_VALUE);
+		m_max.set(0L);
+	}
+
+	/**
+	 * Get the number of values recorded
+	 *
+	 * @return number of values
+	 */
+	public long getCount() {
+		return m_count.get();
+	}
+
+	/**
+	 * Get the sum of the values recorded
+	 *
+	 * @return sum of the values
+	 */
+	public long getSum() {
+		return m_sum.get();
+	}
+
+	/**
+	 * Get the smallest value recorded
+	 *
+	 * @return smallest value, or 0 if nothing has been recorded
+	 */
+	public long getMin() {
+		long min = m_min.get();
+		return min == Long.MAX_VALUE ? 0L : min;
+	}
+
+	/**
+	 * Get the largest value recorded
+	 *
+	 * @return largest value, or 0 if nothing has been recorded
+	 */
+	public long getMax() {
+		return m_max.get();
+	}
+
+	/**
+	 * Get the mean of the values recorded
+	 *
+	 * @return mean value, or 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		long count = m_count.get();
+		return count == 0 ? 0.0 : (double) m_sum.get() / count;
+	}
+
+	/**
+	 * Estimate a percentile of the values recorded
+	 *
+	 * @param percentile
+	 *            percentile to estimate, between 0 and 100
+	 * @return estimated value, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long count = m_count.get();
+		if (count == 0)
+			return 0L;
+		long rank = (long) Math.ceil(count * Math.min(100.0,
+				Math.max(0.0, percentile)) / 100.0);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += m_buckets.get(b);
+			if (seen >= rank) {
+				long low = lowerBound(b);
+				long mid = low + (lowerBound(b + 1) - low) / 2;
+				return Math.max(getMin(), Math.min(getMax(), mid));
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Get the bucket a value is counted in
+	 *
+	 * @param value
+	 *            non-negative value
+	 * @return bucket index
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Get the smallest value counted in a bucket
+	 *
+	 * @param bucket
+	 *            bucket index
+	 * @return smallest value in the bucket
+	 */
+	private static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		if (bucket >= NUM_BUCKETS)
+			return Long.MAX_VALUE;
+		int shift = bucket / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram[count=" + getCount() + ", min=" + getMin()
+				+ ", mean=" + String.format("%.1f", getMean()) + ", p50="
+				+ getPercentile(50) + ", p99=" + getPercentile(99) + ", max="
+				+ getMax() + "]";
+	}
+}
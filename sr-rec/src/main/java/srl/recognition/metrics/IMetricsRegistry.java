@@ -0,0 +1,78 @@
+package srl.recognition.metrics;
+
+import java.io.IOException;
+import java.util.SortedMap;
+
+/**
+ * Collects timings, sampled values and counts from the recognition pipeline.
+ * Recognizers report to the registry installed with
+ * {@link Metrics#setRegistry(IMetricsRegistry)} rather than to an instance of
+ * their own, so one registry sees every stage of a request.
+ * <p>
+ * Implementations must be thread-safe; recognizers in a
+ * {@link srl.recognition.recognizer.RecognizerPool} report concurrently.
+ * Metric names are dot separated, starting with the stage that reports them
+ * (e.g. {@code paleo.fit.Circle} or {@code cache.segmentation.hit}).
+ */
+public interface IMetricsRegistry {
+
+	/**
+	 * Record how long a stage took
+	 *
+	 * @param name
+	 *            name of the stage
+	 * @param nanos
+	 *            elapsed time, in nanoseconds
+	 */
+	public void recordTime(String name, long nanos);
+
+	/**
+	 * Record a sampled value, such as the size of an n-best list
+	 *
+	 * @param name
+	 *            name of the value
+	 * @param value
+	 *            value
+	 */
+	public void recordValue(String name, long value);
+
+	/**
+	 * Add to a counter, such as the number of cache hits
+	 *
+	 * @param name
+	 *            name of the counter
+	 * @param delta
+	 *            amount to add
+	 */
+	public void increment(String name, long delta);
+
+	/**
+	 * Get the current value of every counter
+	 *
+	 * @return counter values, by name
+	 */
+	public SortedMap<String, Long> getCounters();
+
+	/**
+	 * Get the distribution of every timing and sampled value. Timings are in
+	 * nanoseconds.
+	 *
+	 * @return histograms, by name
+	 */
+	public SortedMap<String, Histogram> getHistograms();
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	public void reset();
+
+	/**
+	 * Write every metric as tab separated text, one metric per line
+	 *
+	 * @param out
+	 *            where to write the metrics
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void export(Appendable out) throws IOException;
+}
@@ -0,0 +1,128 @@
+package srl.recognition.metrics;
+
+/**
+ * Entry point the recognizers report metrics through. Reporting is off until
+ * a registry is installed, and while it is off each call costs one volatile
+ * read: {@link #start()} does not read the clock, and {@link #stop(String, long)}
+ * returns at once. Timing a stage looks like this:
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * // ... stage ...
+ * Metrics.stop(&quot;paleo.features&quot;, start);
+ * </pre>
+ *
+ * Names passed in the hot path should be constants, or only be built once
+ * {@link #isEnabled()} is true, so nothing is allocated while reporting is
+ * off.
+ */
+public final class Metrics {
+
+	/**
+	 * Registry metrics are reported to, or null if reporting is off
+	 */
+	private static volatile IMetricsRegistry s_registry = null;
+
+	/**
+	 * Static methods only
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Install the registry metrics are reported to
+	 *
+	 * @param registry
+	 *            registry, or null to turn reporting off
+	 */
+	public static void setRegistry(IMetricsRegistry registry) {
+		s_registry = registry;
+	}
+
+	/**
+	 * Get the registry metrics are reported to
+	 *
+	 * @return registry, or null if reporting is off
+	 */
+	public static IMetricsRegistry getRegistry() {
+		return s_registry;
+	}
+
+	/**
+	 * Determines if metrics are being reported
+	 *
+	 * @return true if a registry is installed; else false
+	 */
+	public static boolean isEnabled() {
+		return s_registry != null;
+	}
+
+	/**
+	 * Start timing a stage
+	 *
+	 * @return start time to pass to {@link #stop(String, long)}, or 0 if
+	 *         reporting is off
+	 */
+	public static long start() {
+		return s_registry == null ? 0L : System.nanoTime();
+	}
+
+	/**
+	 * Finish timing a stage
+	 *
+	 * @param name
+	 *            name of the stage
+	 * @param start
+	 *            value returned by {@link #start()}
+	 */
+	public static void stop(String name, long start) {
+		IMetricsRegistry registry = s_registry;
+		if (registry != null && start != 0L)
+			registry.recordTime(name, System.nanoTime() - start);
+	}
+
+	/**
+	 * Finish timing a stage and start timing the next one, for stages that
+	 * run one after another
+	 *
+	 * @param name
+	 *            name of the stage that just finished
+	 * @param start
+	 *            value returned by {@link #start()} or the previous lap
+	 * @return start time of the next stage, or 0 if reporting is off
+	 */
+	public static long lap(String name, long start) {
+		IMetricsRegistry registry = s_registry;
+		if (registry == null || start == 0L)
+			return 0L;
+		long now = System.nanoTime();
+		registry.recordTime(name, now - start);
+		return now;
+	}
+
+	/**
+	 * Record a sampled value
+	 *
+	 * @param name
+	 *            name of the value
+	 * @param value
+	 *            value
+	 */
+	public static void record(String name, long value) {
+		IMetricsRegistry registry = s_registry;
+		if (registry != null)
+			registry.recordValue(name, value);
+	}
+
+	/**
+	 * Add one to a counter
+	 *
+	 * @param name
+	 *            name of the counter
+	 */
+	public static void increment(String name) {
+		IMetricsRegistry registry = s_registry;
+		if (registry != null)
+			registry.increment(name, 1L);
+	}
+}
@@ -0,0 +1,239 @@
+package srl.recognition.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link IMetricsRegistry}. Metrics are created the first time
+ * they are reported, and kept until {@link #reset()}.
+ * <p>
+ * {@link #export(Appendable)} writes a header line and then one line per
+ * metric:
+ *
+ * <pre>
+ * counter  name  value
+ * rate     name  hits/(hits+misses)   for counters ending in .hit or .miss
+ * time     name  count  sum  min  mean  p50  p90  p99  max   (microseconds)
+ * value    name  count  sum  min  mean  p50  p90  p99  max
+ * </pre>
+ */
+public class MetricsRegistry implements IMetricsRegistry {
+
+	/**
+	 * Suffix of counters that count cache hits
+	 */
+	public static final String HIT = ".hit";
+
+	/**
+	 * Suffix of counters that count cache misses
+	 */
+	public static final String MISS = ".miss";
+
+	/**
+	 * Counters, by name
+	 */
+	private final ConcurrentMap<String, AtomicLong> m_counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Histograms of timings, in nanoseconds, by name
+	 */
+	private final ConcurrentMap<String, Histogram> m_times = new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * Histograms of sampled values, by name
+	 */
+	private final ConcurrentMap<String, Histogram> m_values = new ConcurrentHashMap<String, Histogram>();
+
+	@Override
+	public void recordTime(String name, long nanos) {
+		histogram(m_times, name).record(nanos);
+	}
+
+	@Override
+	public void recordValue(String name, long value) {
+		histogram(m_values, name).record(value);
+	}
+
+	@Override
+	public void increment(String name, long delta) {
+		AtomicLong counter = m_counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = m_counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		counter.addAndGet(delta);
+	}
+
+	@Override
+	public SortedMap<String, Long> getCounters() {
+		SortedMap<String, Long> counters = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> e : m_counters.entrySet())
+			counters.put(e.getKey(), e.getValue().get());
+		return counters;
+	}
+
+	@Override
+	public SortedMap<String, Histogram> getHistograms() {
+		SortedMap<String, Histogram> histograms = new TreeMap<String, Histogram>(
+				m_values);
+		histograms.putAll(m_times);
+		return histograms;
+	}
+
+	/**
+	 * Get the histogram of a timing
+	 *
+	 * @param name
+	 *            name of the stage
+	 * @return histogram of the stage's times, in nanoseconds, or null if it
+	 *         has not been recorded
+	 */
+	public Histogram getTime(String name) {
+		return m_times.get(name);
+	}
+
+	/**
+	 * Get the histogram of a sampled value
+	 *
+	 * @param name
+	 *            name of the value
+	 * @return histogram of the value, or null if it has not been recorded
+	 */
+	public Histogram getValue(String name) {
+		return m_values.get(name);
+	}
+
+	/**
+	 * Get the value of a counter
+	 *
+	 * @param name
+	 *            name of the counter
+	 * @return value of the counter, or 0 if it has not been incremented
+	 */
+	public long getCounter(String name) {
+		AtomicLong counter = m_counters.get(name);
+		return counter == null ? 0L : counter.get();
+	}
+
+	/**
+	 * Get the hit rate of a cache from its {@value #HIT} and {@value #MISS}
+	 * counters
+	 *
+	 * @param name
+	 *            name of the cache, e.g. {@code cache.segmentation}
+	 * @return fraction of lookups that were hits, or 0 if there were none
+	 */
+	public double getHitRate(String name) {
+		long hits = getCounter(name + HIT);
+		long total = hits + getCounter(name + MISS);
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	@Override
+	public void reset() {
+		m_counters.clear();
+		m_times.clear();
+		m_values.clear();
+	}
+
+	@Override
+	public void export(Appendable out) throws IOException {
+		out.append("type\tname\tcount\tsum\tmin\tmean\tp50\tp90\tp99\tmax\n");
+		SortedMap<String, Long> counters = getCounters();
+		for (Map.Entry<String, Long> e : counters.entrySet())
+			out.append("counter\t").append(e.getKey()).append('\t')
+					.append(Long.toString(e.getValue())).append('\n');
+		SortedSet<String> caches = new TreeSet<String>();
+		for (String name : counters.keySet()) {
+			if (name.endsWith(HIT))
+				caches.add(name.substring(0, name.length() - HIT.length()));
+			else if (name.endsWith(MISS))
+				caches.add(name.substring(0, name.length() - MISS.length()));
+		}
+		for (String cache : caches) {
+			out.append("rate\t").append(cache).append('\t')
+					.append(String.format("%.4f", getHitRate(cache)))
+					.append('\n');
+		}
+		for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(
+				m_times).entrySet())
+			exportHistogram(out, "time", e.getKey(), e.getValue(), 1000L);
+		for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(
+				m_values).entrySet())
+			exportHistogram(out, "value", e.getKey(), e.getValue(), 1L);
+	}
+
+	/**
+	 * Write one line describing a histogram
+	 *
+	 * @param out
+	 *            where to write the line
+	 * @param type
+	 *            type of metric
+	 * @param name
+	 *            name of the metric
+	 * @param h
+	 *            histogram
+	 * @param scale
+	 *            amount to divide every value by
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void exportHistogram(Appendable out, String type,
+			String name, Histogram h, long scale) throws IOException {
+		out.append(type).append('\t').append(name).append('\t')
+				.append(Long.toString(h.getCount())).append('\t')
+				.append(Long.toString(h.getSum() / scale)).append('\t')
+				.append(Long.toString(h.getMin() / scale)).append('\t')
+				.append(String.format("%.1f", h.getMean() / scale))
+				.append('\t')
+				.append(Long.toString(h.getPercentile(50) / scale))
+				.append('\t')
+				.append(Long.toString(h.getPercentile(90) / scale))
+				.append('\t')
+				.append(Long.toString(h.getPercentile(99) / scale))
+				.append('\t').append(Long.toString(h.getMax() / scale))
+				.append('\n');
+	}
+
+	/**
+	 * Get a histogram, creating it if needed
+	 *
+	 * @param histograms
+	 *            histograms to look in
+	 * @param name
+	 *            name of the histogram
+	 * @return histogram
+	 */
+	private static Histogram histogram(
+			ConcurrentMap<String, Histogram> histograms, String name) {
+		Histogram h = histograms.get(name);
+		if (h == null) {
+			Histogram created = new Histogram();
+			h = histograms.putIfAbsent(name, created);
+			if (h == null)
+				h = created;
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			export(sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+		}
+		return sb.toString();
+	}
+}
@@ -125,7 +125,7 @@ public class CircleFit extends Fit implements ICircularFit {
 			double centerDis = 0.0, radDiff = 0.0;
 			for (int i = 0; i < subStrokes.size(); i++) {
 				if (i != subStrokes.size() - 1) {
-					OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+					OrigPaleoSketchRecognizer paleo = SubstrokeFitMemo.recognizer(
 							subStrokes.get(i), new PaleoConfig());
 					CircleFit cf = paleo.getCircleFit();
 					centerDis += m_ellipseFit.getCenter().distance(
@@ -134,7 +134,7 @@ public class CircleFit extends Fit implements ICircularFit {
 					subErr += cf.getError();
 				} else {
 					// fit last substroke to an arc (part of a circle)
-					OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+					OrigPaleoSketchRecognizer paleo = SubstrokeFitMemo.recognizer(
 							subStrokes.get(i), new PaleoConfig());
 					ArcFit af = paleo.getArcFit();
 					centerDis += m_ellipseFit.getCenter().distance(
@@ -43,6 +43,7 @@ import org.openawt.svg.SVGGroup;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.core.util.IsAConstants;
+import srl.recognition.recognizer.Deadline;
 import srl.segmentation.paleo.ComplexShapeSegmenter;
 
 
@@ -87,6 +88,22 @@ public class ComplexFit extends Fit {
 	 *            features of the stroke
 	 */
 	public ComplexFit(StrokeFeatures features, PaleoConfig config) {
+		this(features, config, Deadline.NONE);
+	}
+
+	/**
+	 * Fit stroke to a complex fit. Once the deadline passes, the remaining
+	 * sub-strokes only get the fits that are computed regardless of time.
+	 * 
+	 * @param features
+	 *            features of the stroke
+	 * @param config
+	 *            paleo config
+	 * @param deadline
+	 *            time by which the fit should be finished
+	 */
+	public ComplexFit(StrokeFeatures features, PaleoConfig config,
+			Deadline deadline) {
 		super(features);
 		m_config = (PaleoConfig) config.clone();
 		m_config.setComplexTestOn(false);
@@ -111,12 +128,12 @@ public class ComplexFit extends Fit {
 			m_config.setArrowTestOn(false);
 		}
 
-		// compute complex fit
-		for (Stroke s : m_subStrokes) {
-			OrigPaleoSketchRecognizer r = new OrigPaleoSketchRecognizer(s,
-					m_config);
-			r.recognize();
-			List<Fit> fits = r.getFits();
+		// compute complex fit; substrokes that were already recognized while
+		// fitting this stroke are swapped for the stroke their fits refer to
+		for (int i = 0; i < m_subStrokes.size(); i++) {
+			Stroke s = SubstrokeFitMemo.canonical(m_subStrokes.get(i));
+			m_subStrokes.set(i, s);
+			List<Fit> fits = SubstrokeFitMemo.fits(s, m_config, deadline);
 			if (fits.size() > 0) {
 				m_subFits.add(fits.get(0));
 				m_subShapes.add(fits.get(0).getShape());
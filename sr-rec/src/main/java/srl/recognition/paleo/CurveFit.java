@@ -35,11 +35,13 @@
  */
 package srl.recognition.paleo;
 
+import java.util.List;
+
 import org.openawt.geom.GeneralPath;
 import org.openawt.geom.Point2D;
 import org.openawt.svg.SVGPath;
 
-import Jama.Matrix;
+import srl.core.sketch.Point;
 
 /**
  * Fits stroke to an n-degree Bezier curve; currently this is limited to 5th
@@ -54,6 +56,19 @@ public class CurveFit extends Fit {
 	 */
 	protected static final boolean m_useOrigStrokesToBeautify = true;
 
+	/**
+	 * Binomial coefficients C(n, k) for n up to 12 (the largest n for which
+	 * {@link #binomialCoeff(int, int)} does not overflow)
+	 */
+	protected static final double[][] BINOMIAL = new double[13][];
+	static {
+		for (int n = 0; n < BINOMIAL.length; n++) {
+			BINOMIAL[n] = new double[n + 1];
+			for (int k = 0; k <= n; k++)
+				BINOMIAL[n][k] = binomialCoeff(n, k);
+		}
+	}
+
 	/**
 	 * Curve fitting error
 	 */
@@ -97,16 +112,31 @@ public class CurveFit extends Fit {
 		double minErr = Double.MAX_VALUE;
 		int minErrDegree = m_minDegree;
 
-		// try to find best curve fit within the range of degrees given
+		// the parameterization and scratch space are shared by every degree
+		double[] t = getParameters();
+		int size = m_maxDegree + 1;
+		double[] a = new double[size * size];
+		double[] px = new double[size];
+		double[] py = new double[size];
+		double[] basis = new double[size];
+		double[] bestX = new double[size];
+		double[] bestY = new double[size];
+
+		// try to find best curve fit within the range of degrees given;
+		// errors are compared as sums of squares, and a degree is abandoned
+		// as soon as its sum passes the best one found so far
 		for (m_degree = m_minDegree; m_degree <= m_maxDegree; m_degree++) {
-			calcControlPts();
+			if (t == null || !solveControlPts(t, m_degree, a, px, py))
+				m_curveFailed = true;
 			if (m_curveFailed)
 				continue;
-			m_err = calcError();
-			if (m_err < minErr) {
-				minErr = m_err;
+			double err = calcSquaredError(t, m_degree, px, py, basis, minErr);
+			if (err < minErr) {
+				minErr = err;
 				minErrDegree = m_degree;
 				allFailed = false;
+				System.arraycopy(px, 0, bestX, 0, m_degree + 1);
+				System.arraycopy(py, 0, bestY, 0, m_degree + 1);
 			}
 		}
 
@@ -117,8 +147,11 @@ public class CurveFit extends Fit {
 //			log.debug("CurveFit: passed = " + m_passed + "(" + m_fail
 //					+ ")  Failed to calculate control points!");
 		} else {
-			m_err = minErr;
+			m_err = Math.sqrt(minErr) / m_features.getStrokeLength();
 			m_degree = minErrDegree;
+			m_P = new Point2D[m_degree + 1];
+			for (int i = 0; i <= m_degree; i++)
+				m_P[i] = new Point2D.Double(bestX[i], bestY[i]);
 
 			// test 1: stroke must not be closed
 			if (m_features.isClosed()) {
@@ -186,13 +219,13 @@ public class CurveFit extends Fit {
 				return;
 			curve.moveTo((float) m_P[0].getX(),
 					(float) m_P[0].getY());
+			double[] basis = new double[degree + 1];
 			while (t < 1.0) {
 				double x = 0.0, y = 0.0;
+				bernstein(t, degree, basis, 0);
 				for (int i = 0; i < m_P.length; i++) {
-					double b = Math.pow(1 - t, degree - i) * Math.pow(t, i)
-							* binomialCoeff(degree, i);
-					x += m_P[i].getX() * b;
-					y += m_P[i].getY() * b;
+					x += m_P[i].getX() * basis[i];
+					y += m_P[i].getY() * basis[i];
 				}
 				curve.lineTo((float) x, (float) y);
 				t += delta;
@@ -217,7 +250,7 @@ public class CurveFit extends Fit {
 	}
 
 	/**
-	 * Calculate the control points of the Bezier curve
+	 * Calculate the control points of the Bezier curve of degree m_degree
 	 * 
 	 * Note: Bezier curve formula B(t) = P0*(1-t)^3 + P1*3t(1-t)^2 +
 	 * P2*3t^2(1-t) + P3t^3
@@ -226,63 +259,204 @@ public class CurveFit extends Fit {
 	 * are the control points
 	 */
 	protected void calcControlPts() {
-		double[] lengthSoFar = m_features.getLengthSoFar();
-		Point2D[] B = new Point2D[m_degree + 1];
-		double[] tvals = new double[m_degree + 1];
-		for (int i = 0; i < tvals.length; i++)
-			tvals[i] = Double.NaN;
-		m_P = new Point2D[m_degree + 1];
-
-		// control point for t = 0
-		B[0] = new Point2D.Double(m_features.getPoints().get(0).getX(),
-				m_features.getPoints().get(0).getY());
-		tvals[0] = 0.0;
-		if (lengthSoFar == null) {
+		double[] t = getParameters();
+		int size = m_degree + 1;
+		double[] px = new double[size];
+		double[] py = new double[size];
+		if (t == null
+				|| !solveControlPts(t, m_degree, new double[size * size], px,
+						py)) {
 			m_curveFailed = true;
 			return;
 		}
-		// find points closest to t = 1/degree and t = (degree-1)/degree
-		for (int i = 0; i < lengthSoFar.length; i++) {
-			for (int d = 1; d < m_degree; d++) {
-				if (lengthSoFar[i] / m_features.getStrokeLength() > ((double) d / (double) m_degree)
-						&& Double.isNaN(tvals[d])) {
-					tvals[d] = lengthSoFar[i] / m_features.getStrokeLength();
-					B[d] = new Point2D.Double(m_features.getPoints().get(i)
-							.getX(), m_features.getPoints().get(i).getY());
-				}
+		m_P = new Point2D[size];
+		for (int i = 0; i < size; i++)
+			m_P[i] = new Point2D.Double(px[i], py[i]);
+	}
+
+	/**
+	 * Get the chord-length parameterization of the stroke: the fraction of
+	 * the stroke length drawn at each point
+	 * 
+	 * @return parameter value of each point, or null if the stroke has no
+	 *         length values
+	 */
+	protected double[] getParameters() {
+		double[] lengthSoFar = m_features.getLengthSoFar();
+		if (lengthSoFar == null)
+			return null;
+		double strokeLength = m_features.getStrokeLength();
+		double[] t = new double[lengthSoFar.length];
+		for (int i = 0; i < t.length; i++)
+			t[i] = lengthSoFar[i] / strokeLength;
+		return t;
+	}
+
+	/**
+	 * Solve for the control points of the Bezier curve of the given degree
+	 * that passes through the first point, the last point, and the first
+	 * point past each t = d/degree. The (degree+1)x(degree+1) system is solved
+	 * for x and y together by Gaussian elimination with partial pivoting.
+	 * 
+	 * @param t
+	 *            parameter value of each point
+	 * @param degree
+	 *            degree of the curve
+	 * @param a
+	 *            scratch space for the system, at least (degree+1)^2 long
+	 * @param px
+	 *            filled with the x values of the control points
+	 * @param py
+	 *            filled with the y values of the control points
+	 * @return false if some sample point could not be found or the system is
+	 *         singular
+	 */
+	protected boolean solveControlPts(double[] t, int degree, double[] a,
+			double[] px, double[] py) {
+		int size = degree + 1;
+		List<Point> points = m_features.getPoints();
+		if (t.length == 0 || points.isEmpty())
+			return false;
+
+		// sample points: the first point, the first point past each d/degree
+		// (the parameter never decreases), and the last point
+		int i = 0;
+		for (int d = 0; d <= degree; d++) {
+			double tv;
+			Point p;
+			if (d == 0) {
+				tv = 0.0;
+				p = points.get(0);
+			} else if (d == degree) {
+				tv = 1.0;
+				p = points.get(m_features.getNumPoints() - 1);
+			} else {
+				double target = (double) d / (double) degree;
+				while (i < t.length && !(t[i] > target))
+					i++;
+				if (i == t.length)
+					return false;
+				tv = t[i];
+				p = points.get(i);
+			}
+			bernstein(tv, degree, a, d * size);
+			px[d] = p.getX();
+			py[d] = p.getY();
+		}
 
+		// forward elimination
+		for (int col = 0; col < size; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < size; row++)
+				if (Math.abs(a[row * size + col]) > Math.abs(a[pivot * size
+						+ col]))
+					pivot = row;
+			double max = a[pivot * size + col];
+			if (max == 0.0 || Double.isNaN(max))
+				return false;
+			if (pivot != col) {
+				for (int k = col; k < size; k++) {
+					double tmp = a[col * size + k];
+					a[col * size + k] = a[pivot * size + k];
+					a[pivot * size + k] = tmp;
+				}
+				double tmp = px[col];
+				px[col] = px[pivot];
+				px[pivot] = tmp;
+				tmp = py[col];
+				py[col] = py[pivot];
+				py[pivot] = tmp;
+			}
+			for (int row = col + 1; row < size; row++) {
+				double f = a[row * size + col] / a[col * size + col];
+				if (f == 0.0)
+					continue;
+				for (int k = col; k < size; k++)
+					a[row * size + k] -= f * a[col * size + k];
+				px[row] -= f * px[col];
+				py[row] -= f * py[col];
 			}
 		}
-		// control point for t = 1
-		B[m_degree] = new Point2D.Double(m_features.getPoints()
-				.get(m_features.getNumPoints() - 1).getX(), m_features
-				.getPoints().get(m_features.getNumPoints() - 1).getY());
-		tvals[m_degree] = 1.0;
-
-		// find control points
-		Matrix A = new Matrix(m_degree + 1, m_degree + 1);
-		for (int i = 0; i < m_degree + 1; i++) {
-			double t = tvals[i];
-			for (int j = 0; j < m_degree + 1; j++) {
-				double val = Math.pow(1 - t, m_degree - j) * Math.pow(t, j)
-						* binomialCoeff(m_degree, j);
-				A.set(i, j, val);
+
+		// back substitution
+		for (int row = size - 1; row >= 0; row--) {
+			double x = px[row], y = py[row];
+			for (int k = row + 1; k < size; k++) {
+				x -= a[row * size + k] * px[k];
+				y -= a[row * size + k] * py[k];
 			}
+			px[row] = x / a[row * size + row];
+			py[row] = y / a[row * size + row];
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the Bernstein basis values of the given degree at t. Powers of
+	 * t and 1-t are built up by multiplication rather than with Math.pow.
+	 * 
+	 * @param t
+	 *            parameter value
+	 * @param degree
+	 *            degree of the basis
+	 * @param out
+	 *            array to fill with the degree+1 basis values
+	 * @param offset
+	 *            index in out of the first value
+	 */
+	protected static void bernstein(double t, int degree, double[] out,
+			int offset) {
+		// out[j] = t^j, then multiplied by C(degree, j) (1-t)^(degree-j)
+		double u = 1 - t;
+		double tp = 1.0;
+		for (int j = 0; j <= degree; j++) {
+			out[offset + j] = tp;
+			tp *= t;
+		}
+		double up = 1.0;
+		for (int j = degree; j >= 0; j--) {
+			out[offset + j] *= up * BINOMIAL[degree][j];
+			up *= u;
 		}
-		Matrix bX = new Matrix(m_degree + 1, 1);
-		Matrix bY = new Matrix(m_degree + 1, 1);
-		try {
-			for (int i = 0; i < m_degree + 1; i++) {
-				bX.set(i, 0, B[i].getX());
-				bY.set(i, 0, B[i].getY());
+	}
+
+	/**
+	 * Calculate the sum of squared distances between the stroke points and
+	 * the curve with the given control points
+	 * 
+	 * @param t
+	 *            parameter value of each point
+	 * @param degree
+	 *            degree of the curve
+	 * @param px
+	 *            x values of the control points
+	 * @param py
+	 *            y values of the control points
+	 * @param basis
+	 *            scratch space for the basis values, at least degree+1 long
+	 * @param bound
+	 *            the sum is not completed once it exceeds this value
+	 * @return sum of squared distances, or a partial sum greater than bound
+	 */
+	protected double calcSquaredError(double[] t, int degree, double[] px,
+			double[] py, double[] basis, double bound) {
+		List<Point> points = m_features.getPoints();
+		double err = 0.0;
+		for (int i = 0; i < t.length; i++) {
+			bernstein(t[i], degree, basis, 0);
+			double x = 0.0, y = 0.0;
+			for (int j = 0; j <= degree; j++) {
+				x += px[j] * basis[j];
+				y += py[j] * basis[j];
 			}
-			Matrix XX = A.solve(bX);
-			Matrix YY = A.solve(bY);
-			for (int i = 0; i < m_degree + 1; i++)
-				m_P[i] = new Point2D.Double(XX.get(i, 0), YY.get(i, 0));
-		} catch (Exception e) {
-			m_curveFailed = true;
+			Point p = points.get(i);
+			double dx = p.getX() - x;
+			double dy = p.getY() - y;
+			err += dx * dx + dy * dy;
+			if (err > bound)
+				return err;
 		}
+		return err;
 	}
 
 	/**
@@ -316,21 +490,15 @@ public class CurveFit extends Fit {
 	 * @return error
 	 */
 	public double calcError() {
-		double err = 0.0;
 		int degree = m_P.length - 1;
-		double[] length = m_features.getLengthSoFar();
-		for (int i = 0; i < length.length; i++) {
-			double t = length[i] / m_features.getStrokeLength();
-			double x = 0.0, y = 0.0;
-			for (int j = 0; j < m_P.length; j++) {
-				double b = Math.pow(1 - t, degree - j) * Math.pow(t, j)
-						* binomialCoeff(degree, j);
-				x += m_P[j].getX() * b;
-				y += m_P[j].getY() * b;
-			}
-			err += (m_features.getPoints().get(i).distance(x, y) * m_features
-					.getPoints().get(i).distance(x, y));
+		double[] px = new double[degree + 1];
+		double[] py = new double[degree + 1];
+		for (int j = 0; j <= degree; j++) {
+			px[j] = m_P[j].getX();
+			py[j] = m_P[j].getY();
 		}
+		double err = calcSquaredError(getParameters(), degree, px, py,
+				new double[degree + 1], Double.POSITIVE_INFINITY);
 		return Math.sqrt(err) / m_features.getStrokeLength();
 	}
 
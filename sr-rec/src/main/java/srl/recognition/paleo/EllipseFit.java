@@ -179,7 +179,7 @@ public class EllipseFit extends Fit {
 			double subErr = 0.0;
 			double centerDis = 0.0, axisDiff = 0.0;
 			for (int i = 0; i < subStrokes.size() - 1; i++) {
-				OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+				OrigPaleoSketchRecognizer paleo = SubstrokeFitMemo.recognizer(
 						subStrokes.get(i), new PaleoConfig());
 				EllipseFit ef = paleo.getEllipseFit();
 				if (ef.getFailCode() != 0) {
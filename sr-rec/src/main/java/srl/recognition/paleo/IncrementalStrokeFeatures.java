@@ -0,0 +1,543 @@
+/**
+ * IncrementalStrokeFeatures.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+
+/**
+ * Stroke features that are updated one point at a time while the stroke is
+ * being drawn. Direction, curvature, speed, length, rotation and bounds are
+ * kept up to date in constant time per point, so a provisional fit can be
+ * computed at any time; {@link #toStrokeFeatures()} then hands the
+ * accumulated values to a regular {@link StrokeFeatures} without recomputing
+ * them.
+ * <p>
+ * The values match what {@link StrokeFeatures} computes for the same points
+ * before tails are removed.
+ */
+public class IncrementalStrokeFeatures {
+
+	/**
+	 * Initial capacity of the per point buffers
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Stroke made of the original points
+	 */
+	private Stroke m_stroke;
+
+	/**
+	 * Copies of the points with consecutive duplicates removed
+	 */
+	private List<Point> m_points;
+
+	/**
+	 * Flag specifying whether the direction graph should be smoothed
+	 */
+	private boolean m_smoothing;
+
+	/**
+	 * Direction of each segment
+	 */
+	private double[] m_dir;
+
+	/**
+	 * Direction of each segment, without unwrapping
+	 */
+	private double[] m_dirNoShift;
+
+	/**
+	 * Length of each segment
+	 */
+	private double[] m_segLength;
+
+	/**
+	 * Stroke length at the end of each segment
+	 */
+	private double[] m_lengthSoFar;
+
+	/**
+	 * Speed along each segment
+	 */
+	private double[] m_speed;
+
+	/**
+	 * Absolute curvature at each interior point
+	 */
+	private double[] m_curvature;
+
+	/**
+	 * Signed curvature at each interior point
+	 */
+	private double[] m_curvNoAbs;
+
+	/**
+	 * Running sum of the absolute curvature
+	 */
+	private double[] m_totalCurvature;
+
+	/**
+	 * Maximum curvature (ignoring the first interior point)
+	 */
+	private double m_maxCurv;
+
+	/**
+	 * Index of the maximum curvature
+	 */
+	private int m_maxCurvIndex;
+
+	/**
+	 * Indices of the largest and smallest direction values
+	 */
+	private int m_maxDirIndex, m_minDirIndex;
+
+	/**
+	 * Largest change in direction between consecutive segments
+	 */
+	private double m_maxDirChange;
+
+	/**
+	 * Sum of the changes in direction between consecutive segments
+	 */
+	private double m_sumDirChange;
+
+	/**
+	 * Total rotation of the stroke
+	 */
+	private double m_totalRotation;
+
+	/**
+	 * Bounds of the points
+	 */
+	private double m_minX, m_minY, m_maxX, m_maxY;
+
+	/**
+	 * Create an empty set of features
+	 * 
+	 * @param smoothDirGraph
+	 *            flag specifying whether or not direction graph smoothing
+	 *            (through median filtering) should take place once the stroke
+	 *            is finished
+	 */
+	public IncrementalStrokeFeatures(boolean smoothDirGraph) {
+		m_smoothing = smoothDirGraph;
+		m_stroke = new Stroke();
+		m_points = new ArrayList<Point>();
+		m_dir = new double[INITIAL_CAPACITY];
+		m_dirNoShift = new double[INITIAL_CAPACITY];
+		m_segLength = new double[INITIAL_CAPACITY];
+		m_lengthSoFar = new double[INITIAL_CAPACITY];
+		m_speed = new double[INITIAL_CAPACITY];
+		m_curvature = new double[INITIAL_CAPACITY];
+		m_curvNoAbs = new double[INITIAL_CAPACITY];
+		m_totalCurvature = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Add the next point of the stroke
+	 * 
+	 * @param p
+	 *            point to add
+	 */
+	public void addPoint(Point p) {
+		m_stroke.addPoint(p);
+		Point copy = p.clone();
+		int n = m_points.size();
+
+		if (n == 0) {
+			m_points.add(copy);
+			m_minX = m_maxX = copy.getX();
+			m_minY = m_maxY = copy.getY();
+			return;
+		}
+
+		// consecutive points in the same location are dropped
+		Point last = m_points.get(n - 1);
+		if (last.getX() == copy.getX() && last.getY() == copy.getY())
+			return;
+		m_points.add(copy);
+		n++;
+
+		// fix up equal time stamps the same way StrokeFeatures does
+		if (copy.getTime() == last.getTime()) {
+			if (n == 2) {
+				m_points.set(1, new Point(copy.getX(), copy.getY(), copy
+						.getTime() + 1));
+			} else {
+				m_points.set(n - 2, new Point(last.getX(), last.getY(),
+						m_points.get(n - 3).getTime() + copy.getTime() / 2));
+				m_speed[n - 3] = speed(n - 3);
+			}
+		}
+
+		ensureCapacity(n);
+		updateSegment(n - 2);
+		if (n >= 3) {
+			updateCurvature(n - 3);
+			updateRotation(n - 2);
+		}
+		updateBounds(m_points.get(n - 1));
+	}
+
+	/**
+	 * Compute the values of the segment ending at the newest point
+	 * 
+	 * @param i
+	 *            segment index
+	 */
+	private void updateSegment(int i) {
+		Point a = m_points.get(i);
+		Point b = m_points.get(i + 1);
+		double dx = b.getX() - a.getX();
+		double dy = b.getY() - a.getY();
+		m_dir[i] = Math.atan2(dy, dx);
+		m_dirNoShift[i] = m_dir[i];
+		while ((i > 0) && (m_dir[i] - m_dir[i - 1] > Math.PI))
+			m_dir[i] = m_dir[i] - 2 * Math.PI;
+		while ((i > 0) && (m_dir[i - 1] - m_dir[i] > Math.PI))
+			m_dir[i] = m_dir[i] + 2 * Math.PI;
+		m_segLength[i] = Math.sqrt(dy * dy + dx * dx);
+		m_lengthSoFar[i] = (i == 0) ? m_segLength[i] : m_lengthSoFar[i - 1]
+				+ m_segLength[i];
+		m_speed[i] = speed(i);
+
+		if (i == 0) {
+			m_maxDirIndex = 0;
+			m_minDirIndex = 0;
+		} else {
+			if (m_dir[i] > m_dir[m_maxDirIndex])
+				m_maxDirIndex = i;
+			if (m_dir[i] < m_dir[m_minDirIndex])
+				m_minDirIndex = i;
+			double dc = Math.abs(m_dir[i - 1] - m_dir[i]);
+			if (dc > m_maxDirChange)
+				m_maxDirChange = dc;
+			m_sumDirChange += dc;
+		}
+	}
+
+	/**
+	 * Compute the curvature at the interior point between two segments
+	 * 
+	 * @param i
+	 *            index of the first of the two segments
+	 */
+	private void updateCurvature(int i) {
+		double len = m_segLength[i] + m_segLength[i + 1];
+		m_curvature[i] = Math.abs(m_dir[i + 1] - m_dir[i]) / len;
+		m_curvNoAbs[i] = (m_dir[i + 1] - m_dir[i]) / len;
+		if (m_curvature[i] > m_maxCurv && i != 0) {
+			m_maxCurv = m_curvature[i];
+			m_maxCurvIndex = i;
+		}
+		m_totalCurvature[i] = (i == 0) ? m_curvature[i]
+				: m_totalCurvature[i - 1] + m_curvature[i];
+	}
+
+	/**
+	 * Add the turning angle at an interior point to the total rotation
+	 * 
+	 * @param i
+	 *            index of the interior point
+	 */
+	private void updateRotation(int i) {
+		Point prev = m_points.get(i - 1);
+		Point cur = m_points.get(i);
+		Point next = m_points.get(i + 1);
+		double deltaX = next.getX() - cur.getX();
+		double deltaY = next.getY() - cur.getY();
+		double deltaX1 = cur.getX() - prev.getX();
+		double deltaY1 = cur.getY() - prev.getY();
+		double cross = deltaX * deltaY1 - deltaX1 * deltaY;
+		double dot = deltaX * deltaX1 + deltaY * deltaY1;
+		if (dot == 0) {
+			if (cross < 0)
+				m_totalRotation += Math.PI / -2.0;
+			else if (cross > 0)
+				m_totalRotation += Math.PI / 2.0;
+		} else
+			m_totalRotation += Math.atan2(cross, dot);
+	}
+
+	/**
+	 * Grow the bounds to include a point
+	 * 
+	 * @param p
+	 *            point
+	 */
+	private void updateBounds(Point p) {
+		m_minX = Math.min(m_minX, p.getX());
+		m_maxX = Math.max(m_maxX, p.getX());
+		m_minY = Math.min(m_minY, p.getY());
+		m_maxY = Math.max(m_maxY, p.getY());
+	}
+
+	/**
+	 * Speed along a segment, in pixels per millisecond
+	 * 
+	 * @param i
+	 *            segment index
+	 * @return speed
+	 */
+	private double speed(int i) {
+		long dt = m_points.get(i + 1).getTime() - m_points.get(i).getTime();
+		return dt == 0 ? 0.0 : m_segLength[i] / dt;
+	}
+
+	/**
+	 * Make sure the buffers can hold the values for the given number of
+	 * points
+	 * 
+	 * @param numPoints
+	 *            number of points
+	 */
+	private void ensureCapacity(int numPoints) {
+		if (numPoints - 1 <= m_dir.length)
+			return;
+		int capacity = m_dir.length * 2;
+		m_dir = Arrays.copyOf(m_dir, capacity);
+		m_dirNoShift = Arrays.copyOf(m_dirNoShift, capacity);
+		m_segLength = Arrays.copyOf(m_segLength, capacity);
+		m_lengthSoFar = Arrays.copyOf(m_lengthSoFar, capacity);
+		m_speed = Arrays.copyOf(m_speed, capacity);
+		m_curvature = Arrays.copyOf(m_curvature, capacity);
+		m_curvNoAbs = Arrays.copyOf(m_curvNoAbs, capacity);
+		m_totalCurvature = Arrays.copyOf(m_totalCurvature, capacity);
+	}
+
+	/**
+	 * Build the full Paleo features for the stroke drawn so far. Only tail
+	 * removal and the whole-stroke features are computed; the derivative
+	 * values are copied from this object.
+	 * 
+	 * @return stroke features
+	 */
+	public StrokeFeatures toStrokeFeatures() {
+		if (m_points.isEmpty())
+			throw new IllegalStateException("no points have been added");
+		int n = m_points.size();
+		StrokeFeatures features = new StrokeFeatures(m_stroke,
+				new ArrayList<Point>(m_points), m_smoothing);
+		if (m_smoothing || n < 3) {
+			features.computeValues();
+		} else {
+			features.m_dir = Arrays.copyOf(m_dir, n - 1);
+			features.m_dirNoShift = Arrays.copyOf(m_dirNoShift, n - 1);
+			features.m_segLength = Arrays.copyOf(m_segLength, n - 1);
+			features.m_lengthSoFar = Arrays.copyOf(m_lengthSoFar, n - 1);
+			features.m_2lengthSoFar = Arrays.copyOfRange(m_lengthSoFar, 1,
+					n - 1);
+			features.m_curvature = Arrays.copyOf(m_curvature, n - 2);
+			features.m_curvNoAbs = Arrays.copyOf(m_curvNoAbs, n - 2);
+			features.m_totalCurvature = Arrays.copyOf(m_totalCurvature, n - 2);
+			features.m_strokelength = m_lengthSoFar[n - 2];
+			features.m_max_curv = m_maxCurv;
+			features.m_max_curv_index = m_maxCurvIndex;
+			features.m_avgCurvature = m_totalCurvature[n - 3] / (n - 2);
+			features.m_maxCurvToAvgCurvRatio = m_maxCurv
+					/ features.m_avgCurvature;
+		}
+		features.finishFromValues();
+		return features;
+	}
+
+	/**
+	 * Get the stroke made of the points added so far
+	 * 
+	 * @return stroke
+	 */
+	public Stroke getOrigStroke() {
+		return m_stroke;
+	}
+
+	/**
+	 * Get the points added so far, with consecutive duplicates removed
+	 * 
+	 * @return points
+	 */
+	public List<Point> getPoints() {
+		return m_points;
+	}
+
+	/**
+	 * Get the number of points, with consecutive duplicates removed
+	 * 
+	 * @return number of points
+	 */
+	public int getNumPoints() {
+		return m_points.size();
+	}
+
+	/**
+	 * Get the number of segments between the points
+	 * 
+	 * @return number of segments
+	 */
+	public int getNumSegments() {
+		return Math.max(m_points.size() - 1, 0);
+	}
+
+	/**
+	 * Get the direction of a segment
+	 * 
+	 * @param i
+	 *            segment index
+	 * @return direction, unwrapped so consecutive values differ by at most PI
+	 */
+	public double getDir(int i) {
+		return m_dir[i];
+	}
+
+	/**
+	 * Get the curvature at an interior point
+	 * 
+	 * @param i
+	 *            index of the segment before the point
+	 * @return absolute curvature
+	 */
+	public double getCurvature(int i) {
+		return m_curvature[i];
+	}
+
+	/**
+	 * Get the speed along a segment
+	 * 
+	 * @param i
+	 *            segment index
+	 * @return speed, in pixels per millisecond
+	 */
+	public double getSpeed(int i) {
+		return m_speed[i];
+	}
+
+	/**
+	 * Get the length of the stroke so far
+	 * 
+	 * @return stroke length
+	 */
+	public double getStrokeLength() {
+		return m_points.size() > 1 ? m_lengthSoFar[m_points.size() - 2] : 0.0;
+	}
+
+	/**
+	 * Get the maximum curvature so far
+	 * 
+	 * @return maximum curvature
+	 */
+	public double getMaxCurv() {
+		return m_maxCurv;
+	}
+
+	/**
+	 * Get the bounding box of the points so far
+	 * 
+	 * @return bounding box, or null if there are no points
+	 */
+	public BoundingBox getBounds() {
+		if (m_points.isEmpty())
+			return null;
+		return new BoundingBox(m_minX, m_minY, m_maxX, m_maxY);
+	}
+
+	/**
+	 * Get the number of revolutions the stroke has made so far
+	 * 
+	 * @return number of revolutions
+	 */
+	public double getNumRevolutions() {
+		double revs = Math.abs(m_totalRotation) / (Math.PI * 2.0);
+		return revs < .0000001 ? 0.0 : revs;
+	}
+
+	/**
+	 * Get the normalized distance between direction extremes so far
+	 * 
+	 * @return NDDE
+	 */
+	public double getNDDE() {
+		if (m_points.size() < 2)
+			return 0.0;
+		return Math.abs(m_lengthSoFar[m_maxDirIndex]
+				- m_lengthSoFar[m_minDirIndex])
+				/ getStrokeLength();
+	}
+
+	/**
+	 * Get the direction change ratio so far. Unlike
+	 * {@link StrokeFeatures#getDCR()} the ends of the stroke are not ignored,
+	 * so this is only an estimate while the stroke is drawn.
+	 * 
+	 * @return DCR
+	 */
+	public double getDCR() {
+		int numChanges = getNumSegments() - 1;
+		if (numChanges < 1 || m_sumDirChange == 0.0)
+			return 0.0;
+		return m_maxDirChange / (m_sumDirChange / numChanges);
+	}
+
+	/**
+	 * Get the distance between the endpoints divided by the stroke length
+	 * 
+	 * @return endpoint to stroke length ratio
+	 */
+	public double getEndptStrokeLengthRatio() {
+		if (m_points.size() < 2)
+			return 1.0;
+		return m_stroke.getFirstPoint().distance(m_stroke.getLastPoint())
+				/ getStrokeLength();
+	}
+
+	/**
+	 * Determines if the stroke is closed so far
+	 * 
+	 * @return true if the endpoints are close and the stroke has gone most of
+	 *         the way around; else false
+	 */
+	public boolean isClosed() {
+		return getEndptStrokeLengthRatio() <= Thresholds.active.M_PERCENT_DISTANCE_TO_BE_COMPLETE
+				&& getNumRevolutions() >= Thresholds.active.M_NUM_REVS_TO_BE_COMPLETE;
+	}
+}
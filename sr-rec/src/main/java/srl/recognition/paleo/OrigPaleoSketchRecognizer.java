@@ -37,9 +37,7 @@
  */
 package srl.recognition.paleo;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import srl.core.exception.InvalidParametersException;
 import srl.core.sketch.Segmentation;
@@ -47,7 +45,10 @@ import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
 import srl.recognition.RecognitionResult;
-import srl.recognition.recognizer.IRecognizer;
+import srl.recognition.metrics.Metrics;
+import srl.recognition.recognizer.Deadline;
+import srl.recognition.recognizer.ITimedRecognizer;
+import srl.segmentation.SegmentationCache;
 import srl.segmentation.combination.PolylineCombinationSegmenter;
 import srl.segmentation.paleo.PaleoSegmenter;
 import srl.segmentation.paleo.VSegmenter;
@@ -63,7 +64,7 @@ import srl.segmentation.paleo.WaveSegmenter;
  * @author bpaulson
  */
 public class OrigPaleoSketchRecognizer implements
-		IRecognizer<Stroke, IRecognitionResult> {
+		ITimedRecognizer<Stroke, IRecognitionResult> {
 
 	// scores used for complex fitting
 	protected static final int LINE_SCORE = 1;
@@ -80,6 +81,16 @@ public class OrigPaleoSketchRecognizer implements
 
 	protected static final int HELIX_SCORE = 5;
 
+	/**
+	 * Prefix of the {@link Metrics} timing of each fit
+	 */
+	public static final String FIT_METRIC = "paleo.fit.";
+
+	/**
+	 * {@link Metrics} timing of feature extraction
+	 */
+	public static final String FEATURES_METRIC = "paleo.features";
+
 	/**
 	 * Feature values of the stroke we are recognizing
 	 */
@@ -211,9 +222,14 @@ public class OrigPaleoSketchRecognizer implements
 	protected Segmentation m_waveSegmentation;
 
 	/**
-	 * Map of values to monitor when performing recognition
+	 * Time by which the current recognition should be finished
 	 */
-	private Map<String, Double> m_monitoredValues = new HashMap<String, Double>();
+	private Deadline m_deadline = Deadline.NONE;
+
+	/**
+	 * Flag denoting if the last recognition ran out of time
+	 */
+	private boolean m_timedOut = false;
 
 	/**
 	 * Default constructor. Every fit is on, and no stroke is loaded.
@@ -257,34 +273,11 @@ public class OrigPaleoSketchRecognizer implements
 		if (m_features != null && m_features.getOrigStroke() != null
 				&& stroke.equals(m_features.getOrigStroke()))
 			return;
-		if (m_config.getHeuristics().FILTER_DIR_GRAPH)
-			m_features = new StrokeFeatures(stroke, true);
-		else
-			m_features = new StrokeFeatures(stroke, false);
-		m_segmentation = null;
-		m_waveSegmentation = null;
-		if (m_fits != null)
-			m_fits.clear();
-		m_lineFit = new NullFit();
-		m_curveFit = new NullFit();
-		m_arcFit = new NullFit();
-		m_circleFit = new NullFit();
-		m_ellipseFit = new NullFit();
-		m_helixFit = new NullFit();
-		m_spiralFit = new NullFit();
-		m_polylineFit = new NullFit();
-		m_complexFit = new NullFit();
-		m_polygonFit = new NullFit();
-		m_arrowFit = new NullFit();
-		m_rectangleFit = new NullFit();
-		m_squareFit = new NullFit();
-		m_diamondFit = new NullFit();
-		m_dotFit = new NullFit();
-		m_waveFit = new NullFit();
-		m_gullFit = new NullFit();
-		m_blobFit = new NullFit();
-		m_infinityFit = new NullFit();
-		m_nbcFit = new NullFit();
+		long start = Metrics.start();
+		m_features = new StrokeFeatures(stroke,
+				m_config.getHeuristics().FILTER_DIR_GRAPH);
+		Metrics.stop(FEATURES_METRIC, start);
+		resetFits();
 	}
 
 	/**
@@ -294,10 +287,29 @@ public class OrigPaleoSketchRecognizer implements
 	 *            stroke
 	 */
 	public void setStrokeRecalc(Stroke stroke) {
-		if (m_config.getHeuristics().FILTER_DIR_GRAPH)
-			m_features = new StrokeFeatures(stroke, true);
-		else
-			m_features = new StrokeFeatures(stroke, false);
+		long start = Metrics.start();
+		m_features = new StrokeFeatures(stroke,
+				m_config.getHeuristics().FILTER_DIR_GRAPH);
+		Metrics.stop(FEATURES_METRIC, start);
+		resetFits();
+	}
+
+	/**
+	 * Set the features of the stroke to recognize directly, e.g. features
+	 * that were accumulated while the stroke was being drawn
+	 * 
+	 * @param features
+	 *            features of the stroke to recognize
+	 */
+	public void setFeatures(StrokeFeatures features) {
+		m_features = features;
+		resetFits();
+	}
+
+	/**
+	 * Throw away the segmentations and fits computed for the previous stroke
+	 */
+	private void resetFits() {
 		m_segmentation = null;
 		m_waveSegmentation = null;
 		if (m_fits != null)
@@ -324,6 +336,19 @@ public class OrigPaleoSketchRecognizer implements
 		m_nbcFit = new NullFit();
 	}
 
+	/**
+	 * Drop the loaded stroke and everything computed for it, so a pooled
+	 * recognizer does not hold on to the last stroke it saw
+	 */
+	public void clear() {
+		m_features = null;
+		resetFits();
+		m_fits = null;
+		m_complexScore = 0;
+		m_deadline = Deadline.NONE;
+		m_timedOut = false;
+	}
+
 	/**
 	 * Get the stroke being recognized
 	 * 
@@ -351,6 +376,21 @@ public class OrigPaleoSketchRecognizer implements
 	 * @see org.ladder.recognition.IRecognizer#recognize()
 	 */
 	public IRecognitionResult recognize() {
+		SubstrokeFitMemo memo = SubstrokeFitMemo.open();
+		try {
+			return recognizeLoaded();
+		} finally {
+			memo.close();
+		}
+	}
+
+	/**
+	 * Recognize the loaded stroke; substrokes fitted along the way are shared
+	 * through the open {@link SubstrokeFitMemo}
+	 * 
+	 * @return recognition result
+	 */
+	private IRecognitionResult recognizeLoaded() {
 		if (m_features == null) {
 			System.err.println("No stroke loaded into the recognizer");
 			return null;
@@ -364,6 +404,7 @@ public class OrigPaleoSketchRecognizer implements
 		}
 
 		m_fits = new FitList();
+		m_timedOut = false;
 
 		// calculate all fits
 		calculateAllFits();
@@ -371,9 +412,23 @@ public class OrigPaleoSketchRecognizer implements
 		// order fits
 		orderFits();
 
+		// complex fitting recognizes its substrokes under the same deadline
+		// and gives up on them once it passes, so check it again before the
+		// result is reported (and memoized) as complete
+		outOfTime();
+
 		// remove fits not present in the config file
 		removeUnwantedFits();
 
+		// fall back on a line fit if we ran out of time before any fit the
+		// config allows was computed; the line is fitted even when its test
+		// is off, so a timed out result is never empty
+		if (m_fits.size() == 0 && m_timedOut) {
+			if (m_lineFit instanceof NullFit)
+				calcLineFit();
+			m_fits.add(m_lineFit, 0);
+		}
+
 		// create list of shapes to return (in the form of recognition results)
 		double n = 0;
 		RecognitionResult paleoResults = new RecognitionResult();
@@ -393,34 +448,64 @@ public class OrigPaleoSketchRecognizer implements
 			paleoResults.addShapeToNBestList(fitShape);
 		}
 
-		// add monitored values (optional)
-		/*
-		 * m_monitoredValues.put("perim:sl ratio", ((RectangleFit)
-		 * m_rectangleFit) .getPerimeterStrokeLengthRatio());
-		 * m_monitoredValues.put("major:bb ratio", ((RectangleFit)
-		 * m_rectangleFit) .getMajorAxisBBDiagRatio());
-		 * m_monitoredValues.put("rectangle error", m_rectangleFit.getError());
-		 * m_monitoredValues.put("corner avg distance", m_features
-		 * .getAvgCornerStrokeDistance());
-		 * m_monitoredValues.put("ellipse error", m_ellipseFit.getError());
-		 * m_monitoredValues.put("num revs", m_features.numRevolutions());
-		 * m_monitoredValues.put("pct dir passed", m_features
-		 * .getPctDirWindowPassed()); m_monitoredValues.put("best fit dir",
-		 * m_features .getBestFitDirGraphError());
-		 * m_monitoredValues.put("avg ang dir", ((PolylineFit) m_polylineFit)
-		 * .getAvgAngularDirection()); m_monitoredValues.put("poly error",
-		 * m_polylineFit.getError());
-		 * m_monitoredValues.put("corner max distance", m_features
-		 * .getMaxCornerStrokeDistance());
-		 * m_monitoredValues.put("min corn dist", m_features
-		 * .getMinCornerStrokeDistance());
-		 * m_monitoredValues.put("std dev corn dist", m_features
-		 * .getStdDevCornerStrokeDistance());
-		 */
-
 		return paleoResults;
 	}
 
+	/**
+	 * Recognize the loaded stroke, giving up on the remaining fits when the
+	 * given amount of time has passed. Rather than throwing an
+	 * {@link srl.recognition.recognizer.OverTimeException}, the fits computed
+	 * so far are ranked and returned; use {@link #isTimedOut()} to tell if
+	 * the result is partial.
+	 * 
+	 * @param maxTime
+	 *            maximum time to spend, in milliseconds
+	 * @return recognition result
+	 */
+	@Override
+	public IRecognitionResult recognizeTimed(long maxTime) {
+		return recognize(Deadline.afterMillis(maxTime));
+	}
+
+	/**
+	 * Recognize the loaded stroke, giving up on the remaining fits when the
+	 * deadline passes. The deadline is checked between fits and inside
+	 * complex fitting and polyline segmentation.
+	 * 
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return recognition result, possibly built from only some of the fits
+	 */
+	public IRecognitionResult recognize(Deadline deadline) {
+		m_deadline = deadline;
+		try {
+			return recognize();
+		} finally {
+			m_deadline = Deadline.NONE;
+		}
+	}
+
+	/**
+	 * Determines if the last recognition ran out of time and skipped some of
+	 * the fits
+	 * 
+	 * @return true if the last result is partial; else false
+	 */
+	public boolean isTimedOut() {
+		return m_timedOut;
+	}
+
+	/**
+	 * Check the deadline, remembering if it has passed
+	 * 
+	 * @return true if the deadline has passed; else false
+	 */
+	private boolean outOfTime() {
+		if (!m_timedOut && m_deadline.isExpired())
+			m_timedOut = true;
+		return m_timedOut;
+	}
+
 	/**
 	 * Get the list of fits used by the recognizer
 	 * 
@@ -431,47 +516,90 @@ public class OrigPaleoSketchRecognizer implements
 	}
 
 	/**
-	 * Calculates all of the various shape fits
+	 * Calculates all of the various shape fits. The line fit is computed
+	 * regardless of the deadline; the others are skipped once it has passed.
+	 * The time each fit takes is reported to {@link Metrics} under
+	 * {@link #FIT_METRIC} plus the fit name; a fit that reuses an earlier one
+	 * (e.g. circle reusing ellipse) is only charged for the work it adds.
 	 */
 	protected void calculateAllFits() {
-		if (m_config.isLineTestOn())
+		long start = Metrics.start();
+		if (m_config.isLineTestOn()) {
 			calcLineFit();
-		if (m_config.isArcTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.LINE, start);
+		}
+		if (m_config.isArcTestOn() && !outOfTime()) {
 			calcArcFit();
-		if (m_config.isCurveTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.ARC, start);
+		}
+		if (m_config.isCurveTestOn() && !outOfTime()) {
 			calcCurveFit();
-		if (m_config.isArrowTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.CURVE, start);
+		}
+		if (m_config.isArrowTestOn() && !outOfTime()) {
 			calcArrowFit();
-		if (m_config.isPolylineTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.ARROW, start);
+		}
+		if (m_config.isPolylineTestOn() && !outOfTime()) {
 			calcPolylineFit();
-		if (m_config.isEllipseTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.POLYLINE, start);
+		}
+		if (m_config.isEllipseTestOn() && !outOfTime()) {
 			calcEllipseFit();
-		if (m_config.isCircleTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.ELLIPSE, start);
+		}
+		if (m_config.isCircleTestOn() && !outOfTime()) {
 			calcCircleFit();
-		if (m_config.isSpiralTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.CIRCLE, start);
+		}
+		if (m_config.isSpiralTestOn() && !outOfTime()) {
 			calcSpiralFit();
-		if (m_config.isHelixTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.SPIRAL, start);
+		}
+		if (m_config.isHelixTestOn() && !outOfTime()) {
 			calcHelixFit();
-		if (m_config.isPolygonTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.HELIX, start);
+		}
+		if (m_config.isPolygonTestOn() && !outOfTime()) {
 			calcPolygonFit();
-		if (m_config.isRectangleTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.POLYGON, start);
+		}
+		if (m_config.isRectangleTestOn() && !outOfTime()) {
 			calcRectangleFit();
-		if (m_config.isSquareTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.RECTANGLE, start);
+		}
+		if (m_config.isSquareTestOn() && !outOfTime()) {
 			calcSquareFit();
-		if (m_config.isDiamondTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.SQUARE, start);
+		}
+		if (m_config.isDiamondTestOn() && !outOfTime()) {
 			calcDiamondFit();
-		if (m_config.isDotTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.DIAMOND, start);
+		}
+		if (m_config.isDotTestOn() && !outOfTime()) {
 			calcDotFit();
-		if (m_config.isWaveTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.DOT, start);
+		}
+		if (m_config.isWaveTestOn() && !outOfTime()) {
 			calcWaveFit();
-		if (m_config.isGullTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.WAVE, start);
+		}
+		if (m_config.isGullTestOn() && !outOfTime()) {
 			calcGullFit();
-		if (m_config.isBlobTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.GULL, start);
+		}
+		if (m_config.isBlobTestOn() && !outOfTime()) {
 			calcBlobFit();
-		if (m_config.isInfinityTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.BLOB, start);
+		}
+		if (m_config.isInfinityTestOn() && !outOfTime()) {
 			calcInfinityFit();
-		if (m_config.isNBCTestOn())
+			start = Metrics.lap(FIT_METRIC + Fit.INFINITY, start);
+		}
+		if (m_config.isNBCTestOn() && !outOfTime()) {
 			calcNBCFit();
+			start = Metrics.lap(FIT_METRIC + Fit.NBC, start);
+		}
 	}
 
 	/**
@@ -856,7 +984,7 @@ public class OrigPaleoSketchRecognizer implements
 		if (m_helixFit.passed()) {
 
 			// check to see if complex is better fit first
-			if (m_config.isComplexTestOn()) {
+			if (m_config.isComplexTestOn() && !outOfTime()) {
 				calcComplexFit();
 				if (((ComplexFit) m_complexFit).getSubFits().size() > 1) {
 					calcComplexScore();
@@ -934,7 +1062,7 @@ public class OrigPaleoSketchRecognizer implements
 				|| m_fits.get(0) instanceof PolylineFit) {
 
 			// check to see if complex is better fit first
-			if (m_config.isComplexTestOn()) {
+			if (m_config.isComplexTestOn() && !outOfTime()) {
 				calcComplexFit();
 				if (((ComplexFit) m_complexFit).getSubFits().size() > 1) {
 
@@ -1258,24 +1386,54 @@ public class OrigPaleoSketchRecognizer implements
 	}
 
 	/**
-	 * Calculate polyline fit
+	 * Compute the corner finding segmentation used by the polyline based fits,
+	 * unless it has already been computed for this stroke. Segmentations are
+	 * shared with other recognizers through the {@link SegmentationCache}.
 	 */
-	protected void calcPolylineFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
+	protected void calcSegmentation() {
+		if (m_segmentation != null)
+			return;
+		if (m_config.getHeuristics().MULTI_CF) {
+			try {
+				PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
+						m_config.getHeuristics().FILTER_DIR_GRAPH);
+				seg.setDeadline(m_deadline);
+				String params = m_config.getHeuristics().FILTER_DIR_GRAPH ? "smooth"
+						: null;
+				m_segmentation = SegmentationCache.segment(seg, params,
+						m_features.getOrigStroke(), m_deadline).get(0);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else {
+			try {
+				m_segmentation = SegmentationCache.segment(
+						new PaleoSegmenter(m_features), m_features).get(0);
+			} catch (InvalidParametersException e) {
+				e.printStackTrace();
 			}
 		}
+	}
+
+	/**
+	 * Compute the wave segmentation, unless it has already been computed for
+	 * this stroke
+	 */
+	protected void calcWaveSegmentation() {
+		if (m_waveSegmentation != null)
+			return;
+		try {
+			m_waveSegmentation = SegmentationCache.segment(
+					new WaveSegmenter(m_features), m_features).get(0);
+		} catch (InvalidParametersException e) {
+		}
+	}
+
+	/**
+	 * Calculate polyline fit
+	 */
+	protected void calcPolylineFit() {
+		calcSegmentation();
 		m_polylineFit = new PolylineFit(m_features, m_segmentation, m_config);
 	}
 
@@ -1326,21 +1484,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate arrow fit
 	 */
 	protected void calcArrowFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		calcSegmentation();
 		m_arrowFit = new ArrowFit(m_features, m_segmentation);
 		if (m_features.getOrigStroke().getSegmentations().size() > 0) {
 			Segmentation seg = m_features.getOrigStroke().getSegmentations()
@@ -1357,21 +1501,7 @@ public class OrigPaleoSketchRecognizer implements
 	protected void calcRectangleFit() {
 		if (m_ellipseFit instanceof NullFit)
 			calcEllipseFit();
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		calcSegmentation();
 		m_rectangleFit = new RectangleFit(m_features,
 				(EllipseFit) m_ellipseFit, m_segmentation);
 	}
@@ -1389,21 +1519,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate diamond fit
 	 */
 	protected void calcDiamondFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		calcSegmentation();
 		m_diamondFit = new DiamondFit(m_features, m_config, m_segmentation);
 	}
 
@@ -1418,13 +1534,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate wave fit
 	 */
 	protected void calcWaveFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
-			}
-		}
+		calcWaveSegmentation();
 		m_waveFit = new WaveFit(m_features, m_waveSegmentation);
 	}
 
@@ -1432,13 +1542,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate gull fit
 	 */
 	protected void calcGullFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
-			}
-		}
+		calcWaveSegmentation();
 		if (m_polylineFit instanceof NullFit)
 			calcPolylineFit();
 		m_gullFit = new GullFit(m_features, m_waveSegmentation,
@@ -1463,13 +1567,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate NBC fit
 	 */
 	protected void calcNBCFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
-			}
-		}
+		calcWaveSegmentation();
 		m_nbcFit = new NBCFit(m_features, m_waveSegmentation);
 	}
 
@@ -1477,7 +1575,7 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate complex fit
 	 */
 	protected void calcComplexFit() {
-		m_complexFit = new ComplexFit(m_features, m_config);
+		m_complexFit = new ComplexFit(m_features, m_config, m_deadline);
 	}
 
 	/**
@@ -1910,15 +2008,6 @@ public class OrigPaleoSketchRecognizer implements
 		setStroke(stroke);
 	}
 
-	/**
-	 * Returns the map of currently monitored threshold values
-	 * 
-	 * @return map of monitored threshold values
-	 */
-	public Map<String, Double> getMonitoredValues() {
-		return m_monitoredValues;
-	}
-
 	/**
 	 * Features of stroke
 	 * 
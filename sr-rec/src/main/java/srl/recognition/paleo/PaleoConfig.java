@@ -1005,4 +1005,24 @@ public class PaleoConfig implements Cloneable,Serializable {
 		}
 		return false;
 	}
+
+	/**
+	 * Get a compact string that identifies this configuration: the tests and
+	 * heuristics that are turned on, whether the neural network is used, and
+	 * the active {@link Thresholds}. Recognition results computed under
+	 * configurations with the same fingerprint are interchangeable.
+	 * 
+	 * @return configuration fingerprint
+	 */
+	public String getFingerprint() {
+		StringBuilder sb = new StringBuilder(48);
+		for (boolean flag : new boolean[] { m_line, m_arc, m_ellipse,
+				m_circle, m_curve, m_helix, m_spiral, m_arrow, m_complex,
+				m_polyline, m_polygon, m_rectangle, m_square, m_diamond, m_dot,
+				m_wave, m_gull, m_blob, m_infinity, m_nbc, useNN })
+			sb.append(flag ? '1' : '0');
+		sb.append(':').append(m_heuristics.getFingerprint());
+		sb.append(':').append(Thresholds.active.PPI);
+		return sb.toString();
+	}
 }
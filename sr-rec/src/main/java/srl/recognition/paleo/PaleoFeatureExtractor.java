@@ -37,16 +37,22 @@
  */
 package srl.recognition.paleo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import srl.core.exception.InvalidParametersException;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
 import srl.patternrec.classifiers.core.FVector;
 import srl.recognition.paleo.cali.CALIFeatures;
 import srl.recognition.rubine.RubineStroke;
+import srl.segmentation.SegmentationCache;
 import srl.segmentation.combination.PolylineCombinationSegmenter;
 import srl.segmentation.paleo.PaleoSegmenter;
 import srl.segmentation.paleo.WaveSegmenter;
-import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -184,10 +190,35 @@ public class PaleoFeatureExtractor {
 	protected FVector m_featureVector;
 
 	/**
-	 * List of possible class labels (a dataset must have been previously built
-	 * for this to be populated)
+	 * Feature values followed by the class value; reused between strokes
+	 */
+	protected double[] m_values;
+
+	/**
+	 * Number of feature values written to {@link #m_values}
+	 */
+	protected int m_numValues;
+
+	/**
+	 * Flag denoting if the feature values of the current stroke are computed
+	 */
+	protected boolean m_computed = false;
+
+	/**
+	 * Schema of the feature values for the current configuration
+	 */
+	protected PaleoFeatureSchema m_schema;
+
+	/**
+	 * Feature names seen while the schema for a new configuration is being
+	 * discovered; null otherwise
+	 */
+	private List<String> m_newFeatureNames;
+
+	/**
+	 * Schemas by configuration fingerprint, shared by all extractors
 	 */
-	protected static FastVector m_classLabels;
+	private static final ConcurrentMap<String, PaleoFeatureSchema> s_schemas = new ConcurrentHashMap<String, PaleoFeatureSchema>();
 
 	/**
 	 * Constructor for feature extractor
@@ -202,6 +233,42 @@ public class PaleoFeatureExtractor {
 		m_config = config;
 	}
 
+	/**
+	 * Switch to a new stroke, forgetting all fits of the previous one. The
+	 * value buffer is kept, so an extractor can be reused for every stroke a
+	 * recognizer sees.
+	 * 
+	 * @param features
+	 *            stroke features
+	 */
+	public void setFeatures(StrokeFeatures features) {
+		m_features = features;
+		m_lineFit = null;
+		m_curveFit = null;
+		m_arcFit = null;
+		m_circleFit = null;
+		m_ellipseFit = null;
+		m_helixFit = null;
+		m_spiralFit = null;
+		m_polylineFit = null;
+		m_complexFit = null;
+		m_polygonFit = null;
+		m_arrowFit = null;
+		m_rectangleFit = null;
+		m_squareFit = null;
+		m_diamondFit = null;
+		m_dotFit = null;
+		m_waveFit = null;
+		m_gullFit = null;
+		m_blobFit = null;
+		m_infinityFit = null;
+		m_nbcFit = null;
+		m_segmentation = null;
+		m_waveSegmentation = null;
+		m_featureVector = null;
+		m_computed = false;
+	}
+
 	/**
 	 * Get a feature vector for the stroke representing the paleo features
 	 * 
@@ -215,18 +282,46 @@ public class PaleoFeatureExtractor {
 	}
 
 	/**
-	 * Get the class labels used by the feature extractor. This will be
-	 * populated iff a dataset was created using getNewDataset()
+	 * Get the feature values of the stroke, followed by a class value of 0.
+	 * The array is laid out as described by {@link #getSchema()} and can be
+	 * handed to a classifier as is; it is owned by this extractor and is
+	 * overwritten when the next stroke is processed.
+	 * 
+	 * @return feature values
+	 * @throws Exception
+	 */
+	public double[] getValues() throws Exception {
+		if (!m_computed)
+			computeValues();
+		return m_values;
+	}
+
+	/**
+	 * Get the layout of the feature values for the current configuration
+	 * 
+	 * @return feature schema
+	 * @throws Exception
+	 */
+	public PaleoFeatureSchema getSchema() throws Exception {
+		if (m_schema == null)
+			computeValues();
+		return m_schema;
+	}
+
+	/**
+	 * Get the class labels used by the feature extractor
 	 * 
 	 * @return class labels
 	 */
 	public FastVector getClassLabels() {
-		if (m_classLabels == null) {
-			m_classLabels = new FastVector();
+		try {
+			return getSchema().getClassLabels();
+		} catch (Exception e) {
+			FastVector labels = new FastVector();
 			for (int j = 0; j < m_config.getShapesTurnedOn().size(); j++)
-				m_classLabels.addElement(m_config.getShapesTurnedOn().get(j));
+				labels.addElement(m_config.getShapesTurnedOn().get(j));
+			return labels;
 		}
-		return m_classLabels;
 	}
 	
 	public StrokeFeatures getStrokeFeatures(){
@@ -241,17 +336,7 @@ public class PaleoFeatureExtractor {
 	 * @throws Exception
 	 */
 	public Instances getNewDataset() throws Exception {
-		Instances dataset;
-		FVector fv = getFeatureVector();
-		m_classLabels = new FastVector();
-		for (int j = 0; j < m_config.getShapesTurnedOn().size(); j++)
-			m_classLabels.addElement(m_config.getShapesTurnedOn().get(j));
-		FastVector fast = new FastVector(fv.getNumFeatures());
-		for (int j = 0; j < fv.getNumFeatures(); j++)
-			fast.addElement(new Attribute("a" + j));
-		fast.addElement(new Attribute("label", m_classLabels));
-		dataset = new Instances("PaleoTrain", fast, 0);
-		return dataset;
+		return getSchema().newDataset();
 	}
 
 	/**
@@ -263,28 +348,17 @@ public class PaleoFeatureExtractor {
 	 * @throws Exception
 	 */
 	public Instance getInstance(String strokeLabel) throws Exception {
-		FVector fv = getFeatureVector();
-		String label = null;
+		double vals[] = getValues().clone();
 
-		// convert feature vector to instance
+		// label should be null when creating an instance to test
 		if (strokeLabel != null) {
-			label = strokeLabel.trim();
+			String label = strokeLabel.trim();
 			if (strokeLabel.contains("(")) {
 				label = strokeLabel.substring(0, strokeLabel.indexOf('('));
 			}
 			label = label.trim();
-		}
-		double vals[] = new double[fv.getNumFeatures() + 1];
-		for (int j = 0; j < fv.getNumFeatures(); j++) {
-			vals[j] = fv.getFeature(j);
-		}
-
-		// label should be null when creating an instance to test
-		if (strokeLabel == null)
-			vals[vals.length - 1] = 0.0;
-		else {
-			int classLabel = m_classLabels.indexOf(label);
-			if (classLabel < 0 || classLabel > m_classLabels.size() - 1)
+			int classLabel = m_schema.indexOfClass(label);
+			if (classLabel < 0)
 				throw new Exception("bad label: " + label);
 			vals[vals.length - 1] = classLabel;
 		}
@@ -292,48 +366,109 @@ public class PaleoFeatureExtractor {
 	}
 
 	/**
-	 * Computes the features to put into the feature vector
+	 * Computes the features and puts them into the feature vector
 	 * 
 	 * @throws Exception
 	 */
 	public void computeFeatureVector() throws Exception {
+		double[] values = getValues();
 		m_featureVector = new FVector();
+		for (int i = 0; i < m_numValues; i++)
+			add(values[i],
+					i < m_schema.getNumFeatures() ? m_schema.getFeatureName(i)
+							: "Unknown");
+	}
 
+	/**
+	 * Computes the feature values, discovering the schema first if this is
+	 * the first stroke seen with the current configuration
+	 * 
+	 * @throws Exception
+	 */
+	protected void computeValues() throws Exception {
+		String fingerprint = m_config.getFingerprint();
+		m_schema = s_schemas.get(fingerprint);
+		m_newFeatureNames = m_schema == null ? new ArrayList<String>() : null;
+		if (m_values == null)
+			m_values = new double[m_schema == null ? 128 : m_schema
+					.getNumAttributes()];
+		m_numValues = 0;
+
+		computeFeatures();
+
+		if (m_newFeatureNames != null) {
+			PaleoFeatureSchema schema = new PaleoFeatureSchema(
+					m_newFeatureNames, m_config.getShapesTurnedOn());
+			PaleoFeatureSchema existing = s_schemas.putIfAbsent(fingerprint,
+					schema);
+			m_schema = existing == null ? schema : existing;
+			m_newFeatureNames = null;
+		}
+
+		// class value
+		if (m_values.length != m_numValues + 1)
+			m_values = Arrays.copyOf(m_values, m_numValues + 1);
+		m_values[m_numValues] = 0.0;
+		m_computed = true;
+	}
+
+	/**
+	 * Append a feature value
+	 * 
+	 * @param value
+	 *            feature value
+	 * @param name
+	 *            feature name
+	 */
+	protected void add(double value, String name) {
+		if (m_numValues + 1 >= m_values.length)
+			m_values = Arrays.copyOf(m_values, m_values.length * 2);
+		m_values[m_numValues++] = value;
+		if (m_newFeatureNames != null)
+			m_newFeatureNames.add(name);
+	}
+
+	/**
+	 * Computes the features, passing each to {@link #add(double, String)}
+	 * 
+	 * @throws Exception
+	 */
+	protected void computeFeatures() throws Exception {
 		// *** add common features (from stroke features) ***
-		m_featureVector.add(m_features.getAvgCornerStrokeDistance(),
+		add(m_features.getAvgCornerStrokeDistance(),
 				"AvgCornerStrokeDist");
-		m_featureVector.add(m_features.getAvgCurvature(), "AvgCurv");
-		m_featureVector.add(m_features.getBestFitDirGraphError(),
+		add(m_features.getAvgCurvature(), "AvgCurv");
+		add(m_features.getBestFitDirGraphError(),
 				"BestFitDirGraphErr");
-		m_featureVector.add(m_features.getDCR(), "DCR"); // selected
-		m_featureVector.add(
+		add(m_features.getDCR(), "DCR"); // selected
+		add(
 				m_features.getDistanceBetweenFarthestCornerAndStroke(),
 				"DistBTFarthestCornerAndStroke");
-		m_featureVector.add(m_features.getEndptStrokeLengthRatio(),
+		add(m_features.getEndptStrokeLengthRatio(),
 				"EndptSLRatio"); // selected
-		m_featureVector.add(m_features.getMajorAxisAngle(), "MajorAxisAngle");
-		m_featureVector.add(m_features.getMajorAxisLength(), "MajorAxisLength");
-		m_featureVector.add(m_features.getMaxCornerStrokeDistance(),
+		add(m_features.getMajorAxisAngle(), "MajorAxisAngle");
+		add(m_features.getMajorAxisLength(), "MajorAxisLength");
+		add(m_features.getMaxCornerStrokeDistance(),
 				"MaxCornerStrokeDist");
-		m_featureVector.add(m_features.getMaxCurv(), "MaxCurv");
-		m_featureVector.add(m_features.getMaxCurvToAvgCurvRatio(),
+		add(m_features.getMaxCurv(), "MaxCurv");
+		add(m_features.getMaxCurvToAvgCurvRatio(),
 				"MaxCurvToAvgCurvRatio"); // selected
-		m_featureVector.add(m_features.getMinCornerStrokeDistance(),
+		add(m_features.getMinCornerStrokeDistance(),
 				"MinCornerStrokeDist");
-		m_featureVector.add(m_features.getNDDE(), "NDDE"); // selected
-		m_featureVector.add(m_features.getNumRevolutions(), "NumRevs"); // selected
-		m_featureVector.add(m_features.getPctDirWindowPassed(),
+		add(m_features.getNDDE(), "NDDE"); // selected
+		add(m_features.getNumRevolutions(), "NumRevs"); // selected
+		add(m_features.getPctDirWindowPassed(),
 				"PctDirWindowPassed");
-		m_featureVector.add(m_features.getSlopeDirGraph(), "SlopeDirGraph");
-		m_featureVector.add(m_features.getStdDevCornerStrokeDistance(),
+		add(m_features.getSlopeDirGraph(), "SlopeDirGraph");
+		add(m_features.getStdDevCornerStrokeDistance(),
 				"StdDevCornerStrokeDist");
-		m_featureVector.add(m_features.getStrokeLength(), "StrokeLength"); // selected
+		add(m_features.getStrokeLength(), "StrokeLength"); // selected
 
 		// *** add line features ***
 		if (m_config.isLineTestOn()) {
 			calcLineFit();
-			m_featureVector.add(m_lineFit.getError(), "LineFA");
-			m_featureVector.add(
+			add(m_lineFit.getError(), "LineFA");
+			add(
 					m_lineFit.getLSQE() / m_features.getStrokeLength(),
 					"LineLSQE");
 		}
@@ -341,53 +476,53 @@ public class PaleoFeatureExtractor {
 		// *** add arc features ***
 		if (m_config.isArcTestOn()) {
 			calcArcFit();
-			m_featureVector.add(m_arcFit.getError(), "ArcFA");
-			m_featureVector.add(m_arcFit.getRadius(), "ArcRadius");
-			m_featureVector.add(m_arcFit.getArcArea(), "ArcArea");
+			add(m_arcFit.getError(), "ArcFA");
+			add(m_arcFit.getRadius(), "ArcRadius");
+			add(m_arcFit.getArcArea(), "ArcArea");
 
 			if (m_config.getHeuristics().ARC_DOWN) { // only needed for arc
 				// heuristic
-				m_featureVector.add(m_arcFit.getAngle(), "ArcAngle");
+				add(m_arcFit.getAngle(), "ArcAngle");
 			}
 		}
 
 		// *** add curve features ***
 		if (m_config.isCurveTestOn()) {
 			calcCurveFit();
-			m_featureVector.add(m_curveFit.getError(), "CurveError"); // selected
+			add(m_curveFit.getError(), "CurveError"); // selected
 		}
 
 		// *** add polyline features ***
 		if (m_config.isPolylineTestOn()) {
 			calcPolylineFit();
-			m_featureVector.add(m_polylineFit.getError(), "PolylineFA");
-			m_featureVector.add(m_polylineFit.getNumSubStrokes(),
+			add(m_polylineFit.getError(), "PolylineFA");
+			add(m_polylineFit.getNumSubStrokes(),
 					"PolylineNumSS"); // selected
-			m_featureVector.add(m_polylineFit.getLSQE(), "PolylineLSQE");
-			m_featureVector.add(m_polylineFit.getPctPassed(),
+			add(m_polylineFit.getLSQE(), "PolylineLSQE");
+			add(m_polylineFit.getPctPassed(),
 					"PolylinePctPassed");
 		}
 
 		// *** add ellipse features ***
 		if (m_config.isEllipseTestOn()) {
 			calcEllipseFit();
-			m_featureVector.add(m_ellipseFit.getError(), "EllipseFA");
+			add(m_ellipseFit.getError(), "EllipseFA");
 		}
 
 		// *** add circle features ***
 		calcCircleFit();
-		m_featureVector.add(m_circleFit.getError(), "CircleFA");
-		m_featureVector.add(m_circleFit.getAxisRatio(), "CircleAxisRatio");
+		add(m_circleFit.getError(), "CircleFA");
+		add(m_circleFit.getAxisRatio(), "CircleAxisRatio");
 
 		// *** add spiral features ***
 		if (m_config.isSpiralTestOn()) {
 			calcSpiralFit();
-			m_featureVector.add(m_spiralFit.getError(), "SpiralErr"); // selected
-			m_featureVector.add(m_spiralFit.getPctRadiusTestPassed(),
+			add(m_spiralFit.getError(), "SpiralErr"); // selected
+			add(m_spiralFit.getPctRadiusTestPassed(),
 					"SpiralPctRadiusTestPass");
-			m_featureVector.add(m_spiralFit.getAvgRadBBRadRatio(),
+			add(m_spiralFit.getAvgRadBBRadRatio(),
 					"SpiralAvgRadBBRatio"); // selected
-			m_featureVector.add(
+			add(
 					m_spiralFit.getMaxDistanceToCenterRadiusRatio(),
 					"SpiralMaxDistToCenterRadRatio");
 		}
@@ -405,10 +540,9 @@ public class PaleoFeatureExtractor {
 		// *** add arrow features ***
 		if (m_config.isArrowTestOn()) {
 			calcArrowFit();
-			m_featureVector.add(m_arrowFit.getHeadDistance(), "ArrowHeadDist");
-			m_featureVector
-					.add(m_arrowFit.getLastTwoDiff(), "ArrowLastTwoDiff");
-			m_featureVector.add(m_arrowFit.getNumIntersect(),
+			add(m_arrowFit.getHeadDistance(), "ArrowHeadDist");
+			add(m_arrowFit.getLastTwoDiff(), "ArrowLastTwoDiff");
+			add(m_arrowFit.getNumIntersect(),
 					"ArrowNumIntersect");
 			// TODO: add other types of arrows
 		}
@@ -416,66 +550,66 @@ public class PaleoFeatureExtractor {
 		// *** add rectangle features ***
 		if (m_config.isRectangleTestOn()) {
 			calcRectangleFit();
-			m_featureVector.add(m_rectangleFit.getError(), "RectFA");
-			m_featureVector.add(m_rectangleFit.getMajorAxisBBDiagRatio(),
+			add(m_rectangleFit.getError(), "RectFA");
+			add(m_rectangleFit.getMajorAxisBBDiagRatio(),
 					"RectMajorAxisBBDiagRatio");
-			m_featureVector.add(m_rectangleFit.getPerimeterStrokeLengthRatio(),
+			add(m_rectangleFit.getPerimeterStrokeLengthRatio(),
 					"RectPerimSLRatio");
-			m_featureVector.add(m_segmentation.getSegmentedStrokes().size(),
+			add(m_segmentation.getSegmentedStrokes().size(),
 					"NumCorners_1");
-			m_featureVector.add(m_features.getStrokeLengthPerimRatio(),
+			add(m_features.getStrokeLengthPerimRatio(),
 					"RectSLPerimRatio");
 		}
 
 		// *** add square features ***
 		if (m_config.isSquareTestOn()) {
 			calcSquareFit();
-			m_featureVector.add(m_squareFit.getWidthHeightRatio(),
+			add(m_squareFit.getWidthHeightRatio(),
 					"SquareWidthHeightRatio");
 		}
 
 		// *** add diamond features ***
 		if (m_config.isDiamondTestOn()) {
 			calcDiamondFit();
-			m_featureVector.add(m_diamondFit.getError(), "DiamondFA");
-			m_featureVector.add(m_diamondFit.getPerimeterStrokeLengthRatio(),
+			add(m_diamondFit.getError(), "DiamondFA");
+			add(m_diamondFit.getPerimeterStrokeLengthRatio(),
 					"DiamondPerimSLRatio");
-			m_featureVector.add(m_diamondFit.getMajorAxisBBDiagRatio(),
+			add(m_diamondFit.getMajorAxisBBDiagRatio(),
 					"DiamondMajorAxisBBDiagRatio");
-			m_featureVector.add(m_diamondFit.getWidthHeightRatio(),
+			add(m_diamondFit.getWidthHeightRatio(),
 					"DiamondWidthHeightRatio");
 		}
 
 		// *** add dot features ***
 		if (m_config.isDotTestOn()) {
 			calcDotFit();
-			m_featureVector.add(m_dotFit.getDensity(), "DotDensity");
-			m_featureVector.add(m_dotFit.getHeightWidthRatio(),
+			add(m_dotFit.getDensity(), "DotDensity");
+			add(m_dotFit.getHeightWidthRatio(),
 					"DotHeightWidthRatio");
 		}
 
 		// *** add wave features ***
 		if (m_config.isWaveTestOn()) {
 			calcWaveFit();
-			m_featureVector.add(
+			add(
 					m_waveSegmentation.getSegmentedStrokes().size(),
 					"WaveSegmentSize");
-			m_featureVector.add(m_waveFit.getPctSlopePassed(),
+			add(m_waveFit.getPctSlopePassed(),
 					"WavePctSlopePass");
-			m_featureVector.add(m_waveFit.getSmallLargeRatio(),
+			add(m_waveFit.getSmallLargeRatio(),
 					"WaveSmallLargeRatio");
 		}
 
 		// *** add gull features ***
 		if (m_config.isGullTestOn()) {
 			calcGullFit();
-			m_featureVector.add(m_gullFit.getSmallSumRatio(),
+			add(m_gullFit.getSmallSumRatio(),
 					"GullSmallSumRatio");
-			m_featureVector.add(m_gullFit.getAngle(), "GullAngle");
-			m_featureVector.add(m_gullFit.getPctHorizontalAlignmentPass(),
+			add(m_gullFit.getAngle(), "GullAngle");
+			add(m_gullFit.getPctHorizontalAlignmentPass(),
 					"GullPctHorizAlignPass");
-			m_featureVector.add(m_gullFit.getSlopeAvg(), "GullSlopeAvg");
-			m_featureVector.add(m_gullFit.getPctSlopeTest(), "GullPctSlopTest");
+			add(m_gullFit.getSlopeAvg(), "GullSlopeAvg");
+			add(m_gullFit.getPctSlopeTest(), "GullPctSlopTest");
 		}
 
 		// *** add blob features ***
@@ -491,47 +625,47 @@ public class PaleoFeatureExtractor {
 		// *** add nbc features ***
 		if (m_config.isNBCTestOn()) {
 			calcNBCFit();
-			m_featureVector.add(m_nbcFit.getSizeRatio(), "NBCSizeRatio");
-			m_featureVector.add(m_nbcFit.getDotDensity(), "NBCDotDensity");
-			m_featureVector.add(m_nbcFit.getDotRevs(), "NBCDotRevs");
+			add(m_nbcFit.getSizeRatio(), "NBCSizeRatio");
+			add(m_nbcFit.getDotDensity(), "NBCDotDensity");
+			add(m_nbcFit.getDotRevs(), "NBCDotRevs");
 		}
 
 		// *** add complex features ***
 		if (m_config.isComplexTestOn()) {
 			 calcComplexFit();
-			 m_featureVector.add(m_complexFit.getSubFits().size(),"ComplexSubfits");
-			 m_featureVector.add(m_complexFit.numPrimitives(),"ComplexPrimitives");
-			 m_featureVector.add(m_complexFit.percentLines(),"ComplexPctLines");
-			 m_featureVector.add(calcComplexScore(),"ComplexScore");
+			 add(m_complexFit.getSubFits().size(),"ComplexSubfits");
+			 add(m_complexFit.numPrimitives(),"ComplexPrimitives");
+			 add(m_complexFit.percentLines(),"ComplexPctLines");
+			 add(calcComplexScore(),"ComplexScore");
 		}
 
 		/* CALI Features */
 
 		CALIFeatures cali = new CALIFeatures(m_features.getOrigStroke());
-		m_featureVector.add(cali.Ach_Abb(), "CALI_ACH_ABB"); // 30
-		m_featureVector.add(cali.Ach_Aer(), "CALI_ACH_AER"); // 40
-		m_featureVector.add(cali.Alq_Ach(), "CALI_ALQ_ACH"); // 100
-		m_featureVector.add(cali.Alq_Aer(), "CALI_ALQ_AER"); // 70
-		m_featureVector.add(cali.Alt_Abb(), "CALI_ALT_ABB"); // 30
-		m_featureVector.add(cali.Alt_Ach(), "CALI_ALT_ACH"); // 90
-		m_featureVector.add(cali.Alt_Aer(), "CALI_ALT_AER"); // 60
-		m_featureVector.add(cali.Alt_Alq(), "CALI_ALT_ALQ"); // 50
-		m_featureVector.add(cali.Hbb_Wbb(), "CALI_HBB_WBB"); // 0
-		m_featureVector.add(cali.Her_Wer(), "CALI_HER_WER"); // 100
-		m_featureVector.add(cali.Hm_Wbb(), "CALI_HM_WBB"); // 60
-		m_featureVector.add(cali.Hollowness(), "CALI_HOLLOWNESS"); // 20
-		m_featureVector.add(cali.Pch2_Ach(), "CALI_PCH2_ACH"); // 80
-		m_featureVector.add(cali.Pch_Ns_Tl(), "CALI_PCH_NS_TL"); // 100
-		m_featureVector.add(cali.Pch_Pbb(), "CALI_PCH_PBB"); // 10
-		m_featureVector.add(cali.Pch_Per(), "CALI_PCH_PER"); // 90
-		m_featureVector.add(cali.Plq_Pch(), "CALI_PLQ_PCH"); // 0
-		m_featureVector.add(cali.Plq_Per(), "CALI_PLQ_PER"); // 10
-		m_featureVector.add(cali.Plt_Pbb(), "CALI_PLT_PBB"); // 30
-		m_featureVector.add(cali.Plt_Pch(), "CALI_PLT_PCH"); // 60
-		m_featureVector.add(cali.Plt_Per(), "CALI_PLT_PER"); // 20
-		m_featureVector.add(cali.Plt_Plq(), "CALI_PLT_PLQ"); // 50
-		m_featureVector.add(cali.Tl_Pch(), "CALI_TL_PCH"); // 50
-		m_featureVector.add(cali.Vm_Hbb(), "CALI_VM_HBB"); // 60
+		add(cali.Ach_Abb(), "CALI_ACH_ABB"); // 30
+		add(cali.Ach_Aer(), "CALI_ACH_AER"); // 40
+		add(cali.Alq_Ach(), "CALI_ALQ_ACH"); // 100
+		add(cali.Alq_Aer(), "CALI_ALQ_AER"); // 70
+		add(cali.Alt_Abb(), "CALI_ALT_ABB"); // 30
+		add(cali.Alt_Ach(), "CALI_ALT_ACH"); // 90
+		add(cali.Alt_Aer(), "CALI_ALT_AER"); // 60
+		add(cali.Alt_Alq(), "CALI_ALT_ALQ"); // 50
+		add(cali.Hbb_Wbb(), "CALI_HBB_WBB"); // 0
+		add(cali.Her_Wer(), "CALI_HER_WER"); // 100
+		add(cali.Hm_Wbb(), "CALI_HM_WBB"); // 60
+		add(cali.Hollowness(), "CALI_HOLLOWNESS"); // 20
+		add(cali.Pch2_Ach(), "CALI_PCH2_ACH"); // 80
+		add(cali.Pch_Ns_Tl(), "CALI_PCH_NS_TL"); // 100
+		add(cali.Pch_Pbb(), "CALI_PCH_PBB"); // 10
+		add(cali.Pch_Per(), "CALI_PCH_PER"); // 90
+		add(cali.Plq_Pch(), "CALI_PLQ_PCH"); // 0
+		add(cali.Plq_Per(), "CALI_PLQ_PER"); // 10
+		add(cali.Plt_Pbb(), "CALI_PLT_PBB"); // 30
+		add(cali.Plt_Pch(), "CALI_PLT_PCH"); // 60
+		add(cali.Plt_Per(), "CALI_PLT_PER"); // 20
+		add(cali.Plt_Plq(), "CALI_PLT_PLQ"); // 50
+		add(cali.Tl_Pch(), "CALI_TL_PCH"); // 50
+		add(cali.Vm_Hbb(), "CALI_VM_HBB"); // 60
 
 		
 
@@ -539,7 +673,7 @@ public class PaleoFeatureExtractor {
 		RubineStroke rs = new RubineStroke(m_features.getOrigStroke(),
 				RubineStroke.FeatureSet.Long);
 		for (int i = 0; i < rs.getFeatures().size(); i++)
-			m_featureVector.add(rs.getFeatures().get(i), "Long" + (i + 1));
+			add(rs.getFeatures().get(i), "Long" + (i + 1));
 	}
 
 	
@@ -568,26 +702,55 @@ public class PaleoFeatureExtractor {
 			m_curveFit = new CurveFit(m_features);
 	}
 
+	/**
+	 * Compute the corner finding segmentation used by the polyline based fits,
+	 * unless it has already been computed for this stroke. Segmentations are
+	 * shared with other recognizers through the {@link SegmentationCache}.
+	 */
+	protected void calcSegmentation() {
+		if (m_segmentation != null)
+			return;
+		if (m_config.getHeuristics().MULTI_CF) {
+			try {
+				PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
+						m_config.getHeuristics().FILTER_DIR_GRAPH);
+				String params = m_config.getHeuristics().FILTER_DIR_GRAPH ? "smooth"
+						: null;
+				m_segmentation = SegmentationCache.segment(seg, params,
+						m_features.getOrigStroke()).get(0);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else {
+			try {
+				m_segmentation = SegmentationCache.segment(
+						new PaleoSegmenter(m_features), m_features).get(0);
+			} catch (InvalidParametersException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Compute the wave segmentation, unless it has already been computed for
+	 * this stroke
+	 */
+	protected void calcWaveSegmentation() {
+		if (m_waveSegmentation != null)
+			return;
+		try {
+			m_waveSegmentation = SegmentationCache.segment(
+					new WaveSegmenter(m_features), m_features).get(0);
+		} catch (InvalidParametersException e) {
+		}
+	}
+
 	/**
 	 * Calculate polyline fit
 	 */
 	protected void calcPolylineFit() {
 		if (m_polylineFit == null) {
-			if (m_segmentation == null) {
-				if (m_config.getHeuristics().MULTI_CF) {
-					try {
-						PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-								m_config.getHeuristics().FILTER_DIR_GRAPH);
-						seg.setStroke(m_features.getOrigStroke());
-						m_segmentation = seg.getSegmentations().get(0);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				} else {
-					m_segmentation = new PaleoSegmenter(m_features)
-							.getSegmentations().get(0);
-				}
-			}
+			calcSegmentation();
 			m_polylineFit = new PolylineFit(m_features, m_segmentation,
 					m_config);
 		}
@@ -651,21 +814,7 @@ public class PaleoFeatureExtractor {
 	 */
 	protected void calcArrowFit() {
 		if (m_arrowFit == null) {
-			if (m_segmentation == null) {
-				if (m_config.getHeuristics().MULTI_CF) {
-					try {
-						PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-								m_config.getHeuristics().FILTER_DIR_GRAPH);
-						seg.setStroke(m_features.getOrigStroke());
-						m_segmentation = seg.getSegmentations().get(0);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				} else {
-					m_segmentation = new PaleoSegmenter(m_features)
-							.getSegmentations().get(0);
-				}
-			}
+			calcSegmentation();
 			m_arrowFit = new ArrowFit(m_features, m_segmentation);
 			if (m_features.getOrigStroke().getSegmentations().size() > 0) {
 				Segmentation seg = m_features.getOrigStroke()
@@ -685,21 +834,7 @@ public class PaleoFeatureExtractor {
 		if (m_rectangleFit == null) {
 			if (m_ellipseFit == null)
 				calcEllipseFit();
-			if (m_segmentation == null) {
-				if (m_config.getHeuristics().MULTI_CF) {
-					try {
-						PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-								m_config.getHeuristics().FILTER_DIR_GRAPH);
-						seg.setStroke(m_features.getOrigStroke());
-						m_segmentation = seg.getSegmentations().get(0);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				} else {
-					m_segmentation = new PaleoSegmenter(m_features)
-							.getSegmentations().get(0);
-				}
-			}
+			calcSegmentation();
 			m_rectangleFit = new RectangleFit(m_features,
 					(EllipseFit) m_ellipseFit, m_segmentation);
 		}
@@ -722,21 +857,7 @@ public class PaleoFeatureExtractor {
 	 */
 	protected void calcDiamondFit() {
 		if (m_diamondFit == null) {
-			if (m_segmentation == null) {
-				if (m_config.getHeuristics().MULTI_CF) {
-					try {
-						PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-								m_config.getHeuristics().FILTER_DIR_GRAPH);
-						seg.setStroke(m_features.getOrigStroke());
-						m_segmentation = seg.getSegmentations().get(0);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				} else {
-					m_segmentation = new PaleoSegmenter(m_features)
-							.getSegmentations().get(0);
-				}
-			}
+			calcSegmentation();
 			m_diamondFit = new DiamondFit(m_features, m_config, m_segmentation);
 		}
 	}
@@ -754,13 +875,7 @@ public class PaleoFeatureExtractor {
 	 */
 	protected void calcWaveFit() {
 		if (m_waveFit == null) {
-			if (m_waveSegmentation == null) {
-				WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-				try {
-					m_waveSegmentation = waveSeg.getSegmentations().get(0);
-				} catch (InvalidParametersException e) {
-				}
-			}
+			calcWaveSegmentation();
 			m_waveFit = new WaveFit(m_features, m_waveSegmentation);
 		}
 	}
@@ -770,13 +885,7 @@ public class PaleoFeatureExtractor {
 	 */
 	protected void calcGullFit() {
 		if (m_gullFit == null) {
-			if (m_waveSegmentation == null) {
-				WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-				try {
-					m_waveSegmentation = waveSeg.getSegmentations().get(0);
-				} catch (InvalidParametersException e) {
-				}
-			}
+			calcWaveSegmentation();
 			if (m_polylineFit == null)
 				calcPolylineFit();
 			m_gullFit = new GullFit(m_features, m_waveSegmentation,
@@ -805,13 +914,7 @@ public class PaleoFeatureExtractor {
 	 */
 	protected void calcNBCFit() {
 		if (m_nbcFit == null) {
-			if (m_waveSegmentation == null) {
-				WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-				try {
-					m_waveSegmentation = waveSeg.getSegmentations().get(0);
-				} catch (InvalidParametersException e) {
-				}
-			}
+			calcWaveSegmentation();
 			m_nbcFit = new NBCFit(m_features, m_waveSegmentation);
 		}
 	}
@@ -862,7 +965,10 @@ public class PaleoFeatureExtractor {
 
 	/**
 	 * Set the fits from an already computed original recognizer (avoids
-	 * recomputation)
+	 * recomputation). The arrow fit is always recomputed: original paleo
+	 * computes it before the polyline fit, which changes the shared
+	 * segmentation, so its features would not match the ones the networks
+	 * were trained on.
 	 * 
 	 * @param paleo
 	 *            original paleo recognizer
@@ -870,13 +976,15 @@ public class PaleoFeatureExtractor {
 	public void setFits(OrigPaleoSketchRecognizer paleo) {
 		if (paleo.getArcFitNoCalc() instanceof ArcFit)
 			m_arcFit = (ArcFit) paleo.m_arcFit;
-		if (paleo.getArrowFitNoCalc() instanceof ArrowFit)
-			m_arrowFit = (ArrowFit) paleo.m_arrowFit;
 		if (paleo.getBlobFitNoCalc() instanceof BlobFit)
 			m_blobFit = (BlobFit) paleo.m_blobFit;
 		if (paleo.getCircleFitNoCalc() instanceof CircleFit)
 			m_circleFit = (CircleFit) paleo.m_circleFit;
-		if (paleo.getComplexFitNoCalc() instanceof ComplexFit)
+		// original paleo trims tails off its complex fit; only reuse it if it
+		// still has a sub-fit for every sub-stroke
+		if (paleo.getComplexFitNoCalc() instanceof ComplexFit
+				&& ((ComplexFit) paleo.m_complexFit).getSubFits().size() == ((ComplexFit) paleo.m_complexFit)
+						.getSubStrokes().size())
 			m_complexFit = (ComplexFit) paleo.m_complexFit;
 		if (paleo.getCurveFitNoCalc() instanceof CurveFit)
 			m_curveFit = (CurveFit) paleo.m_curveFit;
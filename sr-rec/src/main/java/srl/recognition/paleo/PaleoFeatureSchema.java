@@ -0,0 +1,173 @@
+/**
+ * PaleoFeatureSchema.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instances;
+
+/**
+ * The layout of the feature values produced by a
+ * {@link PaleoFeatureExtractor} for one configuration: the name of each
+ * feature and the class labels. The features come first, in order, and the
+ * class is the last attribute. The feature set only depends on the
+ * configuration, so a schema is built once and shared by every extractor
+ * that uses an equivalent configuration.
+ * 
+ * @see PaleoFeatureExtractor#getSchema()
+ */
+public class PaleoFeatureSchema {
+
+	/**
+	 * Feature names, in order
+	 */
+	private final List<String> m_featureNames;
+
+	/**
+	 * Class labels, in order (not to be modified)
+	 */
+	private final FastVector m_classLabels;
+
+	/**
+	 * Empty WEKA dataset with this schema's attributes
+	 */
+	private final Instances m_header;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param featureNames
+	 *            feature names, in order
+	 * @param classLabels
+	 *            class labels, in order
+	 */
+	public PaleoFeatureSchema(List<String> featureNames,
+			List<String> classLabels) {
+		m_featureNames = Collections.unmodifiableList(new ArrayList<String>(
+				featureNames));
+		m_classLabels = new FastVector(classLabels.size());
+		for (String label : classLabels)
+			m_classLabels.addElement(label);
+		FastVector attributes = new FastVector(m_featureNames.size() + 1);
+		for (int j = 0; j < m_featureNames.size(); j++)
+			attributes.addElement(new Attribute("a" + j));
+		attributes.addElement(new Attribute("label", m_classLabels));
+		m_header = new Instances("PaleoTrain", attributes, 0);
+	}
+
+	/**
+	 * Get the number of features
+	 * 
+	 * @return number of features
+	 */
+	public int getNumFeatures() {
+		return m_featureNames.size();
+	}
+
+	/**
+	 * Get the number of attributes, including the class
+	 * 
+	 * @return number of attributes
+	 */
+	public int getNumAttributes() {
+		return m_featureNames.size() + 1;
+	}
+
+	/**
+	 * Get the index of the class attribute
+	 * 
+	 * @return class index
+	 */
+	public int getClassIndex() {
+		return m_featureNames.size();
+	}
+
+	/**
+	 * Get the name of a feature
+	 * 
+	 * @param i
+	 *            feature index
+	 * @return feature name
+	 */
+	public String getFeatureName(int i) {
+		return m_featureNames.get(i);
+	}
+
+	/**
+	 * Get the feature names
+	 * 
+	 * @return unmodifiable list of feature names
+	 */
+	public List<String> getFeatureNames() {
+		return m_featureNames;
+	}
+
+	/**
+	 * Get the class labels. The returned vector is shared and must not be
+	 * modified.
+	 * 
+	 * @return class labels
+	 */
+	public FastVector getClassLabels() {
+		return m_classLabels;
+	}
+
+	/**
+	 * Get the index of a class label
+	 * 
+	 * @param label
+	 *            class label
+	 * @return index of the label, or -1 if it is not a class
+	 */
+	public int indexOfClass(String label) {
+		return m_classLabels.indexOf(label);
+	}
+
+	/**
+	 * Create an empty WEKA dataset with this schema's attributes
+	 * 
+	 * @return new empty dataset
+	 */
+	public Instances newDataset() {
+		return new Instances(m_header, 0);
+	}
+}
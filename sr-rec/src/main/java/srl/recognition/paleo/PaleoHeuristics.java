@@ -129,4 +129,20 @@ public class PaleoHeuristics implements Serializable{
 		}
 		return false;
 	}
+
+	/**
+	 * Get a compact string that identifies which heuristics are turned on; two
+	 * heuristics objects that are equal have the same fingerprint
+	 * 
+	 * @return heuristics fingerprint
+	 */
+	public String getFingerprint() {
+		StringBuilder sb = new StringBuilder(9);
+		for (boolean flag : new boolean[] { MULTI_CF, SMALL_V, ARC_DOWN,
+				SMALL_POLYLINE_COMBINE, SIM_SLOPE_POLYLINE_COMBINE,
+				LINE_TEST_COMBINE, OVERTRACED_LINE_COMBINE, FILTER_DIR_GRAPH,
+				M_VS_GULL_CHECK })
+			sb.append(flag ? '1' : '0');
+		return sb.toString();
+	}
 }
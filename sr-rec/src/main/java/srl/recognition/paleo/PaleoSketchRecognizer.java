@@ -42,14 +42,20 @@ package srl.recognition.paleo;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionCache;
+import srl.recognition.StrokeResampler;
+import srl.recognition.metrics.Metrics;
 import srl.recognition.paleo.paleoNN.PaleoNNRecognizer;
+import srl.recognition.recognizer.Deadline;
+import srl.recognition.recognizer.ITimedRecognizer;
 
 /**
  * Combines original Paleo with PaleoNN
  * 
  * @author bpaulson
  */
-public class PaleoSketchRecognizer {
+public class PaleoSketchRecognizer implements
+		ITimedRecognizer<Stroke, IRecognitionResult> {
 
 	/**
 	 * Original PaleoSketch
@@ -66,6 +72,27 @@ public class PaleoSketchRecognizer {
 	 */
 	private PaleoConfig m_config;
 
+	/**
+	 * Optional cache of previous results; may be shared between instances
+	 */
+	private RecognitionCache m_cache;
+
+	/**
+	 * Optional stage that reduces long strokes to a point budget before they
+	 * are recognized
+	 */
+	private StrokeResampler m_resampler;
+
+	/**
+	 * Stroke submitted for recognition
+	 */
+	private Stroke m_stroke;
+
+	/**
+	 * Flag denoting if the last recognition ran out of time
+	 */
+	private boolean m_timedOut = false;
+
 	/**
 	 * Threshold for pruning poor confidence shapes
 	 */
@@ -76,6 +103,16 @@ public class PaleoSketchRecognizer {
 	 */
 	public static final double NN_NOT_CONFIDENT = 0.98;
 
+	/**
+	 * {@link Metrics} timing of each recognition, including cache hits
+	 */
+	public static final String RECOGNIZE_METRIC = "paleo.recognize";
+
+	/**
+	 * {@link Metrics} value recording the size of each n-best list returned
+	 */
+	public static final String NBEST_METRIC = "paleo.nbest";
+
 	/**
 	 * Constructor
 	 * 
@@ -97,12 +134,163 @@ public class PaleoSketchRecognizer {
 	 * @see org.ladder.recognition.recognizer.IRecognizer#recognize()
 	 */
 	public IRecognitionResult recognize(Stroke stroke) {
-		m_paleo.setStroke(stroke);
-		IRecognitionResult orig = m_paleo.recognize();
+		return recognize(stroke, null, Deadline.NONE);
+	}
+
+	/**
+	 * Recognize a stroke, returning the best partial result if the deadline
+	 * passes before all of the fits have been computed. Partial results are
+	 * not cached.
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(Stroke stroke, Deadline deadline) {
+		return recognize(stroke, null, deadline);
+	}
+
+	/**
+	 * Recognize a stroke whose features have already been computed, e.g. by
+	 * an {@link IncrementalStrokeFeatures} while the stroke was drawn
+	 * 
+	 * @param features
+	 *            features of the stroke to recognize
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(StrokeFeatures features) {
+		return recognize(features.getOrigStroke(), features, Deadline.NONE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see srl.recognition.recognizer.IRecognizer#submitForRecognition(java
+	 * .lang.Object)
+	 */
+	@Override
+	public void submitForRecognition(Stroke submission) {
+		m_stroke = submission;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see srl.recognition.recognizer.IRecognizer#recognize()
+	 */
+	@Override
+	public IRecognitionResult recognize() {
+		return recognize(m_stroke);
+	}
+
+	/**
+	 * Recognize the submitted stroke within the given time. Rather than
+	 * throwing an {@link srl.recognition.recognizer.OverTimeException}, the
+	 * best partial result is returned; use {@link #isTimedOut()} to tell if
+	 * the result is partial.
+	 * 
+	 * @param maxTime
+	 *            maximum time to spend, in milliseconds
+	 * @return recognition result
+	 */
+	@Override
+	public IRecognitionResult recognizeTimed(long maxTime) {
+		return recognize(m_stroke, Deadline.afterMillis(maxTime));
+	}
+
+	/**
+	 * Determines if the last recognition ran out of time
+	 * 
+	 * @return true if the last result is partial; else false
+	 */
+	public boolean isTimedOut() {
+		return m_timedOut;
+	}
+
+	/**
+	 * Recognize a stroke, reporting the time taken and the size of the n-best
+	 * list to {@link Metrics}
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param features
+	 *            precomputed features of the stroke, or null
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return recognition result
+	 */
+	private IRecognitionResult recognize(Stroke stroke,
+			StrokeFeatures features, Deadline deadline) {
+		long start = Metrics.start();
+		IRecognitionResult result = lookUpOrRecognize(stroke, features,
+				deadline);
+		Metrics.stop(RECOGNIZE_METRIC, start);
+		if (result != null)
+			Metrics.record(NBEST_METRIC, result.getNBestList().size());
+		return result;
+	}
+
+	/**
+	 * Look the stroke up in the cache, recognizing it if it is not there
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param features
+	 *            precomputed features of the stroke, or null
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return recognition result
+	 */
+	private IRecognitionResult lookUpOrRecognize(Stroke stroke,
+			StrokeFeatures features, Deadline deadline) {
+		m_timedOut = false;
+		String fingerprint = null;
+		if (m_cache != null) {
+			fingerprint = getFingerprint();
+			IRecognitionResult cached = m_cache.get(stroke, fingerprint);
+			if (cached != null)
+				return cached;
+		}
+		IRecognitionResult result;
+		Stroke input = stroke;
+		if (m_resampler != null && features == null)
+			input = m_resampler.resample(stroke);
+		SubstrokeFitMemo memo = SubstrokeFitMemo.open();
+		try {
+			if (features != null)
+				m_paleo.setFeatures(features);
+			else
+				m_paleo.setStroke(input);
+			result = recognizeLoaded(input, deadline);
+		} finally {
+			memo.close();
+		}
+		StrokeResampler.restore(result, input, stroke);
+		if (m_cache != null && !m_timedOut)
+			m_cache.put(stroke, fingerprint, result);
+		return result;
+	}
+
+	/**
+	 * Run both recognizers on the stroke loaded into original Paleo and
+	 * combine their results
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return combined recognition result
+	 */
+	private IRecognitionResult recognizeLoaded(Stroke stroke, Deadline deadline) {
+		IRecognitionResult orig = m_paleo.recognize(deadline);
+		m_timedOut = m_paleo.isTimedOut();
 		IRecognitionResult nn = null;
-		if(m_config.getNNEnabled()){
+		if (m_config.getNNEnabled() && !m_timedOut) {
 			m_paleoNN.submitForRecognition(stroke);
 			m_paleoNN.setFeatures(m_paleo.getFeatures());
+			m_paleoNN.setFits(m_paleo);
 			nn = m_paleoNN.recognize();
 		}
 
@@ -126,6 +314,81 @@ public class PaleoSketchRecognizer {
 		return pruneBad(nn);
 	}
 
+	/**
+	 * Clear all per-stroke state from the underlying recognizers
+	 */
+	public void clear() {
+		m_stroke = null;
+		m_paleo.clear();
+		if (m_paleoNN != null)
+			m_paleoNN.clear();
+	}
+
+	/**
+	 * Set the cache used to look up strokes that were recognized before. The
+	 * same cache can be given to several recognizers (e.g. every instance in a
+	 * {@link srl.recognition.recognizer.RecognizerPool}).
+	 * 
+	 * @param cache
+	 *            recognition cache, or null to turn caching off
+	 */
+	public void setCache(RecognitionCache cache) {
+		m_cache = cache;
+	}
+
+	/**
+	 * Get the recognition cache
+	 * 
+	 * @return recognition cache, or null if caching is off
+	 */
+	public RecognitionCache getCache() {
+		return m_cache;
+	}
+
+	/**
+	 * Get the key used to tell results of this recognizer apart from others in
+	 * a shared {@link RecognitionCache}
+	 * 
+	 * @return recognizer fingerprint
+	 */
+	public String getFingerprint() {
+		if (m_resampler != null)
+			return "Paleo:" + m_config.getFingerprint() + ":"
+					+ m_resampler.getFingerprint();
+		return "Paleo:" + m_config.getFingerprint();
+	}
+
+	/**
+	 * Set the stage that reduces long strokes to a point budget before they
+	 * are recognized, bounding the time spent on strokes from high rate
+	 * digitizers. Strokes recognized from precomputed features are not
+	 * resampled. Results refer to the submitted stroke either way.
+	 * 
+	 * @param resampler
+	 *            resampler, or null to recognize every point
+	 */
+	public void setResampler(StrokeResampler resampler) {
+		m_resampler = resampler;
+	}
+
+	/**
+	 * Get the stage that reduces long strokes to a point budget
+	 * 
+	 * @return resampler, or null if strokes are not resampled
+	 */
+	public StrokeResampler getResampler() {
+		return m_resampler;
+	}
+
+	/**
+	 * Get the paleo config
+	 * 
+	 * @return paleo config
+	 */
+	public PaleoConfig getConfig() {
+		return m_config;
+	}
+
 	/**
 	 * Prune the bad results from the recognition result
 	 * 
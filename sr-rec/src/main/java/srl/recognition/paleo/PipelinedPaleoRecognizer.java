@@ -0,0 +1,235 @@
+/**
+ * PipelinedPaleoRecognizer.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionResult;
+import srl.recognition.recognizer.IPipelinedRecognizer;
+
+/**
+ * Paleo front end for live ink. Points are fed in as they arrive and each
+ * call returns a provisional best fit computed from
+ * {@link IncrementalStrokeFeatures}, without running any of the Paleo fits.
+ * When the pen is lifted, {@link #finish()} runs the full recognizer on the
+ * features that were accumulated along the way.
+ * <p>
+ * The recognition state is the features of the stroke being drawn, so a
+ * partially drawn stroke can be handed between recognizers.
+ */
+public class PipelinedPaleoRecognizer implements
+		IPipelinedRecognizer<Point, IRecognitionResult, IncrementalStrokeFeatures> {
+
+	/**
+	 * Confidence given to provisional interpretations
+	 */
+	public static final double PROVISIONAL_CONFIDENCE = 0.5;
+
+	/**
+	 * Full recognizer used when the stroke is finished
+	 */
+	private PaleoSketchRecognizer m_paleo;
+
+	/**
+	 * Paleo config
+	 */
+	private PaleoConfig m_config;
+
+	/**
+	 * Features of the stroke being drawn
+	 */
+	private IncrementalStrokeFeatures m_features;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            paleo config
+	 */
+	public PipelinedPaleoRecognizer(PaleoConfig config) {
+		this(new PaleoSketchRecognizer(config));
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param paleo
+	 *            recognizer to run when a stroke is finished
+	 */
+	public PipelinedPaleoRecognizer(PaleoSketchRecognizer paleo) {
+		m_paleo = paleo;
+		m_config = paleo.getConfig();
+		m_features = newFeatures();
+	}
+
+	/**
+	 * Add the next point of the stroke being drawn
+	 * 
+	 * @param point
+	 *            new point
+	 * @return provisional recognition result for the stroke so far
+	 */
+	@Override
+	public IRecognitionResult appendToRecognition(Point point) {
+		m_features.addPoint(point);
+		return getProvisionalResult();
+	}
+
+	/**
+	 * Get the best guess for the stroke drawn so far. This only looks at the
+	 * incrementally computed features, so it is cheap enough to call on every
+	 * point.
+	 * 
+	 * @return provisional recognition result, or null if there are no points
+	 */
+	public IRecognitionResult getProvisionalResult() {
+		if (m_features.getNumPoints() == 0)
+			return null;
+		Shape shape = new Shape();
+		shape.add(m_features.getOrigStroke());
+		shape.setInterpretation(getProvisionalLabel(), PROVISIONAL_CONFIDENCE);
+		IRecognitionResult result = new RecognitionResult();
+		result.addShapeToNBestList(shape);
+		return result;
+	}
+
+	/**
+	 * Pick a label for the stroke drawn so far, using the same features and
+	 * thresholds the full fits start from
+	 * 
+	 * @return provisional label
+	 */
+	protected String getProvisionalLabel() {
+		IncrementalStrokeFeatures f = m_features;
+		if (f.getNumPoints() <= 2)
+			return Fit.DOT;
+
+		BoundingBox bounds = f.getBounds();
+		double density = f.getStrokeLength() / bounds.getArea();
+		if (m_config.isDotTestOn() && density > 0.4
+				&& Math.abs(bounds.height / bounds.width - 1.0) <= 3.0)
+			return Fit.DOT;
+
+		if (m_config.isLineTestOn()
+				&& f.getEndptStrokeLengthRatio() >= Thresholds.active.M_ENDPT_STROKE_LENGTH_RATIO)
+			return Fit.LINE;
+
+		if (f.isClosed()) {
+			if (m_config.isPolygonTestOn()
+					&& f.getDCR() >= Thresholds.active.M_DCR_TO_BE_POLYLINE_STRICT)
+				return Fit.POLYGON;
+			double axisRatio = Math.min(bounds.width, bounds.height)
+					/ Math.max(bounds.width, bounds.height);
+			if (m_config.isCircleTestOn()
+					&& axisRatio >= Thresholds.active.M_AXIS_RATIO_TO_BE_CIRCLE)
+				return Fit.CIRCLE;
+			if (m_config.isEllipseTestOn())
+				return Fit.ELLIPSE;
+		}
+
+		if (m_config.isPolylineTestOn()
+				&& f.getDCR() >= Thresholds.active.M_DCR_TO_BE_POLYLINE)
+			return Fit.POLYLINE;
+		if (m_config.isArcTestOn() && f.getNDDE() >= Thresholds.active.M_NDDE_HIGH)
+			return Fit.ARC;
+		return Fit.CURVE;
+	}
+
+	/**
+	 * Finish the stroke being drawn and run the full recognizer on it. The
+	 * recognizer is then ready for the next stroke.
+	 * 
+	 * @return recognition result, or null if no points were added
+	 */
+	public IRecognitionResult finish() {
+		if (m_features.getNumPoints() == 0)
+			return null;
+		StrokeFeatures features = m_features.toStrokeFeatures();
+		m_features = newFeatures();
+		return m_paleo.recognize(features);
+	}
+
+	/**
+	 * Throw away the stroke being drawn
+	 */
+	public void clear() {
+		m_features = newFeatures();
+	}
+
+	/**
+	 * Get the features of the stroke being drawn
+	 * 
+	 * @return features of the current stroke
+	 */
+	@Override
+	public IncrementalStrokeFeatures getRecognitionState() {
+		return m_features;
+	}
+
+	/**
+	 * Continue with a partially drawn stroke
+	 * 
+	 * @param state
+	 *            features of the stroke, or null to start a new one
+	 */
+	@Override
+	public void setRecognitionState(IncrementalStrokeFeatures state) {
+		m_features = (state != null) ? state : newFeatures();
+	}
+
+	/**
+	 * Get the recognizer that is run when a stroke is finished
+	 * 
+	 * @return full recognizer
+	 */
+	public PaleoSketchRecognizer getRecognizer() {
+		return m_paleo;
+	}
+
+	/**
+	 * Create empty features for a new stroke
+	 * 
+	 * @return features
+	 */
+	private IncrementalStrokeFeatures newFeatures() {
+		return new IncrementalStrokeFeatures(
+				m_config.getHeuristics().FILTER_DIR_GRAPH);
+	}
+}
@@ -139,13 +139,13 @@ public class SpiralFit extends Fit {
 
 		// fit all substrokes to circles
 		for (int i = 0; i < subStrokes.size() - 1; i++) {
-			OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+			OrigPaleoSketchRecognizer paleo = SubstrokeFitMemo.recognizer(
 					subStrokes.get(i), new PaleoConfig());
 			subStrokeFits.add(paleo.getCircleFit());
 		}
 
 		// except the last one (make it an arc)
-		OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+		OrigPaleoSketchRecognizer paleo = SubstrokeFitMemo.recognizer(
 				subStrokes.get(subStrokes.size() - 1), new PaleoConfig());
 		subStrokeFits.add(paleo.getArcFit());
 
@@ -351,6 +351,45 @@ public class StrokeFeatures{
 
 	}
 
+	/**
+	 * Constructor for features whose points have already been de-duplicated
+	 * and whose derivative values are filled in by the caller (see
+	 * {@link IncrementalStrokeFeatures}); {@link #finishFromValues()} must be
+	 * called before the features are used
+	 * 
+	 * @param stroke
+	 *            original stroke
+	 * @param points
+	 *            copies of the stroke points, with duplicates removed
+	 * @param smoothDirGraph
+	 *            flag specifying whether or not direction graph smoothing
+	 *            (through median filtering) should take place
+	 */
+	StrokeFeatures(Stroke stroke, List<Point> points, boolean smoothDirGraph) {
+		m_stroke = stroke;
+		m_smoothing = smoothDirGraph;
+		m_points = points;
+		if (m_stroke.getNumPoints() <= 1)
+			m_isPoint = true;
+	}
+
+	/**
+	 * Second half of the constructor, for features whose initial derivative
+	 * values have already been computed
+	 */
+	void finishFromValues() {
+		int numPoints = getNumPoints();
+
+		// remove tails/hooks
+		removeHooks();
+
+		// derivative values only change if a tail was removed
+		if (getNumPoints() != numPoints)
+			computeValues();
+
+		computePaleoFeatures();
+	}
+
 	/**
 	 * Get the points of the stroke
 	 * 
@@ -0,0 +1,564 @@
+/**
+ * SubstrokeFitMemo.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.recognition.metrics.IMetricsRegistry;
+import srl.recognition.metrics.Metrics;
+import srl.recognition.recognizer.Deadline;
+
+/**
+ * Memo table for the substrokes that are featurized and fitted while a single
+ * top-level stroke is recognized. Circle, ellipse and spiral fitting fit the
+ * revolutions of an overtraced stroke, and complex fitting recognizes every
+ * candidate substroke produced by the {@link
+ * srl.segmentation.paleo.ComplexShapeSegmenter}, which is itself run more than
+ * once per stroke; without the memo each of these starts from scratch.
+ * <p>
+ * A memo is bound to the current thread between {@link #open()} and
+ * {@link #close()}. Both {@link OrigPaleoSketchRecognizer#recognize()} and
+ * {@link PaleoSketchRecognizer} open one, so every nested recognition during
+ * one top-level recognition shares the same table, and the table is thrown
+ * away when the top-level recognition finishes. Fits use the static methods
+ * ({@link #recognizer(Stroke, PaleoConfig)},
+ * {@link #fits(Stroke, PaleoConfig, Deadline)}, ...), which fall back on
+ * computing from scratch when no memo is open.
+ * <p>
+ * {@link StrokeFeatures} copies the points of the stroke it is given, so a
+ * substroke of a substroke does not share point objects with the top-level
+ * stroke. Substrokes are therefore identified by their point sequence (the
+ * x, y and time of each point), which for a substroke of the top-level stroke
+ * amounts to its start and end index, and fits are further keyed by the
+ * fingerprint of the {@link PaleoConfig} they were computed with. Results
+ * that were cut short by a deadline are not memoized.
+ */
+public class SubstrokeFitMemo {
+
+	/**
+	 * {@link Metrics} counter of lookups that found an entry, over every memo
+	 * that has been closed
+	 */
+	public static final String HIT_METRIC = "cache.substroke.hit";
+
+	/**
+	 * {@link Metrics} counter of lookups that did not find an entry, over
+	 * every memo that has been closed
+	 */
+	public static final String MISS_METRIC = "cache.substroke.miss";
+
+	/**
+	 * Memo open on each thread, if any
+	 */
+	private static final ThreadLocal<SubstrokeFitMemo> s_active = new ThreadLocal<SubstrokeFitMemo>();
+
+	/**
+	 * Lookups that found an entry, over every memo that has been closed
+	 */
+	private static final AtomicLong s_numHits = new AtomicLong();
+
+	/**
+	 * Lookups that did not find an entry, over every memo that has been closed
+	 */
+	private static final AtomicLong s_numMisses = new AtomicLong();
+
+	private static Logger log = LoggerFactory.getLogger(SubstrokeFitMemo.class);
+
+	/**
+	 * First stroke seen with each point sequence; fits refer to this stroke
+	 */
+	private final Map<Key, Stroke> m_strokes = new HashMap<Key, Stroke>();
+
+	/**
+	 * Features of each substroke, keyed by points and smoothing flag
+	 */
+	private final Map<Key, StrokeFeatures> m_features = new HashMap<Key, StrokeFeatures>();
+
+	/**
+	 * Recognizers (and their fits) for each substroke, keyed by points and
+	 * config fingerprint
+	 */
+	private final Map<Key, Entry> m_entries = new HashMap<Key, Entry>();
+
+	/**
+	 * Number of open() calls that have not been closed yet
+	 */
+	private int m_depth = 0;
+
+	/**
+	 * Number of lookups that found an entry
+	 */
+	private long m_numHits = 0;
+
+	/**
+	 * Number of lookups that did not find an entry
+	 */
+	private long m_numMisses = 0;
+
+	/**
+	 * Use {@link #open()}
+	 */
+	private SubstrokeFitMemo() {
+	}
+
+	/**
+	 * Open the memo for the current thread, creating it if this is the
+	 * outermost call. Every call must be matched by a call to {@link #close()}
+	 * in a finally block.
+	 * 
+	 * @return memo open on this thread
+	 */
+	public static SubstrokeFitMemo open() {
+		SubstrokeFitMemo memo = s_active.get();
+		if (memo == null) {
+			memo = new SubstrokeFitMemo();
+			s_active.set(memo);
+		}
+		memo.m_depth++;
+		return memo;
+	}
+
+	/**
+	 * Close the memo; the outermost call discards it
+	 */
+	public void close() {
+		if (--m_depth > 0)
+			return;
+		s_active.remove();
+		s_numHits.addAndGet(m_numHits);
+		s_numMisses.addAndGet(m_numMisses);
+		IMetricsRegistry metrics = Metrics.getRegistry();
+		if (metrics != null) {
+			metrics.increment(HIT_METRIC, m_numHits);
+			metrics.increment(MISS_METRIC, m_numMisses);
+		}
+		if (log.isDebugEnabled() && m_numHits + m_numMisses > 0)
+			log.debug("Substroke memo: " + m_numHits + " hits, "
+					+ m_numMisses + " misses (hit rate " + getHitRate()
+					+ ")");
+	}
+
+	/**
+	 * Get the memo open on the current thread
+	 * 
+	 * @return open memo, or null if there is none
+	 */
+	public static SubstrokeFitMemo getActive() {
+		return s_active.get();
+	}
+
+	/**
+	 * Get the stroke that memoized fits of the given substroke refer to
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @return first stroke with the same points seen by the open memo, or the
+	 *         stroke itself if no memo is open
+	 */
+	public static Stroke canonical(Stroke stroke) {
+		SubstrokeFitMemo memo = s_active.get();
+		if (memo == null)
+			return stroke;
+		return memo.getCanonicalStroke(stroke);
+	}
+
+	/**
+	 * Get the features of a substroke
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param smoothDirGraph
+	 *            flag specifying whether or not direction graph smoothing
+	 *            should take place
+	 * @return features, shared with other users of the open memo
+	 */
+	public static StrokeFeatures features(Stroke stroke, boolean smoothDirGraph) {
+		SubstrokeFitMemo memo = s_active.get();
+		if (memo == null)
+			return new StrokeFeatures(stroke, smoothDirGraph);
+		return memo.getFeatures(stroke, smoothDirGraph);
+	}
+
+	/**
+	 * Get a recognizer loaded with a substroke, for computing individual fits
+	 * (e.g. {@link OrigPaleoSketchRecognizer#getCircleFit()}). Fits computed
+	 * on the recognizer are shared with other users of the open memo, so they
+	 * must not be modified.
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param config
+	 *            paleo config
+	 * @return loaded recognizer
+	 */
+	public static OrigPaleoSketchRecognizer recognizer(Stroke stroke,
+			PaleoConfig config) {
+		SubstrokeFitMemo memo = s_active.get();
+		if (memo == null)
+			return new OrigPaleoSketchRecognizer(stroke, config);
+		return memo.getRecognizer(stroke, config);
+	}
+
+	/**
+	 * Recognize a substroke and get its ordered list of fits. The fits refer
+	 * to {@link #canonical(Stroke)} rather than the given stroke, and must not
+	 * be modified.
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param config
+	 *            paleo config
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return fits, best first (not to be modified)
+	 */
+	public static List<Fit> fits(Stroke stroke, PaleoConfig config,
+			Deadline deadline) {
+		SubstrokeFitMemo memo = s_active.get();
+		if (memo == null)
+			return recognize(new OrigPaleoSketchRecognizer(stroke, config),
+					deadline);
+		return memo.getFits(stroke, config, deadline);
+	}
+
+	/**
+	 * Get the stroke that memoized fits of the given substroke refer to
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @return first stroke with the same points seen by this memo
+	 */
+	public Stroke getCanonicalStroke(Stroke stroke) {
+		return canonical(geometry(stroke), stroke);
+	}
+
+	/**
+	 * Get the features of a substroke
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param smoothDirGraph
+	 *            flag specifying whether or not direction graph smoothing
+	 *            should take place
+	 * @return memoized features
+	 */
+	public StrokeFeatures getFeatures(Stroke stroke, boolean smoothDirGraph) {
+		return getFeatures(geometry(stroke), stroke, smoothDirGraph);
+	}
+
+	/**
+	 * Get a recognizer loaded with a substroke
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param config
+	 *            paleo config
+	 * @return memoized recognizer
+	 */
+	public OrigPaleoSketchRecognizer getRecognizer(Stroke stroke,
+			PaleoConfig config) {
+		long[] geometry = geometry(stroke);
+		Key key = new Key(geometry, config.getFingerprint());
+		Entry entry = m_entries.get(key);
+		if (entry != null) {
+			m_numHits++;
+			return entry.recognizer;
+		}
+		m_numMisses++;
+		return newEntry(key, geometry, stroke, config).recognizer;
+	}
+
+	/**
+	 * Recognize a substroke and get its ordered list of fits
+	 * 
+	 * @param stroke
+	 *            substroke
+	 * @param config
+	 *            paleo config
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return fits, best first (not to be modified)
+	 */
+	public List<Fit> getFits(Stroke stroke, PaleoConfig config,
+			Deadline deadline) {
+		long[] geometry = geometry(stroke);
+		Key key = new Key(geometry, config.getFingerprint());
+		Entry entry = m_entries.get(key);
+		if (entry != null && entry.fits != null) {
+			m_numHits++;
+			return entry.fits;
+		}
+		m_numMisses++;
+		if (entry == null)
+			entry = newEntry(key, geometry, stroke, config);
+
+		// the same substroke is being recognized further up the stack
+		if (entry.busy) {
+			OrigPaleoSketchRecognizer r = new OrigPaleoSketchRecognizer(
+					config);
+			r.setFeatures(entry.recognizer.getFeatures());
+			return recognize(r, deadline);
+		}
+
+		List<Fit> fits;
+		entry.busy = true;
+		try {
+			fits = recognize(entry.recognizer, deadline);
+		} finally {
+			entry.busy = false;
+		}
+		if (!entry.recognizer.isTimedOut())
+			entry.fits = fits;
+		return fits;
+	}
+
+	/**
+	 * Get the number of lookups that found an entry
+	 * 
+	 * @return number of hits
+	 */
+	public long getNumHits() {
+		return m_numHits;
+	}
+
+	/**
+	 * Get the number of lookups that did not find an entry
+	 * 
+	 * @return number of misses
+	 */
+	public long getNumMisses() {
+		return m_numMisses;
+	}
+
+	/**
+	 * Get the fraction of lookups that found an entry
+	 * 
+	 * @return hit rate in [0, 1]; 0 if there have been no lookups
+	 */
+	public double getHitRate() {
+		long lookups = m_numHits + m_numMisses;
+		return lookups == 0 ? 0.0 : (double) m_numHits / lookups;
+	}
+
+	/**
+	 * Get the number of lookups that found an entry, over every memo that has
+	 * been closed
+	 * 
+	 * @return total number of hits
+	 */
+	public static long getTotalHits() {
+		return s_numHits.get();
+	}
+
+	/**
+	 * Get the number of lookups that did not find an entry, over every memo
+	 * that has been closed
+	 * 
+	 * @return total number of misses
+	 */
+	public static long getTotalMisses() {
+		return s_numMisses.get();
+	}
+
+	/**
+	 * Get the fraction of lookups that found an entry, over every memo that
+	 * has been closed
+	 * 
+	 * @return hit rate in [0, 1]; 0 if there have been no lookups
+	 */
+	public static double getTotalHitRate() {
+		long hits = s_numHits.get();
+		long lookups = hits + s_numMisses.get();
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Reset the total hit and miss counts
+	 */
+	public static void resetStatistics() {
+		s_numHits.set(0);
+		s_numMisses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "SubstrokeFitMemo[substrokes=" + m_strokes.size() + ", hits="
+				+ m_numHits + ", misses=" + m_numMisses + "]";
+	}
+
+	/**
+	 * Run a recognizer and copy out its fits
+	 * 
+	 * @param r
+	 *            loaded recognizer
+	 * @param deadline
+	 *            time by which recognition should be finished
+	 * @return fits, best first (not to be modified)
+	 */
+	private static List<Fit> recognize(OrigPaleoSketchRecognizer r,
+			Deadline deadline) {
+		r.recognize(deadline);
+		if (r.getFits() == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(new ArrayList<Fit>(r.getFits()));
+	}
+
+	/**
+	 * Get the canonical stroke for a point sequence, making the given stroke
+	 * canonical if the sequence has not been seen yet
+	 */
+	private Stroke canonical(long[] geometry, Stroke stroke) {
+		Key key = new Key(geometry, null);
+		Stroke canonical = m_strokes.get(key);
+		if (canonical == null) {
+			m_strokes.put(key, stroke);
+			canonical = stroke;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Look up (or compute) the features of a substroke whose point sequence
+	 * is already known
+	 */
+	private StrokeFeatures getFeatures(long[] geometry, Stroke stroke,
+			boolean smoothDirGraph) {
+		Key key = new Key(geometry, smoothDirGraph ? "smooth" : "raw");
+		StrokeFeatures features = m_features.get(key);
+		if (features != null) {
+			m_numHits++;
+			return features;
+		}
+		m_numMisses++;
+		features = new StrokeFeatures(canonical(geometry, stroke),
+				smoothDirGraph);
+		m_features.put(key, features);
+		return features;
+	}
+
+	/**
+	 * Create the entry for a substroke and config
+	 */
+	private Entry newEntry(Key key, long[] geometry, Stroke stroke,
+			PaleoConfig config) {
+		OrigPaleoSketchRecognizer r = new OrigPaleoSketchRecognizer(config);
+		r.setFeatures(getFeatures(geometry, stroke,
+				config.getHeuristics().FILTER_DIR_GRAPH));
+		Entry entry = new Entry(r);
+		m_entries.put(key, entry);
+		return entry;
+	}
+
+	/**
+	 * Get the x, y (as raw bits) and time of each point, interleaved
+	 */
+	private static long[] geometry(Stroke stroke) {
+		List<Point> points = stroke.getPoints();
+		long[] geometry = new long[points.size() * 3];
+		int j = 0;
+		for (Point p : points) {
+			geometry[j++] = Double.doubleToLongBits(p.getX());
+			geometry[j++] = Double.doubleToLongBits(p.getY());
+			geometry[j++] = p.getTime();
+		}
+		return geometry;
+	}
+
+	/**
+	 * Recognizer loaded with a substroke, along with its fits once it has
+	 * been run to completion
+	 */
+	private static class Entry {
+
+		private final OrigPaleoSketchRecognizer recognizer;
+
+		private List<Fit> fits;
+
+		private boolean busy;
+
+		private Entry(OrigPaleoSketchRecognizer recognizer) {
+			this.recognizer = recognizer;
+		}
+	}
+
+	/**
+	 * Point sequence of a substroke plus a tag (config fingerprint or
+	 * smoothing flag)
+	 */
+	private static final class Key {
+
+		private final long[] m_geometry;
+
+		private final String m_tag;
+
+		private final int m_hash;
+
+		private Key(long[] geometry, String tag) {
+			m_geometry = geometry;
+			m_tag = tag == null ? "" : tag;
+			m_hash = 31 * Arrays.hashCode(m_geometry) + m_tag.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return m_hash == other.m_hash && m_tag.equals(other.m_tag)
+					&& Arrays.equals(m_geometry, other.m_geometry);
+		}
+	}
+}
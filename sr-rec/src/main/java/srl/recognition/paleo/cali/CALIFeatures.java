@@ -38,6 +38,8 @@
 package srl.recognition.paleo.cali;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -46,6 +48,7 @@ import org.openawt.geom.Line2D;
 
 import srl.core.sketch.Point;
 import srl.core.sketch.Stroke;
+import srl.recognition.metrics.Metrics;
 
 
 /**
@@ -55,6 +58,30 @@ import srl.core.sketch.Stroke;
  */
 public class CALIFeatures {
 
+	/**
+	 * {@link Metrics} counter of hulls that are convex, whose features are
+	 * found by the linear searches
+	 */
+	public static final String CONVEX_METRIC = "cali.hull.convex";
+
+	/**
+	 * {@link Metrics} counter of hulls that are not convex, whose features are
+	 * found by the bounded exhaustive searches
+	 */
+	public static final String NOT_CONVEX_METRIC = "cali.hull.notconvex";
+
+	/**
+	 * Relative margin by which a bound must fall below the best area found for
+	 * a candidate to be skipped, to allow for rounding
+	 */
+	private static final double BOUND_MARGIN = 1E-9;
+
+	/**
+	 * Relative margin within which the best area found is taken to have
+	 * reached the largest possible one
+	 */
+	private static final double REACHED_MARGIN = 1E-12;
+
 	protected List<Point> m_points = new ArrayList<Point>();
 
 	private double m_length = 0.0;
@@ -73,7 +100,84 @@ public class CALIFeatures {
 
 	private static final double BIG = 1E30;
 
+	/**
+	 * Coordinates of the distinct vertices of the convex hull; if the hull is
+	 * not convex, those of the true convex hull of its vertices instead (see
+	 * {@link #computeOuterHull()})
+	 */
+	private double[] m_hullX;
+
+	private double[] m_hullY;
+
+	/**
+	 * Number of distinct vertices in {@link #m_hullX} and {@link #m_hullY}
+	 */
+	private int m_hullSize;
+
+	/**
+	 * Index in the hull of each vertex of the true convex hull, and the
+	 * pseudo-angle of the edge leaving it (see {@link #pseudoAngle}),
+	 * increasing from the first edge
+	 */
+	private int[] m_hullIndex;
+
+	private double[] m_hullAngle;
+
+	/**
+	 * True if the exhaustive searches may skip candidates that cannot beat the
+	 * best one found so far, using the true convex hull of the hull vertices
+	 */
+	private boolean m_bounded;
+
+	/**
+	 * Areas of the largest triangle and quadrilateral of the true convex hull,
+	 * which no triangle or quadrilateral of hull vertices exceeds
+	 */
+	private double m_maxTriangle;
+
+	private double m_maxQuad;
+
+	/**
+	 * True if the hull is a convex polygon with left turns at every vertex;
+	 * only then can the linear searches be used
+	 */
+	private boolean m_hullIsConvex;
+
+	/**
+	 * Area of the last rooted triangle or quadrilateral grown
+	 */
+	private double m_rootedArea;
+
+	/**
+	 * Largest triangle or quadrilateral found so far by the divide and
+	 * conquer search, and its area
+	 */
+	private int[] m_best;
+
+	private double m_bestArea;
+
+	/**
+	 * True if the exhaustive searches are used even for convex hulls
+	 */
+	private boolean m_exhaustive;
+
 	public CALIFeatures(Stroke str) {
+		this(str, false);
+	}
+
+	/**
+	 * Compute the features of a stroke, optionally forcing the exhaustive
+	 * searches for the largest triangle, largest quadrilateral and enclosing
+	 * rectangle. The exhaustive searches are the reference the linear ones
+	 * are checked and benchmarked against; both give the same features.
+	 * 
+	 * @param str
+	 *            stroke to compute the features of
+	 * @param exhaustive
+	 *            true to use the exhaustive searches for every hull
+	 */
+	public CALIFeatures(Stroke str, boolean exhaustive) {
+		m_exhaustive = exhaustive;
 		m_length = str.getPathLength();
 		for (Point p : str.getPoints())
 			m_points.add(p);
@@ -87,6 +191,11 @@ public class CALIFeatures {
 	public void compute() {
 		computeConvexHull();
 		computeBoundingBox();
+		m_hullIsConvex = computeHullRing() && !m_exhaustive;
+		m_bounded = !m_hullIsConvex && !m_exhaustive && computeOuterHull();
+		if (!m_exhaustive)
+			Metrics.increment(m_hullIsConvex ? CONVEX_METRIC
+					: NOT_CONVEX_METRIC);
 		computeLargestTriangle();
 		computeLargestQuad();
 		computeEnclosingRect();
@@ -222,6 +331,51 @@ public class CALIFeatures {
 		return m_largestTriangle.perimeter() / m_largestQuad.perimeter();
 	}
 
+	/**
+	 * Get the convex hull of the stroke
+	 * 
+	 * @return convex hull (first point repeated at the end)
+	 */
+	public Polygon getConvexHull() {
+		return m_convexHull;
+	}
+
+	/**
+	 * Get the axis-aligned bounding box of the stroke
+	 * 
+	 * @return bounding box (first point repeated at the end)
+	 */
+	public Polygon getBoundingBox() {
+		return m_boundingBox;
+	}
+
+	/**
+	 * Get the largest triangle inscribed in the convex hull
+	 * 
+	 * @return largest triangle (first point repeated at the end)
+	 */
+	public Polygon getLargestTriangle() {
+		return m_largestTriangle;
+	}
+
+	/**
+	 * Get the largest quadrilateral inscribed in the convex hull
+	 * 
+	 * @return largest quadrilateral (first point repeated at the end)
+	 */
+	public Polygon getLargestQuad() {
+		return m_largestQuad;
+	}
+
+	/**
+	 * Get the minimum-area rectangle enclosing the convex hull
+	 * 
+	 * @return enclosing rectangle (first point repeated at the end)
+	 */
+	public Polygon getEnclosingRect() {
+		return m_enclosingRect;
+	}
+
 	private void computeConvexHull() {
 		m_convexHull = new Polygon();
 		List<Point> ordedPoints = new ArrayList<Point>();
@@ -290,19 +444,26 @@ public class CALIFeatures {
 			return;
 		}
 
+		if (m_hullIsConvex) {
+			computeLargestTriangleConvex();
+			return;
+		}
+
 		// computes one rooted triangle with root in the first point of the
 		// convex hull
 		ia = 0;
 		area = 0;
 		triArea = 0;
-		for (ib = 1; ib <= numPts - 2; ib++) {
+		for (ib = 1; ib <= numPts - 2
+				&& !reached(triArea, m_maxTriangle); ib++) {
+			if (cannotBeat(triangleBound(pts.get(ia), pts.get(ib)), triArea))
+				continue;
 			if (ib >= 2)
 				ic = ib + 1;
 			else
 				ic = 2;
-			List<Object> result = compRootedTri(pts, ia, ib, ic, numPts);
-			area = (Double) result.get(0);
-			ic = (Integer) result.get(1);
+			ic = compRootedTri(pts, ia, ib, ic, numPts);
+			area = m_rootedArea;
 			if (area > triArea) {
 				triArea = area;
 				ripa = ia;
@@ -321,21 +482,25 @@ public class CALIFeatures {
 		pf1 = ripb;
 		pf2 = ripc;
 
-		for (ia = ripa + 1; ia <= ripb; ia++) {
+		for (ia = ripa + 1; ia <= ripb
+				&& !reached(finalArea, m_maxTriangle); ia++) {
 			triArea = 0;
 			if (ia == ripb)
 				ib0 = ripb + 1;
 			else
 				ib0 = ripb;
 			area = 0;
-			for (ib = ib0; ib <= ripc; ib++) {
+			for (ib = ib0; ib <= ripc
+					&& !reached(triArea, m_maxTriangle); ib++) {
+				if (cannotBeat(triangleBound(pts.get(ia), pts.get(ib)),
+						Math.max(triArea, finalArea)))
+					continue;
 				if (ib == ripc)
 					ic = ripc + 1;
 				else
 					ic = ripc;
-				List<Object> result = compRootedTri(pts, ia, ib, ic, numPts);
-				area = (Double) result.get(0);
-				ic = (Integer) result.get(1);
+				ic = compRootedTri(pts, ia, ib, ic, numPts);
+				area = m_rootedArea;
 				if (area > triArea) {
 					triArea = area;
 					fipa = ia;
@@ -375,18 +540,25 @@ public class CALIFeatures {
 			return;
 		}
 
+		if (m_hullIsConvex) {
+			computeLargestQuadConvex();
+			return;
+		}
+
 		// computes one rooted triangle
 		ia = 0;
 		area = 0;
 		triArea = 0;
-		for (ib = 1; ib <= numPts - 2; ib++) {
+		for (ib = 1; ib <= numPts - 2
+				&& !reached(triArea, m_maxTriangle); ib++) {
+			if (cannotBeat(triangleBound(pts.get(ia), pts.get(ib)), triArea))
+				continue;
 			if (ib >= 2)
 				ic = ib + 1;
 			else
 				ic = 2;
-			List<Object> result = compRootedTri(pts, ia, ib, ic, numPts);
-			area = (Double) result.get(0);
-			ic = (Integer) result.get(1);
+			ic = compRootedTri(pts, ia, ib, ic, numPts);
+			area = m_rootedArea;
 			if (area > triArea) {
 				triArea = area;
 				ripa = ia;
@@ -400,21 +572,23 @@ public class CALIFeatures {
 		int id, ib0;
 		double quadArea;
 
+		double[] diagonals = new double[numPts];
+		Arrays.fill(diagonals, -1);
 		quadArea = 0;
-		for (ib = ripa + 1; ib <= ripb; ib++) {
+		for (ib = ripa + 1; ib <= ripb && !reached(quadArea, m_maxQuad); ib++) {
 			if (ib == ripb)
 				ic0 = ripb + 1;
 			else
 				ic0 = ripb;
-			for (ic = ic0; ic <= ripc; ic++) {
+			for (ic = ic0; ic <= ripc && !reached(quadArea, m_maxQuad); ic++) {
+				if (cannotBeat(quadBound(pts, ia, ib, ic, diagonals), quadArea))
+					continue;
 				if (ic == ripc)
 					id = ripc + 1;
 				else
 					id = ripc;
-				List<Object> result = compRootedQuad(pts, ia, ib, ic, id,
-						numPts);
-				area = (Double) result.get(0);
-				id = (Integer) result.get(1);
+				id = compRootedQuad(pts, ia, ib, ic, id, numPts);
+				area = m_rootedArea;
 				if (area > quadArea) {
 					quadArea = area;
 					fipa = ia;
@@ -437,28 +611,32 @@ public class CALIFeatures {
 		ripc = fipc;
 		int ripd = fipd;
 
-		for (ia = ripa + 1; ia <= ripb; ia++) {
+		for (ia = ripa + 1; ia <= ripb
+				&& !reached(finalArea, m_maxQuad); ia++) {
 			if (ia == ripb)
 				ib0 = ripb + 1;
 			else
 				ib0 = ripb;
 
+			Arrays.fill(diagonals, -1);
 			quadArea = 0;
 			area = 0;
-			for (ib = ib0; ib <= ripc; ib++) {
+			for (ib = ib0; ib <= ripc && !reached(quadArea, m_maxQuad); ib++) {
 				if (ib == ripc)
 					ic0 = ripc + 1;
 				else
 					ic0 = ripc;
-				for (ic = ic0; ic <= ripd; ic++) {
+				for (ic = ic0; ic <= ripd
+						&& !reached(quadArea, m_maxQuad); ic++) {
+					if (cannotBeat(quadBound(pts, ia, ib, ic, diagonals),
+							Math.max(quadArea, finalArea)))
+						continue;
 					if (ic == ripd)
 						id = ripd + 1;
 					else
 						id = ripd;
-					List<Object> result = compRootedQuad(pts, ia, ib, ic, id,
-							numPts);
-					area = (Double) result.get(0);
-					id = (Integer) result.get(1);
+					id = compRootedQuad(pts, ia, ib, ic, id, numPts);
+					area = m_rootedArea;
 					if (area > quadArea) {
 						quadArea = area;
 						fipa = ia;
@@ -491,7 +669,7 @@ public class CALIFeatures {
 		List<Point> pts = m_convexHull;
 		double minx = 0, miny = 0, maxx = 0, maxy = 0;
 		int minxp = 0, minyp = 0, maxxp = 0, maxyp = 0;
-		double ang, dis;
+		double ang;
 		double xx, yy;
 		double area = 0, min_area = 0;
 		double p1x = 0, p1y = 0, p2x = 0, p2y = 0, p3x = 0, p3y = 0, p4x = 0, p4y = 0;
@@ -510,40 +688,52 @@ public class CALIFeatures {
 			m_enclosingRect.add(pts.get(1));
 			m_enclosingRect.add(pts.get(0));
 			m_enclosingRect.add(pts.get(0));
+		} else if (m_hullIsConvex) {
+			computeEnclosingRectConvex();
 		} else { // ok it's normal :-)
 			for (int i = 0; i < num - 1; i++) {
-				for (int a = 0; a < num; a++) {
-					Line2D v1 = new Line2D.Double(pts.get(i).getX(), pts.get(i)
-							.getY(), pts.get(i + 1).getX(), pts.get(i + 1)
-							.getY());
-					Line2D v2 = new Line2D.Double(pts.get(i).getX(), pts.get(i)
-							.getY(), pts.get(a).getX(), pts.get(a).getY());
-					ang = angle(v1, v2);
-
-					dis = v2.getP1().distance(v2.getP2());
-					xx = dis * Math.cos(ang);
-					yy = dis * Math.sin(ang);
-
-					if (a == 0) {
-						minx = maxx = xx;
-						miny = maxy = yy;
-						minxp = maxxp = minyp = maxyp = 0;
-					}
-					if (xx < minx) {
-						minxp = a;
-						minx = xx;
-					}
-					if (xx > maxx) {
-						maxxp = a;
-						maxx = xx;
-					}
-					if (yy < miny) {
-						minyp = a;
-						miny = yy;
-					}
-					if (yy > maxy) {
-						maxyp = a;
-						maxy = yy;
+				// coordinates of each point along and to the left of the edge,
+				// scaled by the edge length (only their order matters, so no
+				// trigonometry is needed)
+				double ex = pts.get(i + 1).getX() - pts.get(i).getX();
+				double ey = pts.get(i + 1).getY() - pts.get(i).getY();
+				if (m_bounded && (ex != 0 || ey != 0)) {
+					minxp = extremeVertex(-ex, -ey);
+					maxxp = extremeVertex(ex, ey);
+					maxyp = extremeVertex(-ey, ex);
+				} else {
+					for (int a = 0; a < num; a++) {
+						double dx = pts.get(a).getX() - pts.get(i).getX();
+						double dy = pts.get(a).getY() - pts.get(i).getY();
+						if (ex == 0 && ey == 0) {
+							xx = Math.sqrt(dx * dx + dy * dy);
+							yy = 0;
+						} else {
+							xx = dx * ex + dy * ey;
+							yy = ex * dy - ey * dx;
+						}
+
+						if (a == 0) {
+							minx = maxx = xx;
+							miny = maxy = yy;
+							minxp = maxxp = minyp = maxyp = 0;
+						}
+						if (xx < minx) {
+							minxp = a;
+							minx = xx;
+						}
+						if (xx > maxx) {
+							maxxp = a;
+							maxx = xx;
+						}
+						if (yy < miny) {
+							minyp = a;
+							miny = yy;
+						}
+						if (yy > maxy) {
+							maxyp = a;
+							maxy = yy;
+						}
 					}
 				}
 				Point p1 = closest(pts.get(i), pts.get(i + 1), pts.get(minxp));
@@ -590,6 +780,605 @@ public class CALIFeatures {
 		}
 	}
 
+	/**
+	 * Copy the distinct vertices of the convex hull into arrays and determine
+	 * if they form a convex polygon. The hull is built from truncated
+	 * pseudo-angles and then thinned out, so it is often not convex; such
+	 * hulls are searched exhaustively as before, but within the bounds set
+	 * by their true convex hull (see {@link #computeOuterHull()}).
+	 * 
+	 * @return true if every vertex of the hull is a left turn and the hull
+	 *         winds around exactly once
+	 */
+	private boolean computeHullRing() {
+		List<Point> pts = m_convexHull;
+		int n = pts.size();
+		if (n > 1 && pts.get(0).getX() == pts.get(n - 1).getX()
+				&& pts.get(0).getY() == pts.get(n - 1).getY())
+			n--;
+		m_hullSize = n;
+		m_hullX = new double[n];
+		m_hullY = new double[n];
+		for (int i = 0; i < n; i++) {
+			m_hullX[i] = pts.get(i).getX();
+			m_hullY[i] = pts.get(i).getY();
+		}
+		if (n < 3)
+			return false;
+		double turning = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n, k = (i + 2) % n;
+			double ax = m_hullX[j] - m_hullX[i], ay = m_hullY[j] - m_hullY[i];
+			double bx = m_hullX[k] - m_hullX[j], by = m_hullY[k] - m_hullY[j];
+			double cross = ax * by - ay * bx;
+			if ((ax == 0 && ay == 0) || cross < 0)
+				return false;
+			turning += Math.atan2(cross, ax * bx + ay * by);
+		}
+		return Math.abs(turning - 2 * Math.PI) < 1E-6;
+	}
+
+	/**
+	 * Replace the vertices of a hull that is not convex by those of their
+	 * true convex hull (Andrew's monotone chain), and find the largest
+	 * triangle and quadrilateral of that. No triangle or quadrilateral of hull
+	 * vertices is larger, so the exhaustive searches can skip candidates that
+	 * cannot beat the best found so far, and stop once they reach those
+	 * areas. The extreme vertices in a direction are found on the true convex
+	 * hull in logarithmic time.
+	 * 
+	 * @return true if the true convex hull has at least three vertices
+	 */
+	private boolean computeOuterHull() {
+		final double[] x = m_hullX;
+		final double[] y = m_hullY;
+		Integer[] order = new Integer[m_hullSize];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				if (x[a] != x[b])
+					return x[a] < x[b] ? -1 : 1;
+				if (y[a] != y[b])
+					return y[a] < y[b] ? -1 : 1;
+				return a - b;
+			}
+		});
+
+		// keep the first of the vertices at each position
+		int m = 0;
+		for (int i = 0; i < order.length; i++)
+			if (m == 0 || x[order[i]] != x[order[m - 1]]
+					|| y[order[i]] != y[order[m - 1]])
+				order[m++] = order[i];
+		if (m < 3)
+			return false;
+
+		int[] hull = new int[2 * m];
+		int h = 0;
+		for (int i = 0; i < m; i++) {
+			while (h >= 2 && turn(hull[h - 2], hull[h - 1], order[i]) <= 0)
+				h--;
+			hull[h++] = order[i];
+		}
+		for (int i = m - 2, lower = h + 1; i >= 0; i--) {
+			while (h >= lower
+					&& turn(hull[h - 2], hull[h - 1], order[i]) <= 0)
+				h--;
+			hull[h++] = order[i];
+		}
+		h--; // the first vertex was added again at the end
+		if (h < 3)
+			return false;
+
+		m_hullSize = h;
+		m_hullIndex = Arrays.copyOf(hull, h);
+		m_hullX = new double[h];
+		m_hullY = new double[h];
+		for (int i = 0; i < h; i++) {
+			m_hullX[i] = x[hull[i]];
+			m_hullY[i] = y[hull[i]];
+		}
+		// every edge turns left by less than half a turn, so a direction
+		// smaller than the previous one has wrapped around, unless it only
+		// differs through rounding
+		m_hullAngle = new double[h];
+		for (int i = 0; i < h; i++) {
+			int j = (i + 1) % h;
+			m_hullAngle[i] = pseudoAngle(m_hullX[j] - m_hullX[i], m_hullY[j]
+					- m_hullY[i]);
+			if (i == 0 || m_hullAngle[i] >= m_hullAngle[i - 1])
+				continue;
+			if (m_hullAngle[i] < m_hullAngle[i - 1] - 2)
+				m_hullAngle[i] += 4;
+			else
+				m_hullAngle[i] = m_hullAngle[i - 1];
+		}
+
+		largestKGon(3);
+		m_maxTriangle = m_bestArea;
+		if (h >= 4) {
+			largestKGon(4);
+			m_maxQuad = m_bestArea;
+		} else
+			m_maxQuad = m_maxTriangle;
+		return true;
+	}
+
+	/**
+	 * Twice the signed area of the triangle formed by three vertices of the
+	 * hull arrays, positive if they turn left
+	 */
+	private double turn(int i, int j, int k) {
+		return (m_hullX[j] - m_hullX[i]) * (m_hullY[k] - m_hullY[i])
+				- (m_hullY[j] - m_hullY[i]) * (m_hullX[k] - m_hullX[i]);
+	}
+
+	/**
+	 * Angle of a direction, measured in quarter turns from the x axis but
+	 * without trigonometry: it only increases with the angle, and turning a
+	 * direction a quarter turn adds exactly one
+	 * 
+	 * @return pseudo-angle in [0, 4)
+	 */
+	private static double pseudoAngle(double dx, double dy) {
+		if (dy >= 0 && dx > 0)
+			return dy / (dx + dy);
+		if (dx <= 0 && dy > 0)
+			return 1 - dx / (dy - dx);
+		if (dy <= 0 && dx < 0)
+			return 2 + dy / (dx + dy);
+		if (dx >= 0 && dy < 0)
+			return 3 + dx / (dx - dy);
+		return 0;
+	}
+
+	/**
+	 * Find the vertex of the true convex hull farthest in a direction. The
+	 * edges leaving the vertices turn steadily, so the vertex is the one
+	 * whose edge is the first to turn away from the direction, found by
+	 * binary search.
+	 * 
+	 * @param ux
+	 *            x component of the direction
+	 * @param uy
+	 *            y component of the direction
+	 * @return index of the vertex in the hull ring
+	 */
+	private int extremeVertex(double ux, double uy) {
+		int n = m_hullSize;
+		double target = pseudoAngle(-uy, ux);
+		while (target < m_hullAngle[0])
+			target += 4;
+		while (target >= m_hullAngle[0] + 4)
+			target -= 4;
+		int lo = 0, hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (m_hullAngle[mid] < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		// the neighbours are checked too, in case of rounding
+		int best = lo % n;
+		double bestValue = ux * m_hullX[best] + uy * m_hullY[best];
+		for (int i = best + n - 1; i <= best + n + 1; i += 2) {
+			double value = ux * m_hullX[i % n] + uy * m_hullY[i % n];
+			if (value > bestValue) {
+				best = i % n;
+				bestValue = value;
+			}
+		}
+		return m_hullIndex[best];
+	}
+
+	/**
+	 * Upper bound on the area of a triangle with base ab and its third vertex
+	 * on the hull, or {@link #BIG} if the searches are not bounded
+	 */
+	private double triangleBound(Point a, Point b) {
+		if (!m_bounded)
+			return BIG;
+		double ux = a.getY() - b.getY(), uy = b.getX() - a.getX();
+		double base = ux * a.getX() + uy * a.getY();
+		Point above = m_convexHull.get(extremeVertex(ux, uy));
+		Point below = m_convexHull.get(extremeVertex(-ux, -uy));
+		return Math.max(ux * above.getX() + uy * above.getY() - base, base
+				- ux * below.getX() - uy * below.getY()) / 2.0;
+	}
+
+	/**
+	 * Upper bound on the area of a quadrilateral abcd with d on the hull, or
+	 * {@link #BIG} if the searches are not bounded
+	 * 
+	 * @param pts
+	 *            hull
+	 * @param ia
+	 *            index of a
+	 * @param ib
+	 *            index of b
+	 * @param ic
+	 *            index of c
+	 * @param diagonals
+	 *            bound on the triangles on the diagonal from a to each vertex
+	 *            of the hull, or a negative value if not computed yet; filled
+	 *            in as needed
+	 * @return bound
+	 */
+	private double quadBound(List<Point> pts, int ia, int ib, int ic,
+			double[] diagonals) {
+		if (!m_bounded)
+			return BIG;
+		if (diagonals[ic] < 0)
+			diagonals[ic] = triangleBound(pts.get(ia), pts.get(ic));
+		return triangleArea(pts.get(ia), pts.get(ib), pts.get(ic))
+				+ diagonals[ic];
+	}
+
+	/**
+	 * Determines if a candidate of an exhaustive search can be skipped
+	 * 
+	 * @param bound
+	 *            upper bound on the area of the candidate
+	 * @param best
+	 *            area of the best candidate found so far
+	 * @return true if the candidate cannot be larger than the best one
+	 */
+	private boolean cannotBeat(double bound, double best) {
+		return bound * (1 + BOUND_MARGIN) < best;
+	}
+
+	/**
+	 * Determines if an exhaustive search can stop
+	 * 
+	 * @param best
+	 *            area of the best candidate found so far
+	 * @param max
+	 *            area of the largest candidate of the true convex hull
+	 * @return true if no candidate can be larger than the best one
+	 */
+	private boolean reached(double best, double max) {
+		return m_bounded && best >= max * (1 - REACHED_MARGIN);
+	}
+
+	/**
+	 * Largest inscribed triangle of a convex hull (Boyce and Dobkin). For a
+	 * fixed root vertex a, the third vertex c that maximizes the area of abc
+	 * only moves forward as b does, so the largest triangle rooted at a is
+	 * found in linear time. The largest triangle overall interleaves the one
+	 * rooted at the first vertex, so only the roots up to that triangle's
+	 * second vertex need to be tried, and the triangles rooted at any two
+	 * roots interleave too. The roots are therefore searched by divide and
+	 * conquer, each within the bounds set by the triangles rooted on either
+	 * side of it, which takes O(n log n) time.
+	 */
+	private void computeLargestTriangleConvex() {
+		m_largestTriangle = hullPolygon(largestKGon(3));
+	}
+
+	/**
+	 * Largest inscribed quadrilateral of a convex hull. For a fixed root
+	 * vertex a and each opposite vertex c, the quadrilateral is made of the
+	 * largest triangles on either side of the diagonal ac, and the apexes b
+	 * and d of those triangles only move forward as c does. The roots are
+	 * searched as for triangles.
+	 */
+	private void computeLargestQuadConvex() {
+		m_largestQuad = hullPolygon(largestKGon(4));
+	}
+
+	/**
+	 * Find the largest triangle or quadrilateral of the convex hull
+	 * 
+	 * @param k
+	 *            number of vertices (3 or 4)
+	 * @return indices of the vertices, in order (not reduced modulo the hull
+	 *         size)
+	 */
+	private int[] largestKGon(int k) {
+		int n = m_hullSize;
+		int[] first = new int[k];
+		int[] lower = new int[k];
+		int[] upper = new int[k];
+		for (int j = 1; j < k; j++) {
+			lower[j] = j;
+			upper[j] = n - 1;
+		}
+		m_bestArea = largestRooted(0, lower, upper, first);
+		m_best = first;
+
+		// every other root lies up to the second vertex of the first shape,
+		// and each of its vertices between the corresponding vertex of the
+		// first shape and the next one
+		for (int j = 1; j < k; j++)
+			upper[j] = j + 1 < k ? first[j + 1] : n;
+		searchRoots(1, first[1], first, upper);
+		return m_best;
+	}
+
+	/**
+	 * Find the largest shapes rooted at each vertex in a range, keeping the
+	 * largest in {@link #m_best}. The middle root is searched first; the
+	 * shape found there bounds the roots on either side of it.
+	 * 
+	 * @param aLo
+	 *            first root
+	 * @param aHi
+	 *            last root
+	 * @param lower
+	 *            shape whose vertices bound those of the roots from below
+	 * @param upper
+	 *            shape whose vertices bound those of the roots from above
+	 */
+	private void searchRoots(int aLo, int aHi, int[] lower, int[] upper) {
+		if (aLo > aHi)
+			return;
+		int a = (aLo + aHi) >>> 1;
+		int[] shape = new int[lower.length];
+		double area = largestRooted(a, lower, upper, shape);
+		if (area > m_bestArea) {
+			m_bestArea = area;
+			m_best = shape;
+		}
+		searchRoots(aLo, a - 1, lower, shape);
+		searchRoots(a + 1, aHi, shape, upper);
+	}
+
+	/**
+	 * Find the largest triangle or quadrilateral with a vertex at a, with its
+	 * other vertices within bounds. If no shape fits the bounds (which can
+	 * only happen through ties or rounding), the bounds are dropped.
+	 * 
+	 * @param a
+	 *            index of the root vertex
+	 * @param lower
+	 *            smallest index of each other vertex
+	 * @param upper
+	 *            largest index of each other vertex
+	 * @param shape
+	 *            filled with the indices of the vertices, in order
+	 * @return area of the shape
+	 */
+	private double largestRooted(int a, int[] lower, int[] upper, int[] shape) {
+		double area = shape.length == 3 ? largestRootedTriangle(a, lower,
+				upper, shape) : largestRootedQuad(a, lower, upper, shape);
+		if (area >= 0)
+			return area;
+		int[] lo = new int[shape.length];
+		int[] hi = new int[shape.length];
+		for (int j = 1; j < shape.length; j++) {
+			lo[j] = a + j;
+			hi[j] = a + m_hullSize - 1;
+		}
+		return shape.length == 3 ? largestRootedTriangle(a, lo, hi, shape)
+				: largestRootedQuad(a, lo, hi, shape);
+	}
+
+	/**
+	 * Find the largest triangle of the convex hull with a vertex at a
+	 * 
+	 * @param a
+	 *            index of the root vertex
+	 * @param lower
+	 *            smallest index of each other vertex
+	 * @param upper
+	 *            largest index of each other vertex
+	 * @param tri
+	 *            filled with the indices of the vertices, in order (not
+	 *            reduced modulo the hull size)
+	 * @return area of the triangle, or -1 if no triangle fits the bounds
+	 */
+	private double largestRootedTriangle(int a, int[] lower, int[] upper,
+			int[] tri) {
+		int n = m_hullSize;
+		double best = -1;
+		int bMax = Math.min(upper[1], a + n - 2);
+		int cMax = Math.min(upper[2], a + n - 1);
+		int b = Math.max(lower[1], a + 1);
+		int c = Math.max(lower[2], b + 1);
+		for (; b <= bMax; b++) {
+			if (c <= b)
+				c = b + 1;
+			if (c > cMax)
+				break;
+			double area = hullTriangleArea(a, b, c);
+			while (c + 1 <= cMax) {
+				double next = hullTriangleArea(a, b, c + 1);
+				if (next < area)
+					break;
+				area = next;
+				c++;
+			}
+			if (area > best) {
+				best = area;
+				tri[0] = a;
+				tri[1] = b;
+				tri[2] = c;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Find the largest quadrilateral of the convex hull with a vertex at a
+	 * 
+	 * @param a
+	 *            index of the root vertex
+	 * @param lower
+	 *            smallest index of each other vertex
+	 * @param upper
+	 *            largest index of each other vertex
+	 * @param quad
+	 *            filled with the indices of the vertices, in order (not
+	 *            reduced modulo the hull size)
+	 * @return area of the quadrilateral, or -1 if no quadrilateral fits the
+	 *         bounds
+	 */
+	private double largestRootedQuad(int a, int[] lower, int[] upper,
+			int[] quad) {
+		int n = m_hullSize;
+		double best = -1;
+		int b = Math.max(lower[1], a + 1);
+		int cMax = Math.min(upper[2], a + n - 2);
+		int dMax = Math.min(upper[3], a + n - 1);
+		int d = lower[3];
+		for (int c = Math.max(lower[2], b + 1); c <= cMax; c++) {
+			int bMax = Math.min(upper[1], c - 1);
+			if (b > bMax)
+				continue;
+			double left = hullTriangleArea(a, b, c);
+			while (b + 1 <= bMax) {
+				double next = hullTriangleArea(a, b + 1, c);
+				if (next < left)
+					break;
+				left = next;
+				b++;
+			}
+			if (d <= c)
+				d = c + 1;
+			if (d > dMax)
+				break;
+			double right = hullTriangleArea(a, c, d);
+			while (d + 1 <= dMax) {
+				double next = hullTriangleArea(a, c, d + 1);
+				if (next < right)
+					break;
+				right = next;
+				d++;
+			}
+			if (left + right > best) {
+				best = left + right;
+				quad[0] = a;
+				quad[1] = b;
+				quad[2] = c;
+				quad[3] = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Build a closed polygon from hull vertex indices
+	 * 
+	 * @param indices
+	 *            indices of the vertices (reduced modulo the hull size)
+	 * @return polygon with the first vertex repeated at the end
+	 */
+	private Polygon hullPolygon(int[] indices) {
+		Polygon polygon = new Polygon();
+		for (int i : indices)
+			polygon.add(m_convexHull.get(i % m_hullSize));
+		polygon.add(m_convexHull.get(indices[0] % m_hullSize));
+		return polygon;
+	}
+
+	/**
+	 * Minimum-area enclosing rectangle of a convex hull by rotating calipers.
+	 * As in the exhaustive search, one side of each candidate rectangle lies
+	 * on a hull edge; the extreme points along and away from the edge only
+	 * move forward from one edge to the next, so they are tracked instead of
+	 * searched for.
+	 */
+	private void computeEnclosingRectConvex() {
+		List<Point> pts = m_convexHull;
+		int num = pts.size();
+		int n = m_hullSize;
+		int minxp = 0, maxxp = 0, maxyp = 0;
+		double area, min_area = 0;
+		Point r1 = null, r2 = null, r3 = null, r4 = null;
+
+		for (int i = 0; i < num - 1; i++) {
+			int i0 = i % n, i1 = (i + 1) % n;
+			double ex = m_hullX[i1] - m_hullX[i0];
+			double ey = m_hullY[i1] - m_hullY[i0];
+			if (i == 0) {
+				// the first edge is searched exhaustively
+				for (int a = 1; a < n; a++) {
+					if (along(i0, ex, ey, a) < along(i0, ex, ey, minxp))
+						minxp = a;
+					if (along(i0, ex, ey, a) > along(i0, ex, ey, maxxp))
+						maxxp = a;
+					if (away(i0, ex, ey, a) > away(i0, ex, ey, maxyp))
+						maxyp = a;
+				}
+			} else {
+				for (int k = 0; k < n
+						&& along(i0, ex, ey, (minxp + 1) % n) <= along(i0, ex,
+								ey, minxp); k++)
+					minxp = (minxp + 1) % n;
+				for (int k = 0; k < n
+						&& along(i0, ex, ey, (maxxp + 1) % n) >= along(i0, ex,
+								ey, maxxp); k++)
+					maxxp = (maxxp + 1) % n;
+				for (int k = 0; k < n
+						&& away(i0, ex, ey, (maxyp + 1) % n) >= away(i0, ex,
+								ey, maxyp); k++)
+					maxyp = (maxyp + 1) % n;
+			}
+
+			Point p1 = closest(pts.get(i), pts.get(i + 1), pts.get(minxp));
+			Point p2 = closest(pts.get(i), pts.get(i + 1), pts.get(maxxp));
+
+			double ang = Math.atan2(ey, ex);
+			Point paux1 = new Point(p1.getX() + 100 * Math.cos(ang + M_PI_2),
+					p1.getY() + 100 * Math.sin(ang + M_PI_2));
+			Point paux2 = new Point(p2.getX() + 100 * Math.cos(ang + M_PI_2),
+					p2.getY() + 100 * Math.sin(ang + M_PI_2));
+
+			Point p3 = closest(p2, paux2, pts.get(maxyp));
+			Point p4 = closest(p1, paux1, pts.get(maxyp));
+
+			area = quadArea(p1, p2, p3, p4);
+			if ((i == 0) || (area < min_area)) {
+				min_area = area;
+				r1 = p1;
+				r2 = p2;
+				r3 = p3;
+				r4 = p4;
+			}
+		}
+		m_enclosingRect = new Polygon();
+		m_enclosingRect.add(new Point(r1.getX(), r1.getY()));
+		m_enclosingRect.add(new Point(r2.getX(), r2.getY()));
+		m_enclosingRect.add(new Point(r3.getX(), r3.getY()));
+		m_enclosingRect.add(new Point(r4.getX(), r4.getY()));
+		m_enclosingRect.add(new Point(r1.getX(), r1.getY()));
+	}
+
+	/**
+	 * Area of the triangle formed by three hull vertices (indices are taken
+	 * modulo the hull size)
+	 */
+	private double hullTriangleArea(int i, int j, int k) {
+		int n = m_hullSize;
+		i %= n;
+		j %= n;
+		k %= n;
+		double area = m_hullX[i] * m_hullY[j] - m_hullX[j] * m_hullY[i];
+		area += m_hullX[j] * m_hullY[k] - m_hullX[k] * m_hullY[j];
+		area += m_hullX[k] * m_hullY[i] - m_hullX[i] * m_hullY[k];
+		return Math.abs(area / 2.0);
+	}
+
+	/**
+	 * Distance (scaled by the edge length) of hull vertex a along the edge
+	 * (ex, ey) starting at hull vertex i
+	 */
+	private double along(int i, double ex, double ey, int a) {
+		return (m_hullX[a] - m_hullX[i]) * ex + (m_hullY[a] - m_hullY[i]) * ey;
+	}
+
+	/**
+	 * Signed distance (scaled by the edge length) of hull vertex a to the
+	 * left of the edge (ex, ey) starting at hull vertex i
+	 */
+	private double away(int i, double ex, double ey, int a) {
+		return ex * (m_hullY[a] - m_hullY[i]) - ey * (m_hullX[a] - m_hullX[i]);
+	}
+
 	private Point findLowest() {
 		Point min;
 		int np, p;
@@ -669,9 +1458,14 @@ public class CALIFeatures {
 				* b.getY()) > 0;
 	}
 
-	private List<Object> compRootedTri(List<Point> pts, int ripa, int ripb,
-			int ripc, int np) {
-		List<Object> result = new ArrayList<Object>();
+	/**
+	 * Grow a triangle rooted at ripa and ripb by moving its third vertex
+	 * forward from ripc while the area increases
+	 * 
+	 * @return index of the third vertex; the area is left in m_rootedArea
+	 */
+	private int compRootedTri(List<Point> pts, int ripa, int ripb, int ripc,
+			int np) {
 		Point pa, pb, pc;
 		int ia, ib, ic;
 		double area, _trigArea = 0;
@@ -690,13 +1484,18 @@ public class CALIFeatures {
 				break;
 			}
 		}
-		result.add(_trigArea);
-		result.add(ripc);
-		return result;
+		m_rootedArea = _trigArea;
+		return ripc;
 	}
 
-	private List<Object> compRootedQuad(List<Point> pts, int ripa, int ripb,
-			int ripc, int ripd, int np) {
+	/**
+	 * Grow a quadrilateral rooted at ripa, ripb and ripc by moving its fourth
+	 * vertex forward from ripd while the area increases
+	 * 
+	 * @return index of the fourth vertex; the area is left in m_rootedArea
+	 */
+	private int compRootedQuad(List<Point> pts, int ripa, int ripb, int ripc,
+			int ripd, int np) {
 		Point pa, pb, pc, pd;
 		int id;
 
@@ -715,10 +1514,8 @@ public class CALIFeatures {
 				break;
 			}
 		}
-		List<Object> result = new ArrayList<Object>();
-		result.add(_trigArea);
-		result.add(ripd);
-		return result;
+		m_rootedArea = _trigArea;
+		return ripd;
 	}
 
 	private double triangleArea(Point p1, Point p2, Point p3) {
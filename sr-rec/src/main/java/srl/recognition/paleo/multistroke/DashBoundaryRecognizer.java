@@ -38,6 +38,7 @@
 package srl.recognition.paleo.multistroke;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -47,6 +48,8 @@ import srl.core.sketch.Stroke;
 import srl.core.sketch.comparators.TimePeriodComparator;
 import srl.core.util.IsAConstants;
 import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.multistroke.DashIndex.Entry;
+import srl.recognition.paleo.multistroke.DashIndex.Orientation;
 
 
 /**
@@ -66,11 +69,6 @@ public class DashBoundaryRecognizer {
 	 */
 	private List<Shape> m_output;
 
-	/**
-	 * Keeps track of the last endpoint used
-	 */
-	private int m_lastEndpointUsed = -1;
-
 	/**
 	 * Threshold used to determine if dashed lines are "close"
 	 */
@@ -114,9 +112,7 @@ public class DashBoundaryRecognizer {
 
 		// do we have enough lines?
 		if (possibleBoundary.size() < 4 && possibleBoundary.size() > 0) {
-			for (Shape s : m_input)
-				if (!m_output.contains(s))
-					m_output.add(s);
+			m_output.addAll(possibleBoundary);
 		}
 
 		// we have more than 4 lines - search for boundaries
@@ -135,10 +131,7 @@ public class DashBoundaryRecognizer {
 	 * @return all boundaries found
 	 */
 	private void findBoundaries(List<Shape> possibleBoundary) {
-		List<Shape> binHoriz = new ArrayList<Shape>();
-		List<Shape> binVert = new ArrayList<Shape>();
-		List<Shape> binPos = new ArrayList<Shape>();
-		List<Shape> binNeg = new ArrayList<Shape>();
+		DashIndex index = new DashIndex(CLOSENESS_THRESHOLD2);
 
 		// step 1: place each dashed line into a bin corresponding to its
 		// orientation
@@ -147,143 +140,136 @@ public class DashBoundaryRecognizer {
 					.getLastStroke().getLastPoint());
 			double angle = angleBetween(slope, 0.0);
 			if (angle <= 15.0)
-				binHoriz.add(s);
+				index.add(s, Orientation.HORIZONTAL);
 			else if (angle >= 75.0)
-				binVert.add(s);
+				index.add(s, Orientation.VERTICAL);
 			else {
 				if (slope < 0)
-					binNeg.add(s);
+					index.add(s, Orientation.NEGATIVE);
 				else
-					binPos.add(s);
+					index.add(s, Orientation.POSITIVE);
 			}
 		}
 
 		// step 2: search for rectangles
-		boolean found = true;
-		while (binHoriz.size() > 1 && binVert.size() > 1 && found) {
-			found = doSearch(binHoriz, binVert, true);
-		}
+		doSearch(index, Orientation.HORIZONTAL, Orientation.VERTICAL, true);
 
 		// step 3: search for diamonds
-		found = true;
-		while (binNeg.size() > 1 && binPos.size() > 1 && found) {
-			found = doSearch(binNeg, binPos, false);
-		}
+		doSearch(index, Orientation.NEGATIVE, Orientation.POSITIVE, false);
 
 		// step 4: add whatever is left in bins back to output
-		m_output.addAll(binHoriz);
-		m_output.addAll(binVert);
-		m_output.addAll(binNeg);
-		m_output.addAll(binPos);
+		for (Orientation o : new Orientation[] { Orientation.HORIZONTAL,
+				Orientation.VERTICAL, Orientation.NEGATIVE,
+				Orientation.POSITIVE }) {
+			for (Entry e : index.entries(o))
+				if (!e.m_removed)
+					m_output.add(e.m_shape);
+		}
 	}
 
 	/**
-	 * Searches for an alternative combination of 4 shapes (2 from each bin)
+	 * Searches for every combination of 4 shapes (2 from each bin) that forms
+	 * a boundary, taking each line of the first bin in turn as its first side
 	 * 
+	 * @param index
+	 *            dashed lines
 	 * @param bin1
 	 *            bin1
 	 * @param bin2
 	 *            bin2
 	 * @param isRect
 	 *            true if searching for rectangle, else false (for diamond)
-	 * @return true if shape found, else false
 	 */
-	private boolean doSearch(List<Shape> bin1, List<Shape> bin2, boolean isRect) {
+	private void doSearch(DashIndex index, Orientation bin1,
+			Orientation bin2, boolean isRect) {
+		// a line that does not start a boundary cannot start one once other
+		// lines are taken, so one pass finds them all
+		for (Entry first : new ArrayList<Entry>(index.entries(bin1))) {
+			if (first.m_removed)
+				continue;
+			List<Entry> found = findBoundary(index, first, bin1, bin2);
+			if (found == null)
+				continue;
+			List<Shape> currRect = new ArrayList<Shape>();
+			for (Entry e : found) {
+				currRect.add(e.m_shape);
+				index.remove(e);
+			}
+			if (isRect)
+				generateRectangle(currRect);
+			else
+				generateDiamond(currRect);
+		}
+	}
+
+	/**
+	 * Searches for a boundary starting with the given line, going around it
+	 * from the line's last point
+	 * 
+	 * @param index
+	 *            dashed lines
+	 * @param first
+	 *            first side of the boundary
+	 * @param bin1
+	 *            bin of the first and third sides
+	 * @param bin2
+	 *            bin of the second and fourth sides
+	 * @return the four sides in order, or null if there is no boundary
+	 */
+	private List<Entry> findBoundary(DashIndex index, Entry first,
+			Orientation bin1, Orientation bin2) {
 		// NOTE: this function is commented for searching for a rectangle where
 		// bin1=horizontal bin and bin2=vertical bin; the same rules apply for
 		// diamonds though
-		boolean found = false;
-		List<Shape> currRect = new ArrayList<Shape>();
-		for (int i = 0; i < bin1.size() && !found; i++) {
-
-			// add current horizontal line to list
-			currRect.clear();
-			currRect.add(bin1.get(i));
-
-			// find another vertical line that is coincident
-			for (int j = 0; j < bin2.size() && !found; j++) {
-				double dist = getDistanceFromLast(bin1.get(i), bin2.get(j));
-				double ratio = dist
-						/ (getLength(bin1.get(i)) + getLength(bin2.get(j)));
-				double ratio2 = dist
-						/ (avgDashLength(bin1.get(i)) + avgDashLength(bin2
-								.get(j)));
-				if (ratio < CLOSENESS_THRESHOLD
-						&& ratio2 <= CLOSENESS_THRESHOLD2) {
-					currRect.add(bin2.get(j));
-
-					// find next horizontal line that is coincident
-					for (int k = 0; k < bin1.size() && !found; k++) {
-						if (k == i)
-							continue;
-						if (m_lastEndpointUsed == 0)
-							dist = getDistanceFromLast(bin2.get(j), bin1.get(k));
-						else
-							dist = getDistanceFromFirst(bin2.get(j),
-									bin1.get(k));
-						ratio = dist
-								/ (getLength(bin2.get(j)) + getLength(bin1
-										.get(k)));
-						ratio2 = dist
-								/ (avgDashLength(bin1.get(k)) + avgDashLength(bin2
-										.get(j)));
-						if (ratio < CLOSENESS_THRESHOLD
-								&& ratio2 <= CLOSENESS_THRESHOLD2) {
-							currRect.add(bin1.get(k));
 
-							// find final vertical line that is coincident
-							for (int l = 0; l < bin2.size() && !found; l++) {
-								if (l == j)
-									continue;
-								if (m_lastEndpointUsed == 0)
-									dist = getDistanceFromLast(bin1.get(k),
-											bin2.get(l));
-								else
-									dist = getDistanceFromFirst(bin1.get(k),
-											bin2.get(l));
-								ratio = dist
-										/ (getLength(bin2.get(l)) + getLength(bin1
-												.get(k)));
-								ratio2 = dist
-										/ (avgDashLength(bin1.get(k)) + avgDashLength(bin2
-												.get(l)));
-								if (ratio < CLOSENESS_THRESHOLD
-										&& ratio2 <= CLOSENESS_THRESHOLD2) {
-									currRect.add(bin2.get(l));
-
-									// make sure final vertical line is
-									// coincident with first horizontal line
-									if (m_lastEndpointUsed == 0)
-										dist = getDistanceFromLast(bin2.get(l),
-												bin1.get(i));
-									else
-										dist = getDistanceFromFirst(
-												bin2.get(l), bin1.get(i));
-									ratio = dist
-											/ (getLength(bin2.get(l)) + getLength(bin1
-													.get(i)));
-									ratio2 = dist
-											/ (avgDashLength(bin1.get(i)) + avgDashLength(bin2
-													.get(l)));
-									if (ratio < CLOSENESS_THRESHOLD
-											&& ratio2 <= CLOSENESS_THRESHOLD2) {
-										// FOUND!
-										found = true;
-										if (isRect)
-											generateRectangle(currRect);
-										else
-											generateDiamond(currRect);
-										bin1.removeAll(currRect);
-										bin2.removeAll(currRect);
-									}
-								}
-							}
-						}
-					}
+		// find a vertical line that is coincident
+		Point end1 = first.m_last;
+		for (Entry second : index.near(end1, first.m_reach, bin2)) {
+			if (!isClose(first, second, second.distance(end1)))
+				continue;
+
+			// find next horizontal line that is coincident with the other end
+			// of the vertical line
+			Point end2 = second.farEnd(end1);
+			for (Entry third : index.near(end2, second.m_reach, bin1)) {
+				if (third == first
+						|| !isClose(second, third, third.distance(end2)))
+					continue;
+
+				// find final vertical line that is coincident
+				Point end3 = third.farEnd(end2);
+				for (Entry fourth : index.near(end3, third.m_reach, bin2)) {
+					if (fourth == second
+							|| !isClose(third, fourth, fourth.distance(end3)))
+						continue;
+
+					// make sure final vertical line is coincident with first
+					// horizontal line
+					Point end4 = fourth.farEnd(end3);
+					if (isClose(fourth, first, first.distance(end4)))
+						return Arrays.asList(first, second, third, fourth);
 				}
 			}
 		}
-		return found;
+		return null;
+	}
+
+	/**
+	 * Determines if the endpoints of two dashed lines are close enough to
+	 * form a corner
+	 * 
+	 * @param e1
+	 *            first line
+	 * @param e2
+	 *            second line
+	 * @param dist
+	 *            distance between the endpoints
+	 * @return true if close, else false
+	 */
+	private static boolean isClose(Entry e1, Entry e2, double dist) {
+		double ratio = dist / (e1.m_length + e2.m_length);
+		double ratio2 = dist / (e1.m_avgDashLength + e2.m_avgDashLength);
+		return ratio < CLOSENESS_THRESHOLD && ratio2 <= CLOSENESS_THRESHOLD2;
 	}
 
 	/**
@@ -299,77 +285,6 @@ public class DashBoundaryRecognizer {
 		return (p2.getY() - p1.getY()) / (p2.getX() - p1.getX());
 	}
 
-	/**
-	 * Get the length of a dashed line (from endpoints)
-	 * 
-	 * @param s
-	 *            dashed line shape
-	 * @return distance between endpoints
-	 */
-	private double getLength(Shape s) {
-		return s.getFirstStroke().getFirstPoint()
-				.distance(s.getLastStroke().getLastPoint());
-	}
-
-	/**
-	 * Get the length of the average dash size in a shape
-	 * 
-	 * @param s
-	 *            shape to get the average dash size for
-	 * @return average dash size
-	 */
-	private double avgDashLength(Shape s) {
-		double sum = 0.0;
-		for (Shape ss : s.getShapes()) {
-			sum += ss.getFirstStroke().getPathLength();
-		}
-		return sum / s.getShapes().size();
-	}
-
-	/**
-	 * Get the distance between the last point of the first shape and either of
-	 * the endpoints from the second shape
-	 * 
-	 * @param s1
-	 *            first shape
-	 * @param s2
-	 *            second shape
-	 * @return distance
-	 */
-	private double getDistanceFromLast(Shape s1, Shape s2) {
-		double dist1 = s1.getLastStroke().getLastPoint()
-				.distance(s2.getFirstStroke().getFirstPoint());
-		double dist2 = s1.getLastStroke().getLastPoint()
-				.distance(s2.getLastStroke().getLastPoint());
-		if (dist1 < dist2)
-			m_lastEndpointUsed = 0;
-		else
-			m_lastEndpointUsed = 1;
-		return Math.min(dist1, dist2);
-	}
-
-	/**
-	 * Get the distance between the first point of the first shape and either of
-	 * the endpoints from the second shape
-	 * 
-	 * @param s1
-	 *            first shape
-	 * @param s2
-	 *            second shape
-	 * @return distance
-	 */
-	private double getDistanceFromFirst(Shape s1, Shape s2) {
-		double dist1 = s1.getFirstStroke().getFirstPoint()
-				.distance(s2.getFirstStroke().getFirstPoint());
-		double dist2 = s1.getFirstStroke().getFirstPoint()
-				.distance(s2.getLastStroke().getLastPoint());
-		if (dist1 < dist2)
-			m_lastEndpointUsed = 0;
-		else
-			m_lastEndpointUsed = 1;
-		return Math.min(dist1, dist2);
-	}
-
 	/**
 	 * Determines the angle between two slopes
 	 * 
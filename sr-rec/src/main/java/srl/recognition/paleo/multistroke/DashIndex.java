@@ -0,0 +1,429 @@
+/**
+ * DashIndex.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.multistroke;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+
+/**
+ * Grid of the endpoints of dashed lines, binned by orientation, used to find
+ * the dashed lines whose endpoints may be close enough to another's to form
+ * the corner of a dashed boundary.
+ * <p>
+ * Two dashed lines only meet if their endpoints are closer than a multiple
+ * of their average dash lengths combined, so each line has a reach of that
+ * multiple of its own average dash length. As in {@link EndpointIndex},
+ * each endpoint is registered in every cell within its line's reach and a
+ * query looks in every cell within the query line's reach, so any two
+ * endpoints that can meet share a cell. Each orientation has its own grid,
+ * so a query only sees lines of the orientation it asks for.
+ * <p>
+ * The endpoints, length and average dash length of each line are computed
+ * once, when it is added, and cached in its {@link Entry}.
+ */
+class DashIndex {
+
+	/**
+	 * Orientation bins of dashed lines
+	 */
+	enum Orientation {
+		HORIZONTAL, VERTICAL, POSITIVE, NEGATIVE
+	}
+
+	/**
+	 * Width and height of a grid cell
+	 */
+	private static final double CELL_SIZE = 32.0;
+
+	/**
+	 * Endpoints whose reach covers more cells than this are not put in the
+	 * grid
+	 */
+	private static final int MAX_CELLS = 64;
+
+	/**
+	 * Orders entries by when they were added
+	 */
+	private static final Comparator<Entry> SEQUENCE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return e1.m_sequence - e2.m_sequence;
+		}
+	};
+
+	/**
+	 * Cached geometry of a dashed line
+	 */
+	static class Entry {
+
+		/**
+		 * Dashed line
+		 */
+		final Shape m_shape;
+
+		/**
+		 * First point of the line
+		 */
+		final Point m_first;
+
+		/**
+		 * Last point of the line
+		 */
+		final Point m_last;
+
+		/**
+		 * Distance between the endpoints of the line
+		 */
+		final double m_length;
+
+		/**
+		 * Average path length of the dashes
+		 */
+		final double m_avgDashLength;
+
+		/**
+		 * How far from an endpoint the line's share of the meeting distance
+		 * extends
+		 */
+		final double m_reach;
+
+		/**
+		 * Orientation bin of the line
+		 */
+		final Orientation m_orientation;
+
+		/**
+		 * Order the line was added in
+		 */
+		final int m_sequence;
+
+		/**
+		 * True once the line has been removed
+		 */
+		boolean m_removed = false;
+
+		/**
+		 * Last query that found this entry, to report it once per query
+		 */
+		long m_lastQuery = -1L;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param shape
+		 *            dashed line
+		 * @param orientation
+		 *            orientation bin of the line
+		 * @param threshold
+		 *            multiple of the combined average dash lengths two
+		 *            endpoints must be within to meet
+		 * @param sequence
+		 *            order the line was added in
+		 */
+		Entry(Shape shape, Orientation orientation, double threshold,
+				int sequence) {
+			m_shape = shape;
+			m_first = shape.getFirstStroke().getFirstPoint();
+			m_last = shape.getLastStroke().getLastPoint();
+			m_length = m_first.distance(m_last);
+			double sum = 0.0;
+			List<Shape> dashes = shape.getShapes();
+			for (Shape ss : dashes)
+				sum += ss.getFirstStroke().getPathLength();
+			m_avgDashLength = sum / dashes.size();
+			m_reach = m_avgDashLength * threshold;
+			m_orientation = orientation;
+			m_sequence = sequence;
+		}
+
+		/**
+		 * Get the distance from a point to the closer endpoint of the line
+		 * 
+		 * @param p
+		 *            point
+		 * @return distance
+		 */
+		double distance(Point p) {
+			return Math.min(p.distance(m_first), p.distance(m_last));
+		}
+
+		/**
+		 * Get the endpoint of the line that is not the one closer to a point
+		 * 
+		 * @param p
+		 *            point
+		 * @return other endpoint
+		 */
+		Point farEnd(Point p) {
+			return p.distance(m_first) < p.distance(m_last) ? m_last : m_first;
+		}
+	}
+
+	/**
+	 * Multiple of the combined average dash lengths two endpoints must be
+	 * within to meet
+	 */
+	private final double m_threshold;
+
+	/**
+	 * Entries of each orientation, in the order they were added
+	 */
+	private final Map<Orientation, List<Entry>> m_entries = new EnumMap<Orientation, List<Entry>>(
+			Orientation.class);
+
+	/**
+	 * Entries with an endpoint in each cell of each orientation's grid
+	 */
+	private final Map<Orientation, Map<Long, List<Entry>>> m_cells = new EnumMap<Orientation, Map<Long, List<Entry>>>(
+			Orientation.class);
+
+	/**
+	 * Entries of each orientation with an endpoint whose reach covers too
+	 * many cells
+	 */
+	private final Map<Orientation, List<Entry>> m_large = new EnumMap<Orientation, List<Entry>>(
+			Orientation.class);
+
+	/**
+	 * Number of entries added
+	 */
+	private int m_sequence = 0;
+
+	/**
+	 * Number of queries made
+	 */
+	private long m_queries = 0L;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param threshold
+	 *            multiple of the combined average dash lengths of two lines
+	 *            their endpoints must be within to meet
+	 */
+	public DashIndex(double threshold) {
+		m_threshold = threshold;
+		for (Orientation o : Orientation.values()) {
+			m_entries.put(o, new ArrayList<Entry>());
+			m_cells.put(o, new HashMap<Long, List<Entry>>());
+			m_large.put(o, new ArrayList<Entry>());
+		}
+	}
+
+	/**
+	 * Add a dashed line
+	 * 
+	 * @param shape
+	 *            dashed line
+	 * @param orientation
+	 *            orientation bin of the line
+	 * @return entry of the line
+	 */
+	public Entry add(Shape shape, Orientation orientation) {
+		Entry e = new Entry(shape, orientation, m_threshold, m_sequence++);
+		m_entries.get(orientation).add(e);
+		place(e, e.m_first, true);
+		place(e, e.m_last, true);
+		return e;
+	}
+
+	/**
+	 * Remove a dashed line, so no query finds it again
+	 * 
+	 * @param e
+	 *            entry of the line
+	 */
+	public void remove(Entry e) {
+		if (e.m_removed)
+			return;
+		e.m_removed = true;
+		place(e, e.m_first, false);
+		place(e, e.m_last, false);
+	}
+
+	/**
+	 * Get the lines of an orientation, including removed ones
+	 * 
+	 * @param orientation
+	 *            orientation
+	 * @return entries, in the order they were added
+	 */
+	public List<Entry> entries(Orientation orientation) {
+		return m_entries.get(orientation);
+	}
+
+	/**
+	 * Find the lines of an orientation with an endpoint that may be close
+	 * enough to a point on another line to meet it
+	 * 
+	 * @param p
+	 *            point
+	 * @param reach
+	 *            reach of the line the point is on
+	 * @param orientation
+	 *            orientation of the lines to find
+	 * @return entries of the candidate lines, in the order they were added
+	 */
+	public List<Entry> near(Point p, double reach, Orientation orientation) {
+		long id = m_queries++;
+		List<Entry> found = new ArrayList<Entry>();
+		if (Double.isNaN(reach))
+			return found;
+		Map<Long, List<Entry>> cells = m_cells.get(orientation);
+		int x0 = cell(p.getX() - reach);
+		int x1 = cell(p.getX() + reach);
+		int y0 = cell(p.getY() - reach);
+		int y1 = cell(p.getY() + reach);
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+			// fewer occupied cells than cells to look in
+			for (List<Entry> cell : cells.values())
+				collect(cell, id, found);
+		} else {
+			for (int x = x0; x <= x1; x++) {
+				for (int y = y0; y <= y1; y++) {
+					List<Entry> cell = cells.get(key(x, y));
+					if (cell != null)
+						collect(cell, id, found);
+				}
+			}
+		}
+		collect(m_large.get(orientation), id, found);
+		Collections.sort(found, SEQUENCE);
+		return found;
+	}
+
+	/**
+	 * Add the entries of a cell that have not been found yet to a list
+	 * 
+	 * @param cell
+	 *            entries of the cell
+	 * @param id
+	 *            query being made
+	 * @param found
+	 *            list to add the entries to
+	 */
+	private static void collect(List<Entry> cell, long id, List<Entry> found) {
+		for (Entry e : cell) {
+			if (e.m_lastQuery != id) {
+				e.m_lastQuery = id;
+				found.add(e);
+			}
+		}
+	}
+
+	/**
+	 * Add an endpoint to, or remove it from, every cell within its line's
+	 * reach
+	 * 
+	 * @param e
+	 *            entry of the line
+	 * @param p
+	 *            endpoint
+	 * @param add
+	 *            true to add; false to remove
+	 */
+	private void place(Entry e, Point p, boolean add) {
+		// a line without dashes never meets another
+		if (Double.isNaN(e.m_reach))
+			return;
+		int x0 = cell(p.getX() - e.m_reach);
+		int x1 = cell(p.getX() + e.m_reach);
+		int y0 = cell(p.getY() - e.m_reach);
+		int y1 = cell(p.getY() + e.m_reach);
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+			List<Entry> large = m_large.get(e.m_orientation);
+			if (add) {
+				if (!large.contains(e))
+					large.add(e);
+			} else
+				large.remove(e);
+			return;
+		}
+		Map<Long, List<Entry>> cells = m_cells.get(e.m_orientation);
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				Long key = key(x, y);
+				List<Entry> cell = cells.get(key);
+				if (add) {
+					if (cell == null) {
+						cell = new ArrayList<Entry>(2);
+						cells.put(key, cell);
+					}
+					if (!cell.contains(e))
+						cell.add(e);
+				} else if (cell != null) {
+					cell.remove(e);
+					if (cell.isEmpty())
+						cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cell a coordinate falls in
+	 * 
+	 * @param v
+	 *            coordinate
+	 * @return cell index
+	 */
+	private static int cell(double v) {
+		return (int) Math.floor(v / CELL_SIZE);
+	}
+
+	/**
+	 * Get the key of a cell
+	 * 
+	 * @param x
+	 *            column of the cell
+	 * @param y
+	 *            row of the cell
+	 * @return key
+	 */
+	private static Long key(int x, int y) {
+		return Long.valueOf(((long) x << 32) | (y & 0xffffffffL));
+	}
+}
@@ -0,0 +1,392 @@
+/**
+ * EndpointIndex.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.multistroke;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+
+/**
+ * Grid of stroke endpoints, used to find the strokes whose endpoints may be
+ * close enough to a new stroke's to connect them in the graph.
+ * <p>
+ * Two endpoints only connect if they are closer than
+ * {@link #MIN_DISTANCE} or closer than a fraction of the two strokes'
+ * extents combined, so each stroke has a reach of its share of that
+ * fraction. Each endpoint is registered in every cell within its stroke's
+ * reach, and a query looks in every cell within the query stroke's reach
+ * plus {@link #MIN_DISTANCE}, so any two endpoints that can connect share
+ * a cell. Endpoints whose reach covers too many cells are kept in a list
+ * that every query checks instead.
+ * <p>
+ * The path length, extent and endpoints of each stroke are computed once,
+ * when the stroke is first seen, and cached in its {@link Entry}.
+ */
+class EndpointIndex {
+
+	/**
+	 * Endpoints closer than this always connect
+	 */
+	public static final double MIN_DISTANCE = 8.0;
+
+	/**
+	 * Width and height of a grid cell; a few times {@link #MIN_DISTANCE}, so
+	 * short strokes only cover a few cells
+	 */
+	private static final double CELL_SIZE = 32.0;
+
+	/**
+	 * Endpoints whose reach covers more cells than this are not put in the
+	 * grid
+	 */
+	private static final int MAX_CELLS = 64;
+
+	/**
+	 * Orders entries by when they were first seen
+	 */
+	private static final Comparator<Entry> SEQUENCE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return e1.m_sequence < e2.m_sequence ? -1
+					: (e1.m_sequence == e2.m_sequence ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Cached geometry of a stroke
+	 */
+	static class Entry {
+
+		/**
+		 * Stroke
+		 */
+		final Stroke m_stroke;
+
+		/**
+		 * First point of the stroke
+		 */
+		final Point m_first;
+
+		/**
+		 * Last point of the stroke
+		 */
+		final Point m_last;
+
+		/**
+		 * Path length of the stroke
+		 */
+		final double m_pathLength;
+
+		/**
+		 * Larger of the width and height of the stroke
+		 */
+		final double m_extent;
+
+		/**
+		 * How far from an endpoint the stroke's share of the connection
+		 * distance extends
+		 */
+		final double m_reach;
+
+		/**
+		 * Order the stroke was first seen in
+		 */
+		final long m_sequence;
+
+		/**
+		 * True while the stroke is in the grid
+		 */
+		boolean m_registered = false;
+
+		/**
+		 * Last query that found this entry, to report it once per query
+		 */
+		long m_lastQuery = -1L;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param stroke
+		 *            stroke
+		 * @param threshold
+		 *            fraction of the combined extents two endpoints must be
+		 *            closer than to connect
+		 * @param sequence
+		 *            order the stroke was first seen in
+		 */
+		Entry(Stroke stroke, double threshold, long sequence) {
+			m_stroke = stroke;
+			m_first = stroke.getFirstPoint();
+			m_last = stroke.getLastPoint();
+			m_pathLength = stroke.getPathLength();
+			BoundingBox box = stroke.getBoundingBox();
+			m_extent = Math.max(box.height, box.width);
+			m_reach = m_extent * threshold;
+			m_sequence = sequence;
+		}
+	}
+
+	/**
+	 * Fraction of the combined extents two endpoints must be closer than to
+	 * connect
+	 */
+	private final double m_threshold;
+
+	/**
+	 * Entries of every stroke seen since the index was cleared
+	 */
+	private final Map<Stroke, Entry> m_entries = new HashMap<Stroke, Entry>();
+
+	/**
+	 * Entries with an endpoint in each cell
+	 */
+	private final Map<Long, List<Entry>> m_cells = new HashMap<Long, List<Entry>>();
+
+	/**
+	 * Entries with an endpoint whose reach covers too many cells
+	 */
+	private final List<Entry> m_large = new ArrayList<Entry>();
+
+	/**
+	 * Number of entries created
+	 */
+	private long m_sequence = 0L;
+
+	/**
+	 * Number of queries made
+	 */
+	private long m_queries = 0L;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param threshold
+	 *            fraction of the combined extents of two strokes their
+	 *            endpoints must be closer than to connect
+	 */
+	public EndpointIndex(double threshold) {
+		m_threshold = threshold;
+	}
+
+	/**
+	 * Get the cached geometry of a stroke, computing it the first time
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return entry of the stroke
+	 */
+	public Entry entry(Stroke stroke) {
+		Entry e = m_entries.get(stroke);
+		if (e == null) {
+			e = new Entry(stroke, m_threshold, m_sequence++);
+			m_entries.put(stroke, e);
+		}
+		return e;
+	}
+
+	/**
+	 * Put a stroke's endpoints in the grid, if they are not already
+	 * 
+	 * @param stroke
+	 *            stroke
+	 */
+	public void add(Stroke stroke) {
+		Entry e = entry(stroke);
+		if (e.m_registered)
+			return;
+		e.m_registered = true;
+		place(e, e.m_first, true);
+		place(e, e.m_last, true);
+	}
+
+	/**
+	 * Take a stroke's endpoints out of the grid and forget its geometry
+	 * 
+	 * @param stroke
+	 *            stroke
+	 */
+	public void remove(Stroke stroke) {
+		Entry e = m_entries.remove(stroke);
+		if (e == null || !e.m_registered)
+			return;
+		e.m_registered = false;
+		place(e, e.m_first, false);
+		place(e, e.m_last, false);
+	}
+
+	/**
+	 * Remove every stroke
+	 */
+	public void clear() {
+		m_entries.clear();
+		m_cells.clear();
+		m_large.clear();
+	}
+
+	/**
+	 * Find the strokes in the grid with an endpoint that may be close enough
+	 * to connect to an endpoint of a stroke
+	 * 
+	 * @param query
+	 *            entry of the stroke
+	 * @return entries of the candidate strokes, in the order they were first
+	 *         seen; may include the stroke itself
+	 */
+	public List<Entry> near(Entry query) {
+		long id = m_queries++;
+		List<Entry> found = new ArrayList<Entry>();
+		double radius = query.m_reach + MIN_DISTANCE;
+		collect(query.m_first, radius, id, found);
+		collect(query.m_last, radius, id, found);
+		for (Entry e : m_large) {
+			if (e.m_lastQuery != id) {
+				e.m_lastQuery = id;
+				found.add(e);
+			}
+		}
+		Collections.sort(found, SEQUENCE);
+		return found;
+	}
+
+	/**
+	 * Add the entries in the cells around a point to a list
+	 * 
+	 * @param p
+	 *            point
+	 * @param radius
+	 *            distance from the point to search
+	 * @param id
+	 *            query being made
+	 * @param found
+	 *            list to add the entries to
+	 */
+	private void collect(Point p, double radius, long id, List<Entry> found) {
+		int x0 = cell(p.getX() - radius);
+		int x1 = cell(p.getX() + radius);
+		int y0 = cell(p.getY() - radius);
+		int y1 = cell(p.getY() + radius);
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				List<Entry> cell = m_cells.get(key(x, y));
+				if (cell == null)
+					continue;
+				for (Entry e : cell) {
+					if (e.m_lastQuery != id) {
+						e.m_lastQuery = id;
+						found.add(e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add an endpoint to, or remove it from, every cell within its stroke's
+	 * reach
+	 * 
+	 * @param e
+	 *            entry of the stroke
+	 * @param p
+	 *            endpoint
+	 * @param add
+	 *            true to add; false to remove
+	 */
+	private void place(Entry e, Point p, boolean add) {
+		int x0 = cell(p.getX() - e.m_reach);
+		int x1 = cell(p.getX() + e.m_reach);
+		int y0 = cell(p.getY() - e.m_reach);
+		int y1 = cell(p.getY() + e.m_reach);
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+			if (add) {
+				if (!m_large.contains(e))
+					m_large.add(e);
+			} else
+				m_large.remove(e);
+			return;
+		}
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				Long key = key(x, y);
+				List<Entry> cell = m_cells.get(key);
+				if (add) {
+					if (cell == null) {
+						cell = new ArrayList<Entry>(2);
+						m_cells.put(key, cell);
+					}
+					if (!cell.contains(e))
+						cell.add(e);
+				} else if (cell != null) {
+					cell.remove(e);
+					if (cell.isEmpty())
+						m_cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cell a coordinate falls in
+	 * 
+	 * @param v
+	 *            coordinate
+	 * @return cell index
+	 */
+	private static int cell(double v) {
+		return (int) Math.floor(v / CELL_SIZE);
+	}
+
+	/**
+	 * Get the key of a cell
+	 * 
+	 * @param x
+	 *            column of the cell
+	 * @param y
+	 *            row of the cell
+	 * @return key
+	 */
+	private static Long key(int x, int y) {
+		return Long.valueOf(((long) x << 32) | (y & 0xffffffffL));
+	}
+}
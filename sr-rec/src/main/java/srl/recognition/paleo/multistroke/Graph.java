@@ -38,24 +38,156 @@
 package srl.recognition.paleo.multistroke;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import srl.core.sketch.Stroke;
 
 /**
- * Adjacency list for graph nodes and edges (undirected)
+ * Adjacency list for graph nodes and edges (undirected).
+ * <p>
+ * Nodes are kept in the order they were first added, and indexed by the
+ * strokes they were added with, so finding or removing the nodes of a
+ * stroke does not scan the graph, and removing a node only touches the
+ * lists of its neighbors.
  * 
  * @author bpaulson
  */
 public class Graph {
 
+	/**
+	 * Nodes of part of a graph numbered 0 to n-1, with their edges as arrays
+	 * of node numbers, for traversals that keep per-node state in arrays
+	 */
+	public static class Compact {
+
+		/**
+		 * Nodes, in the order they were added to the graph
+		 */
+		final GraphNode[] m_nodes;
+
+		/**
+		 * Numbers of the nodes adjacent to each node, in adjacency list order
+		 */
+		final int[][] m_adjacent;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param nodes
+		 *            nodes
+		 * @param adjacent
+		 *            numbers of the nodes adjacent to each node
+		 */
+		Compact(GraphNode[] nodes, int[][] adjacent) {
+			m_nodes = nodes;
+			m_adjacent = adjacent;
+		}
+
+		/**
+		 * Get the number of nodes
+		 * 
+		 * @return number of nodes
+		 */
+		public int size() {
+			return m_nodes.length;
+		}
+
+		/**
+		 * Get a node
+		 * 
+		 * @param i
+		 *            number of the node
+		 * @return node
+		 */
+		public GraphNode getNode(int i) {
+			return m_nodes[i];
+		}
+
+		/**
+		 * Get the nodes adjacent to a node
+		 * 
+		 * @param i
+		 *            number of the node
+		 * @return numbers of the adjacent nodes; must not be modified
+		 */
+		public int[] getAdjacent(int i) {
+			return m_adjacent[i];
+		}
+	}
+
+	/**
+	 * What the graph knows about a node
+	 */
+	private static class Entry {
+
+		/**
+		 * The node; the first of the equal nodes added, which is also the one
+		 * in the adjacency lists
+		 */
+		final GraphNode m_node;
+
+		/**
+		 * Order the node was added in
+		 */
+		final int m_sequence;
+
+		/**
+		 * Strokes the node was added with; usually one
+		 */
+		final List<Stroke> m_strokes = new ArrayList<Stroke>(1);
+
+		/**
+		 * Constructor
+		 * 
+		 * @param node
+		 *            node
+		 * @param sequence
+		 *            order the node was added in
+		 */
+		Entry(GraphNode node, int sequence) {
+			m_node = node;
+			m_sequence = sequence;
+		}
+	}
+
 	/**
 	 * Adjacency list
 	 */
 	private AdjacencyList m_adjList;
 
 	/**
-	 * Node list
+	 * Nodes, in the order they were added
 	 */
-	private List<GraphNode> m_nodes;
+	private Map<GraphNode, Entry> m_nodes;
+
+	/**
+	 * Nodes of each stroke
+	 */
+	private Map<Stroke, Set<GraphNode>> m_strokeNodes;
+
+	/**
+	 * Orders entries by when their nodes were added
+	 */
+	private static final Comparator<Entry> SEQUENCE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return e1.m_sequence - e2.m_sequence;
+		}
+	};
+
+	/**
+	 * Number of nodes ever added
+	 */
+	private int m_sequence;
 
 	/**
 	 * Default constructor
@@ -75,23 +207,83 @@ public class Graph {
 	public void addEdge(GraphNode node1, GraphNode node2) {
 
 		// add nodes to hashmap
-		m_adjList.addNode(node1);
-		m_adjList.addNode(node2);
+		addNode(node1);
+		addNode(node2);
 
 		// add edge for both nodes
 		m_adjList.addEdge(node1, node2);
 		m_adjList.addEdge(node2, node1);
-		m_nodes.add(node1);
-		m_nodes.add(node2);
+	}
+
+	/**
+	 * Add a node, if it is not already in the graph, and index it by its
+	 * stroke
+	 * 
+	 * @param node
+	 *            node to add
+	 */
+	private void addNode(GraphNode node) {
+		m_adjList.addNode(node);
+		Entry e = m_nodes.get(node);
+		if (e == null) {
+			e = new Entry(node, m_sequence++);
+			m_nodes.put(node, e);
+		}
+
+		// an equal node may have been added with another stroke
+		Set<GraphNode> nodes = m_strokeNodes.get(node.getStroke());
+		if (nodes == null) {
+			nodes = new LinkedHashSet<GraphNode>(4);
+			m_strokeNodes.put(node.getStroke(), nodes);
+		}
+		if (nodes.add(e.m_node))
+			e.m_strokes.add(node.getStroke());
 	}
 
 	/**
 	 * Get the nodes of the graph
 	 * 
-	 * @return set of nodes
+	 * @return copy of the nodes, in the order they were added
 	 */
 	public List<GraphNode> getNodes() {
-		return m_nodes;
+		List<GraphNode> nodes = new ArrayList<GraphNode>(m_nodes.size());
+		for (Entry e : m_nodes.values())
+			nodes.add(e.m_node);
+		return nodes;
+	}
+
+	/**
+	 * Get the number of nodes in the graph
+	 * 
+	 * @return number of nodes
+	 */
+	public int size() {
+		return m_nodes.size();
+	}
+
+	/**
+	 * Get the nodes added with a stroke
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return nodes of the stroke; empty if it is not in the graph
+	 */
+	public Set<GraphNode> getNodes(Stroke stroke) {
+		Set<GraphNode> nodes = m_strokeNodes.get(stroke);
+		if (nodes == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(nodes);
+	}
+
+	/**
+	 * Determines if a stroke has nodes in the graph
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return true if found
+	 */
+	public boolean containsStroke(Stroke stroke) {
+		return m_strokeNodes.containsKey(stroke);
 	}
 
 	/**
@@ -112,19 +304,78 @@ public class Graph {
 	 *            node to remove
 	 */
 	public void removeNode(GraphNode node) {
-		for (List<GraphNode> list : m_adjList.values())
-			list.remove(node);
-		m_adjList.remove(node);
-		m_nodes.remove(node);
+		List<GraphNode> adjacent = m_adjList.remove(node);
+		if (adjacent != null) {
+			for (GraphNode n : adjacent) {
+				List<GraphNode> list = m_adjList.get(n);
+				if (list != null)
+					list.remove(node);
+			}
+		}
+		Entry e = m_nodes.remove(node);
+		if (e != null) {
+			for (Stroke s : e.m_strokes) {
+				Set<GraphNode> nodes = m_strokeNodes.get(s);
+				nodes.remove(node);
+				if (nodes.isEmpty())
+					m_strokeNodes.remove(s);
+			}
+		}
+	}
+
+	/**
+	 * Remove every node added with a stroke
+	 * 
+	 * @param stroke
+	 *            stroke
+	 */
+	public void removeStroke(Stroke stroke) {
+		Set<GraphNode> nodes = m_strokeNodes.get(stroke);
+		if (nodes == null)
+			return;
+		for (GraphNode n : new ArrayList<GraphNode>(nodes))
+			removeNode(n);
+	}
+
+	/**
+	 * Number some of the nodes of the graph 0 to n-1, in the order they were
+	 * added, and list their edges by number
+	 * 
+	 * @param nodes
+	 *            nodes to number; every node adjacent to one of them must be
+	 *            included too, e.g. a connected component
+	 * @return compact form of the nodes
+	 */
+	public Compact compact(Collection<GraphNode> nodes) {
+		Entry[] entries = new Entry[nodes.size()];
+		int k = 0;
+		for (GraphNode n : nodes)
+			entries[k++] = m_nodes.get(n);
+		Arrays.sort(entries, SEQUENCE);
+		GraphNode[] sorted = new GraphNode[entries.length];
+		Map<GraphNode, Integer> numbers = new HashMap<GraphNode, Integer>(
+				sorted.length * 2);
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = entries[i].m_node;
+			numbers.put(sorted[i], i);
+		}
+		int[][] adjacent = new int[sorted.length][];
+		for (int i = 0; i < sorted.length; i++) {
+			List<GraphNode> list = m_adjList.get(sorted[i]);
+			adjacent[i] = new int[list.size()];
+			for (int j = 0; j < list.size(); j++)
+				adjacent[i][j] = numbers.get(list.get(j));
+		}
+		return new Compact(sorted, adjacent);
 	}
 
 	/**
 	 * Reset all Tarjan values for all nodes
 	 */
 	public void resetNodes() {
-		for (int i = 0; i < m_nodes.size(); i++) {
-			m_nodes.get(i).setLowPt(GraphNode.NOT_NUMBERED);
-			m_nodes.get(i).setNumber(GraphNode.NOT_NUMBERED);
+		for (GraphNode n : m_nodes.keySet()) {
+			n.setLowPt(GraphNode.NOT_NUMBERED);
+			n.setNumber(GraphNode.NOT_NUMBERED);
 		}
 	}
 
@@ -151,6 +402,8 @@ public class Graph {
 	 */
 	public void clear() {
 		m_adjList = new AdjacencyList();
-		m_nodes = new ArrayList<GraphNode>();
+		m_nodes = new LinkedHashMap<GraphNode, Entry>();
+		m_strokeNodes = new HashMap<Stroke, Set<GraphNode>>();
+		m_sequence = 0;
 	}
 }
@@ -0,0 +1,150 @@
+/**
+ * IncrementalCycleFinder.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.multistroke;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import srl.core.sketch.Stroke;
+
+/**
+ * Finds the cycles of a connectivity graph that are new since the last
+ * search, instead of every cycle in the graph.
+ * <p>
+ * A stroke only gains edges when it is added, and every edge added with it
+ * has one of its nodes as an end (the edge between the other stroke's
+ * endpoints is only new if that stroke had no other edges). So every new
+ * cycle passes through a stroke added since the last search, and removing
+ * nodes never creates one. Each search runs {@link TarjanAlgorithm} only
+ * over the connected components holding those strokes, and keeps only the
+ * cycles through them, sorted the same way as before.
+ */
+public class IncrementalCycleFinder {
+
+	/**
+	 * Graph to search
+	 */
+	private final Graph m_graph;
+
+	/**
+	 * Strokes added to the graph since the last search
+	 */
+	private final Set<Stroke> m_pending = new LinkedHashSet<Stroke>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param graph
+	 *            graph to search
+	 */
+	public IncrementalCycleFinder(Graph graph) {
+		m_graph = graph;
+	}
+
+	/**
+	 * Note that a stroke's edges have been added to the graph
+	 * 
+	 * @param stroke
+	 *            stroke
+	 */
+	public void strokeAdded(Stroke stroke) {
+		m_pending.add(stroke);
+	}
+
+	/**
+	 * Note that a stroke's nodes have been removed from the graph
+	 * 
+	 * @param stroke
+	 *            stroke
+	 */
+	public void strokeRemoved(Stroke stroke) {
+		m_pending.remove(stroke);
+	}
+
+	/**
+	 * Forget every stroke added since the last search
+	 */
+	public void clear() {
+		m_pending.clear();
+	}
+
+	/**
+	 * Find the cycles through the strokes added since the last search
+	 * 
+	 * @return cycles, largest first
+	 */
+	public List<GraphCycle> findNewCycles() {
+		List<GraphCycle> cycles = new ArrayList<GraphCycle>();
+		if (m_pending.isEmpty())
+			return cycles;
+
+		// nodes connected to the added strokes, by breadth first search
+		Set<GraphNode> component = new HashSet<GraphNode>();
+		List<GraphNode> queue = new ArrayList<GraphNode>();
+		for (Stroke s : m_pending) {
+			for (GraphNode n : m_graph.getNodes(s)) {
+				if (component.add(n))
+					queue.add(n);
+			}
+		}
+		for (int i = 0; i < queue.size(); i++) {
+			for (GraphNode w : m_graph.getAdjacentNodes(queue.get(i))) {
+				if (component.add(w))
+					queue.add(w);
+			}
+		}
+
+		if (!component.isEmpty()) {
+			for (GraphCycle c : TarjanAlgorithm.findCycles(m_graph, component)) {
+				for (GraphNode n : c) {
+					if (m_pending.contains(n.getStroke())) {
+						cycles.add(c);
+						break;
+					}
+				}
+			}
+			Collections.sort(cycles);
+		}
+		m_pending.clear();
+		return cycles;
+	}
+}
@@ -38,25 +38,41 @@
 package srl.recognition.paleo.multistroke;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import srl.core.sketch.Interpretation;
 import srl.core.sketch.Point;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.core.util.IsAConstants;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.metrics.Metrics;
 import srl.recognition.paleo.Fit;
 import srl.recognition.recognizer.IRecognizer;
+import srl.recognition.recognizer.RecognizerPool;
 
 
 /**
  * Multi-stroke version of PaleoSketch
+ * <p>
+ * Combinations of strokes (closed graph cycles and arrow candidates) can be
+ * recognized speculatively in parallel, each with its own low-level
+ * recognizer leased from a {@link RecognizerPool}. Which combinations are
+ * accepted is still decided one at a time in the same order, so the results
+ * do not depend on the number of threads.
  * 
  * @author bpaulson
  */
@@ -64,9 +80,36 @@ public class MultiStrokePaleoRecognizer implements
 		IRecognizer<List<Stroke>, List<IRecognitionResult>> {
 
 	/**
-	 * Flag that turns off/on debug statements
+	 * Flag that turns off/on debug statements, which are logged at debug
+	 * level
+	 */
+	public boolean M_DEBUG = false;
+
+	/**
+	 * {@link Metrics} timing of each call to {@link #recognize()}
+	 */
+	public static final String RECOGNIZE_METRIC = "multistroke.recognize";
+
+	/**
+	 * {@link Metrics} value recording the number of graph cycles considered
+	 * for each queued stroke
 	 */
-	public boolean M_DEBUG = true;
+	public static final String CYCLES_METRIC = "multistroke.cycles";
+
+	/**
+	 * {@link Metrics} value recording the number of results returned by each
+	 * call to {@link #recognize()}
+	 */
+	public static final String RESULTS_METRIC = "multistroke.results";
+
+	/**
+	 * {@link Metrics} value recording the number of strokes whose endpoints
+	 * are compared against each stroke added to the graph
+	 */
+	public static final String CANDIDATES_METRIC = "multistroke.candidates";
+
+	private static Logger log = LoggerFactory
+			.getLogger(MultiStrokePaleoRecognizer.class);
 
 	/**
 	 * Arrow confidence
@@ -83,6 +126,12 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	private Graph m_graph = new Graph();
 
+	/**
+	 * Finds the cycles of the connectivity graph made by newly added strokes
+	 */
+	private IncrementalCycleFinder m_cycleFinder = new IncrementalCycleFinder(
+			m_graph);
+
 	/**
 	 * Graph of potential arrow candidates
 	 */
@@ -98,11 +147,29 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	private IRecognizer<Stroke, IRecognitionResult> m_paleo;
 
+	/**
+	 * Low-level recognizers combined strokes are speculatively recognized
+	 * with; null to recognize them one at a time with {@link #m_paleo}
+	 */
+	private RecognizerPool<IRecognizer<Stroke, IRecognitionResult>> m_pool;
+
+	/**
+	 * Executor combined strokes are recognized on; null to recognize each
+	 * when its result is needed
+	 */
+	private Executor m_executor;
+
 	/**
 	 * Maps previously recognized strokes with their recognized shapes
 	 */
 	private Map<Stroke, IRecognitionResult> m_recognitionMap;
 
+	/**
+	 * Endpoints of the strokes in the recognition map, for finding the ones
+	 * close to a new stroke
+	 */
+	private final EndpointIndex m_endpoints = new EndpointIndex(THRESHOLD / 1.5);
+
 	/**
 	 * Stroke counter (used for naming purposes)
 	 */
@@ -131,6 +198,30 @@ public class MultiStrokePaleoRecognizer implements
 		clear();
 	}
 
+	/**
+	 * Constructor for a recognizer that recognizes the combinations of
+	 * strokes it considers in parallel. The executor is not shut down by this
+	 * recognizer.
+	 * 
+	 * @param paleo
+	 *            low-level paleosketch recognizer to use for single strokes
+	 * @param pool
+	 *            low-level recognizers to use for combined strokes
+	 * @param executor
+	 *            executor to recognize combined strokes on
+	 */
+	public MultiStrokePaleoRecognizer(
+			IRecognizer<Stroke, IRecognitionResult> paleo,
+			RecognizerPool<IRecognizer<Stroke, IRecognitionResult>> pool,
+			Executor executor) {
+		this(paleo);
+		if (pool == null || executor == null)
+			throw new IllegalArgumentException(
+					"pool and executor cannot be null");
+		m_pool = pool;
+		m_executor = executor;
+	}
+
 	/**
 	 * Generate connectivity graph between strokes
 	 */
@@ -200,11 +291,9 @@ public class MultiStrokePaleoRecognizer implements
 	 *            graph
 	 */
 	private void removeNodes(Stroke s, Graph graph) {
-		for (int i = graph.getNodes().size() - 1; i >= 0; i--) {
-			GraphNode n = graph.getNodes().get(i);
-			if (n.getStroke().equals(s))
-				graph.removeNode(n);
-		}
+		graph.removeStroke(s);
+		if (graph == m_graph)
+			m_cycleFinder.strokeRemoved(s);
 	}
 
 	/**
@@ -217,10 +306,7 @@ public class MultiStrokePaleoRecognizer implements
 	 * @returns true if found
 	 */
 	private boolean containsStroke(Stroke s, Graph graph) {
-		for (GraphNode n : graph.getNodes())
-			if (n.getStroke().equals(s))
-				return true;
-		return false;
+		return graph.containsStroke(s);
 	}
 
 	/**
@@ -248,6 +334,7 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	@Override
 	public List<IRecognitionResult> recognize() {
+		long start = Metrics.start();
 
 		// step 1: process strokes in queue as single strokes
 		int size = m_strokeQueue.size();
@@ -266,8 +353,7 @@ public class MultiStrokePaleoRecognizer implements
 				}
 			}
 
-			m_recognitionMap.remove(st);
-			m_recognitionMap.put(st, shs);
+			putResult(st, shs);
 
 			// key set copy - needed to avoid concurrent modification in arrow
 			// check
@@ -276,42 +362,47 @@ public class MultiStrokePaleoRecognizer implements
 				strSet.add(s);
 
 			if (M_DEBUG)
-				System.out.println(st.getInterpretation().label + ": "
+				log.debug(st.getInterpretation().label + ": "
 						+ shs.getBestShape().getInterpretation().label + " "
 						+ shs.getBestShape().getInterpretation().confidence);
 			m_strokeQueue.remove(0);
 
-			// step 2: find closed loops and process those strokes first
-			if (getGraph().getNodes().size() > 0) {
-				List<GraphCycle> gc = TarjanAlgorithm.findCycles(getGraph());
-				Collections.sort(gc);
+			// step 2: find closed loops and process those strokes first;
+			// only loops through strokes added since the last search are new
+			if (getGraph().size() > 0) {
+				List<GraphCycle> gc = m_cycleFinder.findNewCycles();
+				Metrics.record(CYCLES_METRIC, gc.size());
+				List<Candidate> candidates = new ArrayList<Candidate>(
+						gc.size());
+				for (GraphCycle c : gc)
+					candidates.add(new Candidate(c.getStrokes()));
 
 				for (int i = 0; i < gc.size(); i++) {
 					if (M_DEBUG)
-						System.out.print(i + ": " + gc.get(i));
+						log.debug(i + ": " + gc.get(i));
 
 					// make sure graph still contains nodes
 					boolean missingStroke = false;
 					for (Stroke s : gc.get(i).getStrokes()) {
 						if (!containsStroke(s, m_graph)) {
 							if (M_DEBUG)
-								System.out
-										.println(" aborted - stroke not in graph");
+								log.debug(i + ": aborted - stroke not in graph");
 							missingStroke = true;
 							break;
 						}
 					}
-					if (missingStroke)
+					if (missingStroke) {
+						candidates.get(i).cancel();
 						continue;
+					}
 
 					Shape largestClosed = largestClosed(gc.get(i));
 					if (largestClosed != null
 							&& largestClosed.getBoundingBox().getArea() < 10.0)
 						largestClosed = null;
 					List<Shape> origShapes = getShapes(gc.get(i));
-					Stroke str = combineStrokes(gc.get(i).getStrokes());
-					m_paleo.submitForRecognition(str);
-					IRecognitionResult shapes = m_paleo.recognize();
+					Stroke str = candidates.get(i).getStroke();
+					IRecognitionResult shapes = candidates.get(i).getResult();
 					List<Shape> subshapes = new ArrayList<Shape>();
 					for (Shape sh : shapes.getNBestList()) {
 						sh.setShapes(subshapes);
@@ -326,8 +417,7 @@ public class MultiStrokePaleoRecognizer implements
 							&& !isSame(shapes.getBestShape(),
 									largestClosed.getInterpretation().label)) {
 						if (M_DEBUG) {
-							System.out
-									.println("Combine fail! (rule 1) - "
+							log.debug("Combine fail! (rule 1) - "
 											+ shapes.getBestShape()
 													.getInterpretation().label
 											+ " != "
@@ -351,7 +441,7 @@ public class MultiStrokePaleoRecognizer implements
 								&& (str.getBoundingBox().getWidth() > 20 || str
 										.getBoundingBox().getHeight() > 20)) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 2)");
+								log.debug("Combine fail! (rule 2)");
 							continue;
 						}
 					}
@@ -361,7 +451,7 @@ public class MultiStrokePaleoRecognizer implements
 					if (shapes.getBestShape().getInterpretation().label
 							.startsWith(Fit.COMPLEX)) {
 						if (M_DEBUG)
-							System.out.println("Combine fail! (rule 3)");
+							log.debug("Combine fail! (rule 3)");
 						continue;
 					}
 
@@ -370,7 +460,7 @@ public class MultiStrokePaleoRecognizer implements
 					if (isLinear(shapes.getBestShape())) {
 						if (numLinear(origShapes) != origShapes.size()) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 4)");
+								log.debug("Combine fail! (rule 4)");
 							continue;
 						}
 					}
@@ -380,7 +470,7 @@ public class MultiStrokePaleoRecognizer implements
 					if (isCurvy(shapes.getBestShape())) {
 						if (numCurvy(origShapes) < 1) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 5)");
+								log.debug("Combine fail! (rule 5)");
 							continue;
 						}
 					}
@@ -389,7 +479,7 @@ public class MultiStrokePaleoRecognizer implements
 					// if (isClosed(shapes.getBestShape())
 					// && !gc.get(i).isFullCycle()) {
 					// if (M_DEBUG)
-					// System.out.println("Combine fail! (rule 6)");
+					// log.debug("Combine fail! (rule 6)");
 					// continue;
 					// }
 
@@ -398,7 +488,7 @@ public class MultiStrokePaleoRecognizer implements
 							.startsWith(Fit.ARROW)) {
 						if (shapes.getBestShape().getInterpretation().confidence < ARROW_CONFIDENCE + 0.25) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 6)");
+								log.debug("Combine fail! (rule 6)");
 							continue;
 						}
 					}
@@ -407,7 +497,7 @@ public class MultiStrokePaleoRecognizer implements
 					Shape complexSh = containsShape(origShapes, Fit.COMPLEX);
 					if (complexSh != null && !allLines(complexSh.getShapes())) {
 						if (M_DEBUG)
-							System.out.println("Combine fail! (rule 7)");
+							log.debug("Combine fail! (rule 7)");
 						continue;
 					}
 
@@ -418,7 +508,7 @@ public class MultiStrokePaleoRecognizer implements
 							&& !shapes.getBestShape().getInterpretation().label
 									.equals(Fit.ARROW)) {
 						if (M_DEBUG)
-							System.out.println("Combine fail! (rule 8)");
+							log.debug("Combine fail! (rule 8)");
 						continue;
 					}
 
@@ -433,7 +523,7 @@ public class MultiStrokePaleoRecognizer implements
 								/ waveSh.getBoundingBox().getHeight();
 						if (ratio > 1.5) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 9)");
+								log.debug("Combine fail! (rule 9)");
 							continue;
 						}
 					}
@@ -447,16 +537,14 @@ public class MultiStrokePaleoRecognizer implements
 						if (numLines(origShapes) != getNumFromLabel(shapes
 								.getBestShape().getInterpretation().label)) {
 							if (M_DEBUG)
-								System.out.println("Combine fail! (rule 10)");
+								log.debug("Combine fail! (rule 10)");
 							continue;
 						}
 					}
 
 					// combine successful
 					if (M_DEBUG) {
-						System.out.println("");
-						System.out
-								.println("Combine success! ("
+						log.debug("Combine success! ("
 										+ shapes.getBestShape()
 												.getInterpretation().label
 										+ ", "
@@ -474,7 +562,7 @@ public class MultiStrokePaleoRecognizer implements
 					// add strokes to recognized map and remove from queue
 					for (Stroke s : gc.get(i).getStrokes()) {
 						// remove old recognition results from map
-						IRecognitionResult old = m_recognitionMap.remove(s);
+						IRecognitionResult old = removeResult(s);
 
 						// add old shape as a subshape to new shape
 						if (old != null)
@@ -491,7 +579,7 @@ public class MultiStrokePaleoRecognizer implements
 					}
 
 					// add new result
-					m_recognitionMap.put(str, shapes);
+					putResult(str, shapes);
 					addStroke(str);
 				}
 			}
@@ -519,6 +607,7 @@ public class MultiStrokePaleoRecognizer implements
 				}
 
 				// see if any strokes are close to midpoint of arrow head
+				List<Candidate> candidates = new ArrayList<Candidate>();
 				for (Stroke s : strSet) {
 					if (s.equals(st))
 						continue;
@@ -528,71 +617,73 @@ public class MultiStrokePaleoRecognizer implements
 					double thres = (s.getPathLength() + st.getPathLength()) * 0.1;
 					if (dis < thres || dis < 10.0) {
 						if (M_DEBUG)
-							System.out.println("distance = " + dis
+							log.debug("distance = " + dis
 									+ " thres = " + thres
 									+ " between poly2 and "
 									+ s.getInterpretation().label);
 						List<Stroke> strList = new ArrayList<Stroke>();
 						strList.add(s);
 						strList.add(st);
-						Stroke c = combineStrokes(strList);
-
-						// see if we have an arrow now
-						m_paleo.submitForRecognition(c);
-						IRecognitionResult shapes = m_paleo.recognize();
-						removeInterpretation(shapes, Fit.COMPLEX);
-						List<Shape> subshapes = new ArrayList<Shape>();
-						for (Shape sh : shapes.getNBestList()) {
-							sh.setShapes(subshapes);
-							sh.setAttribute(COMBINED, "true");
-						}
-						IRecognitionResult tmp = m_recognitionMap.get(s);
-						if (shapes.getBestShape().getInterpretation().label
-								.equalsIgnoreCase(Fit.ARROW)
-								&& shapes.getBestShape().getInterpretation().confidence > ARROW_CONFIDENCE
-								&& !tmp.getBestShape().getInterpretation().label
-										.equals(Fit.ARROW)
-								&& !tmp.getBestShape().hasAttribute(
-										IsAConstants.CLOSED)) {
-							if (M_DEBUG) {
-								System.out
-										.println("Arrow found! - "
-												+ shapes.getBestShape()
-														.getInterpretation().confidence);
-
-								// plot str
+						candidates.add(new Candidate(strList));
+					}
+				}
+				for (Candidate candidate : candidates) {
+					Stroke s = candidate.getStrokes().get(0);
+					List<Stroke> strList = candidate.getStrokes();
+					Stroke c = candidate.getStroke();
+
+					// see if we have an arrow now
+					IRecognitionResult shapes = candidate.getResult();
+					removeInterpretation(shapes, Fit.COMPLEX);
+					List<Shape> subshapes = new ArrayList<Shape>();
+					for (Shape sh : shapes.getNBestList()) {
+						sh.setShapes(subshapes);
+						sh.setAttribute(COMBINED, "true");
+					}
+					IRecognitionResult tmp = m_recognitionMap.get(s);
+					if (shapes.getBestShape().getInterpretation().label
+							.equalsIgnoreCase(Fit.ARROW)
+							&& shapes.getBestShape().getInterpretation().confidence > ARROW_CONFIDENCE
+							&& !tmp.getBestShape().getInterpretation().label
+									.equals(Fit.ARROW)
+							&& !tmp.getBestShape().hasAttribute(
+									IsAConstants.CLOSED)) {
+						if (M_DEBUG) {
+							log.debug("Arrow found! - "
+											+ shapes.getBestShape()
+													.getInterpretation().confidence);
+
+							// plot str
 //								Plot plot = new Plot("Combined Stroke");
 //								// plot.addLine(c.getPoints(), Color.black);
 //								plot.setKeepdim(true);
 //								plot.plot();
-							}
+						}
 
-							// add strokes to recognized map and remove from
-							// queue
-							for (Stroke s1 : strList) {
-
-								// remove old recognition results from map
-								IRecognitionResult old = m_recognitionMap
-										.remove(s1);
-
-								// add old shape as a subshape to new shape
-								if (old != null)
-									subshapes.add(old.getBestShape());
-								else {
-									// create arbitrary Shape
-									Shape subShape = new Shape();
-									subShape.add(s1);
-									subshapes.add(subShape);
-								}
-
-								// remove from graph
-								removeNodes(s1, m_graph);
+						// add strokes to recognized map and remove from
+						// queue
+						for (Stroke s1 : strList) {
+
+							// remove old recognition results from map
+							IRecognitionResult old = removeResult(s1);
+
+							// add old shape as a subshape to new shape
+							if (old != null)
+								subshapes.add(old.getBestShape());
+							else {
+								// create arbitrary Shape
+								Shape subShape = new Shape();
+								subShape.add(s1);
+								subshapes.add(subShape);
 							}
 
-							// add new result
-							m_recognitionMap.put(c, shapes);
-							addStroke(c);
+							// remove from graph
+							removeNodes(s1, m_graph);
 						}
+
+						// add new result
+						putResult(c, shapes);
+						addStroke(c);
 					}
 				}
 
@@ -607,6 +698,7 @@ public class MultiStrokePaleoRecognizer implements
 							.equalsIgnoreCase(Fit.LINE)) {
 
 				// find poly2s
+				List<Candidate> candidates = new ArrayList<Candidate>();
 				for (Stroke s : strSet) {
 					IRecognitionResult r2 = m_recognitionMap.get(s);
 					if (s.equals(st)
@@ -639,66 +731,67 @@ public class MultiStrokePaleoRecognizer implements
 					double thres = ((s.getPathLength() + st.getPathLength()) / 2.0) * 0.1;
 					if (dis < thres || dis < 10.0) {
 						if (M_DEBUG)
-							System.out.println("distance = " + dis
+							log.debug("distance = " + dis
 									+ " thres = " + thres
 									+ " between line and "
 									+ s.getInterpretation().label);
 						List<Stroke> strList = new ArrayList<Stroke>();
 						strList.add(s);
 						strList.add(st);
-						Stroke c = combineStrokes(strList);
-
-						// see if we have an arrow now
-						m_paleo.submitForRecognition(c);
-						IRecognitionResult shapes = m_paleo.recognize();
-						removeInterpretation(shapes, Fit.COMPLEX);
-						List<Shape> subshapes = new ArrayList<Shape>();
-						for (Shape sh : shapes.getNBestList()) {
-							sh.setShapes(subshapes);
-							sh.setAttribute(COMBINED, "true");
-						}
-						if (shapes.getBestShape().getInterpretation().label
-								.equalsIgnoreCase(Fit.ARROW)
-								&& shapes.getBestShape().getInterpretation().confidence > ARROW_CONFIDENCE) {
-							if (M_DEBUG) {
-								System.out
-										.println("Arrow found! - "
-												+ shapes.getBestShape()
-														.getInterpretation().confidence);
-
-								// plot str
+						candidates.add(new Candidate(strList));
+					}
+				}
+				for (Candidate candidate : candidates) {
+					List<Stroke> strList = candidate.getStrokes();
+					Stroke c = candidate.getStroke();
+
+					// see if we have an arrow now
+					IRecognitionResult shapes = candidate.getResult();
+					removeInterpretation(shapes, Fit.COMPLEX);
+					List<Shape> subshapes = new ArrayList<Shape>();
+					for (Shape sh : shapes.getNBestList()) {
+						sh.setShapes(subshapes);
+						sh.setAttribute(COMBINED, "true");
+					}
+					if (shapes.getBestShape().getInterpretation().label
+							.equalsIgnoreCase(Fit.ARROW)
+							&& shapes.getBestShape().getInterpretation().confidence > ARROW_CONFIDENCE) {
+						if (M_DEBUG) {
+							log.debug("Arrow found! - "
+											+ shapes.getBestShape()
+													.getInterpretation().confidence);
+
+							// plot str
 //								Plot plot = new Plot("Combined Stroke");
 //								// plot.addLine(c.getPoints(), Color.black);
 //								plot.setKeepdim(true);
 //								plot.plot();
-							}
+						}
 
-							// add strokes to recognized map and remove from
-							// queue
-							for (Stroke s1 : strList) {
-
-								// remove old recognition results from map
-								IRecognitionResult old = m_recognitionMap
-										.remove(s1);
-
-								// add old shape as a subshape to new shape
-								if (old != null)
-									subshapes.add(old.getBestShape());
-								else {
-									// create arbitrary Shape
-									Shape subShape = new Shape();
-									subShape.add(s1);
-									subshapes.add(subShape);
-								}
-
-								// remove from graph
-								removeNodes(s1, m_graph);
+						// add strokes to recognized map and remove from
+						// queue
+						for (Stroke s1 : strList) {
+
+							// remove old recognition results from map
+							IRecognitionResult old = removeResult(s1);
+
+							// add old shape as a subshape to new shape
+							if (old != null)
+								subshapes.add(old.getBestShape());
+							else {
+								// create arbitrary Shape
+								Shape subShape = new Shape();
+								subShape.add(s1);
+								subshapes.add(subShape);
 							}
 
-							// add new result
-							m_recognitionMap.put(c, shapes);
-							addStroke(c);
+							// remove from graph
+							removeNodes(s1, m_graph);
 						}
+
+						// add new result
+						putResult(c, shapes);
+						addStroke(c);
 					}
 				}
 			}
@@ -709,6 +802,8 @@ public class MultiStrokePaleoRecognizer implements
 			if (!results.contains(r))
 				results.add(r);
 		}
+		Metrics.stop(RECOGNIZE_METRIC, start);
+		Metrics.record(RESULTS_METRIC, results.size());
 		return results;
 	}
 
@@ -890,11 +985,14 @@ public class MultiStrokePaleoRecognizer implements
 	 * @return combined stroke
 	 */
 	public static Stroke combineStrokes(List<Stroke> strokes) {
-		Stroke newStroke = new Stroke();
 		Segmentation seg = new Segmentation();
 		seg.setSegmentedStrokes(strokes);
 		if (strokes.size() < 1)
-			return newStroke;
+			return new Stroke();
+		int numPoints = 0;
+		for (Stroke s : strokes)
+			numPoints += s.getNumPoints();
+		List<Point> points = new ArrayList<Point>(numPoints);
 		Stroke currStroke = strokes.get(0);
 		if (strokes.size() > 1) {
 			boolean reverse = false;
@@ -910,97 +1008,87 @@ public class MultiStrokePaleoRecognizer implements
 					Math.min(dist2, Math.min(dist3, dist4)));
 			if (min == dist1 || min == dist2)
 				reverse = true;
-			newStroke = addPoints(newStroke, currStroke, reverse);
+			addPoints(points, currStroke, reverse);
 		} else {
-			newStroke = addPoints(newStroke, currStroke, false);
+			addPoints(points, currStroke, false);
 		}
 		for (int i = 1; i < strokes.size(); i++) {
-			Point lastPoint = newStroke.getLastPoint();
+			Point lastPoint = points.isEmpty() ? null : points.get(points
+					.size() - 1);
 			double dist1 = strokes.get(i).getFirstPoint().distance(lastPoint);
 			double dist2 = strokes.get(i).getLastPoint().distance(lastPoint);
 			boolean reverse = false;
 			if (dist2 < dist1)
 				reverse = true;
 			currStroke = strokes.get(i);
-			newStroke = addPoints(newStroke, currStroke, reverse);
+			addPoints(points, currStroke, reverse);
 		}
+		Stroke newStroke = new Stroke(points);
 		newStroke.addSegmentation(seg);
 		return newStroke;
 	}
 
 	/**
-	 * Add the points of stroke to the new stroke
+	 * Add the points of a stroke to the points of the combined stroke, first
+	 * cutting both where they come closest near the join so they do not
+	 * overlap
 	 * 
-	 * @param newStroke
-	 *            new stroke
+	 * @param points
+	 *            points of the combined stroke
 	 * @param stroke
-	 *            old stroke
+	 *            stroke to add
 	 * @param reverseOrder
 	 *            flag denoting if points should be added in reverse order
-	 * @return stroke with added points
 	 */
-	private static Stroke addPoints(Stroke newStroke, Stroke stroke,
+	private static void addPoints(List<Point> points, Stroke stroke,
 			boolean reverseOrder) {
-		int bestNew = -1;
-		int bestOld = -1;
-		if (stroke.getNumPoints() < 1)
-			return newStroke;
-		double bestDist = Double.MAX_VALUE;
-		int offSetNew = (int) (newStroke.getNumPoints() * THRESHOLD);
-		int offSetOld = (int) (stroke.getNumPoints() * THRESHOLD);
-		if (reverseOrder) {
-
-			if (offSetNew > 0) {
-				// find best intersection
-				for (int i = newStroke.getNumPoints() - offSetNew; i < newStroke
-						.getNumPoints(); i++) {
-					for (int j = stroke.getNumPoints() - offSetOld; j < stroke
-							.getNumPoints(); j++) {
-						double dist = newStroke.getPoint(i).distance(
-								stroke.getPoint(j));
-						if (dist < bestDist) {
-							bestDist = dist;
-							bestNew = i;
-							bestOld = j;
-						}
+		List<Point> strokePoints = stroke.getPoints();
+		int numNew = points.size();
+		int numOld = strokePoints.size();
+		if (numOld < 1)
+			return;
+		int offSetNew = (int) (numNew * THRESHOLD);
+		int offSetOld = (int) (numOld * THRESHOLD);
+
+		// points of the stroke to add, from start (inclusive) to end
+		int start = 0;
+		int end = numOld;
+		if (offSetNew > 0) {
+
+			// find best intersection between the end of the combined stroke
+			// and the end of the stroke that meets it
+			int bestNew = -1;
+			int bestOld = -1;
+			double bestDist = Double.MAX_VALUE;
+			int from = reverseOrder ? numOld - offSetOld : 0;
+			for (int i = numNew - offSetNew; i < numNew; i++) {
+				Point p = points.get(i);
+				for (int j = from; j < from + offSetOld; j++) {
+					double dist = p.distanceSquared(strokePoints.get(j));
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestNew = i;
+						bestOld = j;
 					}
 				}
-
-				// cut strokes to match up better
-				newStroke = cutStroke(newStroke, bestNew, false);
-				stroke = cutStroke(stroke, bestOld, false);
 			}
 
-			// combine
-			for (int i = stroke.getNumPoints() - 1; i >= 0; i--)
-				newStroke.addPoint(stroke.getPoint(i));
-		} else {
-
-			if (offSetNew > 0) {
-				// find best intersection
-				for (int i = newStroke.getNumPoints() - offSetNew; i < newStroke
-						.getNumPoints(); i++) {
-					for (int j = 0; j < offSetOld; j++) {
-						double dist = newStroke.getPoint(i).distance(
-								stroke.getPoint(j));
-						if (dist < bestDist) {
-							bestDist = dist;
-							bestNew = i;
-							bestOld = j;
-						}
-					}
-				}
-
-				// cut strokes to match up better
-				newStroke = cutStroke(newStroke, bestNew, false);
-				stroke = cutStroke(stroke, bestOld, true);
+			// cut strokes to match up better
+			if (bestNew >= 0) {
+				points.subList(bestNew, numNew).clear();
+				if (reverseOrder)
+					end = bestOld;
+				else
+					start = bestOld;
 			}
-
-			// combine
-			for (int i = 0; i < stroke.getNumPoints(); i++)
-				newStroke.addPoint(stroke.getPoint(i));
 		}
-		return newStroke;
+
+		// combine
+		if (reverseOrder) {
+			for (int i = end - 1; i >= start; i--)
+				points.add(strokePoints.get(i));
+		} else
+			points.addAll(strokePoints.subList(start, end));
 	}
 
 	/*
@@ -1023,6 +1111,8 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	public void addStroke(Stroke stroke) {
 		// step 1 (optional): label stroke
+		if (stroke.getInterpretation() == null)
+			stroke.setInterpretation(new Interpretation());
 		if (stroke.getInterpretation().label == null
 				|| stroke.getInterpretation().label.equalsIgnoreCase("")) {
 			((Point) stroke.getFirstPoint()).setName(m_strokeNum + "A");
@@ -1040,91 +1130,86 @@ public class MultiStrokePaleoRecognizer implements
 		}
 
 		// step 2: add to graph if connected
-		List<Stroke> allStrokes = new ArrayList<Stroke>();
-		allStrokes.add(stroke);
-		allStrokes.addAll(m_recognitionMap.keySet());
-		for (int i = 0; i < allStrokes.size(); i++) {
-			Stroke str = allStrokes.get(i);
-			double pathLength = (stroke.getPathLength() + str.getPathLength()) / 2.0;
-			double threshold = pathLength * THRESHOLD;
-			double threshold2 = ((Math.max(stroke.getBoundingBox().height,
-					stroke.getBoundingBox().width)) + (Math.max(
-					str.getBoundingBox().height, str.getBoundingBox().width)))
-					* THRESHOLD / 1.5;
+		EndpointIndex.Entry e1 = m_endpoints.entry(stroke);
+		List<EndpointIndex.Entry> candidates = m_endpoints.near(e1);
+		Metrics.record(CANDIDATES_METRIC, candidates.size());
+		for (EndpointIndex.Entry e2 : candidates) {
+			Stroke str = e2.m_stroke;
 
 			// dont test stroke against itself
 			if (stroke.equals(str))
 				continue;
 
+			double pathLength = (e1.m_pathLength + e2.m_pathLength) / 2.0;
+			double threshold = pathLength * THRESHOLD;
+			double threshold2 = (e1.m_extent + e2.m_extent) * THRESHOLD / 1.5;
+
 			// distances between all sets of endpoints
-			double dis = stroke.getFirstPoint().distance(str.getFirstPoint());
-			if (dis < threshold && dis < threshold2 || dis < 8.0) {
+			double dis = e1.m_first.distance(e2.m_first);
+			if (dis < threshold && dis < threshold2
+					|| dis < EndpointIndex.MIN_DISTANCE) {
 				if (M_DEBUG)
-					System.out.println("dis: " + dis + " thresh: " + threshold
+					log.debug("dis: " + dis + " thresh: " + threshold
 							+ "thresh2: " + threshold2 + " pl: " + pathLength);
-				addEdge(stroke, (Point) stroke.getFirstPoint(),
-						(Point) stroke.getLastPoint(), str,
-						(Point) str.getFirstPoint(),
-						(Point) str.getLastPoint(), m_graph);
+				addEdge(stroke, e1.m_first, e1.m_last, str, e2.m_first,
+						e2.m_last, m_graph);
 			}
-			dis = stroke.getFirstPoint().distance(str.getLastPoint());
-			if (dis < threshold && dis < threshold2 || dis < 8.0) {
+			dis = e1.m_first.distance(e2.m_last);
+			if (dis < threshold && dis < threshold2
+					|| dis < EndpointIndex.MIN_DISTANCE) {
 				if (M_DEBUG)
-					System.out.println("dis: " + dis + " thresh: " + threshold
+					log.debug("dis: " + dis + " thresh: " + threshold
 							+ "thresh2: " + threshold2 + " pl: " + pathLength);
-				addEdge(stroke, (Point) stroke.getFirstPoint(),
-						(Point) stroke.getLastPoint(), str,
-						(Point) str.getLastPoint(),
-						(Point) str.getFirstPoint(), m_graph);
+				addEdge(stroke, e1.m_first, e1.m_last, str, e2.m_last,
+						e2.m_first, m_graph);
 			}
-			dis = stroke.getLastPoint().distance(str.getFirstPoint());
-			if (dis < threshold && dis < threshold2 || dis < 8.0) {
+			dis = e1.m_last.distance(e2.m_first);
+			if (dis < threshold && dis < threshold2
+					|| dis < EndpointIndex.MIN_DISTANCE) {
 				if (M_DEBUG)
-					System.out.println("dis: " + dis + " thresh: " + threshold
+					log.debug("dis: " + dis + " thresh: " + threshold
 							+ "thresh2: " + threshold2 + " pl: " + pathLength);
-				addEdge(stroke, (Point) stroke.getLastPoint(),
-						(Point) stroke.getFirstPoint(), str,
-						(Point) str.getFirstPoint(),
-						(Point) str.getLastPoint(), m_graph);
+				addEdge(stroke, e1.m_last, e1.m_first, str, e2.m_first,
+						e2.m_last, m_graph);
 			}
-			dis = stroke.getLastPoint().distance(str.getLastPoint());
-			if (dis < threshold && dis < threshold2 || dis < 8.0) {
+			dis = e1.m_last.distance(e2.m_last);
+			if (dis < threshold && dis < threshold2
+					|| dis < EndpointIndex.MIN_DISTANCE) {
 				if (M_DEBUG)
-					System.out.println("dis: " + dis + " thresh: " + threshold
+					log.debug("dis: " + dis + " thresh: " + threshold
 							+ "thresh2: " + threshold2 + " pl: " + pathLength);
-				addEdge(stroke, (Point) stroke.getLastPoint(),
-						(Point) stroke.getFirstPoint(), str,
-						(Point) str.getLastPoint(),
-						(Point) stroke.getFirstPoint(), m_graph);
+				addEdge(stroke, e1.m_last, e1.m_first, str, e2.m_last,
+						e1.m_first, m_graph);
 			}
 		}
+		m_cycleFinder.strokeAdded(stroke);
 	}
 
 	/**
-	 * Cuts the stroke at a certain index
+	 * Record the recognition result of a stroke, and make the stroke's
+	 * endpoints available to strokes added later
 	 * 
 	 * @param stroke
-	 *            stroke to cut
-	 * @param index
-	 *            index to cut at
-	 * @param removeFromFront
-	 *            flag denoting if cutting should take place at the beginning or
-	 *            the end of the stroke
-	 * @return cut stroke
+	 *            stroke
+	 * @param result
+	 *            recognition result
 	 */
-	private static Stroke cutStroke(Stroke stroke, int index,
-			boolean removeFromFront) {
-		Stroke newStroke = new Stroke();
-		if (index < 0)
-			return stroke;
-		if (removeFromFront) {
-			for (int i = index; i < stroke.getNumPoints(); i++)
-				newStroke.addPoint(stroke.getPoint(i));
-		} else {
-			for (int i = 0; i < index; i++)
-				newStroke.addPoint(stroke.getPoint(i));
-		}
-		return newStroke;
+	private void putResult(Stroke stroke, IRecognitionResult result) {
+		m_recognitionMap.put(stroke, result);
+		m_endpoints.add(stroke);
+	}
+
+	/**
+	 * Forget the recognition result of a stroke, e.g. because it has been
+	 * combined with others
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return recognition result of the stroke, or null if it had none
+	 */
+	private IRecognitionResult removeResult(Stroke stroke) {
+		m_endpoints.remove(stroke);
+		return m_recognitionMap.remove(stroke);
 	}
 
 	/**
@@ -1133,8 +1218,10 @@ public class MultiStrokePaleoRecognizer implements
 	public void clear() {
 		m_strokeQueue = new ArrayList<Stroke>();
 		m_graph = new Graph();
+		m_cycleFinder = new IncrementalCycleFinder(m_graph);
 		m_arrowGraph = new Graph();
 		m_recognitionMap = new HashMap<Stroke, IRecognitionResult>();
+		m_endpoints.clear();
 	}
 
 	/**
@@ -1293,4 +1380,114 @@ public class MultiStrokePaleoRecognizer implements
 			return true;
 		return false;
 	}
+
+	/**
+	 * A combination of strokes and the low-level recognition of the stroke
+	 * they combine into. Recognition starts on the executor, if there is one,
+	 * as soon as the candidate is created, and otherwise when its result is
+	 * first needed.
+	 */
+	private class Candidate implements Callable<IRecognitionResult> {
+
+		/**
+		 * Strokes being combined
+		 */
+		private final List<Stroke> m_strokes;
+
+		/**
+		 * Combined stroke
+		 */
+		private final Stroke m_stroke;
+
+		/**
+		 * Recognition of the combined stroke
+		 */
+		private final FutureTask<IRecognitionResult> m_task;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param strokes
+		 *            strokes to combine
+		 */
+		public Candidate(List<Stroke> strokes) {
+			m_strokes = strokes;
+			m_stroke = combineStrokes(strokes);
+			m_task = new FutureTask<IRecognitionResult>(this);
+			if (m_executor != null) {
+				try {
+					m_executor.execute(m_task);
+				} catch (RejectedExecutionException e) {
+					// recognized on this thread by getResult()
+				}
+			}
+		}
+
+		/**
+		 * Get the strokes being combined
+		 * 
+		 * @return strokes
+		 */
+		public List<Stroke> getStrokes() {
+			return m_strokes;
+		}
+
+		/**
+		 * Get the combined stroke
+		 * 
+		 * @return combined stroke
+		 */
+		public Stroke getStroke() {
+			return m_stroke;
+		}
+
+		/**
+		 * Get the recognition of the combined stroke, recognizing it on this
+		 * thread if it has not been started yet
+		 * 
+		 * @return recognition result
+		 */
+		public IRecognitionResult getResult() {
+			m_task.run();
+			try {
+				return m_task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while recognizing a combined stroke", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new IllegalStateException(
+						"Could not recognize a combined stroke", e.getCause());
+			}
+		}
+
+		/**
+		 * Skip recognizing the combined stroke, if it has not been started
+		 */
+		public void cancel() {
+			m_task.cancel(false);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public IRecognitionResult call() throws Exception {
+			if (m_pool == null) {
+				m_paleo.submitForRecognition(m_stroke);
+				return m_paleo.recognize();
+			}
+			IRecognizer<Stroke, IRecognitionResult> paleo = m_pool.lease();
+			try {
+				paleo.submitForRecognition(m_stroke);
+				return paleo.recognize();
+			} finally {
+				m_pool.release(paleo);
+			}
+		}
+	}
 }
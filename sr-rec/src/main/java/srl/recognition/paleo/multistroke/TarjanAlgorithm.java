@@ -38,6 +38,8 @@
 package srl.recognition.paleo.multistroke;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import srl.core.sketch.Stroke;
@@ -53,21 +55,37 @@ public class TarjanAlgorithm {
 	/**
 	 * Find and return all cycles found in the given graph
 	 * 
-	 * @param root
-	 *            root node of graph
 	 * @param graph
 	 *            graph
 	 * @return list of all cycles found
 	 */
 	public static List<GraphCycle> findCycles(Graph graph) {
+		return findCycles(graph, graph.getNodes());
+	}
+
+	/**
+	 * Find and return the cycles found by searching from the given nodes,
+	 * e.g. the nodes of one connected component of the graph. Nodes are
+	 * searched from in the order they were added to the graph, and numbered
+	 * afresh on every call.
+	 * 
+	 * @param graph
+	 *            graph
+	 * @param roots
+	 *            nodes to search from; every node adjacent to one of them
+	 *            must be included too
+	 * @return list of cycles found
+	 */
+	public static List<GraphCycle> findCycles(Graph graph,
+			Collection<GraphNode> roots) {
 		List<GraphCycle> cycles = new ArrayList<GraphCycle>();
-		List<GraphNode> stack = new ArrayList<GraphNode>();
-		int i = 0;
-		for (GraphNode n : graph.getNodes()) {
-			biConnect(n, graph, i, cycles, stack);
+		Search search = new Search(graph.compact(roots), cycles);
+		for (int v = 0; v < search.m_graph.size(); v++) {
+			if (search.m_number[v] == GraphNode.NOT_NUMBERED)
+				search.biConnect(v, 0);
 		}
 		int num = cycles.size();
-		for (i = 0; i < num; i++) {
+		for (int i = 0; i < num; i++) {
 			GraphCycle c = cycles.get(i);
 			if (c.getStrokes().size() > 2 && c.size() > 4) {
 
@@ -122,79 +140,143 @@ public class TarjanAlgorithm {
 	}
 
 	/**
-	 * Recursive sub-function of Tarjan's algorithm
-	 * 
-	 * @param v
-	 *            current node v
-	 * @param graph
-	 *            master graph / adjacency list
-	 * @param i
-	 *            current index i
-	 * @param cycles
-	 *            list of cycles found
-	 * @param stack
-	 *            current edge stack
+	 * State of one search, kept in arrays indexed by node number
 	 */
-	private static void biConnect(GraphNode v, Graph graph, int i,
-			List<GraphCycle> cycles, List<GraphNode> stack) {
-		v.setNumber(i);
-		v.setLowPt(i);
-		i++;
-		stack.add(0, v);
-		for (GraphNode w : graph.getAdjacentNodes(v)) {
-			if (w.getNumber() == GraphNode.NOT_NUMBERED) {
-				biConnect(w, graph, i, cycles, stack);
-				v.setLowPt(Math.min(v.getLowPt(), w.getLowPt()));
-			} else if (stack.contains(w)) {
-				v.setLowPt(Math.min(v.getLowPt(), w.getNumber()));
+	private static class Search {
+
+		/**
+		 * Graph being searched
+		 */
+		final Graph.Compact m_graph;
+
+		/**
+		 * List of cycles found
+		 */
+		final List<GraphCycle> m_cycles;
+
+		/**
+		 * Number of each node
+		 */
+		final int[] m_number;
+
+		/**
+		 * Low point of each node
+		 */
+		final int[] m_lowPt;
+
+		/**
+		 * Node stack; the top is at m_top - 1
+		 */
+		final int[] m_stack;
+
+		/**
+		 * Size of the stack
+		 */
+		int m_top;
+
+		/**
+		 * Whether each node is on the stack
+		 */
+		final boolean[] m_onStack;
+
+		/**
+		 * Number of nodes on the stack with fewer than 2 edges
+		 */
+		int m_open;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param graph
+		 *            graph to search
+		 * @param cycles
+		 *            list to add the cycles found to
+		 */
+		Search(Graph.Compact graph, List<GraphCycle> cycles) {
+			m_graph = graph;
+			m_cycles = cycles;
+			m_number = new int[graph.size()];
+			m_lowPt = new int[graph.size()];
+			Arrays.fill(m_number, GraphNode.NOT_NUMBERED);
+			Arrays.fill(m_lowPt, GraphNode.NOT_NUMBERED);
+			m_stack = new int[graph.size()];
+			m_onStack = new boolean[graph.size()];
+		}
+
+		/**
+		 * Recursive sub-function of Tarjan's algorithm
+		 * 
+		 * @param v
+		 *            current node v
+		 * @param i
+		 *            current index i
+		 */
+		void biConnect(int v, int i) {
+			m_number[v] = i;
+			m_lowPt[v] = i;
+			i++;
+			push(v);
+			for (int w : m_graph.getAdjacent(v)) {
+				if (m_number[w] == GraphNode.NOT_NUMBERED) {
+					biConnect(w, i);
+					m_lowPt[v] = Math.min(m_lowPt[v], m_lowPt[w]);
+				} else if (m_onStack[w]) {
+					m_lowPt[v] = Math.min(m_lowPt[v], m_number[w]);
+				}
+			}
+			if (m_lowPt[v] == m_number[v] && m_top > 0) {
+				addCycle(v);
 			}
 		}
-		if (v.getLowPt() == v.getNumber() && stack.size() > 0) {
-			addCycle(v, graph, cycles, stack, true);
+
+		/**
+		 * Pop the stack down to and including a node, and add the popped
+		 * nodes to the list of cycles found
+		 * 
+		 * @param v
+		 *            node
+		 */
+		void addCycle(int v) {
+			// every node should have at least 2 edges (ADDED STEP), otherwise
+			// its not a full cycle
+			boolean passed = m_open == 0;
+
+			GraphCycle c = new GraphCycle();
+			int n = pop();
+			c.add(m_graph.getNode(n));
+			while (n != v && m_top > 0) {
+				n = pop();
+				c.add(m_graph.getNode(n));
+			}
+			c.setFullCycle(passed);
+			if (c.size() > 1 && !m_cycles.contains(c))
+				m_cycles.add(c);
 		}
-	}
 
-	/**
-	 * Add a cycle to the list of cycles found
-	 * 
-	 * @param v
-	 *            graph node
-	 * @param graph
-	 *            graph
-	 * @param cycles
-	 *            cycle list
-	 * @param stack
-	 *            current stack
-	 * @param popFromStack
-	 *            flag denoting if pop should take place
-	 */
-	private static void addCycle(GraphNode v, Graph graph,
-			List<GraphCycle> cycles, List<GraphNode> stack, boolean popFromStack) {
-		List<GraphNode> tmpStack = new ArrayList<GraphNode>();
-		for (int i = 0; i < stack.size(); i++)
-			tmpStack.add(stack.get(i));
-
-		// every node should have at least 2 edges (ADDED STEP), otherwise its
-		// not a full cycle
-		boolean passed = true;
-		for (int i = 0; i < stack.size() && passed; i++) {
-			if (graph.getAdjacentNodes(stack.get(i)).size() < 2)
-				passed = false;
+		/**
+		 * Push a node onto the stack
+		 * 
+		 * @param v
+		 *            node
+		 */
+		private void push(int v) {
+			m_stack[m_top++] = v;
+			m_onStack[v] = true;
+			if (m_graph.getAdjacent(v).length < 2)
+				m_open++;
 		}
 
-		GraphCycle c = new GraphCycle();
-		GraphNode n = stack.remove(0);
-		// if (graph.getAdjacentNodes(n).size() > 1)
-		c.add(n);
-		while (n != v && stack.size() > 0) {
-			n = stack.remove(0);
-			// if (graph.getAdjacentNodes(n).size() > 1)
-			c.add(n);
+		/**
+		 * Pop the node on top of the stack
+		 * 
+		 * @return node
+		 */
+		private int pop() {
+			int v = m_stack[--m_top];
+			m_onStack[v] = false;
+			if (m_graph.getAdjacent(v).length < 2)
+				m_open--;
+			return v;
 		}
-		c.setFullCycle(passed);
-		if (c.size() > 1 && !cycles.contains(c)) // && passed)
-			cycles.add(c);
-		if (!popFromStack)
-			stack = tmpStack;
 	}
 }
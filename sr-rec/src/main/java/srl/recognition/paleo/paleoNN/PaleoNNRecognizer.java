@@ -37,10 +37,7 @@
  */
 package srl.recognition.paleo.paleoNN;
 
-import java.io.InputStream;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +47,19 @@ import srl.core.sketch.Stroke;
 import srl.patternrec.classifiers.core.CResult;
 import srl.patternrec.classifiers.core.Classifiable;
 import srl.patternrec.classifiers.core.Classifier;
+import srl.patternrec.classifiers.core.CompiledMLP;
+import srl.patternrec.classifiers.core.ModelRegistry;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionCache;
 import srl.recognition.RecognitionResult;
+import srl.recognition.metrics.Metrics;
 import srl.recognition.paleo.ComplexFitNN;
 import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.OrigPaleoSketchRecognizer;
 import srl.recognition.paleo.PaleoConfig;
 import srl.recognition.paleo.PaleoFeatureExtractor;
 import srl.recognition.paleo.StrokeFeatures;
 import srl.recognition.recognizer.IRecognizer;
-import weka.classifiers.functions.MultilayerPerceptron;
-import weka.core.Instance;
 
 /**
  * Neural network version of Paleo
@@ -69,10 +69,31 @@ import weka.core.Instance;
 public class PaleoNNRecognizer extends Classifier implements
 IRecognizer<Stroke, IRecognitionResult> {
 
+	/**
+	 * Location of the neural network model in the {@link ModelRegistry}
+	 */
+	public static final String MODEL = ModelRegistry.classpath(
+			PaleoNNRecognizer.class, "models/paleo.limited.model");
+
+	/**
+	 * {@link Metrics} timing of the neural network evaluation
+	 */
+	public static final String INFERENCE_METRIC = "paleo.nn.inference";
+
 	/**
 	 * Neural net
 	 */
-	private MultilayerPerceptron m_nn;
+	private CompiledMLP m_nn;
+
+	/**
+	 * Scratch buffer for evaluating the neural net
+	 */
+	private double[] m_nnScratch;
+
+	/**
+	 * Output distribution of the neural net
+	 */
+	private double[] m_nnDist;
 
 	/**
 	 * Stroke features
@@ -97,17 +118,13 @@ IRecognizer<Stroke, IRecognitionResult> {
 	/**
 	 * Keeps a history of previously recognized strokes
 	 */
-	private Map<Stroke, IRecognitionResult> m_history = new HashMap<Stroke, IRecognitionResult>();
+	private RecognitionCache m_history = null;
 
 	/**
 	 * Flag denoting if complex test should be performed
 	 */
 	private boolean m_doComplex = true;
 
-	/**
-	 * Flag denoting if history should be turned on
-	 */
-	private boolean m_historyOn = false;
 	
 	private Logger log = LoggerFactory.getLogger(PaleoNNRecognizer.class);
 
@@ -131,26 +148,69 @@ IRecognizer<Stroke, IRecognitionResult> {
 	 */
 	public void setFeatures(StrokeFeatures features) {
 		m_features = features;
-		m_pfe = new PaleoFeatureExtractor(m_features, m_config);
+		if (m_pfe == null)
+			m_pfe = new PaleoFeatureExtractor(m_features, m_config);
+		else
+			m_pfe.setFeatures(m_features);
 	}
 
+	/**
+	 * Reuse the fits an original Paleo recognizer computed for the current
+	 * stroke instead of computing them again. Must be called after
+	 * {@link #setFeatures(StrokeFeatures)} with the same features.
+	 * 
+	 * @param paleo
+	 *            original paleo recognizer that has recognized the stroke
+	 */
+	public void setFits(OrigPaleoSketchRecognizer paleo) {
+		m_pfe.setFits(paleo);
+	}
+
+	/**
+	 * Turn the history of recognized strokes on or off. Turning it on gives
+	 * this recognizer a private {@link RecognitionCache}; use
+	 * {@link #setCache(RecognitionCache)} to share one instead.
+	 * 
+	 * @param flag
+	 *            true to remember previous results
+	 */
 	public void setHistoryOn(boolean flag) {
-		m_historyOn = flag;
+		if (!flag)
+			m_history = null;
+		else if (m_history == null)
+			m_history = new RecognitionCache();
 	}
 
 	/**
-	 * Resets the neural network
-	 * @throws Exception 
+	 * Set the cache used to remember previously recognized strokes
+	 * 
+	 * @param cache
+	 *            recognition cache, or null to turn history off
+	 */
+	public void setCache(RecognitionCache cache) {
+		m_history = cache;
+	}
+
+	/**
+	 * Get the key used to tell results of this recognizer apart from others in
+	 * a shared {@link RecognitionCache}
+	 * 
+	 * @return recognizer fingerprint
+	 */
+	public String getFingerprint() {
+		return "PaleoNN:" + (m_doComplex ? "complex:" : "")
+				+ m_config.getFingerprint();
+	}
+
+	/**
+	 * Gets the shared neural network from the model registry
 	 */
 	private void resetNN() {
-		try{
-		InputStream is = PaleoNNRecognizer.class
-				.getResourceAsStream("models/paleo.limited.model");
-		if (is != null)
-			m_nn = (MultilayerPerceptron) weka.core.SerializationHelper
-			.read(is);
-		}
-		catch(Exception ex){
+		try {
+			m_nn = ModelRegistry.getInstance().get(MODEL);
+			m_nnScratch = m_nn.newScratch();
+			m_nnDist = new double[m_nn.getNumOutputs()];
+		} catch (Exception ex) {
 			log.error("Error loading PaleoNN Model", ex);
 		}
 	}
@@ -166,8 +226,8 @@ IRecognizer<Stroke, IRecognitionResult> {
 			return null;
 
 		// see if this stroke has been recognized before
-		if (m_historyOn) {
-			IRecognitionResult r = m_history.get(m_stroke);
+		if (m_history != null) {
+			IRecognitionResult r = m_history.get(m_stroke, getFingerprint());
 			if (r != null)
 				return r;
 		}
@@ -178,8 +238,10 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 		IRecognitionResult r = new RecognitionResult();
 		try {
-			Instance testInstance = m_pfe.getInstance(null);
-			double[] results = m_nn.distributionForInstance(testInstance);
+			long start = Metrics.start();
+			double[] results = m_nn.distribution(m_pfe.getValues(),
+					m_nnScratch, m_nnDist);
+			Metrics.stop(INFERENCE_METRIC, start);
 			for (int i = 0; i < results.length; i++) {
 				String name = (String) m_pfe.getClassLabels().elementAt(i);
 				Fit f = null;
@@ -297,9 +359,8 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 		r.sortNBestList();
 
-		// check for bad NN state (typically happens on small dots?)
+		// check for bad NN output (typically happens on small dots?)
 		if (Double.isNaN(r.getBestShape().getInterpretation().confidence)) {
-			resetNN();
 			r = new RecognitionResult();
 			Fit f = m_pfe.getFit(Fit.DOT);
 			Shape fitShape = new Shape();
@@ -313,8 +374,8 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 
 		// add to history
-		if (m_historyOn)
-			m_history.put(m_stroke, r);
+		if (m_history != null)
+			m_history.put(m_stroke, getFingerprint(), r);
 
 		return r;
 	}
@@ -371,11 +432,13 @@ IRecognizer<Stroke, IRecognitionResult> {
 	}
 
 	/**
-	 * Clears history of recognized strokes
+	 * Drop the stroke being recognized and its features. Results remembered
+	 * in the cache are kept, since the cache may be shared with other
+	 * recognizers.
 	 */
 	public void clear() {
-		if (m_historyOn)
-			m_history.clear();
+		m_stroke = null;
+		m_features = null;
 	}
 
 	/*
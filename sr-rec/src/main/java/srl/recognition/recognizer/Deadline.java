@@ -0,0 +1,121 @@
+package srl.recognition.recognizer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+/**
+ * A point in time by which recognition should be finished. Unlike
+ * {@link OverTime}, which compares wall clock times, a deadline is measured
+ * with {@link System#nanoTime()} so it is not affected by clock adjustments.
+ * <p>
+ * Recognizers poll {@link #isExpired()} between units of work and return the
+ * best result found so far once it is; {@link #check(Logger)} is provided
+ * for recognizers that signal timeouts with an {@link OverTimeException}
+ * instead.
+ */
+public final class Deadline {
+
+	/**
+	 * A deadline that never expires
+	 */
+	public static final Deadline NONE = new Deadline(0L, false);
+
+	/**
+	 * Value of {@link System#nanoTime()} at which the deadline expires
+	 */
+	private final long m_expiresAt;
+
+	/**
+	 * False if this deadline never expires
+	 */
+	private final boolean m_bounded;
+
+	/**
+	 * Constructor
+	 *
+	 * @param expiresAt
+	 *            value of {@link System#nanoTime()} at which the deadline
+	 *            expires
+	 * @param bounded
+	 *            false if the deadline never expires
+	 */
+	private Deadline(long expiresAt, boolean bounded) {
+		m_expiresAt = expiresAt;
+		m_bounded = bounded;
+	}
+
+	/**
+	 * Create a deadline that expires after the given amount of time from now
+	 *
+	 * @param time
+	 *            time until the deadline expires
+	 * @param unit
+	 *            unit of the time
+	 * @return deadline
+	 */
+	public static Deadline after(long time, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(time), true);
+	}
+
+	/**
+	 * Create a deadline that expires after the given number of milliseconds
+	 * from now, matching {@link ITimedRecognizer#recognizeTimed(long)}
+	 *
+	 * @param maxTime
+	 *            milliseconds until the deadline expires
+	 * @return deadline
+	 */
+	public static Deadline afterMillis(long maxTime) {
+		return after(maxTime, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Determines if the deadline has passed
+	 *
+	 * @return true if the deadline has passed; else false
+	 */
+	public boolean isExpired() {
+		return m_bounded && System.nanoTime() - m_expiresAt >= 0;
+	}
+
+	/**
+	 * Get the time left before the deadline
+	 *
+	 * @param unit
+	 *            unit to return the time in
+	 * @return time left (negative once the deadline has passed), or
+	 *         {@link Long#MAX_VALUE} if the deadline never expires
+	 */
+	public long remaining(TimeUnit unit) {
+		if (!m_bounded)
+			return Long.MAX_VALUE;
+		return unit.convert(m_expiresAt - System.nanoTime(),
+				TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Throw an exception if the deadline has passed
+	 *
+	 * @param log
+	 *            recognizer's logger
+	 * @throws OverTimeException
+	 *             if the deadline has passed
+	 */
+	public void check(Logger log) throws OverTimeException {
+		if (isExpired()) {
+			log.info("Ran out of time during recognition, "
+					+ -remaining(TimeUnit.MILLISECONDS)
+					+ " ms past the deadline.");
+			throw new OverTimeException(
+					"The recognizer has run out of time in " + log.getName());
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (!m_bounded)
+			return "Deadline[none]";
+		return "Deadline[" + remaining(TimeUnit.MILLISECONDS) + " ms left]";
+	}
+}
@@ -0,0 +1,30 @@
+package srl.recognition.recognizer;
+
+/**
+ * Creates and recycles recognizer instances for a {@link RecognizerPool}.
+ * Creation is allowed to be expensive (loading models, building configs);
+ * resetting should only throw away the per-stroke state so the instance can
+ * be handed to the next caller warm.
+ *
+ * @param <R>
+ *            the type of recognizer that is created
+ */
+public interface IRecognizerFactory<R> {
+
+	/**
+	 * Create a new, fully initialized recognizer.
+	 *
+	 * @return a new recognizer instance
+	 */
+	public R create();
+
+	/**
+	 * Clear any state left behind by the previous lease (submitted strokes,
+	 * cached features, results) before the recognizer is returned to the
+	 * pool.
+	 *
+	 * @param recognizer
+	 *            the recognizer to reset
+	 */
+	public void reset(R recognizer);
+}
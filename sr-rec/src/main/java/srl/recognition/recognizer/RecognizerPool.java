@@ -0,0 +1,316 @@
+package srl.recognition.recognizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of stateful recognizers. Most recognizers in this library
+ * follow a {@code setStroke()}/{@code recognize()} pattern and are expensive
+ * to construct, so they can neither be shared between threads nor cheaply
+ * built per request. The pool hands each instance to exactly one thread at a
+ * time, and resets it through its {@link IRecognizerFactory} when it is
+ * returned.
+ * <p>
+ * Instances are created lazily, up to the pool size. When every instance is
+ * leased, {@link #lease()} blocks until one is released. Typical use:
+ *
+ * <pre>
+ * PaleoSketchRecognizer paleo = pool.lease();
+ * try {
+ * 	result = paleo.recognize(stroke);
+ * } finally {
+ * 	pool.release(paleo);
+ * }
+ * </pre>
+ *
+ * @param <R>
+ *            the type of recognizer held in the pool
+ */
+public class RecognizerPool<R> {
+
+	/**
+	 * Default number of instances; one per available processor
+	 */
+	public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * Factory used to build and reset instances
+	 */
+	private final IRecognizerFactory<R> m_factory;
+
+	/**
+	 * Maximum number of instances this pool will create
+	 */
+	private final int m_poolSize;
+
+	/**
+	 * Instances that are ready to be leased
+	 */
+	private final LinkedBlockingQueue<R> m_idle;
+
+	/**
+	 * Instances that are currently leased out
+	 */
+	private final Set<R> m_leased = Collections
+			.synchronizedSet(Collections
+					.newSetFromMap(new IdentityHashMap<R, Boolean>()));
+
+	/**
+	 * Number of instances created so far (idle and leased)
+	 */
+	private final AtomicInteger m_numCreated = new AtomicInteger(0);
+
+	/**
+	 * Number of leases that had to wait for another thread to release
+	 */
+	private final AtomicInteger m_numWaits = new AtomicInteger(0);
+
+	/**
+	 * How long a waiting lease blocks before checking whether it can create
+	 * an instance instead, in nanoseconds
+	 */
+	private static final long RETRY_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(100L);
+
+	private static Logger log = LoggerFactory.getLogger(RecognizerPool.class);
+
+	/**
+	 * Create a pool with {@link #DEFAULT_POOL_SIZE} instances
+	 *
+	 * @param factory
+	 *            factory used to build and reset instances
+	 */
+	public RecognizerPool(IRecognizerFactory<R> factory) {
+		this(factory, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Create a pool
+	 *
+	 * @param factory
+	 *            factory used to build and reset instances
+	 * @param poolSize
+	 *            maximum number of instances to create
+	 */
+	public RecognizerPool(IRecognizerFactory<R> factory, int poolSize) {
+		if (factory == null)
+			throw new IllegalArgumentException("factory cannot be null");
+		if (poolSize < 1)
+			throw new IllegalArgumentException("pool size must be positive: "
+					+ poolSize);
+		m_factory = factory;
+		m_poolSize = poolSize;
+		m_idle = new LinkedBlockingQueue<R>(poolSize);
+	}
+
+	/**
+	 * Create instances up front so the first requests do not pay for
+	 * construction.
+	 *
+	 * @param count
+	 *            number of instances to have ready (capped at the pool size)
+	 */
+	public void prestart(int count) {
+		while (m_numCreated.get() < Math.min(count, m_poolSize)) {
+			R recognizer = tryCreate();
+			if (recognizer == null)
+				break;
+			m_idle.offer(recognizer);
+		}
+	}
+
+	/**
+	 * Lease a recognizer, blocking until one is available.
+	 *
+	 * @return a recognizer owned by the calling thread until it is released
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public R lease() throws InterruptedException {
+		R recognizer = m_idle.poll();
+		if (recognizer == null)
+			recognizer = tryCreate();
+		if (recognizer == null) {
+			m_numWaits.incrementAndGet();
+			recognizer = waitFor(Long.MAX_VALUE);
+		}
+		m_leased.add(recognizer);
+		return recognizer;
+	}
+
+	/**
+	 * Lease a recognizer, waiting at most the given time for one to become
+	 * available.
+	 *
+	 * @param timeout
+	 *            maximum time to wait
+	 * @param unit
+	 *            unit of the timeout
+	 * @return a recognizer, or null if none became available in time
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public R lease(long timeout, TimeUnit unit) throws InterruptedException {
+		R recognizer = m_idle.poll();
+		if (recognizer == null)
+			recognizer = tryCreate();
+		if (recognizer == null) {
+			m_numWaits.incrementAndGet();
+			recognizer = waitFor(System.nanoTime() + unit.toNanos(timeout));
+			if (recognizer == null)
+				return null;
+		}
+		m_leased.add(recognizer);
+		return recognizer;
+	}
+
+	/**
+	 * Return a leased recognizer to the pool. The recognizer is reset before
+	 * it becomes available again; if the reset fails the instance is dropped
+	 * and a fresh one is built in its place, so threads waiting in
+	 * {@link #lease()} are not left without an instance.
+	 *
+	 * @param recognizer
+	 *            recognizer obtained from {@link #lease()}
+	 */
+	public void release(R recognizer) {
+		if (!m_leased.remove(recognizer))
+			throw new IllegalArgumentException(
+					"recognizer was not leased from this pool");
+		try {
+			m_factory.reset(recognizer);
+		} catch (RuntimeException e) {
+			log.error("Discarding recognizer that failed to reset", e);
+			recognizer = replace();
+			if (recognizer == null)
+				return;
+		}
+		m_idle.offer(recognizer);
+	}
+
+	/**
+	 * Wait for an instance to be released. If a dropped instance could not
+	 * be replaced, its slot is free but nothing will be released into it, so
+	 * the wait is broken up to retry creating an instance.
+	 *
+	 * @param deadline
+	 *            {@link System#nanoTime()} to give up at, or
+	 *            {@link Long#MAX_VALUE} to wait indefinitely
+	 * @return a recognizer, or null if none became available in time
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	private R waitFor(long deadline) throws InterruptedException {
+		while (true) {
+			long wait = RETRY_NANOS;
+			if (deadline != Long.MAX_VALUE)
+				wait = Math.min(wait, deadline - System.nanoTime());
+			R recognizer = m_idle.poll(Math.max(0L, wait),
+					TimeUnit.NANOSECONDS);
+			if (recognizer == null) {
+				try {
+					recognizer = tryCreate();
+				} catch (RuntimeException e) {
+					// keep waiting; the factory may recover, or another
+					// instance may be released
+					log.debug("Could not create recognizer while waiting", e);
+				}
+			}
+			if (recognizer != null)
+				return recognizer;
+			if (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline)
+				return null;
+		}
+	}
+
+	/**
+	 * Build an instance to take the place of one that was dropped
+	 *
+	 * @return new instance, or null if it could not be built, in which case
+	 *         its slot is given up
+	 */
+	private R replace() {
+		try {
+			return m_factory.create();
+		} catch (RuntimeException e) {
+			log.error("Could not replace discarded recognizer", e);
+			m_numCreated.decrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Create a new instance if the pool has not reached its size
+	 *
+	 * @return new instance, or null if the pool is full
+	 */
+	private R tryCreate() {
+		while (true) {
+			int created = m_numCreated.get();
+			if (created >= m_poolSize)
+				return null;
+			if (m_numCreated.compareAndSet(created, created + 1))
+				break;
+		}
+		try {
+			return m_factory.create();
+		} catch (RuntimeException e) {
+			m_numCreated.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the maximum number of instances in the pool
+	 *
+	 * @return pool size
+	 */
+	public int getPoolSize() {
+		return m_poolSize;
+	}
+
+	/**
+	 * Get the number of instances created so far
+	 *
+	 * @return number of instances created
+	 */
+	public int getNumCreated() {
+		return m_numCreated.get();
+	}
+
+	/**
+	 * Get the number of instances currently waiting to be leased
+	 *
+	 * @return number of idle instances
+	 */
+	public int getNumIdle() {
+		return m_idle.size();
+	}
+
+	/**
+	 * Get the number of instances currently leased
+	 *
+	 * @return number of leased instances
+	 */
+	public int getNumLeased() {
+		return m_leased.size();
+	}
+
+	/**
+	 * Get the number of leases that had to wait for an instance to be
+	 * released
+	 *
+	 * @return number of waiting leases
+	 */
+	public int getNumWaits() {
+		return m_numWaits.get();
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -26,6 +27,7 @@ import srl.core.sketch.Shape;
 import srl.core.sketch.Sketch;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionCache;
 import srl.recognition.RecognitionResult;
 import srl.recognition.recognizer.IRecognizer;
 import srl.recognition.rubine.RubineStroke.FeatureSet;
@@ -111,6 +113,26 @@ public class RubineClassifier implements
 	 */
 	private Matrix m_commonCovMatrixInverse = null;
 
+	/**
+	 * Optional cache of previous results; may be shared between instances
+	 */
+	private RecognitionCache m_cache = null;
+
+	/**
+	 * Source of the instance ids
+	 */
+	private static final AtomicLong s_nextId = new AtomicLong();
+
+	/**
+	 * Id of this classifier, unique within the JVM
+	 */
+	private final long m_id = s_nextId.getAndIncrement();
+
+	/**
+	 * Number of times the weights have been trained or loaded
+	 */
+	private int m_weightsVersion = 0;
+
 	/**
 	 * Default constructor. Uses Rubine's features.
 	 */
@@ -277,6 +299,25 @@ public class RubineClassifier implements
 	 */
 	public IRecognitionResult recognize() {
 
+		if (m_stroke != null && m_cache != null) {
+			String fingerprint = getFingerprint();
+			IRecognitionResult result = m_cache.get(m_stroke, fingerprint);
+			if (result == null) {
+				result = recognizeUncached();
+				m_cache.put(m_stroke, fingerprint, result);
+			}
+			return result;
+		}
+		return recognizeUncached();
+	}
+
+	/**
+	 * Classify the submitted stroke
+	 * 
+	 * @return n-best list of classes, or null if no stroke was submitted
+	 */
+	private IRecognitionResult recognizeUncached() {
+
 		if (m_stroke != null) {
 			NavigableMap<Double, String> classRanking = classify(m_stroke);
 			IRecognitionResult recResult = new RecognitionResult();
@@ -326,6 +367,35 @@ public class RubineClassifier implements
 		m_stroke = submission;
 	}
 
+	/**
+	 * Clear the submitted stroke and its computed features
+	 */
+	public void clear() {
+		m_stroke = null;
+		m_rubineStroke = null;
+	}
+
+	/**
+	 * Set the cache used to look up strokes that were recognized before
+	 * 
+	 * @param cache
+	 *            recognition cache, or null to turn caching off
+	 */
+	public void setCache(RecognitionCache cache) {
+		m_cache = cache;
+	}
+
+	/**
+	 * Get the key used to tell results of this classifier apart from others
+	 * in a shared {@link RecognitionCache}. It is unique to this instance and
+	 * changes whenever the weights are trained or loaded.
+	 * 
+	 * @return classifier fingerprint
+	 */
+	public String getFingerprint() {
+		return "Rubine:" + m_featureSet + ":" + m_id + "." + m_weightsVersion;
+	}
+
 	/**
 	 * Get the feature set used for the Rubine classifier
 	 * 
@@ -421,6 +491,7 @@ public class RubineClassifier implements
 
 		// Calculate and store the weights
 		m_weights = calcWeights(commonCovMatrix, classFeatureAverages);
+		m_weightsVersion++;
 	}
 
 	/**
@@ -736,6 +807,7 @@ public class RubineClassifier implements
 
 		// Initialize the weights
 		m_weights = new HashMap<String, List<Double>>();
+		m_weightsVersion++;
 
 		try {
 			// Using factory get an instance of document builder
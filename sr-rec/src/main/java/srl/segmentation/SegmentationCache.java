@@ -0,0 +1,638 @@
+/**
+ * SegmentationCache.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.segmentation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.exception.InvalidParametersException;
+import srl.core.sketch.ISegmenter;
+import srl.core.sketch.Point;
+import srl.core.sketch.Segmentation;
+import srl.core.sketch.Stroke;
+import srl.recognition.metrics.Metrics;
+import srl.recognition.paleo.StrokeFeatures;
+import srl.recognition.paleo.Thresholds;
+import srl.recognition.recognizer.Deadline;
+
+/**
+ * A bounded, thread-safe cache of segmentations. Paleo, the combination
+ * segmenters and their objective functions each run the same corner finders
+ * on the same stroke; this cache lets the second and later runs reuse the
+ * first. Entries are keyed by the exact point sequence that was segmented,
+ * the segmenter name, a string describing any parameters that change its
+ * output, and the active {@link Thresholds}. When the cache is full the
+ * least recently used entry is evicted.
+ * <p>
+ * Segmentations are stored as templates that refer to points by their index
+ * in the segmented point list, so the segmentations handed out are new
+ * objects built from the points of the stroke passed in, just as if the
+ * segmenter had been run on it. Points a segmenter created itself (e.g. by
+ * resampling) are copied when they are stored, and those copies are shared
+ * by every segmentation built from the entry.
+ * <p>
+ * Most code uses the {@link #getShared() shared} instance through
+ * {@link #segment(ISegmenter, String, Stroke)} or
+ * {@link #segment(ISegmenter, StrokeFeatures)}; setting the shared instance
+ * to null turns caching off.
+ */
+public class SegmentationCache {
+
+	/**
+	 * Default maximum number of entries
+	 */
+	public static final int DEFAULT_MAX_SIZE = 256;
+
+	/**
+	 * {@link Metrics} counter of lookups that found an entry, over every
+	 * segmentation cache
+	 */
+	public static final String HIT_METRIC = "cache.segmentation.hit";
+
+	/**
+	 * {@link Metrics} counter of lookups that did not find an entry, over
+	 * every segmentation cache
+	 */
+	public static final String MISS_METRIC = "cache.segmentation.miss";
+
+	/**
+	 * Prefix of the {@link Metrics} timing of each segmenter run by
+	 * {@link #segment(ISegmenter, String, Stroke, Deadline)} and
+	 * {@link #segment(ISegmenter, StrokeFeatures)}, followed by the segmenter
+	 * name
+	 */
+	public static final String SEGMENTER_METRIC = "segmenter.";
+
+	/**
+	 * Cache used by the static helpers; null when caching is off
+	 */
+	private static volatile SegmentationCache s_shared = new SegmentationCache();
+
+	/**
+	 * Maximum number of entries
+	 */
+	private final int m_maxSize;
+
+	/**
+	 * Entries in access order, least recently used first
+	 */
+	private final LinkedHashMap<Key, List<Template>> m_entries;
+
+	/**
+	 * Number of lookups that found an entry
+	 */
+	private long m_numHits = 0;
+
+	/**
+	 * Number of lookups that did not find an entry
+	 */
+	private long m_numMisses = 0;
+
+	/**
+	 * Number of entries evicted to stay within the maximum size
+	 */
+	private long m_numEvictions = 0;
+
+	/**
+	 * Create a cache with {@link #DEFAULT_MAX_SIZE} entries
+	 */
+	public SegmentationCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Create a cache
+	 * 
+	 * @param maxSize
+	 *            maximum number of entries
+	 */
+	public SegmentationCache(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("cache size must be positive: "
+					+ maxSize);
+		m_maxSize = maxSize;
+		m_entries = new LinkedHashMap<Key, List<Template>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Key, List<Template>> eldest) {
+				if (size() > m_maxSize) {
+					m_numEvictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the cache used by {@link #segment(ISegmenter, String, Stroke)} and
+	 * {@link #segment(ISegmenter, StrokeFeatures)}
+	 * 
+	 * @return shared cache, or null if caching is off
+	 */
+	public static SegmentationCache getShared() {
+		return s_shared;
+	}
+
+	/**
+	 * Set the cache used by {@link #segment(ISegmenter, String, Stroke)} and
+	 * {@link #segment(ISegmenter, StrokeFeatures)}
+	 * 
+	 * @param cache
+	 *            shared cache, or null to turn caching off
+	 */
+	public static void setShared(SegmentationCache cache) {
+		s_shared = cache;
+	}
+
+	/**
+	 * Segment a stroke, or look its segmentations up in the shared cache
+	 * 
+	 * @param segmenter
+	 *            segmenter to run on a miss; its stroke is set to the given
+	 *            stroke
+	 * @param params
+	 *            description of the segmenter's parameters, or null if it has
+	 *            none besides the active {@link Thresholds}
+	 * @param stroke
+	 *            stroke to segment
+	 * @return segmentations of the stroke
+	 * @throws InvalidParametersException
+	 *             if the segmenter throws it
+	 */
+	public static List<Segmentation> segment(ISegmenter segmenter,
+			String params, Stroke stroke) throws InvalidParametersException {
+		return segment(segmenter, params, stroke, Deadline.NONE);
+	}
+
+	/**
+	 * Segment a stroke, or look its segmentations up in the shared cache.
+	 * Segmentations computed after the deadline has passed may be partial, so
+	 * they are not stored.
+	 * 
+	 * @param segmenter
+	 *            segmenter to run on a miss; its stroke is set to the given
+	 *            stroke
+	 * @param params
+	 *            description of the segmenter's parameters, or null if it has
+	 *            none besides the active {@link Thresholds}
+	 * @param stroke
+	 *            stroke to segment
+	 * @param deadline
+	 *            deadline the segmenter was given
+	 * @return segmentations of the stroke
+	 * @throws InvalidParametersException
+	 *             if the segmenter throws it
+	 */
+	public static List<Segmentation> segment(ISegmenter segmenter,
+			String params, Stroke stroke, Deadline deadline)
+			throws InvalidParametersException {
+		SegmentationCache cache = s_shared;
+		List<Point> points = stroke.getPoints();
+		Key key = null;
+		if (cache != null) {
+			key = new Key(points, segmenter.getName()
+					+ (params == null ? "" : "(" + params + ")"));
+			List<Segmentation> cached = cache.lookup(key, points, stroke);
+			if (cached != null)
+				return cached;
+		}
+		long start = Metrics.start();
+		segmenter.setStroke(stroke);
+		List<Segmentation> segmentations = segmenter.getSegmentations();
+		if (start != 0L)
+			Metrics.stop(SEGMENTER_METRIC + segmenter.getName(), start);
+		if (cache != null && !deadline.isExpired())
+			cache.store(key, points, stroke, segmentations);
+		return segmentations;
+	}
+
+	/**
+	 * Segment a stroke with a segmenter that was built from the stroke's
+	 * features (such as {@link srl.segmentation.paleo.PaleoSegmenter} and
+	 * {@link srl.segmentation.paleo.WaveSegmenter}), or look its segmentations
+	 * up in the shared cache
+	 * 
+	 * @param segmenter
+	 *            segmenter built from the features, run on a miss
+	 * @param features
+	 *            features of the stroke to segment
+	 * @return segmentations of the stroke
+	 * @throws InvalidParametersException
+	 *             if the segmenter throws it
+	 */
+	public static List<Segmentation> segment(ISegmenter segmenter,
+			StrokeFeatures features) throws InvalidParametersException {
+		SegmentationCache cache = s_shared;
+		List<Point> points = features.getPoints();
+		Key key = null;
+		if (cache != null) {
+			key = new Key(points, segmenter.getName()
+					+ (features.isSmoothingOn() ? "(features,smooth)"
+							: "(features)"));
+			List<Segmentation> cached = cache.lookup(key, points,
+					features.getOrigStroke());
+			if (cached != null)
+				return cached;
+		}
+		long start = Metrics.start();
+		List<Segmentation> segmentations = segmenter.getSegmentations();
+		if (start != 0L)
+			Metrics.stop(SEGMENTER_METRIC + segmenter.getName(), start);
+		if (cache != null)
+			cache.store(key, points, features.getOrigStroke(), segmentations);
+		return segmentations;
+	}
+
+	/**
+	 * Look up the segmentations of a point sequence
+	 * 
+	 * @param points
+	 *            points that were segmented
+	 * @param parent
+	 *            stroke the points belong to; substrokes that referred to the
+	 *            segmented stroke will refer to this one
+	 * @param name
+	 *            name and parameters of the segmenter
+	 * @return new segmentations built from the given points, or null if
+	 *         there is no entry
+	 */
+	public List<Segmentation> get(List<Point> points, Stroke parent,
+			String name) {
+		return lookup(new Key(points, name), points, parent);
+	}
+
+	/**
+	 * Store the segmentations of a point sequence
+	 * 
+	 * @param points
+	 *            points that were segmented
+	 * @param parent
+	 *            stroke the points belong to
+	 * @param name
+	 *            name and parameters of the segmenter
+	 * @param segmentations
+	 *            segmentations of the points; null is not stored
+	 */
+	public void put(List<Point> points, Stroke parent, String name,
+			List<Segmentation> segmentations) {
+		store(new Key(points, name), points, parent, segmentations);
+	}
+
+	/**
+	 * Look up an entry and build segmentations of the given points from it
+	 */
+	private List<Segmentation> lookup(Key key, List<Point> points,
+			Stroke parent) {
+		List<Template> templates;
+		synchronized (this) {
+			templates = m_entries.get(key);
+			if (templates == null) {
+				m_numMisses++;
+				Metrics.increment(MISS_METRIC);
+				return null;
+			}
+			m_numHits++;
+		}
+		Metrics.increment(HIT_METRIC);
+		List<Segmentation> segmentations = new ArrayList<Segmentation>(
+				templates.size());
+		for (Template t : templates)
+			segmentations.add(t.build(points, parent));
+		return segmentations;
+	}
+
+	/**
+	 * Turn segmentations of the given points into templates and store them
+	 */
+	private void store(Key key, List<Point> points, Stroke parent,
+			List<Segmentation> segmentations) {
+		if (segmentations == null)
+			return;
+		PointIndex index = new PointIndex(points);
+		List<Template> templates = new ArrayList<Template>(
+				segmentations.size());
+		for (Segmentation s : segmentations)
+			templates.add(new Template(s, index, parent));
+		synchronized (this) {
+			m_entries.put(key, templates);
+		}
+	}
+
+	/**
+	 * Remove all entries. Statistics are kept.
+	 */
+	public synchronized void clear() {
+		m_entries.clear();
+	}
+
+	/**
+	 * Get the number of entries
+	 * 
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return m_entries.size();
+	}
+
+	/**
+	 * Get the maximum number of entries
+	 * 
+	 * @return maximum number of entries
+	 */
+	public int getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * Get the number of lookups that found an entry
+	 * 
+	 * @return number of hits
+	 */
+	public synchronized long getNumHits() {
+		return m_numHits;
+	}
+
+	/**
+	 * Get the number of lookups that did not find an entry
+	 * 
+	 * @return number of misses
+	 */
+	public synchronized long getNumMisses() {
+		return m_numMisses;
+	}
+
+	/**
+	 * Get the number of entries evicted to stay within the maximum size
+	 * 
+	 * @return number of evictions
+	 */
+	public synchronized long getNumEvictions() {
+		return m_numEvictions;
+	}
+
+	/**
+	 * Get the fraction of lookups that found an entry
+	 * 
+	 * @return hit rate in [0, 1]; 0 if there have been no lookups
+	 */
+	public synchronized double getHitRate() {
+		long lookups = m_numHits + m_numMisses;
+		return lookups == 0 ? 0.0 : (double) m_numHits / lookups;
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counts
+	 */
+	public synchronized void resetStatistics() {
+		m_numHits = 0;
+		m_numMisses = 0;
+		m_numEvictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SegmentationCache[size=" + m_entries.size() + "/" + m_maxSize
+				+ ", hits=" + m_numHits + ", misses=" + m_numMisses
+				+ ", evictions=" + m_numEvictions + "]";
+	}
+
+	/**
+	 * Finds points in the segmented list by identity. Substrokes are usually
+	 * consecutive runs that start where the previous one ended, so the point
+	 * after the last one found is tried before falling back to a map.
+	 */
+	private static final class PointIndex {
+
+		private final List<Point> points;
+
+		private Map<Point, Integer> map;
+
+		private int next = 0;
+
+		private PointIndex(List<Point> points) {
+			this.points = points;
+		}
+
+		/**
+		 * Get the index of a point
+		 * 
+		 * @return index of the point, or -1 if it is not in the list
+		 */
+		private int indexOf(Point p) {
+			for (int i = Math.max(next - 1, 0); i <= next && i < points.size(); i++) {
+				if (points.get(i) == p) {
+					next = i + 1;
+					return i;
+				}
+			}
+			if (map == null) {
+				map = new IdentityHashMap<Point, Integer>(points.size() * 2);
+				for (int i = 0; i < points.size(); i++)
+					map.put(points.get(i), i);
+			}
+			Integer i = map.get(p);
+			if (i == null)
+				return -1;
+			next = i + 1;
+			return i;
+		}
+	}
+
+	/**
+	 * A segmentation with its substrokes' points replaced by their index in
+	 * the segmented point list
+	 */
+	private static final class Template {
+
+		private final double confidence;
+
+		private final String label;
+
+		private final String segmenterName;
+
+		/**
+		 * Index of the first point of each substroke that is a consecutive
+		 * run of the segmented list, -1 if the substroke is the segmented
+		 * stroke itself, or -2 if it is neither
+		 */
+		private final int[] starts;
+
+		/**
+		 * Number of points in each run
+		 */
+		private final int[] lengths;
+
+		/**
+		 * For substrokes that are not runs, the index of each point, or -1
+		 * for points that are not in the segmented list
+		 */
+		private final int[][] indices;
+
+		/**
+		 * Copies of the points that are not in the segmented list, by
+		 * substroke; shared by every segmentation built from the template
+		 */
+		private final Point[][] extra;
+
+		/**
+		 * Parent of each substroke if it was not the segmented stroke
+		 */
+		private final Stroke[] parents;
+
+		private Template(Segmentation s, PointIndex index, Stroke parent) {
+			confidence = s.confidence;
+			label = s.label;
+			segmenterName = s.segmenterName;
+			List<Stroke> substrokes = s.getSegmentedStrokes();
+			int n = substrokes.size();
+			starts = new int[n];
+			lengths = new int[n];
+			indices = new int[n][];
+			extra = new Point[n][];
+			parents = new Stroke[n];
+			for (int i = 0; i < n; i++) {
+				Stroke sub = substrokes.get(i);
+				if (sub == parent) {
+					starts[i] = -1;
+					continue;
+				}
+				if (sub.getParent() != parent)
+					parents[i] = sub.getParent();
+				List<Point> points = sub.getPoints();
+				int[] idx = new int[points.size()];
+				boolean run = true;
+				for (int j = 0; j < points.size(); j++) {
+					idx[j] = index.indexOf(points.get(j));
+					if (idx[j] < 0) {
+						if (extra[i] == null)
+							extra[i] = new Point[points.size()];
+						extra[i][j] = points.get(j).clone();
+					}
+					if (idx[j] < 0 || (j > 0 && idx[j] != idx[j - 1] + 1))
+						run = false;
+				}
+				if (run && idx.length > 0) {
+					starts[i] = idx[0];
+					lengths[i] = idx.length;
+				} else {
+					starts[i] = -2;
+					indices[i] = idx;
+				}
+			}
+		}
+
+		/**
+		 * Build a segmentation of the given points
+		 */
+		private Segmentation build(List<Point> points, Stroke parent) {
+			Segmentation s = new Segmentation();
+			s.confidence = confidence;
+			s.label = label;
+			s.segmenterName = segmenterName;
+			for (int i = 0; i < starts.length; i++) {
+				if (starts[i] == -1) {
+					s.addSegmentedStroke(parent);
+					continue;
+				}
+				List<Point> subPoints;
+				if (starts[i] >= 0) {
+					subPoints = new ArrayList<Point>(points.subList(starts[i],
+							starts[i] + lengths[i]));
+				} else {
+					subPoints = new ArrayList<Point>(indices[i].length);
+					for (int j = 0; j < indices[i].length; j++) {
+						int k = indices[i][j];
+						subPoints.add(k >= 0 ? points.get(k) : extra[i][j]);
+					}
+				}
+				Stroke sub = new Stroke(subPoints);
+				sub.setParent(parents[i] != null ? parents[i] : parent);
+				s.addSegmentedStroke(sub);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Exact point sequence (raw x and y bits plus time), segmenter name and
+	 * threshold resolution
+	 */
+	private static final class Key {
+
+		private final long[] m_geometry;
+
+		private final String m_name;
+
+		private final int m_hash;
+
+		private Key(List<Point> points, String name) {
+			m_geometry = new long[points.size() * 3];
+			int j = 0;
+			for (Point p : points) {
+				m_geometry[j++] = Double.doubleToLongBits(p.getX());
+				m_geometry[j++] = Double.doubleToLongBits(p.getY());
+				m_geometry[j++] = p.getTime();
+			}
+			m_name = name + "@" + Thresholds.active.PPI;
+			m_hash = 31 * Arrays.hashCode(m_geometry) + m_name.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return m_hash == other.m_hash && m_name.equals(other.m_name)
+					&& Arrays.equals(m_geometry, other.m_geometry);
+		}
+	}
+}
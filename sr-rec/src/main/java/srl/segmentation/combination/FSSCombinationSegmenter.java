@@ -9,6 +9,7 @@ import srl.core.sketch.ISegmenter;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
 import srl.segmentation.AbstractSegmenter;
+import srl.segmentation.SegmentationCache;
 import srl.segmentation.combination.objectiveFunctions.IObjectiveFunction;
 import srl.segmentation.combination.objectiveFunctions.PolylineMSEObjectiveFunction;
 import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
@@ -281,8 +282,8 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 		ISegmenter segmenter;
 
 		// ShortStraw
-		segmenter = new ShortStrawSegmenter(m_stroke);
-		List<Segmentation> shortStrawSegs = segmenter.getSegmentations();
+		List<Segmentation> shortStrawSegs = SegmentationCache.segment(
+				new ShortStrawSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(shortStrawSegs));
 
 		// MergeCF
@@ -291,26 +292,24 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 		// allCorners.addAll(getCornersFromSegmentations(mergeCFSegs));
 
 		// Douglas-Peucker
-		segmenter = new DouglasPeuckerSegmenter(m_stroke);
-		List<Segmentation> dpSegs = segmenter.getSegmentations();
+		List<Segmentation> dpSegs = SegmentationCache.segment(
+				new DouglasPeuckerSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(dpSegs));
 
 		// Paleo
-		segmenter = new PaleoSegmenter(m_useSmoothing);
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> paleoSegs = segmenter.getSegmentations();
+		List<Segmentation> paleoSegs = SegmentationCache.segment(
+				new PaleoSegmenter(m_useSmoothing),
+				m_useSmoothing ? "smooth" : null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(paleoSegs));
 
 		// Sezgin
-		segmenter = new SezginSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> sezginSegs = segmenter.getSegmentations();
+		List<Segmentation> sezginSegs = SegmentationCache.segment(
+				new SezginSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(sezginSegs));
 
 		// Kim
-		segmenter = new KimSquaredSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> kimSegs = segmenter.getSegmentations();
+		List<Segmentation> kimSegs = SegmentationCache.segment(
+				new KimSquaredSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(kimSegs));
 
 		// Remove overlapping corners
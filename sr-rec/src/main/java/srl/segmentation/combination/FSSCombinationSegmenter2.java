@@ -8,7 +8,9 @@ import srl.core.exception.InvalidParametersException;
 import srl.core.sketch.ISegmenter;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
+import srl.recognition.recognizer.Deadline;
 import srl.segmentation.AbstractSegmenter;
+import srl.segmentation.SegmentationCache;
 import srl.segmentation.combination.objectiveFunctions.IObjectiveFunction;
 import srl.segmentation.combination.objectiveFunctions.PolylineMSEObjectiveFunction;
 import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
@@ -115,6 +117,11 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 	private List<Segmentation> m_kimSegs;
 
+	/**
+	 * Time by which the subset search should stop
+	 */
+	private Deadline m_deadline = Deadline.NONE;
+
 	/**
 	 * Default constructor
 	 */
@@ -224,6 +231,17 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 		m_stroke = stroke;
 	}
 
+	/**
+	 * Set the time by which the SBFS subset search should stop. When it runs
+	 * out of time it picks the best subset among those it has evaluated.
+	 * 
+	 * @param deadline
+	 *            deadline for the search
+	 */
+	public void setDeadline(Deadline deadline) {
+		m_deadline = deadline;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -305,34 +323,30 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		List<Integer> allCorners = new ArrayList<Integer>();
 
-		ISegmenter segmenter;
-
 		// ShortStraw
-		segmenter = new ShortStrawSegmenter(m_stroke);
-		m_shortStrawSegs = segmenter.getSegmentations();
+		m_shortStrawSegs = SegmentationCache.segment(
+				new ShortStrawSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(m_shortStrawSegs));
 
 		// Douglas-Peucker
-		segmenter = new DouglasPeuckerSegmenter(m_stroke);
-		m_dpSegs = segmenter.getSegmentations();
+		m_dpSegs = SegmentationCache.segment(
+				new DouglasPeuckerSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(m_dpSegs));
 
 		// Paleo
-		segmenter = new PaleoSegmenter(m_useSmoothing);
-		segmenter.setStroke(m_stroke);
-		m_paleoSegs = segmenter.getSegmentations();
+		m_paleoSegs = SegmentationCache.segment(
+				new PaleoSegmenter(m_useSmoothing),
+				m_useSmoothing ? "smooth" : null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(m_paleoSegs));
 
 		// Sezgin
-		segmenter = new SezginSegmenter();
-		segmenter.setStroke(m_stroke);
-		m_sezginSegs = segmenter.getSegmentations();
+		m_sezginSegs = SegmentationCache.segment(
+				new SezginSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(m_sezginSegs));
 
 		// Kim
-		segmenter = new KimSquaredSegmenter();
-		segmenter.setStroke(m_stroke);
-		m_kimSegs = segmenter.getSegmentations();
+		m_kimSegs = SegmentationCache.segment(
+				new KimSquaredSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(m_kimSegs));
 
 		// Remove overlapping corners
@@ -584,6 +598,10 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		while (cornerSubset.size() > 2) {
 
+			// stop with the subsets evaluated so far
+			if (m_deadline.isExpired())
+				break;
+
 			// Go backward
 			List<Object> backResults = prevBestSubset(cornerSubset, stroke,
 					objFunction);
@@ -654,7 +672,9 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 			}
 		}
 
-		if (bestSubset == null)
+		if (bestSubset == null && cornerSubsetList.isEmpty())
+			bestSubset = new ArrayList<Integer>(corners);
+		else if (bestSubset == null)
 			bestSubset = cornerSubsetList.get(0);
 
 		Collections.sort(bestSubset);
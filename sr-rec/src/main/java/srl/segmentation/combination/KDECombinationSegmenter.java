@@ -9,6 +9,7 @@ import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
 import srl.patternrec.UnivariateKDE;
 import srl.segmentation.AbstractSegmenter;
+import srl.segmentation.SegmentationCache;
 import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
 import srl.segmentation.kimSquared.KimSquaredSegmenter;
 import srl.segmentation.paleo.PaleoSegmenter;
@@ -117,34 +118,30 @@ public class KDECombinationSegmenter extends AbstractSegmenter implements
 
 		List<Integer> allCorners = new ArrayList<Integer>();
 
-		ISegmenter segmenter;
-
 		// ShortStraw
-		segmenter = new ShortStrawSegmenter(m_stroke);
-		List<Segmentation> shortStrawSegs = segmenter.getSegmentations();
+		List<Segmentation> shortStrawSegs = SegmentationCache.segment(
+				new ShortStrawSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(shortStrawSegs));
 
 		// Douglas-Peucker
-		segmenter = new DouglasPeuckerSegmenter(m_stroke);
-		List<Segmentation> dpSegs = segmenter.getSegmentations();
+		List<Segmentation> dpSegs = SegmentationCache.segment(
+				new DouglasPeuckerSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(dpSegs));
 
 		// Paleo
-		segmenter = new PaleoSegmenter(m_useSmoothing);
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> paleoSegs = segmenter.getSegmentations();
+		List<Segmentation> paleoSegs = SegmentationCache.segment(
+				new PaleoSegmenter(m_useSmoothing),
+				m_useSmoothing ? "smooth" : null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(paleoSegs));
 
 		// Sezgin
-		segmenter = new SezginSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> sezginSegs = segmenter.getSegmentations();
+		List<Segmentation> sezginSegs = SegmentationCache.segment(
+				new SezginSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(sezginSegs));
 
 		// Kim
-		segmenter = new KimSquaredSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> kimSegs = segmenter.getSegmentations();
+		List<Segmentation> kimSegs = SegmentationCache.segment(
+				new KimSquaredSegmenter(), null, m_stroke);
 		allCorners.addAll(getCornersFromSegmentations(kimSegs));
 
 		// Run a KDE over the corner indices
@@ -44,6 +44,7 @@ import srl.core.sketch.ISegmenter;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
 import srl.recognition.paleo.LineFit;
+import srl.recognition.recognizer.Deadline;
 
 
 /**
@@ -209,6 +210,18 @@ public class PolylineCombinationSegmenter implements ISegmenter {
 		m_stroke = stroke;
 	}
 
+	/**
+	 * Set the time by which the combined segmenters should stop searching
+	 * 
+	 * @param deadline
+	 *            deadline for segmentation
+	 */
+	public void setDeadline(Deadline deadline) {
+		for (ISegmenter segmenter : m_segmenters)
+			if (segmenter instanceof FSSCombinationSegmenter2)
+				((FSSCombinationSegmenter2) segmenter).setDeadline(deadline);
+	}
+
 	/**
 	 * Perform segmentation ranking/selection
 	 */
@@ -45,10 +45,11 @@ import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
 import srl.recognition.paleo.CurveFit;
 import srl.recognition.paleo.Fit;
-import srl.recognition.paleo.OrigPaleoSketchRecognizer;
 import srl.recognition.paleo.PaleoConfig;
 import srl.recognition.paleo.PolylineFit;
 import srl.recognition.paleo.StrokeFeatures;
+import srl.recognition.paleo.SubstrokeFitMemo;
+import srl.recognition.recognizer.Deadline;
 
 
 /**
@@ -181,10 +182,8 @@ public class ComplexShapeSegmenter implements ISegmenter {
 			Stroke s1 = m_best_substrokes.get(i);
 			Stroke s2 = m_best_substrokes.get(i + 1);
 			Stroke s = combine(s1, s2);
-			OrigPaleoSketchRecognizer r = new OrigPaleoSketchRecognizer(s,
-					PaleoConfig.basicPrimsOnly());
-			r.recognize();
-			List<Fit> f = r.getFits();
+			List<Fit> f = SubstrokeFitMemo.fits(s,
+					PaleoConfig.basicPrimsOnly(), Deadline.NONE);
 			if (f.size() == 0)
 				continue;
 			if (f.get(0) instanceof PolylineFit || f.get(0) instanceof CurveFit)
@@ -231,17 +230,13 @@ public class ComplexShapeSegmenter implements ISegmenter {
 			return best;
 		}
 
-		OrigPaleoSketchRecognizer p1 = new OrigPaleoSketchRecognizer(s1,
-				PaleoConfig.basicPrimsOnly());
-		p1.recognize();
-		List<Fit> f1 = p1.getFits();
-		OrigPaleoSketchRecognizer p2 = new OrigPaleoSketchRecognizer(s2,
-				PaleoConfig.basicPrimsOnly());
-		p2.recognize();
-		List<Fit> f2 = p2.getFits();
+		List<Fit> f1 = SubstrokeFitMemo.fits(s1,
+				PaleoConfig.basicPrimsOnly(), Deadline.NONE);
+		List<Fit> f2 = SubstrokeFitMemo.fits(s2,
+				PaleoConfig.basicPrimsOnly(), Deadline.NONE);
 
 		if (f1.size() == 0) {
-			StrokeFeatures sf = new StrokeFeatures(s1,
+			StrokeFeatures sf = SubstrokeFitMemo.features(s1,
 					m_features.isSmoothingOn());
 			ComplexShapeSegmenter seg = new ComplexShapeSegmenter(sf);
 			List<Stroke> tmp = seg.calcTheBestSubStrokes();
@@ -252,7 +247,7 @@ public class ComplexShapeSegmenter implements ISegmenter {
 		}
 
 		if (f2.size() == 0) {
-			StrokeFeatures sf = new StrokeFeatures(s2,
+			StrokeFeatures sf = SubstrokeFitMemo.features(s2,
 					m_features.isSmoothingOn());
 			ComplexShapeSegmenter seg = new ComplexShapeSegmenter(sf);
 			List<Stroke> tmp = seg.calcTheBestSubStrokes();
@@ -0,0 +1,160 @@
+package srl.test.patternrec.classifiers.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.patternrec.classifiers.core.CompiledMLP;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Checks that compiled networks give exactly the distributions of the WEKA
+ * networks they were compiled from
+ */
+public class CompiledMLPTest {
+
+	private static final int NUM_INPUTS = 4;
+
+	private static final int NUM_TRAINING = 60;
+
+	private static final int NUM_CHECKED = 200;
+
+	@Test
+	public void testNominalClass() throws Exception {
+		for (String layers : new String[] { "0", "3", "5,3" }) {
+			checkSame(train(nominalData(1L, NUM_TRAINING), layers, true),
+					nominalData(2L, NUM_CHECKED));
+			checkSame(train(nominalData(3L, NUM_TRAINING), layers, false),
+					nominalData(4L, NUM_CHECKED));
+		}
+	}
+
+	@Test
+	public void testNumericClass() throws Exception {
+		for (String layers : new String[] { "0", "3", "5,3" }) {
+			checkSame(train(numericData(5L, NUM_TRAINING), layers, true),
+					numericData(6L, NUM_CHECKED));
+			checkSame(train(numericData(7L, NUM_TRAINING), layers, false),
+					numericData(8L, NUM_CHECKED));
+		}
+	}
+
+	@Test
+	public void testMissingValues() throws Exception {
+		for (String layers : new String[] { "0", "3", "5,3" }) {
+			Instances nominal = nominalData(9L, NUM_CHECKED);
+			setMissing(nominal, 10L);
+			checkSame(train(nominalData(11L, NUM_TRAINING), layers, true),
+					nominal);
+
+			Instances numeric = numericData(12L, NUM_CHECKED);
+			setMissing(numeric, 13L);
+			checkSame(train(numericData(14L, NUM_TRAINING), layers, true),
+					numeric);
+		}
+	}
+
+	@Test
+	public void testNoAllocationPathMatches() throws Exception {
+		MultilayerPerceptron mlp = train(nominalData(15L, NUM_TRAINING), "3",
+				true);
+		CompiledMLP compiled = CompiledMLP.compile(mlp);
+		double[] scratch = compiled.newScratch();
+		double[] dist = new double[compiled.getNumOutputs()];
+		Instances data = nominalData(16L, NUM_CHECKED);
+		for (int i = 0; i < data.numInstances(); i++) {
+			Instance instance = data.instance(i);
+			compiled.distribution(instance.toDoubleArray(), scratch, dist);
+			assertSame(mlp.distributionForInstance(instance), dist);
+		}
+	}
+
+	/**
+	 * Compare the distributions of a network and its compiled form on every
+	 * instance of a data set
+	 */
+	private void checkSame(MultilayerPerceptron mlp, Instances data)
+			throws Exception {
+		CompiledMLP compiled = CompiledMLP.compile(mlp);
+		for (int i = 0; i < data.numInstances(); i++) {
+			Instance instance = data.instance(i);
+			assertSame(mlp.distributionForInstance(instance),
+					compiled.distribution(instance.toDoubleArray()));
+		}
+	}
+
+	private void assertSame(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(Double.doubleToLongBits(expected[i]),
+					Double.doubleToLongBits(actual[i]));
+	}
+
+	private MultilayerPerceptron train(Instances data, String layers,
+			boolean normalize) throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setHiddenLayers(layers);
+		mlp.setTrainingTime(50);
+		mlp.setNormalizeAttributes(normalize);
+		mlp.setNormalizeNumericClass(normalize);
+		mlp.buildClassifier(data);
+		return mlp;
+	}
+
+	private Instances nominalData(long seed, int size) {
+		FastVector labels = new FastVector();
+		labels.addElement("a");
+		labels.addElement("b");
+		labels.addElement("c");
+		Instances data = header(new Attribute("class", labels), size);
+		Random random = new Random(seed);
+		for (int i = 0; i < size; i++) {
+			double[] values = inputs(random);
+			double sum = values[0] + 2 * values[1] - values[2];
+			values[NUM_INPUTS] = sum < -5 ? 0 : sum < 5 ? 1 : 2;
+			data.add(new Instance(1.0, values));
+		}
+		return data;
+	}
+
+	private Instances numericData(long seed, int size) {
+		Instances data = header(new Attribute("class"), size);
+		Random random = new Random(seed);
+		for (int i = 0; i < size; i++) {
+			double[] values = inputs(random);
+			values[NUM_INPUTS] = 3 * values[0] - values[3] * values[1]
+					+ random.nextGaussian();
+			data.add(new Instance(1.0, values));
+		}
+		return data;
+	}
+
+	private Instances header(Attribute classAttribute, int size) {
+		FastVector attributes = new FastVector();
+		for (int i = 0; i < NUM_INPUTS; i++)
+			attributes.addElement(new Attribute("f" + i));
+		attributes.addElement(classAttribute);
+		Instances data = new Instances("test", attributes, size);
+		data.setClassIndex(NUM_INPUTS);
+		return data;
+	}
+
+	private double[] inputs(Random random) {
+		double[] values = new double[NUM_INPUTS + 1];
+		for (int i = 0; i < NUM_INPUTS; i++)
+			values[i] = random.nextGaussian() * 10 + i;
+		return values;
+	}
+
+	private void setMissing(Instances data, long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < data.numInstances(); i++)
+			data.instance(i).setMissing(random.nextInt(NUM_INPUTS));
+	}
+}
@@ -0,0 +1,159 @@
+package srl.test.recognition.grouping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.grouping.HandwritingGrouper;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator;
+
+/**
+ * Checks that the union-find grouper gives the groups of the pairwise scan it
+ * replaced, with their strokes in the same order
+ */
+public class HandwritingGrouperTest {
+
+	private static final long[] SEEDS = { 1L, 2L, 3L, 4L, 5L, 6L };
+
+	@Test
+	public void testSameGroupsAsPairwiseScan() {
+		for (long seed : SEEDS)
+			checkSame(seed, 12, 30.0, 600.0);
+	}
+
+	@Test
+	public void testSameGroupsOnNarrowPages() {
+		// words wrap onto many short lines, so groups touch above and below
+		for (long seed : SEEDS)
+			checkSame(seed, 12, 30.0, 150.0);
+	}
+
+	/**
+	 * Group a page of handwriting both ways and compare the groups
+	 */
+	private void checkSame(long seed, int numWords, double height,
+			double width) {
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		for (Shape word : new SyntheticSketchGenerator(seed).handwriting(
+				numWords, height, width))
+			for (Shape letter : word.getShapes())
+				strokes.addAll(letter.getStrokes());
+
+		Map<Stroke, Integer> numbers = new IdentityHashMap<Stroke, Integer>();
+		for (int i = 0; i < strokes.size(); i++)
+			numbers.put(strokes.get(i), i);
+
+		List<List<Integer>> expected = numbered(pairwiseScan(strokes), numbers);
+		List<List<Integer>> actual = numbered(
+				new HandwritingGrouper().group(strokes), numbers);
+		// some strokes are grouped, but not all into one group
+		assertTrue(expected.size() > 1 && expected.size() < strokes.size());
+		assertEquals("seed " + seed, expected, actual);
+	}
+
+	/**
+	 * Replace the strokes of each group by their numbers
+	 */
+	private static List<List<Integer>> numbered(List<Shape> groups,
+			Map<Stroke, Integer> numbers) {
+		List<List<Integer>> result = new ArrayList<List<Integer>>();
+		for (Shape group : groups) {
+			List<Integer> members = new ArrayList<Integer>();
+			for (Stroke s : group.getStrokes())
+				members.add(numbers.get(s));
+			result.add(members);
+		}
+		return result;
+	}
+
+	/**
+	 * The grouping loop HandwritingGrouper.group used before it kept groups
+	 * in a DisjointSet: after each merge, every pair of groups and every pair
+	 * of strokes in them is tested again
+	 */
+	private static List<Shape> pairwiseScan(List<Stroke> strokes) {
+		ArrayList<Shape> shapegroups = new ArrayList<Shape>();
+		for (int i = 0; i < strokes.size(); i++) {
+			Shape textShape = new Shape();
+			textShape.add(strokes.get(i));
+			shapegroups.add(textShape);
+		}
+
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			ArrayList<Shape> newshapes = new ArrayList<Shape>();
+			newshapes.addAll(shapegroups);
+
+			for (int i = 0; i < newshapes.size(); i++) {
+				Shape shape1 = newshapes.get(i);
+
+				for (int k = 0; k < newshapes.size(); k++) {
+					Shape shape2 = newshapes.get(k);
+
+					if (shape1 == shape2) {
+						continue;
+					}
+
+					for (int j = 0; j < shape1.getStrokes().size(); j++) {
+						Stroke stroke1 = shape1.getStrokes().get(j);
+
+						if (merged)
+							break;
+
+						BoundingBox bb1 = groupingBox(stroke1, shape1);
+
+						for (int l = 0; l < shape2.getStrokes().size(); l++) {
+							Stroke stroke2 = shape2.getStrokes().get(l);
+							BoundingBox bb2 = groupingBox(stroke2, shape2);
+							if (bb1.intersects(bb2)) {
+								merged = true;
+							}
+						}
+					}
+					if (merged) {
+						for (int l = 0; l < shape2.getStrokes().size(); l++) {
+							Stroke stroke = shape2.getStrokes().get(l);
+							shape1.add(stroke);
+						}
+						shapegroups.remove(shape2);
+						break;
+					}
+				}
+				if (merged) {
+					break;
+				}
+			}
+		}
+
+		return shapegroups;
+	}
+
+	/**
+	 * Grown box of a stroke, as the pairwise scan computed it from the
+	 * stroke's group
+	 */
+	private static BoundingBox groupingBox(Stroke stroke, Shape shape) {
+		double ratioHW = (stroke.getBoundingBox().getHeight() + 1)
+				/ (shape.getBoundingBox().getWidth() + 1);
+		double growW = 1.00;
+		growW = Math.max(growW, growW * ratioHW);
+		double growH = .05;
+		growH = Math.max(growH, growH / ratioHW);
+		BoundingBox bb = stroke.getBoundingBox().increment();
+		if (bb.getWidth() > 3 * bb.getHeight())
+			bb = bb.growHeight(growH * 2);
+		else
+			bb = bb.growHeight(growH);
+		return bb.growWidth(growW);
+	}
+}
@@ -0,0 +1,229 @@
+package srl.test.recognition.handwriting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.handwriting.AllPossibleGroupings;
+import srl.recognition.handwriting.Character;
+import srl.recognition.handwriting.CharacterGroup;
+import srl.recognition.handwriting.HWRType;
+import srl.recognition.handwriting.HandwritingInterpretations;
+import srl.recognition.handwriting.ResultConfidencePairing;
+import srl.recognition.handwriting.SegmentationLattice;
+
+/**
+ * Checks that searching the segmentation lattice gives the word confidences
+ * and the best segmentations that enumerating every grouping did, for every
+ * number of stroke groups the enumeration can split into characters
+ */
+public class SegmentationLatticeTest {
+
+	/**
+	 * Most groups the enumeration can split: seven characters of five groups
+	 */
+	private static final int MAX_GROUPS = 35;
+
+	private static final int NUM_BEST = 5;
+
+	/**
+	 * Everything a character can be recognized as in the inner and civil
+	 * dictionaries
+	 */
+	private static final String[] RESULTS = { "A", "B", "C", "D", "E", "F",
+			"G", "H", "I", "J", "K", "L", "M", "N", "O", "P", "Q", "R", "S",
+			"T", "U", "V", "W", "X", "Y", "Z", "0", "1", "2", "3", "4", "5",
+			"6", "7", "8", "9", "alpha", "beta", "gamma", "theta", "period",
+			"equals" };
+
+	@Test
+	public void testSameAsEnumeration() {
+		Random random = new Random(1L);
+		for (int numGroups = 1; numGroups <= MAX_GROUPS; numGroups++)
+			checkSame(random, numGroups, 10.0);
+	}
+
+	@Test
+	public void testSameAsEnumerationWithOverlappingGroups() {
+		// wide groups overlap, so many groupings break the left to right rule
+		Random random = new Random(2L);
+		for (int numGroups = 1; numGroups <= MAX_GROUPS; numGroups++)
+			checkSame(random, numGroups, 4.0);
+	}
+
+	/**
+	 * Build random stroke groups and characters for their spans, then check
+	 * the lattice against the enumeration
+	 *
+	 * @param random
+	 *            source of the layout and of the confidences
+	 * @param numGroups
+	 *            number of stroke groups
+	 * @param step
+	 *            distance between the left edges of consecutive groups
+	 */
+	private void checkSame(Random random, int numGroups, double step) {
+		List<Stroke> groups = new ArrayList<Stroke>();
+		for (int i = 0; i < numGroups; i++) {
+			double left = i * step + 3 * random.nextDouble();
+			double width = 2 + 12 * random.nextDouble();
+			Stroke stroke = new Stroke();
+			stroke.addPoint(new Point(left, 10 * random.nextDouble(), 0L));
+			stroke.addPoint(new Point(left + width, 10 * random.nextDouble(),
+					10L));
+			groups.add(stroke);
+		}
+
+		// recognize the spans the way the recognizer does, only those that
+		// can be part of a segmentation
+		SegmentationLattice lattice = new SegmentationLattice(numGroups);
+		Character[][] characters = new Character[numGroups][lattice
+				.getMaxSpan()];
+		for (int start = 0; start < numGroups; start++) {
+			for (int length = 1; length <= lattice.getMaxSpan()
+					&& start + length <= numGroups; length++) {
+				if (!lattice.isReachable(start, length))
+					continue;
+				Character c = character(random,
+						groups.subList(start, start + length));
+				characters[start][length - 1] = c;
+				lattice.setCharacter(start, length, c);
+			}
+		}
+
+		List<CharacterGroup> valid = enumerate(characters, numGroups);
+		String context = numGroups + " groups, step " + step;
+
+		// word confidences, both for long words and for words that only look
+		// at the first character
+		checkInterpretations(HWRType.INNER, lattice, valid, context);
+		if (!valid.isEmpty())
+			checkInterpretations(HWRType.CIVIL, lattice, valid, context);
+
+		// best segmentations
+		Collections.sort(valid, AVERAGE);
+		List<CharacterGroup> expected = valid.subList(0,
+				Math.min(NUM_BEST, valid.size()));
+		List<CharacterGroup> actual = lattice.getBestSegmentations(NUM_BEST);
+		assertEquals(context, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(context, expected.get(i).getGrouping(), actual.get(i)
+					.getGrouping());
+			assertEquals(context, average(expected.get(i)),
+					average(actual.get(i)), 0);
+		}
+	}
+
+	/**
+	 * Compare the confidence of every word in a dictionary, submitted from
+	 * the lattice and from each valid grouping
+	 */
+	private static void checkInterpretations(HWRType type,
+			SegmentationLattice lattice, List<CharacterGroup> valid,
+			String context) {
+		HandwritingInterpretations fromEnumeration = new HandwritingInterpretations(
+				type);
+		for (CharacterGroup characters : valid)
+			fromEnumeration.submitCharacters(characters);
+		if (valid.isEmpty())
+			fromEnumeration.submitCharacters(new CharacterGroup());
+
+		HandwritingInterpretations fromLattice = new HandwritingInterpretations(
+				type);
+		fromLattice.submitLattice(lattice);
+
+		Shape expected = new Shape();
+		fromEnumeration.setAttributes(expected);
+		Shape actual = new Shape();
+		fromLattice.setAttributes(actual);
+		assertEquals(type + ", " + context, expected.getAttributes(),
+				actual.getAttributes());
+	}
+
+	/**
+	 * The groupings HandwritingRecognizer.recognizeOneText used to submit:
+	 * every grouping from AllPossibleGroupings in which no character's center
+	 * is left of the right edge of the character before it
+	 */
+	private static List<CharacterGroup> enumerate(Character[][] characters,
+			int numGroups) {
+		List<CharacterGroup> valid = new ArrayList<CharacterGroup>();
+		for (ArrayList<Integer> grouping : AllPossibleGroupings
+				.computepossibiliites(numGroups)) {
+			CharacterGroup group = new CharacterGroup();
+			Character prevChar = null;
+			boolean jumpOut = false;
+			int start = 0;
+			for (Integer length : grouping) {
+				Character c = characters[start][length - 1];
+				assertNotNull("span " + start + "+" + length
+						+ " was not recognized", c);
+				group.add(c);
+				if (prevChar != null
+						&& c.getBoundingBox().getCenterX() < prevChar
+								.getBoundingBox().getMaxX()) {
+					jumpOut = true;
+					break;
+				}
+				prevChar = c;
+				start += length;
+			}
+			if (!jumpOut) {
+				group.setGrouping(grouping);
+				valid.add(group);
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * A character with random confidences for everything it can be
+	 */
+	private static Character character(Random random, List<Stroke> strokes) {
+		List<ResultConfidencePairing> results = new ArrayList<ResultConfidencePairing>();
+		for (String result : RESULTS)
+			results.add(new ResultConfidencePairing(result, random
+					.nextDouble()));
+		return new Character(results, new ArrayList<Stroke>(strokes));
+	}
+
+	/**
+	 * Average of the highest confidence of each character, summed from the
+	 * first character on
+	 */
+	private static double average(CharacterGroup characters) {
+		List<Integer> grouping = characters.getGrouping();
+		assertTrue(grouping.size() > 0);
+		return sumOfHighest(characters) / grouping.size();
+	}
+
+	private static double sumOfHighest(CharacterGroup characters) {
+		double sum = 0;
+		for (Character c : characters.getCharacters())
+			sum += c.getHighestConfidence();
+		return sum;
+	}
+
+	/**
+	 * Orders segmentations by decreasing average confidence, keeping the
+	 * order of the enumeration for ties
+	 */
+	private static final Comparator<CharacterGroup> AVERAGE = new Comparator<CharacterGroup>() {
+
+		@Override
+		public int compare(CharacterGroup g1, CharacterGroup g2) {
+			return Double.compare(average(g2), average(g1));
+		}
+	};
+}
@@ -0,0 +1,102 @@
+package srl.test.recognition.paleo.cali;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Stroke;
+import srl.recognition.metrics.Metrics;
+import srl.recognition.metrics.MetricsRegistry;
+import srl.recognition.paleo.cali.CALIFeatures;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator.Primitive;
+
+/**
+ * Checks that the linear searches used for convex hulls, and the bounded
+ * searches used for the others, give the features of the exhaustive searches
+ */
+public class CALIFeaturesTest {
+
+	private static final int NUM_STROKES = 20;
+
+	/**
+	 * Largest difference allowed between the features of the searches,
+	 * relative to the larger of the two values or to one, whichever is larger
+	 */
+	private static final double TOLERANCE = 1E-12;
+
+	private MetricsRegistry m_registry;
+
+	@Before
+	public void setUp() {
+		m_registry = new MetricsRegistry();
+		Metrics.setRegistry(m_registry);
+	}
+
+	@After
+	public void tearDown() {
+		Metrics.setRegistry(null);
+	}
+
+	@Test
+	public void testNeatStrokes() {
+		checkAgree(1L, SyntheticSketchGenerator.DEFAULT_OVERTRACE);
+		assertTrue(m_registry.getCounter(CALIFeatures.CONVEX_METRIC) > 0);
+	}
+
+	@Test
+	public void testOvertracedStrokes() {
+		checkAgree(2L, 3.0);
+		assertTrue(m_registry.getCounter(CALIFeatures.NOT_CONVEX_METRIC) > 0);
+	}
+
+	/**
+	 * Compare the features of strokes of every primitive and several sizes
+	 */
+	private void checkAgree(long seed, double overtrace) {
+		SyntheticSketchGenerator generator = new SyntheticSketchGenerator(seed);
+		generator.setOvertrace(overtrace);
+		for (Primitive primitive : Primitive.values()) {
+			for (int i = 0; i < NUM_STROKES; i++) {
+				Stroke stroke = generator.stroke(primitive, 400, 400,
+						50 + 60 * (i % 7));
+				double[] fast;
+				try {
+					fast = values(new CALIFeatures(stroke));
+				} catch (IndexOutOfBoundsException e) {
+					// the hull of a few nearly straight strokes cannot be
+					// built, before either search runs
+					continue;
+				}
+				double[] exhaustive = values(new CALIFeatures(stroke, true));
+				for (int f = 0; f < fast.length; f++) {
+					double a = fast[f], b = exhaustive[f];
+					if (Double.compare(a, b) == 0)
+						continue;
+					double scale = Math.max(1,
+							Math.max(Math.abs(a), Math.abs(b)));
+					if (!(Math.abs(a - b) <= TOLERANCE * scale))
+						fail("feature " + f + " of " + primitive + " stroke "
+								+ i + ": " + a + " vs " + b + " (exhaustive)");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get every feature, in the order CALIFeatures declares them
+	 */
+	private static double[] values(CALIFeatures cali) {
+		return new double[] { cali.Tl_Pch(), cali.Pch2_Ach(),
+				cali.Pch_Ns_Tl(), cali.Hollowness(), cali.Hm_Wbb(),
+				cali.Vm_Hbb(), cali.Hbb_Wbb(), cali.Her_Wer(), cali.Alt_Ach(),
+				cali.Ach_Aer(), cali.Alt_Aer(), cali.Ach_Abb(),
+				cali.Alt_Abb(), cali.Alq_Ach(), cali.Alq_Aer(),
+				cali.Alt_Alq(), cali.Plt_Pch(), cali.Pch_Per(),
+				cali.Plt_Per(), cali.Pch_Pbb(), cali.Plt_Pbb(),
+				cali.Plq_Pch(), cali.Plq_Per(), cali.Plt_Plq() };
+	}
+}
@@ -0,0 +1,220 @@
+package srl.test.recognition.paleo.multistroke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.core.util.IsAConstants;
+import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.multistroke.DashBoundaryRecognizer;
+
+/**
+ * Checks that dashed rectangles and diamonds are put together from exactly
+ * their four sides, whatever order and direction the sides were drawn in,
+ * and that dashed lines that are not part of a boundary are passed through
+ */
+public class DashBoundaryRecognizerTest {
+
+	private static final int DASHES_PER_LINE = 5;
+
+	/**
+	 * Time the next line starts at; every line is drawn after the previous
+	 */
+	private long m_time;
+
+	@Before
+	public void setUp() {
+		m_time = 0L;
+	}
+
+	@Test
+	public void testRectanglesInBothDirections() {
+		// drawn around in order, each side continuing from the last
+		Shape top1 = dashedLine(100, 100, 300, 100);
+		Shape right1 = dashedLine(300, 100, 300, 250);
+		Shape bottom1 = dashedLine(300, 250, 100, 250);
+		Shape left1 = dashedLine(100, 250, 100, 100);
+
+		// drawn out of order, each side in the other direction
+		Shape left2 = dashedLine(500, 100, 500, 300);
+		Shape bottom2 = dashedLine(700, 300, 500, 300);
+		Shape top2 = dashedLine(500, 100, 700, 100);
+		Shape right2 = dashedLine(700, 300, 700, 100);
+
+		check(Arrays.asList(top1, right1, bottom1, left1, left2, bottom2,
+				top2, right2), Arrays.asList(
+				Arrays.asList(top1, right1, bottom1, left1),
+				Arrays.asList(left2, bottom2, top2, right2)),
+				Collections.<List<Shape>> emptyList(),
+				Collections.<Shape> emptyList());
+	}
+
+	@Test
+	public void testDiamondsInBothDirections() {
+		Shape d1a = dashedLine(200, 100, 300, 200);
+		Shape d1b = dashedLine(300, 200, 200, 300);
+		Shape d1c = dashedLine(200, 300, 100, 200);
+		Shape d1d = dashedLine(100, 200, 200, 100);
+
+		Shape d2a = dashedLine(700, 200, 600, 100);
+		Shape d2b = dashedLine(500, 200, 600, 300);
+		Shape d2c = dashedLine(600, 100, 500, 200);
+		Shape d2d = dashedLine(600, 300, 700, 200);
+
+		check(Arrays.asList(d1a, d1b, d1c, d1d, d2a, d2b, d2c, d2d),
+				Collections.<List<Shape>> emptyList(), Arrays.asList(
+						Arrays.asList(d1a, d1b, d1c, d1d),
+						Arrays.asList(d2a, d2b, d2c, d2d)),
+				Collections.<Shape> emptyList());
+	}
+
+	@Test
+	public void testStrayLinesLeftAlone() {
+		Shape top = dashedLine(100, 100, 300, 100);
+		Shape right = dashedLine(300, 250, 300, 100);
+		Shape bottom = dashedLine(100, 250, 300, 250);
+		Shape left = dashedLine(100, 100, 100, 250);
+
+		Shape diamondA = dashedLine(600, 100, 700, 200);
+		Shape diamondB = dashedLine(600, 300, 700, 200);
+		Shape diamondC = dashedLine(500, 200, 600, 300);
+		Shape diamondD = dashedLine(600, 100, 500, 200);
+
+		// stray dashed lines of every orientation, drawn both ways, away from
+		// the boundaries
+		Shape strayH1 = dashedLine(100, 500, 300, 500);
+		Shape strayH2 = dashedLine(700, 700, 500, 700);
+		Shape strayV1 = dashedLine(900, 100, 900, 300);
+		Shape strayV2 = dashedLine(1100, 300, 1100, 100);
+		Shape strayP = dashedLine(900, 500, 1000, 600);
+		Shape strayN = dashedLine(1200, 600, 1100, 700);
+
+		// three sides of a rectangle, which do not close
+		Shape openTop = dashedLine(100, 900, 300, 900);
+		Shape openRight = dashedLine(300, 900, 300, 1050);
+		Shape openBottom = dashedLine(300, 1050, 100, 1050);
+
+		check(Arrays.asList(strayH1, top, diamondA, strayV1, right,
+				openTop, diamondB, strayP, bottom, strayH2, openRight,
+				diamondC, left, strayV2, strayN, openBottom, diamondD),
+				Collections.singletonList(Arrays.asList(top, right, bottom,
+						left)), Collections.singletonList(Arrays.asList(
+						diamondA, diamondB, diamondC, diamondD)), Arrays.asList(
+						strayH1, strayH2, strayV1, strayV2, strayP, strayN,
+						openTop, openRight, openBottom));
+	}
+
+	/**
+	 * Recognize boundaries and check the output holds exactly the expected
+	 * boundaries, each made of its four sides, and the expected lines
+	 *
+	 * @param input
+	 *            dashed lines, in the order they are given
+	 * @param rectangles
+	 *            sides of each rectangle expected
+	 * @param diamonds
+	 *            sides of each diamond expected
+	 * @param untouched
+	 *            lines expected in the output as they were
+	 */
+	private void check(List<Shape> input, List<List<Shape>> rectangles,
+			List<List<Shape>> diamonds, List<Shape> untouched) {
+		List<Shape> output = new DashBoundaryRecognizer(new ArrayList<Shape>(
+				input)).recognize();
+
+		List<Set<Shape>> foundRectangles = new ArrayList<Set<Shape>>();
+		List<Set<Shape>> foundDiamonds = new ArrayList<Set<Shape>>();
+		Map<Shape, Boolean> passed = new IdentityHashMap<Shape, Boolean>();
+		for (Shape s : output) {
+			String label = s.getInterpretation().label;
+			if (label.equals(Fit.RECTANGLE)) {
+				assertTrue(s.hasAttribute(IsAConstants.DASHED));
+				foundRectangles.add(sides(s));
+			} else if (label.equals(Fit.DIAMOND)) {
+				assertTrue(s.hasAttribute(IsAConstants.DASHED));
+				foundDiamonds.add(sides(s));
+			} else
+				passed.put(s, Boolean.TRUE);
+		}
+
+		assertEquals(asSets(rectangles), new HashSet<Set<Shape>>(
+				foundRectangles));
+		assertEquals(rectangles.size(), foundRectangles.size());
+		assertEquals(asSets(diamonds), new HashSet<Set<Shape>>(foundDiamonds));
+		assertEquals(diamonds.size(), foundDiamonds.size());
+		assertEquals(untouched.size(), passed.size());
+		for (Shape s : untouched) {
+			assertTrue(passed.containsKey(s));
+			assertEquals(Fit.LINE, s.getInterpretation().label);
+			assertTrue(s.hasAttribute(IsAConstants.DASHED));
+		}
+	}
+
+	/**
+	 * Get the sides of a boundary
+	 */
+	private static Set<Shape> sides(Shape boundary) {
+		List<Shape> sides = boundary.getShapes();
+		assertEquals(4, sides.size());
+		Set<Shape> set = new HashSet<Shape>(sides);
+		assertEquals(4, set.size());
+		return set;
+	}
+
+	private static Set<Set<Shape>> asSets(List<List<Shape>> boundaries) {
+		Set<Set<Shape>> sets = new HashSet<Set<Shape>>();
+		for (List<Shape> sides : boundaries)
+			sets.add(new HashSet<Shape>(sides));
+		return sets;
+	}
+
+	/**
+	 * Build a dashed line the way DashLineRecognizer does, out of single
+	 * stroke line shapes each covering the first part of an equal step from
+	 * one end to the other
+	 */
+	private Shape dashedLine(double x1, double y1, double x2, double y2) {
+		List<Shape> dashes = new ArrayList<Shape>();
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		for (int i = 0; i < DASHES_PER_LINE; i++) {
+			double t0 = (double) i / DASHES_PER_LINE;
+			double t1 = i == DASHES_PER_LINE - 1 ? 1.0 : t0 + 0.6
+					/ DASHES_PER_LINE;
+			Stroke stroke = new Stroke();
+			for (int j = 0; j <= 4; j++) {
+				double t = t0 + (t1 - t0) * j / 4;
+				stroke.addPoint(new Point(x1 + (x2 - x1) * t, y1 + (y2 - y1)
+						* t, m_time));
+				m_time += 10L;
+			}
+			m_time += 100L;
+			Shape dash = new Shape();
+			dash.setLabel(Fit.LINE);
+			dash.setStrokes(Collections.singletonList(stroke));
+			dashes.add(dash);
+			strokes.add(stroke);
+		}
+
+		Shape line = new Shape();
+		line.setLabel(Fit.LINE);
+		line.setAttribute(IsAConstants.PRIMITIVE, IsAConstants.PRIMITIVE);
+		line.setAttribute(IsAConstants.DASHED, IsAConstants.DASHED);
+		line.setStrokes(strokes);
+		line.setShapes(dashes);
+		return line;
+	}
+}
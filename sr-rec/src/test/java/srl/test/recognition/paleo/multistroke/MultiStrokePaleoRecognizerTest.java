@@ -0,0 +1,92 @@
+package srl.test.recognition.paleo.multistroke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Interpretation;
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.paleo.PaleoConfig;
+import srl.recognition.paleo.PaleoSketchRecognizer;
+import srl.recognition.paleo.multistroke.MultiStrokePaleoRecognizer;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator;
+import srl.test.core.sketch.synthetic.SyntheticSketchGenerator.Primitive;
+
+/**
+ * Checks that the multi-stroke recognizer labels strokes that come without an
+ * interpretation, such as strokes taken straight from a sketch
+ */
+public class MultiStrokePaleoRecognizerTest {
+
+	private MultiStrokePaleoRecognizer m_recognizer;
+
+	@Before
+	public void setUp() {
+		m_recognizer = new MultiStrokePaleoRecognizer(new PaleoSketchRecognizer(
+				PaleoConfig.allOn()));
+	}
+
+	@Test
+	public void testAddStrokeWithoutInterpretation() {
+		Stroke first = line(0, 0, 100, 0);
+		Stroke second = line(100, 0, 100, 100);
+		assertNull(first.getInterpretation());
+
+		m_recognizer.addStroke(first);
+		m_recognizer.addStroke(second);
+
+		assertNotNull(first.getInterpretation());
+		assertEquals("0", first.getInterpretation().label);
+		assertEquals("0A", first.getFirstPoint().getName());
+		assertEquals("0B", first.getLastPoint().getName());
+		assertEquals("1", second.getInterpretation().label);
+	}
+
+	@Test
+	public void testAddStrokeWithLabel() {
+		Stroke stroke = line(0, 0, 100, 0);
+		stroke.setInterpretation(new Interpretation("Line", 1.0));
+
+		m_recognizer.addStroke(stroke);
+
+		assertEquals("Line", stroke.getInterpretation().label);
+		assertEquals("Line0A", stroke.getFirstPoint().getName());
+		assertEquals("Line0B", stroke.getLastPoint().getName());
+	}
+
+	@Test
+	public void testRecognizeStrokesWithoutInterpretation() {
+		SyntheticSketchGenerator generator = new SyntheticSketchGenerator(1L);
+		List<Stroke> strokes = new ArrayList<Stroke>(generator.shape(
+				Primitive.RECTANGLE, 200, 200, 150, true).getStrokes());
+		for (Stroke s : strokes)
+			assertNull(s.getInterpretation());
+
+		m_recognizer.submitForRecognition(strokes);
+		List<IRecognitionResult> results = m_recognizer.recognize();
+
+		assertFalse(results.isEmpty());
+		for (Stroke s : strokes)
+			assertNotNull(s.getInterpretation());
+	}
+
+	/**
+	 * Draw a straight stroke
+	 */
+	private static Stroke line(double x1, double y1, double x2, double y2) {
+		Stroke stroke = new Stroke();
+		for (int i = 0; i <= 20; i++)
+			stroke.addPoint(new Point(x1 + (x2 - x1) * i / 20.0, y1
+					+ (y2 - y1) * i / 20.0, i * 10L));
+		return stroke;
+	}
+}